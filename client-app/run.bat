@@ -76,7 +76,7 @@ set "HOST=localhost"
 set "PORT=9999"
 if not "%~2"=="" set "HOST=%~2"
 if not "%~3"=="" set "PORT=%~3"
-java -cp "lib/*;bin" client.NetAuctionClient %HOST% %PORT% --ssl
+java -cp "lib/*;bin" client.NetAuctionClient %HOST% %PORT% --ssl %4 %5
 exit /b %ERRORLEVEL%
 
 :gui
@@ -120,6 +120,6 @@ exit /b %ERRORLEVEL%
 echo Uso:
 echo   .\run.bat setup
 echo   .\run.bat compile
-echo   .\run.bat client [host] [puerto]
+echo   .\run.bat client [host] [puerto] [--binary] [--compress]
 echo   .\run.bat gui
 exit /b 0
@@ -63,7 +63,7 @@ client() {
   echo "[OK] Material SSL cliente listo."
   HOST="${2:-localhost}"
   PORT="${3:-9999}"
-  java -cp "lib/*:bin" client.NetAuctionClient "$HOST" "$PORT" --ssl
+  java -cp "lib/*:bin" client.NetAuctionClient "$HOST" "$PORT" --ssl "${@:4}"
 }
 
 gui() {
@@ -105,7 +105,7 @@ show_help() {
   echo "Uso:"
   echo "  ./run.sh setup"
   echo "  ./run.sh compile"
-  echo "  ./run.sh client [host] [puerto]"
+  echo "  ./run.sh client [host] [puerto] [--binary] [--compress]"
   echo "  ./run.sh gui"
 }
 
@@ -55,7 +55,28 @@ public class NetAuctionClient {
      * @param sslEnabled true para habilitar SSL/TLS
      */
     public NetAuctionClient(boolean sslEnabled) {
-        this.connection = new ServerConnection(sslEnabled);
+        this(sslEnabled, false);
+    }
+
+    /**
+     * Constructor con configuracion de SSL y protocolo.
+     *
+     * @param sslEnabled true para habilitar SSL/TLS
+     * @param binaryProtocol true para solicitar el protocolo binario al conectar
+     */
+    public NetAuctionClient(boolean sslEnabled, boolean binaryProtocol) {
+        this(sslEnabled, binaryProtocol, false);
+    }
+
+    /**
+     * Constructor con configuracion de SSL, protocolo y compresion.
+     *
+     * @param sslEnabled true para habilitar SSL/TLS
+     * @param binaryProtocol true para solicitar el protocolo binario al conectar
+     * @param compression true para solicitar compresion de las respuestas grandes al conectar
+     */
+    public NetAuctionClient(boolean sslEnabled, boolean binaryProtocol, boolean compression) {
+        this.connection = new ServerConnection(sslEnabled, binaryProtocol, compression);
         this.consoleReader = new BufferedReader(new InputStreamReader(System.in));
         this.running = true;
     }
@@ -72,7 +93,7 @@ public class NetAuctionClient {
 
             connection.connect(host, port);
 
-            serverListener = new ServerListener(connection.getReader());
+            serverListener = new ServerListener(connection);
             listenerExecutor = Executors.newSingleThreadExecutor();
             listenerExecutor.submit(serverListener);
 
@@ -126,7 +147,10 @@ public class NetAuctionClient {
                     handleCreateAuction(args);
                     break;
                 case "list":
-                    handleListAuctions();
+                    handleListAuctions(args);
+                    break;
+                case "my":
+                    handleMyActivity(args);
                     break;
                 case "detail":
                     handleAuctionDetail(args);
@@ -146,6 +170,9 @@ public class NetAuctionClient {
                 case "status":
                     printStatus();
                     break;
+                case "stats":
+                    handleAdminStats();
+                    break;
                 case "raw":
                     handleRawMessage(args);
                     break;
@@ -173,13 +200,15 @@ public class NetAuctionClient {
         System.out.println("  login <user> <password>     (compatibilidad)");
         System.out.println("  logout");
         System.out.println("  create <titulo> <precio> <minutos>");
-        System.out.println("  list");
+        System.out.println("  list [endTime|price|bidCount] [cursor]");
+        System.out.println("  my <auctions|bids|wins> [cursor]");
         System.out.println("  detail <auctionId>");
         System.out.println("  bid <auctionId> <cantidad>");
         System.out.println("  cancel <auctionId>");
         System.out.println("  block <username>");
         System.out.println("  unblock <username>");
         System.out.println("  status");
+        System.out.println("  stats                       (solo administrador)");
         System.out.println("  raw <json>");
         System.out.println("  help");
         System.out.println("  exit");
@@ -312,9 +341,10 @@ public class NetAuctionClient {
     /**
      * Maneja el comando de listado de subastas activas.
      *
+     * @param args argumentos del comando (orden y cursor, opcionales)
      * @throws IOException si ocurre un error de comunicacion
      */
-    private void handleListAuctions() throws IOException {
+    private void handleListAuctions(String args) throws IOException {
         if (sessionToken == null) {
             System.out.println("[CLIENT] Debe iniciar sesion primero");
             return;
@@ -322,6 +352,13 @@ public class NetAuctionClient {
 
         Message request = new Message(Constants.ACTION_LIST_AUCTIONS);
         request.setToken(sessionToken);
+        String[] parts = args.isEmpty() ? new String[0] : args.split("\\s+");
+        if (parts.length > 0) {
+            request.addData("sort", parts[0]);
+        }
+        if (parts.length > 1) {
+            request.addData("cursor", parts[1]);
+        }
 
         Message response = sendAndReceive(request);
 
@@ -338,6 +375,69 @@ public class NetAuctionClient {
                         auction.get("bidCount").getAsInt());
                 }
             }
+            String next = response.getDataString("next");
+            if (next != null) {
+                System.out.println("[CLIENT] Hay mas subastas: list "
+                    + response.getDataString("sort") + " " + next);
+            }
+        }
+    }
+
+    /**
+     * Maneja el comando de actividad del usuario: subastas creadas, en las
+     * que ha pujado o ganadas.
+     *
+     * @param args argumentos del comando (auctions, bids o wins y cursor opcional)
+     * @throws IOException si ocurre un error de comunicacion
+     */
+    private void handleMyActivity(String args) throws IOException {
+        if (sessionToken == null) {
+            System.out.println("[CLIENT] Debe iniciar sesion primero");
+            return;
+        }
+
+        String[] parts = args.split("\\s+");
+        String action;
+        switch (parts[0].toLowerCase()) {
+            case "auctions":
+                action = Constants.ACTION_MY_AUCTIONS;
+                break;
+            case "bids":
+                action = Constants.ACTION_MY_BIDS;
+                break;
+            case "wins":
+                action = Constants.ACTION_MY_WINS;
+                break;
+            default:
+                System.out.println("Uso: my <auctions|bids|wins> [cursor]");
+                return;
+        }
+
+        Message request = new Message(action);
+        request.setToken(sessionToken);
+        if (parts.length > 1) {
+            request.addData("cursor", parts[1]);
+        }
+
+        Message response = sendAndReceive(request);
+
+        if (response != null && response.isSuccess()) {
+            var auctions = response.getData().getAsJsonArray("auctions");
+            if (auctions != null) {
+                for (int i = 0; i < auctions.size(); i++) {
+                    var auction = auctions.get(i).getAsJsonObject();
+                    System.out.printf("%s | %s | %.2f | %s | pujas:%d%n",
+                        auction.get("id").getAsString(),
+                        truncate(auction.get("title").getAsString(), 20),
+                        auction.get("currentPrice").getAsDouble(),
+                        auction.get("auctionStatus").getAsString(),
+                        auction.get("bidCount").getAsInt());
+                }
+            }
+            String next = response.getDataString("next");
+            if (next != null) {
+                System.out.println("[CLIENT] Hay mas subastas: my " + parts[0] + " " + next);
+            }
         }
     }
 
@@ -479,6 +579,113 @@ public class NetAuctionClient {
         sendAndReceive(request);
     }
 
+    /**
+     * Maneja el comando de estadisticas de colas de salida (solo administrador).
+     *
+     * @throws IOException si ocurre un error de comunicacion
+     */
+    private void handleAdminStats() throws IOException {
+        if (sessionToken == null) {
+            System.out.println("[CLIENT] Debe iniciar sesion primero");
+            return;
+        }
+
+        Message request = new Message(Constants.ACTION_ADMIN_STATS);
+        request.setToken(sessionToken);
+
+        Message response = sendAndReceive(request);
+
+        if (response != null && response.isSuccess()) {
+            var clients = response.getData().getAsJsonArray("clients");
+            if (clients != null && clients.size() > 0) {
+                for (int i = 0; i < clients.size(); i++) {
+                    var client = clients.get(i).getAsJsonObject();
+                    System.out.printf("%s | %s | backlog:%dB/%d | ultima escritura:%dms | latencia:%.1f/%.1fms | descartes:%d/%d | flushes:%d (%.0fB)%s%n",
+                        truncate(client.get("username").getAsString(), 15),
+                        client.get("address").getAsString(),
+                        client.get("backlogBytes").getAsLong(),
+                        client.get("queuedMessages").getAsInt(),
+                        client.get("lastWriteMsAgo").getAsLong(),
+                        client.get("avgLatencyMs").getAsDouble(),
+                        client.get("maxLatencyMs").getAsDouble(),
+                        client.get("dropped").getAsLong(),
+                        client.get("coalesced").getAsLong(),
+                        client.get("flushes").getAsLong(),
+                        client.get("bytesPerFlush").getAsDouble(),
+                        client.get("degraded").getAsBoolean() ? " | DEGRADADO" : "");
+                }
+            }
+            System.out.println("Desconectados por lentos: " + response.getDataLong("evicted", 0));
+            var writes = response.getData().getAsJsonObject("writes");
+            if (writes != null) {
+                System.out.printf("Escrituras | flushes:%d (%.1f/s) | %.0f bytes y %.1f mensajes por flush%n",
+                    writes.get("flushes").getAsLong(),
+                    writes.get("flushesPerSecond").getAsDouble(),
+                    writes.get("bytesPerFlush").getAsDouble(),
+                    writes.get("messagesPerFlush").getAsDouble());
+            }
+            var admission = response.getData().getAsJsonObject("admission");
+            if (admission != null) {
+                System.out.printf("Admision | conexiones:%d/%d (%.0f%%) | admitidas:%d | rechazadas por limite:%d | por espera:%d%n",
+                    admission.get("activeConnections").getAsInt(),
+                    admission.get("maxConnections").getAsInt(),
+                    admission.get("occupancy").getAsDouble() * 100,
+                    admission.get("admitted").getAsLong(),
+                    admission.get("rejectedFull").getAsLong(),
+                    admission.get("rejectedStale").getAsLong());
+            }
+            var rateLimit = response.getData().getAsJsonObject("rateLimit");
+            if (rateLimit != null) {
+                System.out.printf("Limite de peticiones | rechazadas auth:%d consultas:%d escrituras:%d | contadores:%d%n",
+                    rateLimit.get("auth").getAsLong(),
+                    rateLimit.get("query").getAsLong(),
+                    rateLimit.get("write").getAsLong(),
+                    rateLimit.get("tracked").getAsInt());
+            }
+            var heartbeat = response.getData().getAsJsonObject("heartbeat");
+            if (heartbeat != null) {
+                System.out.printf("Latido | cada %ds, cierre tras %d | conexiones:%d | PING enviados:%d | cerradas por inactividad:%d%n",
+                    heartbeat.get("intervalSeconds").getAsLong(),
+                    heartbeat.get("missedLimit").getAsInt(),
+                    heartbeat.get("connections").getAsInt(),
+                    heartbeat.get("pings").getAsLong(),
+                    heartbeat.get("reaped").getAsLong());
+            }
+            var compression = response.getData().getAsJsonObject("compression");
+            if (compression != null) {
+                System.out.printf("Compresion | umbral:%d bytes | lotes:%d | %d -> %d bytes (%.0f%%, ahorro %d) | CPU:%.1fms%n",
+                    compression.get("threshold").getAsInt(),
+                    compression.get("batches").getAsLong(),
+                    compression.get("rawBytes").getAsLong(),
+                    compression.get("compressedBytes").getAsLong(),
+                    compression.get("ratio").getAsDouble() * 100,
+                    compression.get("savedBytes").getAsLong(),
+                    compression.get("cpuMs").getAsDouble());
+            }
+            var http = response.getData().getAsJsonObject("http");
+            if (http != null) {
+                System.out.printf("HTTP | puerto:%d | peticiones:%d | 304:%d | generadas:%d | gzip:%d%n",
+                    http.get("port").getAsInt(),
+                    http.get("requests").getAsLong(),
+                    http.get("notModified").getAsLong(),
+                    http.get("renders").getAsLong(),
+                    http.get("gzipped").getAsLong());
+            }
+            var tls = response.getData().getAsJsonObject("tls");
+            if (tls != null) {
+                System.out.printf("TLS | negociaciones:%d (completas:%d, reanudadas:%d, %.0f%%) | fallidas:%d | rechazadas:%d | latencia:%.1f/%.1fms%n",
+                    tls.get("handshakes").getAsLong(),
+                    tls.get("full").getAsLong(),
+                    tls.get("resumed").getAsLong(),
+                    tls.get("resumptionRatio").getAsDouble() * 100,
+                    tls.get("failed").getAsLong(),
+                    tls.get("rejected").getAsLong(),
+                    tls.get("avgLatencyMs").getAsDouble(),
+                    tls.get("maxLatencyMs").getAsDouble());
+            }
+        }
+    }
+
     /**
      * Maneja el comando de envio de mensaje JSON en crudo.
      *
@@ -512,8 +719,7 @@ public class NetAuctionClient {
     private Message sendAndReceive(Message request) throws IOException {
         System.out.println("[CLIENT] Enviando: " + request.getAction());
 
-        connection.send(request);
-        Message response = serverListener.getNextResponse(10000);
+        Message response = serverListener.sendAndWait(request, 10000);
 
         if (response != null) {
             printFormattedResponse(response);
@@ -602,16 +808,22 @@ public class NetAuctionClient {
      * Punto de entrada principal del cliente de consola.
      * Parsea los argumentos de linea de comandos y arranca el cliente.
      *
-     * @param args argumentos de linea de comandos (host, puerto, --ssl)
+     * @param args argumentos de linea de comandos (host, puerto, --ssl, --binary, --compress)
      */
     public static void main(String[] args) {
         String host = Constants.SERVER_HOST;
         int port = Constants.SERVER_PORT;
         boolean ssl = true;
+        boolean binary = false;
+        boolean compress = false;
 
         for (int i = 0; i < args.length; i++) {
             if ("--ssl".equalsIgnoreCase(args[i]) || "-ssl".equalsIgnoreCase(args[i])) {
                 ssl = true;
+            } else if ("--binary".equalsIgnoreCase(args[i])) {
+                binary = true;
+            } else if ("--compress".equalsIgnoreCase(args[i])) {
+                compress = true;
             } else if (i == 0 && !args[i].startsWith("-")) {
                 host = args[i];
             } else if (i == 1 && !args[i].startsWith("-")) {
@@ -623,7 +835,7 @@ public class NetAuctionClient {
             }
         }
 
-        NetAuctionClient client = new NetAuctionClient(ssl);
+        NetAuctionClient client = new NetAuctionClient(ssl, binary, compress);
         client.start(host, port);
     }
 }
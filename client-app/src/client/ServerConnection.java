@@ -1,18 +1,24 @@
 package client;
 
+import common.BinaryCodec;
+import common.Compression;
 import common.Constants;
 import common.Message;
 
-import java.io.BufferedReader;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.PrintWriter;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.Socket;
+import java.nio.charset.StandardCharsets;
 import java.security.KeyStore;
 import java.security.cert.CertificateFactory;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Deque;
 import java.util.List;
 import javax.net.ssl.SSLContext;
 import javax.net.ssl.SSLParameters;
@@ -29,14 +35,21 @@ import javax.net.ssl.TrustManagerFactory;
  */
 public class ServerConnection {
 
+    /**
+     * Factoria SSL compartida por todas las conexiones del proceso: conserva
+     * la cache de sesiones del cliente, de modo que al reconectar se reanuda
+     * la sesion TLS en lugar de repetir la negociacion completa.
+     */
+    private static SSLSocketFactory sslSocketFactory;
+
     /** Socket de conexi??n */
     private Socket socket;
 
-    /** Writer para enviar mensajes */
-    private PrintWriter out;
+    /** Stream para enviar mensajes */
+    private OutputStream out;
 
-    /** Reader para recibir mensajes */
-    private BufferedReader in;
+    /** Stream para recibir mensajes */
+    private InputStream in;
 
     /** Indica si la conexi??n est?? activa */
     private boolean connected;
@@ -44,12 +57,26 @@ public class ServerConnection {
     /** Indica si SSL est?? habilitado */
     private boolean sslEnabled;
 
+    /** Indica si se solicita el protocolo binario al conectar */
+    private final boolean binaryRequested;
+
+    /** Indica si se solicita compresion de las respuestas grandes al conectar */
+    private final boolean compressionRequested;
+
+    /** Indica si el servidor acepto la compresion */
+    private volatile boolean compressionAccepted;
+
+    /** Mensajes ya leidos de un contenedor comprimido pendientes de entregar (solo hilo lector) */
+    private final Deque<Message> received;
+
+    /** Version del protocolo negociada con el servidor */
+    private volatile int protocolVersion;
+
     /**
      * Constructor por defecto.
      */
     public ServerConnection() {
-        this.connected = false;
-        this.sslEnabled = true;
+        this(true);
     }
 
     /**
@@ -58,8 +85,33 @@ public class ServerConnection {
      * @param sslEnabled habilitar SSL/TLS
      */
     public ServerConnection(boolean sslEnabled) {
+        this(sslEnabled, false);
+    }
+
+    /**
+     * Constructor con opcion SSL y protocolo binario.
+     *
+     * @param sslEnabled habilitar SSL/TLS
+     * @param binaryRequested solicitar tramas binarias mediante HELLO al conectar
+     */
+    public ServerConnection(boolean sslEnabled, boolean binaryRequested) {
+        this(sslEnabled, binaryRequested, false);
+    }
+
+    /**
+     * Constructor con opcion SSL, protocolo binario y compresion.
+     *
+     * @param sslEnabled habilitar SSL/TLS
+     * @param binaryRequested solicitar tramas binarias mediante HELLO al conectar
+     * @param compressionRequested solicitar mediante HELLO que el servidor comprima los lotes grandes
+     */
+    public ServerConnection(boolean sslEnabled, boolean binaryRequested, boolean compressionRequested) {
         this.connected = false;
         this.sslEnabled = sslEnabled;
+        this.binaryRequested = binaryRequested;
+        this.compressionRequested = compressionRequested;
+        this.received = new ArrayDeque<>();
+        this.protocolVersion = Constants.PROTOCOL_JSON;
     }
 
     /**
@@ -80,15 +132,74 @@ public class ServerConnection {
         } else {
             socket = new Socket(host, port);
         }
-        out = new PrintWriter(socket.getOutputStream(), true);
-        in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+        out = new BufferedOutputStream(socket.getOutputStream());
+        in = new BufferedInputStream(socket.getInputStream());
+        protocolVersion = Constants.PROTOCOL_JSON;
+        compressionAccepted = false;
+        received.clear();
         connected = true;
+
+        if (binaryRequested || compressionRequested) {
+            negotiateProtocol();
+        }
+    }
+
+    /**
+     * Solicita el protocolo binario y/o la compresion con un HELLO en JSON.
+     * Un servidor antiguo responde con error y la conexion sigue en JSON sin comprimir.
+     *
+     * @throws IOException si hay error de comunicacion
+     */
+    private void negotiateProtocol() throws IOException {
+        Message hello = new Message(Constants.ACTION_HELLO);
+        hello.addData("protocol", binaryRequested ? Constants.PROTOCOL_BINARY : Constants.PROTOCOL_JSON);
+        if (compressionRequested) {
+            hello.addData("compression", Compression.DEFLATE);
+        }
+        send(hello);
+
+        Message response = receive();
+        if (response == null) {
+            throw new IOException("Conexion cerrada durante la negociacion del protocolo");
+        }
+        if (Constants.NOTIFY_SERVER_BUSY.equals(response.getAction())) {
+            disconnect();
+            throw new IOException(response.getDataString("message"));
+        }
+        if (response.isSuccess()) {
+            protocolVersion = response.getDataInt("protocol", Constants.PROTOCOL_JSON);
+            compressionAccepted = Compression.DEFLATE.equals(response.getDataString("compression"));
+        }
+        System.out.println("[CONNECTION] Protocolo " +
+            (protocolVersion == Constants.PROTOCOL_BINARY ? "binario" : "JSON") +
+            (compressionAccepted ? " con compresion" : ""));
     }
 
     /**
      * Crea un socket SSL para conexion segura.
      */
     private SSLSocket createSSLSocket(String host, int port) throws Exception {
+        SSLSocketFactory factory = getSSLSocketFactory();
+        SSLSocket sslSocket = (SSLSocket) factory.createSocket(host, port);
+        // Sin Nagle: los registros de la negociacion (CCS y Finished) salen sin esperar al ACK retardado
+        sslSocket.setTcpNoDelay(true);
+        sslSocket.setEnabledProtocols(getEnabledProtocols(sslSocket.getSupportedProtocols()));
+        SSLParameters sslParameters = sslSocket.getSSLParameters();
+        sslParameters.setEndpointIdentificationAlgorithm("HTTPS");
+        sslSocket.setSSLParameters(sslParameters);
+        sslSocket.startHandshake();
+
+        return sslSocket;
+    }
+
+    /**
+     * Obtiene la factoria SSL compartida, creandola la primera vez a partir del certificado de la CA.
+     */
+    private static synchronized SSLSocketFactory getSSLSocketFactory() throws Exception {
+        if (sslSocketFactory != null) {
+            return sslSocketFactory;
+        }
+
         KeyStore trustStore = KeyStore.getInstance(KeyStore.getDefaultType());
         trustStore.load(null, null);
 
@@ -104,15 +215,8 @@ public class ServerConnection {
         SSLContext sslContext = SSLContext.getInstance("TLS");
         sslContext.init(null, tmf.getTrustManagers(), null);
 
-        SSLSocketFactory factory = sslContext.getSocketFactory();
-        SSLSocket sslSocket = (SSLSocket) factory.createSocket(host, port);
-        sslSocket.setEnabledProtocols(getEnabledProtocols(sslSocket.getSupportedProtocols()));
-        SSLParameters sslParameters = sslSocket.getSSLParameters();
-        sslParameters.setEndpointIdentificationAlgorithm("HTTPS");
-        sslSocket.setSSLParameters(sslParameters);
-        sslSocket.startHandshake();
-
-        return sslSocket;
+        sslSocketFactory = sslContext.getSocketFactory();
+        return sslSocketFactory;
     }
 
     private String[] getEnabledProtocols(String[] supportedProtocols) {
@@ -136,11 +240,16 @@ public class ServerConnection {
      * @param message mensaje a enviar
      * @throws IOException si hay error de comunicaci??n
      */
-    public void send(Message message) throws IOException {
+    public synchronized void send(Message message) throws IOException {
         if (!connected) {
             throw new IOException("No conectado al servidor");
         }
-        out.println(message.toJson());
+        if (protocolVersion == Constants.PROTOCOL_BINARY) {
+            BinaryCodec.writeFrame(out, message);
+        } else {
+            out.write((message.toJson() + "\n").getBytes(StandardCharsets.UTF_8));
+        }
+        out.flush();
     }
 
     /**
@@ -150,23 +259,42 @@ public class ServerConnection {
      * @throws IOException si hay error de comunicaci??n
      */
     public Message receive() throws IOException {
+        while (true) {
+            Message message = readMessage();
+            if (message == null || !Constants.ACTION_PING.equals(message.getAction())) {
+                return message;
+            }
+            // Latido del servidor: se responde aqui para que nunca llegue a la aplicacion
+            send(new Message(Constants.ACTION_PONG));
+        }
+    }
+
+    /**
+     * Lee el siguiente mensaje segun el protocolo negociado. Si llega un
+     * contenedor comprimido, entrega sus mensajes uno a uno en orden.
+     *
+     * @return mensaje recibido o null si se cerro la conexion
+     * @throws IOException si hay error de comunicacion
+     */
+    private Message readMessage() throws IOException {
         if (!connected) {
             throw new IOException("No conectado al servidor");
         }
-        String line = in.readLine();
-        if (line == null) {
-            return null;
+        while (received.isEmpty()) {
+            if (!Compression.readInto(in, protocolVersion, received)) {
+                return null;
+            }
         }
-        return Message.fromJson(line);
+        return received.poll();
     }
 
     /**
-     * Obtiene el reader para lectura as??ncrona.
+     * Obtiene la version del protocolo negociada.
      *
-     * @return BufferedReader de entrada
+     * @return PROTOCOL_JSON o PROTOCOL_BINARY
      */
-    public BufferedReader getReader() {
-        return in;
+    public int getProtocolVersion() {
+        return protocolVersion;
     }
 
     /**
@@ -192,8 +320,12 @@ public class ServerConnection {
             // Ignorar
         }
 
-        if (out != null) {
-            out.close();
+        try {
+            if (out != null) {
+                out.close();
+            }
+        } catch (IOException e) {
+            // Ignorar
         }
 
         try {
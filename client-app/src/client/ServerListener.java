@@ -3,27 +3,41 @@ package client;
 import common.Constants;
 import common.Message;
 
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Consumer;
 
 /**
  * Hilo que escucha mensajes del servidor de forma asíncrona.
  * Distingue entre respuestas y notificaciones push.
+ * Las respuestas que llevan id se entregan a la peticion que las espera
+ * (ver {@link #sendRequest(Message)}), de modo que puede haber muchas
+ * peticiones en vuelo por la misma conexion.
  *
  * @author NetAuction Team
  * @version 1.0
  */
 public class ServerListener implements Runnable {
 
-    /** Reader para leer del servidor */
-    private final BufferedReader reader;
+    /** Conexion de la que se leen los mensajes */
+    private final ServerConnection connection;
 
-    /** Cola para respuestas (esperadas por el cliente) */
+    /** Cola para respuestas sin id (esperadas por el cliente) */
     private final BlockingQueue<Message> responseQueue;
 
+    /** Peticiones en vuelo indexadas por su id */
+    private final ConcurrentHashMap<Long, CompletableFuture<Message>> pendingRequests;
+
+    /** Generador de ids de peticion */
+    private final AtomicLong nextRequestId;
+
     /** Callback para notificaciones push */
     private Consumer<Message> notificationCallback;
 
@@ -33,11 +47,13 @@ public class ServerListener implements Runnable {
     /**
      * Constructor del listener.
      *
-     * @param reader BufferedReader del socket
+     * @param connection conexion con el servidor (JSON o binaria)
      */
-    public ServerListener(BufferedReader reader) {
-        this.reader = reader;
+    public ServerListener(ServerConnection connection) {
+        this.connection = connection;
         this.responseQueue = new LinkedBlockingQueue<>();
+        this.pendingRequests = new ConcurrentHashMap<>();
+        this.nextRequestId = new AtomicLong();
         this.running = true;
     }
 
@@ -50,6 +66,59 @@ public class ServerListener implements Runnable {
         this.notificationCallback = callback;
     }
 
+    /**
+     * Envia una peticion con un id nuevo sin esperar la respuesta.
+     * Se pueden encadenar tantas peticiones como se quiera antes de recibir
+     * las respuestas, que el servidor puede devolver en otro orden.
+     *
+     * @param request mensaje a enviar (se le asigna el id)
+     * @return futuro que se completa con la respuesta o con error si se pierde la conexion
+     */
+    public CompletableFuture<Message> sendRequest(Message request) {
+        long id = nextRequestId.incrementAndGet();
+        request.setId(id);
+        CompletableFuture<Message> future = new CompletableFuture<>();
+        pendingRequests.put(id, future);
+        if (!running) {
+            failPending(new IOException("Conexión cerrada"));
+            return future;
+        }
+        try {
+            connection.send(request);
+        } catch (IOException e) {
+            pendingRequests.remove(id);
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    /**
+     * Envia una peticion y espera su respuesta.
+     * Una respuesta que llegue despues del timeout se descarta en lugar de
+     * confundirse con la de la siguiente peticion.
+     *
+     * @param request mensaje a enviar
+     * @param timeoutMs tiempo máximo de espera en milisegundos
+     * @return respuesta o null si expira el timeout
+     * @throws IOException si falla el envio o se pierde la conexion
+     */
+    public Message sendAndWait(Message request, long timeoutMs) throws IOException {
+        CompletableFuture<Message> future = sendRequest(request);
+        try {
+            return future.get(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            pendingRequests.remove(request.getId());
+            return null;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof IOException ? (IOException) cause : new IOException(cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            pendingRequests.remove(request.getId());
+            return null;
+        }
+    }
+
     /**
      * Obtiene la siguiente respuesta de la cola (bloqueante).
      *
@@ -108,13 +177,21 @@ public class ServerListener implements Runnable {
     @Override
     public void run() {
         try {
-            String line;
-            while (running && (line = reader.readLine()) != null) {
+            while (running) {
+                Message message;
+                try {
+                    message = connection.receive();
+                } catch (RuntimeException e) {
+                    System.err.println("[LISTENER] Error parseando mensaje: " + e.getMessage());
+                    continue;
+                }
+                if (message == null) {
+                    break;
+                }
                 try {
-                    Message message = Message.fromJson(line);
                     processMessage(message);
                 } catch (Exception e) {
-                    System.err.println("[LISTENER] Error parseando mensaje: " + e.getMessage());
+                    System.err.println("[LISTENER] Error procesando mensaje: " + e.getMessage());
                 }
             }
         } catch (IOException e) {
@@ -123,6 +200,21 @@ public class ServerListener implements Runnable {
             }
         } finally {
             running = false;
+            failPending(new IOException("Conexión cerrada"));
+        }
+    }
+
+    /**
+     * Completa con error todas las peticiones en vuelo.
+     *
+     * @param cause motivo del fallo
+     */
+    private void failPending(IOException cause) {
+        for (Long id : pendingRequests.keySet()) {
+            CompletableFuture<Message> future = pendingRequests.remove(id);
+            if (future != null) {
+                future.completeExceptionally(cause);
+            }
         }
     }
 
@@ -135,6 +227,14 @@ public class ServerListener implements Runnable {
         if (message.isNotification()) {
             // Es una notificación push
             handleNotification(message);
+        } else if (message.getId() != null) {
+            // Respuesta a una petición con id
+            CompletableFuture<Message> future = pendingRequests.remove(message.getId());
+            if (future != null) {
+                future.complete(message);
+            } else {
+                System.err.println("[LISTENER] Respuesta descartada (id " + message.getId() + " sin petición pendiente)");
+            }
         } else {
             // Es una respuesta a una acción
             responseQueue.offer(message);
@@ -184,6 +284,12 @@ public class ServerListener implements Runnable {
                 }
                 break;
 
+            case Constants.NOTIFY_SERVER_BUSY:
+                long retryAfter = notification.getDataLong("retryAfterMs", 0);
+                System.out.println("║  Servidor ocupado: conexion rechazada");
+                System.out.println("║  Reintente en " + retryAfter + " ms");
+                break;
+
             default:
                 System.out.println("║  Tipo: " + action);
         }
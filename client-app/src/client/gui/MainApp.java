@@ -178,7 +178,7 @@ public class MainApp extends Application {
         connection = new ServerConnection(sslEnabled);
         connection.connect(host, port);
 
-        serverListener = new ServerListener(connection.getReader());
+        serverListener = new ServerListener(connection);
         serverListener.setNotificationCallback(this::handleNotification);
         listenerExecutor = Executors.newSingleThreadExecutor();
         listenerExecutor.submit(serverListener);
@@ -786,11 +786,7 @@ public class MainApp extends Application {
      */
     private Message sendRequest(Message request) throws IOException {
         ensureConnected();
-        if (serverListener != null) {
-            serverListener.clearResponses();
-        }
-        connection.send(request);
-        Message response = serverListener != null ? serverListener.getNextResponse(10000) : null;
+        Message response = serverListener.sendAndWait(request, 10000);
         if (response == null) {
             throw new IOException("Timeout esperando respuesta del servidor");
         }
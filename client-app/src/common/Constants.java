@@ -60,6 +60,57 @@ public final class Constants {
     /** Accion de bloqueo de usuario */
     public static final String ACTION_BLOCK_USER = "BLOCK_USER";
 
+    /** Accion de negociacion de la version del protocolo (primer mensaje de la conexion) */
+    public static final String ACTION_HELLO = "HELLO";
+
+    /** Accion de consulta de estadisticas de conexiones (solo administrador) */
+    public static final String ACTION_ADMIN_STATS = "ADMIN_STATS";
+
+    /** Latido: lo envia el servidor a una conexion inactiva (o el cliente, que recibe PING_RESPONSE) */
+    public static final String ACTION_PING = "PING";
+
+    /** Respuesta del cliente a un PING del servidor (no tiene respuesta) */
+    public static final String ACTION_PONG = "PONG";
+
+    /** Subastas creadas por el usuario autenticado (paginado) */
+    public static final String ACTION_MY_AUCTIONS = "MY_AUCTIONS";
+
+    /** Subastas en las que ha pujado el usuario autenticado (paginado) */
+    public static final String ACTION_MY_BIDS = "MY_BIDS";
+
+    /** Subastas ganadas por el usuario autenticado (paginado) */
+    public static final String ACTION_MY_WINS = "MY_WINS";
+
+    // ==================== VERSIONES DEL PROTOCOLO ====================
+
+    /** Protocolo de lineas JSON (por defecto, compatible con clientes antiguos) */
+    public static final int PROTOCOL_JSON = 1;
+
+    /** Protocolo de tramas con longitud y codificacion binaria compacta */
+    public static final int PROTOCOL_BINARY = 2;
+
+    // ==================== ORDEN DE LOS LISTADOS ====================
+
+    /** LIST_AUCTIONS ordenado por fin, la que antes termina primero (por defecto) */
+    public static final String SORT_END_TIME = "endTime";
+
+    /** LIST_AUCTIONS ordenado por precio actual, la mas cara primero */
+    public static final String SORT_PRICE = "price";
+
+    /** LIST_AUCTIONS ordenado por numero de pujas, la que mas tiene primero */
+    public static final String SORT_BID_COUNT = "bidCount";
+
+    // ==================== DURABILIDAD DE LAS CONFIRMACIONES ====================
+
+    /** Se confirma en cuanto la operacion se aplica en memoria */
+    public static final String DURABILITY_MEMORY = "memory";
+
+    /** Se confirma cuando la escritura de la operacion esta en la cola de escritura diferida */
+    public static final String DURABILITY_QUEUED = "queued";
+
+    /** Se confirma cuando la transaccion que guarda la operacion se ha confirmado en disco */
+    public static final String DURABILITY_DURABLE = "durable";
+
     // ==================== RESPUESTAS DEL SERVIDOR ====================
 
     /** Sufijo anadido a las acciones para formar el nombre de la respuesta */
@@ -76,6 +127,9 @@ public final class Constants {
     /** Notificacion de subasta finalizada */
     public static final String NOTIFY_AUCTION_CLOSED = "AUCTION_CLOSED";
 
+    /** Aviso de servidor ocupado: la conexion se rechaza y se cierra (lleva retryAfterMs) */
+    public static final String NOTIFY_SERVER_BUSY = "SERVER_BUSY";
+
     // ==================== ESTADOS ====================
 
     /** Estado de respuesta exitosa */
@@ -7,6 +7,7 @@ if not "%~1"=="" set "CMD=%~1"
 
 if /I "%CMD%"=="setup" goto :setup
 if /I "%CMD%"=="compile" goto :compile
+if /I "%CMD%"=="test" goto :test
 if /I "%CMD%"=="initdb" goto :initdb
 if /I "%CMD%"=="certs" goto :certs
 if /I "%CMD%"=="server" goto :server
@@ -41,11 +42,30 @@ javac -cp "lib/*" -d bin -sourcepath src ^
   src/server/persistence/*.java ^
   src/server/manager/*.java ^
   src/server/service/NotificationService.java ^
+  src/server/nio/*.java ^
+  src/server/http/*.java ^
+  src/server/request/*.java ^
   src/server/*.java
 if errorlevel 1 exit /b 1
 echo [OK] Servidor compilado.
 exit /b 0
 
+:test
+call :setup || exit /b 1
+if exist "bin-test" rmdir /s /q "bin-test"
+mkdir bin-test
+javac -encoding UTF-8 -cp "lib/*" -d bin-test -sourcepath "src;test" ^
+  test/server/*.java ^
+  test/server/manager/*.java ^
+  test/server/persistence/*.java ^
+  test/server/request/*.java
+if errorlevel 1 exit /b 1
+for %%T in (server.request.RequestDecoderTest server.manager.ExpiryWheelTest server.manager.AuctionIndexTest server.persistence.WriteBehindQueueTest) do (
+  java -cp "lib/*;bin-test" %%T || exit /b 1
+)
+echo [OK] Pruebas superadas.
+exit /b 0
+
 :initdb
 if not exist "bin\server\DatabaseInit.class" call :compile || exit /b 1
 java -cp "lib/*;bin" server.DatabaseInit
@@ -215,13 +235,17 @@ if not "%~2"=="" (
 )
 if not exist "certs\servidor.p12" call :certs || exit /b 1
 if not exist "certs\truststore.p12" call :certs || exit /b 1
-java -cp "lib/*;bin" server.NetAuctionServer %PORT% %SSL_FLAG%
+java -cp "lib/*;bin" server.NetAuctionServer %PORT% %SSL_FLAG% %3 %4 %5
 exit /b %ERRORLEVEL%
 
 :help
 echo Uso:
 echo   .\run.bat compile
+echo   .\run.bat test
 echo   .\run.bat initdb
 echo   .\run.bat certs [--force^|--reset-ca]
-echo   .\run.bat server [puerto]
+echo   .\run.bat server [puerto] [--nio^|--virtual] [--overflow=coalesce^|drop-oldest^|disconnect]
+echo                 [--max-connections=N] [--max-queue-age=MS]
+echo                 [--heartbeat=S] [--heartbeat-missed=N] [--compress-threshold=BYTES]
+echo                 [--http-port=PUERTO]
 exit /b 0
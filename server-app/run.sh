@@ -38,10 +38,31 @@ compile() {
     src/server/persistence/*.java \
     src/server/manager/*.java \
     src/server/service/NotificationService.java \
+    src/server/nio/*.java \
+    src/server/http/*.java \
+    src/server/request/*.java \
     src/server/*.java
   echo "[OK] Servidor compilado."
 }
 
+# Pruebas ejecutables (clases con main en test/)
+TESTS="server.request.RequestDecoderTest server.manager.ExpiryWheelTest server.manager.AuctionIndexTest server.persistence.WriteBehindQueueTest"
+
+run_tests() {
+  setup
+  rm -rf bin-test
+  mkdir -p bin-test
+  javac -encoding UTF-8 -cp "lib/*" -d bin-test -sourcepath src:test \
+    test/server/*.java \
+    test/server/manager/*.java \
+    test/server/persistence/*.java \
+    test/server/request/*.java
+  for test_class in $TESTS; do
+    java -cp "lib/*:bin-test" "$test_class"
+  done
+  echo "[OK] Pruebas superadas."
+}
+
 initdb() {
   if [ ! -f "bin/server/DatabaseInit.class" ]; then
     compile
@@ -165,20 +186,25 @@ server() {
   if [ ! -f "certs/servidor.p12" ] || [ ! -f "certs/truststore.p12" ]; then
     certs "$@"
   fi
-  java -cp "lib/*:bin" server.NetAuctionServer "$PORT" --ssl
+  java -cp "lib/*:bin" server.NetAuctionServer "$PORT" --ssl "${@:3}"
 }
 
 show_help() {
   echo "Uso:"
   echo "  ./run.sh compile"
+  echo "  ./run.sh test"
   echo "  ./run.sh initdb"
   echo "  ./run.sh certs [--force|--reset-ca]"
-  echo "  ./run.sh server [puerto]"
+  echo "  ./run.sh server [puerto] [--nio|--virtual] [--overflow=coalesce|drop-oldest|disconnect]"
+  echo "                [--max-connections=N] [--max-queue-age=MS]"
+  echo "                [--heartbeat=S] [--heartbeat-missed=N] [--compress-threshold=BYTES]"
+  echo "                [--http-port=PUERTO]"
 }
 
 case "$CMD" in
   setup)   setup ;;
   compile) compile ;;
+  test)    run_tests ;;
   initdb)  initdb ;;
   certs)   certs "$@" ;;
   server)  server "$@" ;;
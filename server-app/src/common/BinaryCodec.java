@@ -0,0 +1,588 @@
+package common;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.UUID;
+
+/**
+ * Codificacion binaria compacta de {@link Message} y utilidades de entramado.
+ * Se usa cuando cliente y servidor negocian {@link Constants#PROTOCOL_BINARY}
+ * con un HELLO inicial; en caso contrario se mantiene el modo de lineas JSON.
+ *
+ * <p>Cada trama es un entero de 4 bytes (big-endian) con la longitud seguida de:</p>
+ * <pre>
+ * accion : u8 codigo (bit 0x80 = sufijo _RESPONSE; 0 = texto a continuacion)
+ * token  : u8 tipo (0 = null, 1 = texto, 2 = UUID en 16 bytes; bit 0x80 = id a continuacion)
+ * id     : varint identificador de peticion (solo si el tipo lleva el bit 0x80)
+ * data   : objeto = varint numero de campos + (clave, valor)*
+ * clave  : u8 codigo de diccionario (0 = texto a continuacion)
+ * valor  : u8 etiqueta + contenido (enteros en varint zigzag, double en 8 bytes)
+ * </pre>
+ *
+ * <p>Las tablas de acciones y claves son compartidas por cliente y servidor:
+ * solo se pueden anadir entradas al final.</p>
+ *
+ * @author NetAuction Team
+ * @version 1.0
+ */
+public final class BinaryCodec {
+
+    /** Longitud maxima de una trama en bytes */
+    public static final int MAX_FRAME_LENGTH = 1024 * 1024;
+
+    /** Acciones con codigo de un byte (indice = codigo, 0 reservado) */
+    private static final String[] ACTIONS = {
+        null,
+        Constants.ACTION_REGISTER,
+        Constants.ACTION_LOGIN,
+        Constants.ACTION_LOGOUT,
+        Constants.ACTION_CREATE_AUCTION,
+        Constants.ACTION_LIST_AUCTIONS,
+        Constants.ACTION_AUCTION_DETAIL,
+        Constants.ACTION_BID,
+        Constants.ACTION_CANCEL_AUCTION,
+        Constants.ACTION_BLOCK_USER,
+        Constants.NOTIFY_NEW_BID,
+        Constants.NOTIFY_OUTBID,
+        Constants.NOTIFY_AUCTION_CLOSED,
+        Constants.ACTION_HELLO,
+        "UNKNOWN",
+        Constants.ACTION_ADMIN_STATS,
+        Constants.ACTION_PING,
+        Constants.ACTION_PONG,
+        Constants.ACTION_MY_AUCTIONS,
+        Constants.ACTION_MY_BIDS,
+        Constants.ACTION_MY_WINS
+    };
+
+    /** Claves de datos con codigo de un byte (indice = codigo, 0 reservado) */
+    private static final String[] KEYS = {
+        null,
+        "status", "message", "token", "username", "user", "password", "email",
+        "title", "description", "startPrice", "durationMinutes", "auctionId", "endTime",
+        "auctions", "count", "id", "currentPrice", "remainingTime", "remainingSeconds",
+        "bidCount", "seller", "currentWinner", "startTime", "auctionStatus", "recentBids",
+        "bidder", "amount", "timestamp", "newPrice", "blocked", "auctionTitle",
+        "newAmount", "newBidder", "winner", "finalPrice", "isDesierta", "protocol",
+        "thresholds", "degradeBytes", "degradeLatencyMs", "evictBytes", "evictStallMs", "clients",
+        "address", "backlogBytes", "queuedMessages", "lastWriteMsAgo", "avgLatencyMs", "maxLatencyMs",
+        "dropped", "coalesced", "degraded", "evicted",
+        "tls", "handshakes", "full", "resumed", "resumptionRatio", "failed", "rejected",
+        "writes", "flushes", "flushedBytes", "flushesPerSecond", "bytesPerFlush", "messagesPerFlush",
+        "admission", "activeConnections", "maxConnections", "maxQueueAgeMs", "occupancy", "admitted",
+        "rejectedFull", "rejectedStale", "retryAfterMs",
+        "rateLimit", "auth", "query", "write", "tracked",
+        "heartbeat", "intervalSeconds", "missedLimit", "connections", "pings", "reaped",
+        "compression", "threshold", "batches", "rawBytes", "compressedBytes", "savedBytes", "ratio", "cpuMs",
+        "http", "port", "requests", "notModified", "renders", "gzipped",
+        "partitions", "queued", "completed",
+        "sort", "limit", "cursor", "next", "total",
+        "persistence", "written", "collapsed", "retries",
+        "durability", "bids", "closes", "acks", "memory", "durable"
+    };
+
+    /** Bit que marca una accion de respuesta */
+    private static final int RESPONSE_FLAG = 0x80;
+
+    private static final int TOKEN_NULL = 0;
+    private static final int TOKEN_TEXT = 1;
+    private static final int TOKEN_UUID = 2;
+
+    /** Bit del tipo de token que indica que sigue un identificador de peticion */
+    private static final int ID_FLAG = 0x80;
+
+    private static final int TAG_NULL = 0;
+    private static final int TAG_STRING = 1;
+    private static final int TAG_LONG = 2;
+    private static final int TAG_DOUBLE = 3;
+    private static final int TAG_TRUE = 4;
+    private static final int TAG_FALSE = 5;
+    private static final int TAG_OBJECT = 6;
+    private static final int TAG_ARRAY = 7;
+
+    /** Mayor entero representable sin perdida en un double */
+    private static final double MAX_EXACT_DOUBLE = 9007199254740992.0;
+
+    private static final Map<String, Integer> ACTION_CODES = index(ACTIONS);
+    private static final Map<String, Integer> KEY_CODES = index(KEYS);
+
+    /**
+     * Constructor privado para evitar instanciacion.
+     */
+    private BinaryCodec() {
+        throw new UnsupportedOperationException("BinaryCodec class cannot be instantiated");
+    }
+
+    /**
+     * Codigo de una accion en la tabla compartida. Permite al receptor
+     * despachar por indice en lugar de comparar el nombre de la accion.
+     *
+     * @param action nombre de la accion (sin sufijo de respuesta)
+     * @return codigo de la accion o 0 si no tiene codigo
+     */
+    public static int actionCode(String action) {
+        Integer code = action != null ? ACTION_CODES.get(action) : null;
+        return code != null ? code : 0;
+    }
+
+    /**
+     * Nombre canonico de una accion a partir de su codigo.
+     *
+     * @param code codigo devuelto por {@link #actionCode(String)}
+     * @return nombre de la accion o null si el codigo no existe
+     */
+    public static String actionName(int code) {
+        return code > 0 && code < ACTIONS.length ? ACTIONS[code] : null;
+    }
+
+    /**
+     * @return numero de codigos de accion, incluido el 0 reservado
+     */
+    public static int actionCodeCount() {
+        return ACTIONS.length;
+    }
+
+    // ==================== CODIFICACION ====================
+
+    /**
+     * Codifica un mensaje en formato binario (sin cabecera de longitud).
+     *
+     * @param message mensaje a codificar
+     * @return bytes del mensaje
+     */
+    public static byte[] encode(Message message) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(64);
+        encodeInto(out, message);
+        return out.toByteArray();
+    }
+
+    /**
+     * Codifica un mensaje en formato binario (sin cabecera de longitud) al
+     * final de un buffer, de modo que quien lo llama puede reutilizarlo.
+     *
+     * @param out buffer de destino
+     * @param message mensaje a codificar
+     */
+    public static void encodeInto(ByteArrayOutputStream out, Message message) {
+        writeAction(out, message.getAction());
+        writeToken(out, message.getToken(), message.getId());
+        writeObject(out, message.getData());
+    }
+
+    /**
+     * Codifica un mensaje como trama binaria completa (longitud + contenido).
+     *
+     * @param message mensaje a codificar
+     * @return bytes de la trama
+     */
+    public static byte[] encodeFrame(Message message) {
+        byte[] payload = encode(message);
+        byte[] frame = new byte[payload.length + 4];
+        frame[0] = (byte) (payload.length >>> 24);
+        frame[1] = (byte) (payload.length >>> 16);
+        frame[2] = (byte) (payload.length >>> 8);
+        frame[3] = (byte) payload.length;
+        System.arraycopy(payload, 0, frame, 4, payload.length);
+        return frame;
+    }
+
+    /**
+     * Escribe un mensaje como trama binaria (longitud + contenido). No hace flush.
+     *
+     * @param out stream de salida
+     * @param message mensaje a escribir
+     * @throws IOException si falla la escritura
+     */
+    public static void writeFrame(OutputStream out, Message message) throws IOException {
+        out.write(encodeFrame(message));
+    }
+
+    private static void writeAction(ByteArrayOutputStream out, String action) {
+        if (action == null) {
+            out.write(0);
+            writeString(out, "");
+            return;
+        }
+        Integer code = ACTION_CODES.get(action);
+        if (code != null) {
+            out.write(code);
+            return;
+        }
+        if (action.endsWith(Constants.RESPONSE_SUFFIX)) {
+            code = ACTION_CODES.get(action.substring(0, action.length() - Constants.RESPONSE_SUFFIX.length()));
+            if (code != null) {
+                out.write(code | RESPONSE_FLAG);
+                return;
+            }
+        }
+        out.write(0);
+        writeString(out, action);
+    }
+
+    private static void writeToken(ByteArrayOutputStream out, String token, Long id) {
+        int idFlag = id != null ? ID_FLAG : 0;
+        if (token == null) {
+            out.write(TOKEN_NULL | idFlag);
+        } else if (isCanonicalUuid(token)) {
+            UUID uuid = UUID.fromString(token);
+            out.write(TOKEN_UUID | idFlag);
+            writeFixedLong(out, uuid.getMostSignificantBits());
+            writeFixedLong(out, uuid.getLeastSignificantBits());
+        } else {
+            out.write(TOKEN_TEXT | idFlag);
+            writeString(out, token);
+        }
+        if (id != null) {
+            writeVarint(out, zigzag(id));
+        }
+    }
+
+    private static boolean isCanonicalUuid(String token) {
+        if (token.length() != 36) {
+            return false;
+        }
+        try {
+            return UUID.fromString(token).toString().equals(token);
+        } catch (IllegalArgumentException e) {
+            // No es un UUID canonico: se envia como texto
+            return false;
+        }
+    }
+
+    private static void writeObject(ByteArrayOutputStream out, JsonObject object) {
+        if (object == null) {
+            writeVarint(out, 0);
+            return;
+        }
+        writeVarint(out, object.size());
+        for (Entry<String, JsonElement> entry : object.entrySet()) {
+            Integer code = KEY_CODES.get(entry.getKey());
+            if (code != null) {
+                out.write(code);
+            } else {
+                out.write(0);
+                writeString(out, entry.getKey());
+            }
+            writeValue(out, entry.getValue());
+        }
+    }
+
+    private static void writeValue(ByteArrayOutputStream out, JsonElement value) {
+        if (value == null || value.isJsonNull()) {
+            out.write(TAG_NULL);
+        } else if (value.isJsonObject()) {
+            out.write(TAG_OBJECT);
+            writeObject(out, value.getAsJsonObject());
+        } else if (value.isJsonArray()) {
+            JsonArray array = value.getAsJsonArray();
+            out.write(TAG_ARRAY);
+            writeVarint(out, array.size());
+            for (JsonElement element : array) {
+                writeValue(out, element);
+            }
+        } else {
+            JsonPrimitive primitive = value.getAsJsonPrimitive();
+            if (primitive.isBoolean()) {
+                out.write(primitive.getAsBoolean() ? TAG_TRUE : TAG_FALSE);
+            } else if (primitive.isNumber()) {
+                writeNumber(out, primitive.getAsNumber());
+            } else {
+                out.write(TAG_STRING);
+                writeString(out, primitive.getAsString());
+            }
+        }
+    }
+
+    private static void writeNumber(ByteArrayOutputStream out, Number number) {
+        if (number instanceof Long || number instanceof Integer
+                || number instanceof Short || number instanceof Byte) {
+            out.write(TAG_LONG);
+            writeVarint(out, zigzag(number.longValue()));
+            return;
+        }
+        double d = number.doubleValue();
+        if (d == Math.rint(d) && Math.abs(d) < MAX_EXACT_DOUBLE
+                && !(d == 0.0 && Double.doubleToRawLongBits(d) != 0L)) {
+            out.write(TAG_LONG);
+            writeVarint(out, zigzag((long) d));
+            return;
+        }
+        out.write(TAG_DOUBLE);
+        writeFixedLong(out, Double.doubleToLongBits(d));
+    }
+
+    private static void writeString(ByteArrayOutputStream out, String value) {
+        if (isAscii(value)) {
+            // Caso habitual: un byte por caracter, sin copiar el texto a un array intermedio
+            writeVarint(out, value.length());
+            for (int i = 0; i < value.length(); i++) {
+                out.write(value.charAt(i));
+            }
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarint(out, bytes.length);
+        out.write(bytes, 0, bytes.length);
+    }
+
+    private static boolean isAscii(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            if (value.charAt(i) >= 0x80) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static void writeFixedLong(ByteArrayOutputStream out, long value) {
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            out.write((int) (value >>> shift));
+        }
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    // ==================== DECODIFICACION ====================
+
+    /**
+     * Decodifica un mensaje binario (sin cabecera de longitud).
+     *
+     * @param payload bytes del mensaje
+     * @return mensaje decodificado
+     * @throws IllegalArgumentException si el contenido no es valido
+     */
+    public static Message decode(byte[] payload) {
+        Reader reader = new Reader(payload);
+        try {
+            String action = reader.readAction();
+            int tokenType = reader.bytes[reader.position] & 0xFF;
+            String token = reader.readToken();
+            Long id = (tokenType & ID_FLAG) != 0 ? reader.readZigzag() : null;
+            JsonObject data = reader.readObject();
+            if (reader.position != payload.length) {
+                throw new IllegalArgumentException("Bytes sobrantes en la trama");
+            }
+            Message message = new Message(action, token, data);
+            message.setId(id);
+            return message;
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Trama binaria truncada", e);
+        }
+    }
+
+    /**
+     * Lee una trama binaria completa del stream.
+     *
+     * @param in stream de entrada
+     * @return mensaje decodificado o null si el stream termino limpiamente
+     * @throws IOException si falla la lectura o la longitud no es valida
+     */
+    public static Message readFrame(InputStream in) throws IOException {
+        int b0 = in.read();
+        if (b0 < 0) {
+            return null;
+        }
+        int length = (b0 << 24) | (readByte(in) << 16) | (readByte(in) << 8) | readByte(in);
+        if (length < 0 || length > MAX_FRAME_LENGTH) {
+            throw new IOException("Longitud de trama no valida: " + length);
+        }
+        byte[] payload = new byte[length];
+        int read = 0;
+        while (read < length) {
+            int n = in.read(payload, read, length - read);
+            if (n < 0) {
+                throw new EOFException("Trama incompleta");
+            }
+            read += n;
+        }
+        return decode(payload);
+    }
+
+    /**
+     * Lee una linea de texto UTF-8 directamente del stream de bytes.
+     * No usa un Reader con buffer propio, de modo que tras la negociacion
+     * se puede pasar a tramas binarias sobre el mismo stream.
+     *
+     * @param in stream de entrada (normalmente un BufferedInputStream)
+     * @return linea sin el salto final o null si el stream termino
+     * @throws IOException si falla la lectura o la linea es demasiado larga
+     */
+    public static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream(128);
+        int b;
+        while ((b = in.read()) >= 0) {
+            if (b == '\n') {
+                int size = line.size();
+                byte[] bytes = line.toByteArray();
+                if (size > 0 && bytes[size - 1] == '\r') {
+                    size--;
+                }
+                return new String(bytes, 0, size, StandardCharsets.UTF_8);
+            }
+            line.write(b);
+            if (line.size() > MAX_FRAME_LENGTH) {
+                throw new IOException("Linea demasiado larga");
+            }
+        }
+        return line.size() > 0 ? line.toString(StandardCharsets.UTF_8) : null;
+    }
+
+    private static int readByte(InputStream in) throws IOException {
+        int b = in.read();
+        if (b < 0) {
+            throw new EOFException("Trama incompleta");
+        }
+        return b;
+    }
+
+    /**
+     * Lector secuencial sobre el contenido de una trama.
+     */
+    private static final class Reader {
+        private final byte[] bytes;
+        private int position;
+
+        Reader(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        String readAction() {
+            int code = bytes[position++] & 0xFF;
+            if (code == 0) {
+                String action = readString();
+                return action.isEmpty() ? null : action;
+            }
+            String base = lookup(ACTIONS, code & ~RESPONSE_FLAG, "accion");
+            return (code & RESPONSE_FLAG) != 0 ? base + Constants.RESPONSE_SUFFIX : base;
+        }
+
+        String readToken() {
+            int type = bytes[position++] & 0xFF & ~ID_FLAG;
+            switch (type) {
+                case TOKEN_NULL:
+                    return null;
+                case TOKEN_TEXT:
+                    return readString();
+                case TOKEN_UUID:
+                    return new UUID(readFixedLong(), readFixedLong()).toString();
+                default:
+                    throw new IllegalArgumentException("Tipo de token desconocido: " + type);
+            }
+        }
+
+        JsonObject readObject() {
+            long size = readVarint();
+            JsonObject object = new JsonObject();
+            for (long i = 0; i < size; i++) {
+                int code = bytes[position++] & 0xFF;
+                String key = code == 0 ? readString() : lookup(KEYS, code, "clave");
+                object.add(key, readValue());
+            }
+            return object;
+        }
+
+        JsonElement readValue() {
+            int tag = bytes[position++] & 0xFF;
+            switch (tag) {
+                case TAG_NULL:
+                    return JsonNull.INSTANCE;
+                case TAG_STRING:
+                    return new JsonPrimitive(readString());
+                case TAG_LONG:
+                    return new JsonPrimitive(readZigzag());
+                case TAG_DOUBLE:
+                    return new JsonPrimitive(Double.longBitsToDouble(readFixedLong()));
+                case TAG_TRUE:
+                    return new JsonPrimitive(true);
+                case TAG_FALSE:
+                    return new JsonPrimitive(false);
+                case TAG_OBJECT:
+                    return readObject();
+                case TAG_ARRAY:
+                    long size = readVarint();
+                    JsonArray array = new JsonArray();
+                    for (long i = 0; i < size; i++) {
+                        array.add(readValue());
+                    }
+                    return array;
+                default:
+                    throw new IllegalArgumentException("Etiqueta de valor desconocida: " + tag);
+            }
+        }
+
+        String readString() {
+            int length = (int) readVarint();
+            if (length < 0 || length > bytes.length - position) {
+                throw new IllegalArgumentException("Longitud de texto no valida: " + length);
+            }
+            String value = new String(bytes, position, length, StandardCharsets.UTF_8);
+            position += length;
+            return value;
+        }
+
+        long readZigzag() {
+            long raw = readVarint();
+            return (raw >>> 1) ^ -(raw & 1);
+        }
+
+        long readVarint() {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = bytes[position++] & 0xFF;
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IllegalArgumentException("Varint demasiado largo");
+        }
+
+        long readFixedLong() {
+            long value = 0;
+            for (int i = 0; i < 8; i++) {
+                value = (value << 8) | (bytes[position++] & 0xFF);
+            }
+            return value;
+        }
+    }
+
+    // ==================== UTILIDADES ====================
+
+    private static String lookup(String[] table, int code, String kind) {
+        if (code <= 0 || code >= table.length) {
+            throw new IllegalArgumentException("Codigo de " + kind + " desconocido: " + code);
+        }
+        return table[code];
+    }
+
+    private static Map<String, Integer> index(String[] table) {
+        Map<String, Integer> codes = new HashMap<>();
+        for (int i = 1; i < table.length; i++) {
+            codes.put(table[i], i);
+        }
+        return codes;
+    }
+}
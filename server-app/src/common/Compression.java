@@ -0,0 +1,269 @@
+package common;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Deque;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compresion de lotes de mensajes (deflate con diccionario compartido).
+ * Se usa en el sentido servidor a cliente cuando el cliente la solicita en
+ * el HELLO: el servidor agrupa los mensajes ya codificados de un lote que
+ * supera el umbral y los envia como un unico contenedor comprimido.
+ *
+ * <p>Formato del contenedor segun el protocolo negociado:</p>
+ * <pre>
+ * binario : u32 longitud con el bit 0x80000000 activo + deflate(tramas completas)
+ * JSON    : '~' + base64(deflate(lineas completas, cada una con su '\n')) + '\n'
+ * </pre>
+ *
+ * <p>Cada contenedor se comprime de forma independiente (deflate crudo con
+ * el diccionario de {@link #DICTIONARY}), de modo que descartar o sustituir
+ * mensajes en la cola de salida no afecta a los siguientes. El diccionario
+ * es parte del protocolo: cliente y servidor deben usar el mismo.</p>
+ *
+ * @author NetAuction Team
+ * @version 1.0
+ */
+public final class Compression {
+
+    /** Nombre del algoritmo en la negociacion (campo compression del HELLO) */
+    public static final String DEFLATE = "deflate";
+
+    /** Bit de la cabecera de longitud que marca un contenedor comprimido */
+    public static final int COMPRESSED_FRAME_FLAG = 0x80000000;
+
+    /** Primer caracter de una linea que contiene un contenedor comprimido */
+    public static final char COMPRESSED_LINE_PREFIX = '~';
+
+    /** Tamano maximo del contenido descomprimido de un contenedor */
+    public static final int MAX_INFLATED_LENGTH = 16 * BinaryCodec.MAX_FRAME_LENGTH;
+
+    /** Nivel de compresion: el 6 de zlib comprime casi como el 9 con la mitad de CPU */
+    private static final int LEVEL = 6;
+
+    /**
+     * Diccionario compartido: fragmentos frecuentes de los mensajes de NetAuction.
+     * Deflate da codigos mas cortos a las coincidencias cercanas al final, asi
+     * que lo mas frecuente (campos de los listados y de las pujas) va al final.
+     */
+    private static final byte[] DICTIONARY = (
+        "AUCTION_CLOSED\",\"data\":{\"auctionId\":\"winner\":\"finalPrice\":\"isDesierta\":false"
+            + "CREATE_AUCTION_RESPONSE\"BID_RESPONSE\"ERROR\"Sesion no valida\"recentBids\":["
+            + "{\"action\":\"OUTBID\",\"data\":{\"newAmount\":\"newBidder\":\"auctionTitle\":\""
+            + "{\"action\":\"NEW_BID\",\"data\":{\"auctionId\":\"bidder\":\"amount\":\"timestamp\":"
+            + "{\"action\":\"AUCTION_DETAIL_RESPONSE\",\"data\":{\"status\":\"OK\",\"description\":\""
+            + "\"startPrice\":\"endTime\":\"startTime\":\"auctionStatus\":\"ACTIVE\""
+            + "{\"action\":\"LIST_AUCTIONS_RESPONSE\",\"data\":{\"status\":\"OK\",\"message\":\""
+            + "Se encontraron subastas activas\",\"auctions\":[{\"id\":\"title\":\""
+            + "\"},{\"id\":\"title\":\"\",\"currentPrice\":\"remainingTime\":\"0h 0m 0s\","
+            + "\"remainingSeconds\":\"bidCount\":0,\"seller\":\""
+    ).getBytes(StandardCharsets.UTF_8);
+
+    /** Compresor por hilo (crear uno por mensaje reservaria memoria nativa cada vez) */
+    private static final ThreadLocal<Deflater> DEFLATER = ThreadLocal.withInitial(() -> new Deflater(LEVEL, true));
+
+    /** Descompresor por hilo */
+    private static final ThreadLocal<Inflater> INFLATER = ThreadLocal.withInitial(() -> new Inflater(true));
+
+    /**
+     * Constructor privado para evitar instanciacion.
+     */
+    private Compression() {
+        throw new UnsupportedOperationException("Compression class cannot be instantiated");
+    }
+
+    // ==================== COMPRESION ====================
+
+    /**
+     * Construye el contenedor comprimido de un lote de mensajes ya codificados.
+     *
+     * @param encoded mensajes codificados (tramas con longitud o lineas con '\n')
+     * @param totalBytes suma de sus longitudes
+     * @param protocol protocolo con el que estan codificados
+     * @return contenedor listo para escribir en el socket
+     */
+    public static byte[] compress(List<byte[]> encoded, long totalBytes, int protocol) {
+        Deflater deflater = DEFLATER.get();
+        deflater.reset();
+        deflater.setDictionary(DICTIONARY);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream((int) Math.min(totalBytes / 2 + 64, Integer.MAX_VALUE));
+        byte[] chunk = new byte[8192];
+        for (byte[] bytes : encoded) {
+            deflater.setInput(bytes);
+            while (!deflater.needsInput()) {
+                out.write(chunk, 0, deflater.deflate(chunk));
+            }
+        }
+        deflater.finish();
+        while (!deflater.finished()) {
+            out.write(chunk, 0, deflater.deflate(chunk));
+        }
+        byte[] deflated = out.toByteArray();
+
+        if (protocol == Constants.PROTOCOL_BINARY) {
+            byte[] frame = new byte[4 + deflated.length];
+            int header = deflated.length | COMPRESSED_FRAME_FLAG;
+            frame[0] = (byte) (header >>> 24);
+            frame[1] = (byte) (header >>> 16);
+            frame[2] = (byte) (header >>> 8);
+            frame[3] = (byte) header;
+            System.arraycopy(deflated, 0, frame, 4, deflated.length);
+            return frame;
+        }
+        String line = COMPRESSED_LINE_PREFIX + Base64.getEncoder().encodeToString(deflated) + "\n";
+        return line.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    // ==================== DESCOMPRESION ====================
+
+    /**
+     * Descomprime el contenido de un contenedor.
+     *
+     * @param deflated bytes comprimidos
+     * @return mensajes codificados concatenados
+     * @throws IOException si el contenido no es valido o excede {@link #MAX_INFLATED_LENGTH}
+     */
+    public static byte[] inflate(byte[] deflated) throws IOException {
+        Inflater inflater = INFLATER.get();
+        inflater.reset();
+        inflater.setDictionary(DICTIONARY);
+        inflater.setInput(deflated);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(deflated.length * 4);
+        byte[] chunk = new byte[8192];
+        try {
+            while (!inflater.finished()) {
+                int n = inflater.inflate(chunk);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new EOFException("Contenedor comprimido incompleto");
+                }
+                out.write(chunk, 0, n);
+                if (out.size() > MAX_INFLATED_LENGTH) {
+                    throw new IOException("Contenedor comprimido demasiado grande");
+                }
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Contenedor comprimido no valido: " + e.getMessage(), e);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Indica si una linea JSON recibida es un contenedor comprimido.
+     *
+     * @param line linea sin el salto final
+     * @return true si empieza por {@link #COMPRESSED_LINE_PREFIX}
+     */
+    public static boolean isCompressedLine(String line) {
+        return !line.isEmpty() && line.charAt(0) == COMPRESSED_LINE_PREFIX;
+    }
+
+    /**
+     * Lee del stream el siguiente mensaje o contenedor y deja los mensajes
+     * que contiene, en orden, al final de la cola.
+     *
+     * @param in stream de entrada
+     * @param protocol protocolo negociado
+     * @param messages cola donde se anaden los mensajes leidos
+     * @return false si el stream termino limpiamente
+     * @throws IOException si falla la lectura o el contenido no es valido
+     */
+    public static boolean readInto(InputStream in, int protocol, Deque<Message> messages) throws IOException {
+        if (protocol == Constants.PROTOCOL_BINARY) {
+            int b0 = in.read();
+            if (b0 < 0) {
+                return false;
+            }
+            int header = (b0 << 24) | (readByte(in) << 16) | (readByte(in) << 8) | readByte(in);
+            boolean compressed = (header & COMPRESSED_FRAME_FLAG) != 0;
+            int length = header & ~COMPRESSED_FRAME_FLAG;
+            if (length > MAX_INFLATED_LENGTH || (!compressed && length > BinaryCodec.MAX_FRAME_LENGTH)) {
+                throw new IOException("Longitud de trama no valida: " + length);
+            }
+            byte[] payload = readFully(in, length);
+            if (!compressed) {
+                messages.add(BinaryCodec.decode(payload));
+                return true;
+            }
+            byte[] frames = inflate(payload);
+            int position = 0;
+            while (position < frames.length) {
+                if (frames.length - position < 4) {
+                    throw new IOException("Trama incompleta en el contenedor");
+                }
+                int frameLength = ((frames[position] & 0xFF) << 24) | ((frames[position + 1] & 0xFF) << 16)
+                    | ((frames[position + 2] & 0xFF) << 8) | (frames[position + 3] & 0xFF);
+                position += 4;
+                if (frameLength < 0 || frameLength > frames.length - position) {
+                    throw new IOException("Trama incompleta en el contenedor");
+                }
+                byte[] frame = new byte[frameLength];
+                System.arraycopy(frames, position, frame, 0, frameLength);
+                messages.add(BinaryCodec.decode(frame));
+                position += frameLength;
+            }
+            return true;
+        }
+
+        String line;
+        do {
+            line = BinaryCodec.readLine(in);
+        } while (line != null && line.isEmpty());
+        if (line == null) {
+            return false;
+        }
+        if (!isCompressedLine(line)) {
+            addIfPresent(messages, Message.fromJson(line));
+            return true;
+        }
+        byte[] deflated;
+        try {
+            deflated = Base64.getDecoder().decode(line.substring(1));
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Contenedor comprimido no valido: " + e.getMessage(), e);
+        }
+        String lines = new String(inflate(deflated), StandardCharsets.UTF_8);
+        for (String json : lines.split("\n")) {
+            if (!json.isEmpty()) {
+                addIfPresent(messages, Message.fromJson(json));
+            }
+        }
+        return true;
+    }
+
+    private static void addIfPresent(Deque<Message> messages, Message message) {
+        if (message != null) {
+            messages.add(message);
+        }
+    }
+
+    private static byte[] readFully(InputStream in, int length) throws IOException {
+        byte[] bytes = new byte[length];
+        int read = 0;
+        while (read < length) {
+            int n = in.read(bytes, read, length - read);
+            if (n < 0) {
+                throw new EOFException("Trama incompleta");
+            }
+            read += n;
+        }
+        return bytes;
+    }
+
+    private static int readByte(InputStream in) throws IOException {
+        int b = in.read();
+        if (b < 0) {
+            throw new EOFException("Trama incompleta");
+        }
+        return b;
+    }
+}
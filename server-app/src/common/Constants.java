@@ -20,6 +20,166 @@ public final class Constants {
     /** Tamano del pool de hilos para clientes concurrentes */
     public static final int THREAD_POOL_SIZE = 50;
 
+    /** Numero de bucles de eventos del motor NIO */
+    public static final int NIO_EVENT_LOOPS = Math.max(2, Runtime.getRuntime().availableProcessors() / 2);
+
+    /** Cola de conexiones pendientes de aceptar en el motor NIO */
+    public static final int NIO_ACCEPT_BACKLOG = 1024;
+
+    /** Peticiones con id que una conexion puede tener en proceso a la vez */
+    public static final int MAX_PIPELINED_REQUESTS = 32;
+
+    /** Mensajes pendientes de enviar por conexion a partir de los cuales se aplica la politica de desbordamiento */
+    public static final int OUTBOUND_QUEUE_CAPACITY = 256;
+
+    /** Maximo de mensajes que el escritor de una conexion envia con un unico flush */
+    public static final int OUTBOUND_BATCH_SIZE = 64;
+
+    /** Bytes que el escritor acumula antes de escribir en el socket (un registro TLS completo) */
+    public static final int WRITE_BUFFER_SIZE = 16 * 1024;
+
+    /** Tamano inicial del buffer de codificacion de cada conexion */
+    public static final int ENCODER_INITIAL_BYTES = 512;
+
+    /** Tamano maximo que conserva el buffer de codificacion entre mensajes */
+    public static final int ENCODER_MAX_RETAINED_BYTES = 16 * 1024;
+
+    /** Bytes a partir de los cuales se comprime un lote de salida si el cliente negocio compresion */
+    public static final int COMPRESSION_THRESHOLD_BYTES = 1024;
+
+    // ==================== CONTROL DE ADMISION ====================
+
+    /** Conexiones simultaneas admitidas por defecto con los motores NIO y de hilos virtuales */
+    public static final int MAX_CONNECTIONS = 10000;
+
+    /** Espera maxima (ms) entre aceptar una conexion y empezar a atenderla */
+    public static final long ADMISSION_MAX_QUEUE_AGE_MS = 2000;
+
+    /** Tiempo base (ms) que se indica a un cliente rechazado para reintentar (se anade hasta otro tanto al azar) */
+    public static final long ADMISSION_RETRY_AFTER_MS = 1000;
+
+    // ==================== LIMITE DE PETICIONES ====================
+
+    /** Peticiones REGISTER/LOGIN por segundo permitidas a cada conexion y usuario */
+    public static final int RATE_AUTH_PER_SECOND = 1;
+
+    /** Rafaga de peticiones REGISTER/LOGIN */
+    public static final int RATE_AUTH_BURST = 5;
+
+    /** Consultas por segundo permitidas a cada conexion y usuario */
+    public static final int RATE_QUERY_PER_SECOND = 50;
+
+    /** Rafaga de consultas */
+    public static final int RATE_QUERY_BURST = 100;
+
+    /** Pujas y demas escrituras por segundo permitidas a cada conexion y usuario */
+    public static final int RATE_WRITE_PER_SECOND = 20;
+
+    /** Rafaga de escrituras */
+    public static final int RATE_WRITE_BURST = 40;
+
+    /** Periodo (s) de limpieza de los contadores de usuarios inactivos */
+    public static final int RATE_LIMIT_PURGE_SECONDS = 60;
+
+    // ==================== LATIDO Y SESIONES ====================
+
+    /** Segundos sin recibir nada de una conexion tras los que se le envia PING */
+    public static final int HEARTBEAT_INTERVAL_SECONDS = 30;
+
+    /** Latidos sin respuesta tras los que se cierra la conexion */
+    public static final int HEARTBEAT_MISSED_LIMIT = 3;
+
+    /** Minutos sin uso tras los que expira una sesion */
+    public static final int SESSION_TIMEOUT_MINUTES = 30;
+
+    // ==================== PASARELA HTTP ====================
+
+    /** Hilos que atienden la pasarela HTTP de consulta */
+    public static final int HTTP_THREADS = 4;
+
+    /** Bytes a partir de los cuales la pasarela HTTP ofrece la respuesta comprimida con gzip */
+    public static final int HTTP_GZIP_MIN_BYTES = 512;
+
+    /** Subastas por pagina de LIST_AUCTIONS (maximo y valor si el cliente no lo indica) */
+    public static final int LIST_AUCTIONS_MAX_LIMIT = 500;
+
+    /** Numero de pujas recientes incluidas en el detalle de una subasta */
+    public static final int RECENT_BIDS_LIMIT = 10;
+
+    /** Pujas por tramo del historial en memoria de una subasta */
+    public static final int BID_HISTORY_CHUNK_SIZE = 64;
+
+    /** Pujas recientes que cada subasta conserva en memoria como minimo (el resto solo en la BD) */
+    public static final int BID_HISTORY_WINDOW = 256;
+
+    // ==================== TLS ====================
+
+    /** Sesiones TLS que el servidor guarda para reanudarlas sin negociacion completa */
+    public static final int TLS_SESSION_CACHE_SIZE = 20000;
+
+    /** Tiempo (s) durante el que una sesion TLS puede reanudarse */
+    public static final int TLS_SESSION_TIMEOUT_SECONDS = 4 * 60 * 60;
+
+    /** Hilos dedicados a las negociaciones TLS */
+    public static final int TLS_HANDSHAKE_THREADS = Math.max(2, Runtime.getRuntime().availableProcessors());
+
+    /** Negociaciones TLS en espera a partir de las cuales se rechazan conexiones nuevas */
+    public static final int TLS_HANDSHAKE_QUEUE_CAPACITY = 1024;
+
+    /** Tiempo maximo (ms) para completar una negociacion TLS */
+    public static final int TLS_HANDSHAKE_TIMEOUT_MS = 10000;
+
+    // ==================== CONSUMIDORES LENTOS ====================
+
+    /** Bytes pendientes de enviar a partir de los cuales un cliente pasa a notificaciones resumidas */
+    public static final long SLOW_CONSUMER_DEGRADE_BYTES = 64 * 1024;
+
+    /** Latencia media de escritura (ms) a partir de la cual un cliente pasa a notificaciones resumidas */
+    public static final long SLOW_CONSUMER_DEGRADE_LATENCY_MS = 2000;
+
+    /** Bytes pendientes de enviar a partir de los cuales se desconecta al cliente */
+    public static final long SLOW_CONSUMER_EVICT_BYTES = 1024 * 1024;
+
+    /** Tiempo (ms) con datos pendientes sin completar ninguna escritura tras el que se desconecta al cliente */
+    public static final long SLOW_CONSUMER_EVICT_STALL_MS = 30000;
+
+    /** Usuario con permisos de administracion (estadisticas del servidor) */
+    public static final String ADMIN_USERNAME = "admin";
+
+    // ==================== PARTICIONES DE SUBASTAS ====================
+
+    /** Particiones (hilos) que aplican las pujas, cierres y cancelaciones; cada subasta pertenece a una */
+    public static final int AUCTION_PARTITIONS = Math.max(2, Runtime.getRuntime().availableProcessors());
+
+    /** Duracion (ms) de una casilla del primer nivel de la rueda de vencimientos */
+    public static final long EXPIRY_TICK_MS = 1;
+
+    /** Casillas por nivel de la rueda de vencimientos (cinco niveles cubren mas de 12 dias) */
+    public static final int EXPIRY_WHEEL_SIZE = 64;
+
+    // ==================== ESCRITURA DIFERIDA ====================
+
+    /** Escrituras pendientes a partir de las cuales encolar bloquea a la particion */
+    public static final int WRITE_QUEUE_CAPACITY = 16384;
+
+    /** Escrituras maximas que se guardan en una misma transaccion */
+    public static final int WRITE_BATCH_MAX = 1024;
+
+    /** Tiempo maximo (ms) para guardar las escrituras pendientes al apagar */
+    public static final long WRITE_FLUSH_TIMEOUT_MS = 10000;
+
+    /** Intentos de guardar un lote de escrituras antes de descartarlo */
+    public static final int WRITE_RETRY_ATTEMPTS = 6;
+
+    /** Espera (ms) antes del primer reintento de un lote; se duplica en cada uno */
+    public static final long WRITE_RETRY_BACKOFF_MS = 50;
+
+    /** Durabilidad por defecto con la que se confirma una puja */
+    public static final String BID_DURABILITY = Constants.DURABILITY_QUEUED;
+
+    /** Durabilidad por defecto con la que se confirman las altas, cierres y cancelaciones */
+    public static final String CLOSE_DURABILITY = Constants.DURABILITY_DURABLE;
+
     // ==================== CONFIGURACION DE SUBASTAS ====================
 
     /** Duracion minima de una subasta en minutos */
@@ -28,8 +188,8 @@ public final class Constants {
     /** Duracion maxima de una subasta en minutos (7 dias) */
     public static final int MAX_AUCTION_DURATION_MINUTES = 10080;
 
-    /** Precio inicial minimo de una subasta */
-    public static final double MIN_START_PRICE = 0.01;
+    /** Precio inicial minimo de una subasta en centimos */
+    public static final long MIN_START_PRICE_CENTS = 1;
 
     // ==================== ACCIONES DEL PROTOCOLO ====================
 
@@ -60,6 +220,57 @@ public final class Constants {
     /** Accion de bloqueo de usuario */
     public static final String ACTION_BLOCK_USER = "BLOCK_USER";
 
+    /** Accion de negociacion de la version del protocolo (primer mensaje de la conexion) */
+    public static final String ACTION_HELLO = "HELLO";
+
+    /** Accion de consulta de estadisticas de conexiones (solo administrador) */
+    public static final String ACTION_ADMIN_STATS = "ADMIN_STATS";
+
+    /** Latido: lo envia el servidor a una conexion inactiva (o el cliente, que recibe PING_RESPONSE) */
+    public static final String ACTION_PING = "PING";
+
+    /** Respuesta del cliente a un PING del servidor (no tiene respuesta) */
+    public static final String ACTION_PONG = "PONG";
+
+    /** Subastas creadas por el usuario autenticado (paginado) */
+    public static final String ACTION_MY_AUCTIONS = "MY_AUCTIONS";
+
+    /** Subastas en las que ha pujado el usuario autenticado (paginado) */
+    public static final String ACTION_MY_BIDS = "MY_BIDS";
+
+    /** Subastas ganadas por el usuario autenticado (paginado) */
+    public static final String ACTION_MY_WINS = "MY_WINS";
+
+    // ==================== VERSIONES DEL PROTOCOLO ====================
+
+    /** Protocolo de lineas JSON (por defecto, compatible con clientes antiguos) */
+    public static final int PROTOCOL_JSON = 1;
+
+    /** Protocolo de tramas con longitud y codificacion binaria compacta */
+    public static final int PROTOCOL_BINARY = 2;
+
+    // ==================== ORDEN DE LOS LISTADOS ====================
+
+    /** LIST_AUCTIONS ordenado por fin, la que antes termina primero (por defecto) */
+    public static final String SORT_END_TIME = "endTime";
+
+    /** LIST_AUCTIONS ordenado por precio actual, la mas cara primero */
+    public static final String SORT_PRICE = "price";
+
+    /** LIST_AUCTIONS ordenado por numero de pujas, la que mas tiene primero */
+    public static final String SORT_BID_COUNT = "bidCount";
+
+    // ==================== DURABILIDAD DE LAS CONFIRMACIONES ====================
+
+    /** Se confirma en cuanto la operacion se aplica en memoria */
+    public static final String DURABILITY_MEMORY = "memory";
+
+    /** Se confirma cuando la escritura de la operacion esta en la cola de escritura diferida */
+    public static final String DURABILITY_QUEUED = "queued";
+
+    /** Se confirma cuando la transaccion que guarda la operacion se ha confirmado en disco */
+    public static final String DURABILITY_DURABLE = "durable";
+
     // ==================== RESPUESTAS DEL SERVIDOR ====================
 
     /** Sufijo anadido a las acciones para formar el nombre de la respuesta */
@@ -76,6 +287,9 @@ public final class Constants {
     /** Notificacion de subasta finalizada */
     public static final String NOTIFY_AUCTION_CLOSED = "AUCTION_CLOSED";
 
+    /** Aviso de servidor ocupado: la conexion se rechaza y se cierra (lleva retryAfterMs) */
+    public static final String NOTIFY_SERVER_BUSY = "SERVER_BUSY";
+
     // ==================== ESTADOS ====================
 
     /** Estado de respuesta exitosa */
@@ -12,11 +12,17 @@ import com.google.gson.JsonObject;
  * <pre>
  * {
  *   "action": "NOMBRE_ACCION",
+ *   "id": 42,
  *   "token": "uuid-token-o-null",
  *   "data": { ... }
  * }
  * </pre>
  *
+ * <p>El campo {@code id} es opcional: si la peticion lo incluye, el servidor lo
+ * devuelve en la respuesta, de modo que el cliente puede tener varias peticiones
+ * en vuelo por la misma conexion y emparejar respuestas que llegan desordenadas.
+ * Las notificaciones push nunca llevan id.</p>
+ *
  * @author NetAuction Team
  * @version 1.0
  */
@@ -28,6 +34,9 @@ public class Message {
     /** Nombre de la acción a ejecutar */
     private String action;
 
+    /** Identificador de peticion para correlacionar respuestas (null si no se usa) */
+    private Long id;
+
     /** Token de sesión del usuario (null si no está autenticado) */
     private String token;
 
@@ -83,6 +92,24 @@ public class Message {
         this.action = action;
     }
 
+    /**
+     * Obtiene el identificador de peticion.
+     *
+     * @return identificador o null si el mensaje no lo lleva
+     */
+    public Long getId() {
+        return id;
+    }
+
+    /**
+     * Establece el identificador de peticion.
+     *
+     * @param id identificador (null para no correlacionar)
+     */
+    public void setId(Long id) {
+        this.id = id;
+    }
+
     /**
      * Obtiene el token de sesión.
      *
@@ -310,6 +337,23 @@ public class Message {
         return action != null && action.endsWith(Constants.RESPONSE_SUFFIX);
     }
 
+    /**
+     * Crea la respuesta a una peticion conservando su identificador.
+     *
+     * @param request peticion original (puede ser null si no se pudo decodificar)
+     * @param status estado de la respuesta (OK o ERROR)
+     * @param message mensaje descriptivo
+     * @return mensaje de respuesta con el mismo id que la peticion
+     */
+    public static Message createReply(Message request, String status, String message) {
+        String action = request != null && request.getAction() != null ? request.getAction() : "UNKNOWN";
+        Message response = createResponse(action, status, message);
+        if (request != null) {
+            response.setId(request.getId());
+        }
+        return response;
+    }
+
     /**
      * Verifica si este mensaje es una notificación push.
      *
@@ -319,7 +363,8 @@ public class Message {
         return action != null && (
             action.equals(Constants.NOTIFY_NEW_BID) ||
             action.equals(Constants.NOTIFY_OUTBID) ||
-            action.equals(Constants.NOTIFY_AUCTION_CLOSED)
+            action.equals(Constants.NOTIFY_AUCTION_CLOSED) ||
+            action.equals(Constants.NOTIFY_SERVER_BUSY)
         );
     }
 
@@ -0,0 +1,165 @@
+package server;
+
+import common.Constants;
+import common.Message;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Control de admision de conexiones.
+ * Limita las conexiones simultaneas y el tiempo que una conexion aceptada
+ * puede esperar (negociacion TLS y cola del ejecutor) antes de ser atendida.
+ * Las conexiones que exceden los limites reciben un mensaje SERVER_BUSY con
+ * el tiempo tras el que conviene reintentar y se cierran, de modo que en
+ * sobrecarga los clientes ya conectados conservan su latencia.
+ *
+ * @author NetAuction Team
+ * @version 1.0
+ */
+public class AdmissionControl {
+
+    /** Conexiones simultaneas admitidas */
+    private final int maxConnections;
+
+    /** Espera maxima (ms) entre aceptar una conexion y empezar a atenderla */
+    private final long maxQueueAgeMillis;
+
+    /** Conexiones admitidas y aun abiertas */
+    private final AtomicInteger activeConnections;
+
+    /** Conexiones admitidas desde el arranque */
+    private final AtomicLong admittedCount;
+
+    /** Conexiones rechazadas por haber alcanzado el maximo de conexiones */
+    private final AtomicLong rejectedFullCount;
+
+    /** Conexiones rechazadas por esperar demasiado antes de ser atendidas */
+    private final AtomicLong rejectedStaleCount;
+
+    /**
+     * Constructor del control de admision.
+     *
+     * @param maxConnections conexiones simultaneas admitidas
+     * @param maxQueueAgeMillis espera maxima (ms) antes de empezar a atender una conexion
+     */
+    public AdmissionControl(int maxConnections, long maxQueueAgeMillis) {
+        this.maxConnections = maxConnections;
+        this.maxQueueAgeMillis = maxQueueAgeMillis;
+        this.activeConnections = new AtomicInteger();
+        this.admittedCount = new AtomicLong();
+        this.rejectedFullCount = new AtomicLong();
+        this.rejectedStaleCount = new AtomicLong();
+    }
+
+    /**
+     * Intenta admitir una conexion recien aceptada.
+     * Si se admite, la conexion debe llamar a {@link #release()} al cerrarse.
+     *
+     * @return true si hay hueco; false si se ha alcanzado el maximo
+     */
+    public boolean tryAdmit() {
+        while (true) {
+            int active = activeConnections.get();
+            if (active >= maxConnections) {
+                rejectedFullCount.incrementAndGet();
+                return false;
+            }
+            if (activeConnections.compareAndSet(active, active + 1)) {
+                admittedCount.incrementAndGet();
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Comprueba si una conexion admitida ha esperado demasiado para ser atendida.
+     * Si es asi la cuenta como rechazada; la conexion debe igualmente liberar
+     * su hueco con {@link #release()}.
+     *
+     * @param acceptedAtNanos instante (System.nanoTime) en que se acepto
+     * @return true si ha superado la espera maxima
+     */
+    public boolean isStale(long acceptedAtNanos) {
+        long waited = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - acceptedAtNanos);
+        if (waited > maxQueueAgeMillis) {
+            rejectedStaleCount.incrementAndGet();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Libera el hueco de una conexion admitida que se ha cerrado.
+     */
+    public void release() {
+        activeConnections.decrementAndGet();
+    }
+
+    /**
+     * Construye el mensaje de servidor ocupado. El tiempo de reintento lleva
+     * una parte aleatoria para que los clientes rechazados no vuelvan todos a la vez.
+     *
+     * @return mensaje SERVER_BUSY con retryAfterMs
+     */
+    public static Message createBusyMessage() {
+        long retryAfter = Constants.ADMISSION_RETRY_AFTER_MS
+            + ThreadLocalRandom.current().nextLong(Constants.ADMISSION_RETRY_AFTER_MS + 1);
+        Message busy = Message.createNotification(Constants.NOTIFY_SERVER_BUSY);
+        busy.addData("status", Constants.STATUS_ERROR);
+        busy.addData("message", "Servidor ocupado, reintente en " + retryAfter + " ms");
+        busy.addData("retryAfterMs", retryAfter);
+        return busy;
+    }
+
+    /**
+     * @return conexiones simultaneas admitidas
+     */
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    /**
+     * @return espera maxima (ms) antes de empezar a atender una conexion
+     */
+    public long getMaxQueueAgeMillis() {
+        return maxQueueAgeMillis;
+    }
+
+    /**
+     * @return conexiones admitidas y aun abiertas
+     */
+    public int getActiveConnections() {
+        return activeConnections.get();
+    }
+
+    /**
+     * @return ocupacion: conexiones abiertas / maximo
+     */
+    public double getOccupancy() {
+        return maxConnections > 0 ? (double) activeConnections.get() / maxConnections : 0.0;
+    }
+
+    /**
+     * @return conexiones admitidas desde el arranque
+     */
+    public long getAdmittedCount() {
+        return admittedCount.get();
+    }
+
+    /**
+     * @return conexiones rechazadas por haber alcanzado el maximo
+     */
+    public long getRejectedFullCount() {
+        return rejectedFullCount.get();
+    }
+
+    /**
+     * @return conexiones rechazadas por esperar demasiado
+     */
+    public long getRejectedStaleCount() {
+        return rejectedStaleCount.get();
+    }
+}
@@ -0,0 +1,105 @@
+package server;
+
+import common.Compression;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compresion de los lotes de salida de las conexiones que la negociaron.
+ * Los escritores de ambos motores la invocan con el lote ya formado cuando
+ * supera el umbral; aqui se construye el contenedor con {@link Compression}
+ * y se acumulan los bytes ahorrados y el tiempo de CPU empleado, que
+ * ADMIN_STATS publica para poder ajustar el umbral.
+ *
+ * @author NetAuction Team
+ * @version 1.0
+ */
+public final class BatchCompressor {
+
+    /** Lotes comprimidos desde el arranque */
+    private static final AtomicLong BATCHES = new AtomicLong();
+
+    /** Bytes de esos lotes sin comprimir */
+    private static final AtomicLong RAW_BYTES = new AtomicLong();
+
+    /** Bytes enviados tras comprimirlos */
+    private static final AtomicLong COMPRESSED_BYTES = new AtomicLong();
+
+    /** Tiempo de CPU empleado en comprimir, en nanosegundos */
+    private static final AtomicLong NANOS = new AtomicLong();
+
+    /**
+     * Constructor privado para evitar instanciacion.
+     */
+    private BatchCompressor() {
+        throw new UnsupportedOperationException("BatchCompressor cannot be instantiated");
+    }
+
+    /**
+     * Comprime un lote de mensajes ya codificados en un unico contenedor.
+     *
+     * @param batch mensajes del lote, en orden de envio
+     * @param totalBytes suma de sus longitudes
+     * @param protocol protocolo con el que estan codificados
+     * @return contenedor listo para escribir en el socket
+     */
+    public static byte[] compress(List<OutboundQueue.Entry> batch, long totalBytes, int protocol) {
+        long start = System.nanoTime();
+        List<byte[]> encoded = new ArrayList<>(batch.size());
+        for (OutboundQueue.Entry entry : batch) {
+            encoded.add(entry.getBytes());
+        }
+        byte[] container = Compression.compress(encoded, totalBytes, protocol);
+
+        BATCHES.incrementAndGet();
+        RAW_BYTES.addAndGet(totalBytes);
+        COMPRESSED_BYTES.addAndGet(container.length);
+        NANOS.addAndGet(System.nanoTime() - start);
+        return container;
+    }
+
+    /**
+     * @return lotes comprimidos desde el arranque
+     */
+    public static long getBatchCount() {
+        return BATCHES.get();
+    }
+
+    /**
+     * @return bytes de los lotes comprimidos antes de comprimir
+     */
+    public static long getRawBytes() {
+        return RAW_BYTES.get();
+    }
+
+    /**
+     * @return bytes enviados tras comprimir
+     */
+    public static long getCompressedBytes() {
+        return COMPRESSED_BYTES.get();
+    }
+
+    /**
+     * @return bytes ahorrados por la compresion
+     */
+    public static long getSavedBytes() {
+        return RAW_BYTES.get() - COMPRESSED_BYTES.get();
+    }
+
+    /**
+     * @return bytes comprimidos / bytes originales (0 si aun no se comprimio nada)
+     */
+    public static double getRatio() {
+        long raw = RAW_BYTES.get();
+        return raw > 0 ? (double) COMPRESSED_BYTES.get() / raw : 0.0;
+    }
+
+    /**
+     * @return tiempo de CPU empleado en comprimir, en milisegundos
+     */
+    public static double getCpuMillis() {
+        return NANOS.get() / 1_000_000.0;
+    }
+}
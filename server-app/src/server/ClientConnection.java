@@ -0,0 +1,82 @@
+package server;
+
+import common.Message;
+
+/**
+ * Conexion de un cliente con el servidor, independiente del motor de red.
+ * La implementan tanto {@link ClientHandler} (un hilo por cliente) como
+ * las conexiones del motor NIO, de modo que {@link ProtocolHandler} y el
+ * servicio de notificaciones no dependen de como se lee o escribe el socket.
+ *
+ * @author NetAuction Team
+ * @version 1.0
+ */
+public interface ClientConnection {
+
+    /**
+     * Envia un mensaje al cliente.
+     *
+     * @param message mensaje a enviar
+     */
+    void sendMessage(Message message);
+
+    /**
+     * Envia un mensaje ya codificado que se reparte a varios clientes. La
+     * conexion encola los bytes de su protocolo sin volver a codificarlo.
+     *
+     * @param message mensaje compartido
+     */
+    void sendEncoded(EncodedMessage message);
+
+    /**
+     * Obtiene el username del usuario autenticado.
+     *
+     * @return username o null si no esta autenticado
+     */
+    String getAuthenticatedUser();
+
+    /**
+     * Establece el username del usuario autenticado.
+     *
+     * @param username username del usuario
+     */
+    void setAuthenticatedUser(String username);
+
+    /**
+     * Obtiene la direccion del cliente.
+     *
+     * @return direccion IP:puerto del cliente
+     */
+    String getClientAddress();
+
+    /**
+     * Obtiene la cola de salida de la conexion, con sus metricas de consumo.
+     *
+     * @return cola de salida
+     */
+    OutboundQueue getOutboundQueue();
+
+    /**
+     * Obtiene el instante en que se recibio algo del cliente por ultima vez.
+     *
+     * @return instante (System.nanoTime) de la ultima lectura
+     */
+    long getLastActivity();
+
+    /**
+     * Retiene el envio de los mensajes encolados hasta {@link #uncork()}, para
+     * que la respuesta a una peticion y las notificaciones que provoca salgan
+     * en un unico flush. Las llamadas pueden anidarse.
+     */
+    void cork();
+
+    /**
+     * Libera una retencion de envio; con la ultima se envia todo lo acumulado.
+     */
+    void uncork();
+
+    /**
+     * Cierra la conexion con el cliente.
+     */
+    void stop();
+}
@@ -1,22 +1,45 @@
 package server;
 
+import common.BinaryCodec;
+import common.Compression;
+import common.Constants;
 import common.Message;
+import server.request.HelloRequest;
+import server.request.Request;
+import server.request.RequestDecoder;
 
-import java.io.BufferedReader;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.PrintWriter;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Manejador de conexión de cliente.
  * Cada instancia atiende a un cliente conectado en su propio hilo.
- * Lee mensajes JSON del cliente, los procesa y envía respuestas.
+ * Lee mensajes del cliente (lineas JSON o tramas binarias si se negocian
+ * con HELLO), los procesa y envía respuestas.
+ * Las peticiones que llevan id se procesan en paralelo en el ejecutor de
+ * peticiones y sus respuestas pueden salir en cualquier orden; las que no
+ * lo llevan se atienden en orden en el propio hilo del cliente.
+ * Las escrituras no se hacen en el hilo que genera el mensaje: se encolan en
+ * una {@link OutboundQueue} acotada que vacia el escritor de la conexion.
  *
  * @author NetAuction Team
  * @version 1.0
  */
-public class ClientHandler implements Runnable {
+public class ClientHandler implements Runnable, ClientConnection {
 
     /** Socket de conexión con el cliente */
     private final Socket clientSocket;
@@ -27,17 +50,63 @@ public class ClientHandler implements Runnable {
     /** Procesador de protocolo para manejar acciones */
     private ProtocolHandler protocolHandler;
 
-    /** Writer para enviar mensajes al cliente */
-    private PrintWriter out;
+    /** Ejecutor de las peticiones con id (null para procesarlas todas en orden) */
+    private Executor requestExecutor;
 
-    /** Reader para recibir mensajes del cliente */
-    private BufferedReader in;
+    /** Huecos disponibles para peticiones con id en proceso */
+    private final Semaphore pipelineSlots;
+
+    /** Ejecutor del escritor de la conexion (null para usar un hilo propio) */
+    private Executor writerExecutor;
+
+    /** Mensajes serializados pendientes de enviar */
+    private final OutboundQueue outbound;
+
+    /** Stream para enviar mensajes al cliente */
+    private OutputStream out;
+
+    /** Stream para recibir mensajes del cliente */
+    private InputStream in;
+
+    /** Version del protocolo negociada (JSON por defecto) */
+    private volatile int protocolVersion;
+
+    /** Indica si aun no se ha recibido el primer mensaje (el unico que puede ser HELLO) */
+    private boolean awaitingHello;
 
     /** Indica si el handler está activo */
     private volatile boolean running;
 
     /** Username del cliente autenticado (null si no está autenticado) */
-    private String authenticatedUser;
+    private volatile String authenticatedUser;
+
+    /**
+     * Lock de encolado: serializar y encolar de forma atomica respecto al cambio
+     * de protocolo. Se usa ReentrantLock en lugar de synchronized para que
+     * un hilo virtual no fije (pin) su hilo portador.
+     */
+    private final ReentrantLock writeLock;
+
+    /** Codificador con el buffer de salida reutilizable de la conexion (bajo writeLock) */
+    private final MessageEncoder encoder;
+
+    /** Control de admision que concedio el hueco de esta conexion (null si no hay) */
+    private AdmissionControl admissionControl;
+
+    /** Instante (System.nanoTime) en que se acepto la conexion */
+    private long acceptedAt;
+
+    /** Umbral de compresion aceptado en el HELLO, aun sin activar (solo hilo lector) */
+    private int pendingCompressionThreshold;
+
+    /** Bytes a partir de los cuales el escritor comprime un lote (0 sin compresion) */
+    private volatile int compressionThreshold;
+
+    /** Instante (System.nanoTime) del ultimo mensaje recibido */
+    private volatile long lastActivity;
+
+    /** Indica si ya se libero el hueco de admision (cleanup puede ejecutarse dos veces) */
+    private final AtomicBoolean admissionReleased = new AtomicBoolean();
 
     /**
      * Constructor del manejador de cliente.
@@ -49,6 +118,13 @@ public class ClientHandler implements Runnable {
         this.clientAddress = clientSocket.getInetAddress().getHostAddress() + ":" + clientSocket.getPort();
         this.running = true;
         this.authenticatedUser = null;
+        this.writeLock = new ReentrantLock();
+        this.encoder = new MessageEncoder();
+        this.protocolVersion = Constants.PROTOCOL_JSON;
+        this.awaitingHello = true;
+        this.pipelineSlots = new Semaphore(Constants.MAX_PIPELINED_REQUESTS);
+        this.outbound = new OutboundQueue(Constants.OUTBOUND_QUEUE_CAPACITY, OutboundQueue.OverflowPolicy.COALESCE);
+        this.lastActivity = System.nanoTime();
     }
 
     /**
@@ -61,12 +137,42 @@ public class ClientHandler implements Runnable {
     }
 
     /**
-     * Obtiene el escritor de salida para enviar mensajes al cliente.
+     * Establece el ejecutor donde se procesan las peticiones con id.
      *
-     * @return PrintWriter de salida
+     * @param requestExecutor ejecutor compartido de peticiones
      */
-    public PrintWriter getOut() {
-        return out;
+    public void setRequestExecutor(Executor requestExecutor) {
+        this.requestExecutor = requestExecutor;
+    }
+
+    /**
+     * Establece el ejecutor donde corre el escritor de la conexion.
+     *
+     * @param writerExecutor ejecutor de escritores
+     */
+    public void setWriterExecutor(Executor writerExecutor) {
+        this.writerExecutor = writerExecutor;
+    }
+
+    /**
+     * Establece la politica a aplicar cuando la cola de salida se llena.
+     *
+     * @param policy politica de desbordamiento
+     */
+    public void setOverflowPolicy(OutboundQueue.OverflowPolicy policy) {
+        outbound.setPolicy(policy);
+    }
+
+    /**
+     * Establece el control de admision que concedio el hueco de esta conexion,
+     * que se libera al cerrarla.
+     *
+     * @param admissionControl control de admision
+     * @param acceptedAt instante (System.nanoTime) en que se acepto la conexion
+     */
+    public void setAdmissionControl(AdmissionControl admissionControl, long acceptedAt) {
+        this.admissionControl = admissionControl;
+        this.acceptedAt = acceptedAt;
     }
 
     /**
@@ -74,6 +180,7 @@ public class ClientHandler implements Runnable {
      *
      * @return username o null si no está autenticado
      */
+    @Override
     public String getAuthenticatedUser() {
         return authenticatedUser;
     }
@@ -83,6 +190,7 @@ public class ClientHandler implements Runnable {
      *
      * @param username username del usuario
      */
+    @Override
     public void setAuthenticatedUser(String username) {
         this.authenticatedUser = username;
     }
@@ -92,46 +200,81 @@ public class ClientHandler implements Runnable {
      *
      * @return dirección IP:puerto del cliente
      */
+    @Override
     public String getClientAddress() {
         return clientAddress;
     }
 
     /**
      * Bucle principal del manejador.
-     * Lee mensajes JSON línea por línea, los procesa y envía respuestas.
+     * Lee mensajes (líneas JSON o tramas binarias), los procesa y envía respuestas.
      */
     @Override
     public void run() {
         try {
+            // El escritor ya agrupa los mensajes pendientes en un flush: Nagle solo anadiria espera
+            clientSocket.setTcpNoDelay(true);
+
             // Inicializar streams
-            in = new BufferedReader(new InputStreamReader(clientSocket.getInputStream()));
-            out = new PrintWriter(clientSocket.getOutputStream(), true);
+            in = new BufferedInputStream(clientSocket.getInputStream());
+            out = new BufferedOutputStream(clientSocket.getOutputStream(), Constants.WRITE_BUFFER_SIZE);
+
+            // Si la conexion espero demasiado en cola, el cliente probablemente ya
+            // agoto su tiempo: se le pide que reintente en lugar de atenderla tarde
+            if (admissionControl != null && admissionControl.isStale(acceptedAt)) {
+                out.write((AdmissionControl.createBusyMessage().toJson() + "\n").getBytes(StandardCharsets.UTF_8));
+                out.flush();
+                return;
+            }
 
             System.out.println("[SERVER] Cliente conectado: " + clientAddress);
+            startWriter();
+            if (protocolHandler != null) {
+                protocolHandler.handleClientConnect(this);
+            }
 
-            String inputLine;
-            while (running && (inputLine = in.readLine()) != null) {
+            while (running) {
                 try {
-                    // Parsear mensaje JSON
-                    Message request = Message.fromJson(inputLine);
+                    Request request = readMessage();
+                    if (request == null) {
+                        break;
+                    }
+                    lastActivity = System.nanoTime();
+                    // La compresion se activa con el primer mensaje posterior al HELLO: el cliente
+                    // no lo envia sin haber leido la respuesta, que asi nunca va en un contenedor
+                    if (pendingCompressionThreshold > 0) {
+                        compressionThreshold = pendingCompressionThreshold;
+                        pendingCompressionThreshold = 0;
+                    }
+                    if (Constants.ACTION_PONG.equals(request.getAction())) {
+                        if (protocolHandler != null) {
+                            protocolHandler.handlePong(this);
+                        }
+                        continue;
+                    }
                     System.out.println("[SERVER] Recibido de " + clientAddress + ": " + request.getAction());
 
-                    // Procesar mensaje
-                    Message response;
-                    if (protocolHandler != null) {
-                        response = protocolHandler.handleMessage(request, this);
-                    } else {
-                        // Modo eco: devolver el mismo mensaje como respuesta
-                        response = Message.createSuccessResponse(
-                            request.getAction(),
-                            "Echo: " + request.getAction()
-                        );
-                        response.setData(request.getData());
+                    boolean firstMessage = awaitingHello;
+                    awaitingHello = false;
+                    if (firstMessage && request instanceof HelloRequest && protocolHandler != null) {
+                        negotiateProtocol((HelloRequest) request);
+                        continue;
+                    }
+
+                    // Las peticiones con id se procesan en paralelo mientras haya huecos;
+                    // si no los hay se atienden aqui, frenando la lectura del socket
+                    if (request.getId() != null && requestExecutor != null && pipelineSlots.tryAcquire()) {
+                        dispatchPipelined(request);
+                        continue;
                     }
 
-                    // Enviar respuesta
-                    sendMessage(response);
+                    // Procesar mensaje y enviar respuesta
+                    processAndReply(request);
 
+                } catch (IllegalArgumentException e) {
+                    // Trama binaria inválida (la longitud ya se consumió, se puede continuar)
+                    System.err.println("[SERVER] Trama inválida de " + clientAddress + ": " + e.getMessage());
+                    sendMessage(Message.createErrorResponse("UNKNOWN", "Trama inválida: " + e.getMessage()));
                 } catch (com.google.gson.JsonSyntaxException e) {
                     // JSON inválido
                     System.err.println("[SERVER] JSON inválido de " + clientAddress + ": " + e.getMessage());
@@ -155,30 +298,295 @@ public class ClientHandler implements Runnable {
     }
 
     /**
-     * Envía un mensaje al cliente de forma sincronizada.
+     * Procesa una petición y envía su respuesta. Si se responde en el acto
+     * se envía con la cola retenida, de modo que la respuesta y las
+     * notificaciones que genere para este cliente salen en el mismo flush.
+     * Si se aplica en la particion de su subasta (altas, pujas y
+     * cancelaciones, que pueden esperar a la base de datos) la cola se libera
+     * antes de esperarla, para no retener las demas notificaciones mientras.
+     * Las peticiones con id no retienen la cola: con varias en vuelo de
+     * forma continua el escritor no llegaria a vaciarla.
+     *
+     * @param request petición del cliente
+     */
+    private void processAndReply(Request request) {
+        CompletableFuture<Message> reply;
+        outbound.cork();
+        try {
+            reply = processAsync(request);
+            if (reply.isDone()) {
+                sendMessage(awaitReply(request, reply));
+                return;
+            }
+        } finally {
+            outbound.uncork();
+        }
+        sendMessage(awaitReply(request, reply));
+    }
+
+    /**
+     * Procesa una petición y construye su respuesta.
+     *
+     * @param request petición del cliente
+     * @return respuesta con el mismo id que la petición
+     */
+    private Message process(Request request) {
+        return awaitReply(request, processAsync(request));
+    }
+
+    /**
+     * Procesa una petición sin esperar a su respuesta.
+     *
+     * @param request petición del cliente
+     * @return respuesta, que puede completarse en otro hilo
+     */
+    private CompletableFuture<Message> processAsync(Request request) {
+        try {
+            if (protocolHandler != null) {
+                return protocolHandler.handleMessageAsync(request, this);
+            }
+            // Modo eco: confirmar la accion recibida
+            return CompletableFuture.completedFuture(
+                request.createReply(Constants.STATUS_OK, "Echo: " + request.getAction()));
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Espera a la respuesta de una petición.
+     *
+     * @param request petición del cliente
+     * @param reply respuesta en curso
+     * @return respuesta, o error interno si su proceso fallo
+     */
+    private Message awaitReply(Request request, CompletableFuture<Message> reply) {
+        try {
+            return reply.join();
+        } catch (RuntimeException e) {
+            Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+            System.err.println("[SERVER] Error procesando mensaje de " + clientAddress + ": " + cause.getMessage());
+            cause.printStackTrace();
+            return request.createErrorReply("Error interno del servidor");
+        }
+    }
+
+    /**
+     * Procesa una petición con id en el ejecutor de peticiones.
+     * El hueco reservado se libera al enviar la respuesta.
+     *
+     * @param request petición del cliente
+     */
+    private void dispatchPipelined(Request request) {
+        try {
+            requestExecutor.execute(() -> {
+                try {
+                    sendMessage(process(request));
+                } finally {
+                    pipelineSlots.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            pipelineSlots.release();
+            sendMessage(process(request));
+        }
+    }
+
+    /**
+     * Lee la siguiente petición según el protocolo negociado.
+     *
+     * @return petición recibida o null si el cliente cerró la conexión
+     * @throws IOException si falla la lectura
+     */
+    private Request readMessage() throws IOException {
+        if (protocolVersion == Constants.PROTOCOL_BINARY) {
+            Message frame = BinaryCodec.readFrame(in);
+            return frame != null ? RequestDecoder.INSTANCE.decode(frame) : null;
+        }
+        String line;
+        do {
+            line = BinaryCodec.readLine(in);
+        } while (line != null && line.isEmpty());
+        return line != null ? RequestDecoder.INSTANCE.decode(line) : null;
+    }
+
+    /**
+     * Responde al HELLO en el protocolo actual y cambia al negociado.
+     *
+     * @param request petición HELLO del cliente
+     */
+    private void negotiateProtocol(HelloRequest request) {
+        Message response = protocolHandler.handleHello(request);
+        writeLock.lock();
+        try {
+            sendMessage(response);
+            protocolVersion = response.getDataInt("protocol", Constants.PROTOCOL_JSON);
+        } finally {
+            writeLock.unlock();
+        }
+        if (Compression.DEFLATE.equals(response.getDataString("compression"))) {
+            pendingCompressionThreshold = protocolHandler.getCompressionThreshold();
+        }
+    }
+
+    /**
+     * Encola un mensaje para el cliente. Nunca bloquea en el socket: si el
+     * cliente no lee, se aplica la politica de desbordamiento de la cola.
      *
      * @param message mensaje a enviar
      */
-    public synchronized void sendMessage(Message message) {
-        if (out != null && !clientSocket.isClosed()) {
-            out.println(message.toJson());
-            System.out.println("[SERVER] Enviado a " + clientAddress + ": " + message.getAction());
+    @Override
+    public void sendMessage(Message message) {
+        boolean accepted;
+        writeLock.lock();
+        try {
+            if (!running || clientSocket.isClosed()) {
+                return;
+            }
+            accepted = outbound.offer(message, encoder.encode(message, protocolVersion));
+        } finally {
+            writeLock.unlock();
+        }
+
+        if (!accepted) {
+            System.err.println("[SERVER] Cola de salida llena, desconectando cliente lento: " + clientAddress);
+            stop();
+        }
+    }
+
+    /**
+     * Encola un mensaje compartido con los bytes del protocolo negociado.
+     *
+     * @param message mensaje compartido
+     */
+    @Override
+    public void sendEncoded(EncodedMessage message) {
+        boolean accepted;
+        writeLock.lock();
+        try {
+            if (!running || clientSocket.isClosed()) {
+                return;
+            }
+            accepted = outbound.offer(message.getMessage(), message.getBytes(protocolVersion));
+        } finally {
+            writeLock.unlock();
+        }
+
+        if (!accepted) {
+            System.err.println("[SERVER] Cola de salida llena, desconectando cliente lento: " + clientAddress);
+            stop();
+        }
+    }
+
+    /**
+     * Arranca el escritor de la conexion en el ejecutor de escritores
+     * o, si no hay, en un hilo propio.
+     */
+    private void startWriter() {
+        if (writerExecutor != null) {
+            try {
+                writerExecutor.execute(this::writeLoop);
+                return;
+            } catch (RejectedExecutionException e) {
+                // Se usa un hilo propio
+            }
+        }
+        Thread writer = new Thread(this::writeLoop, "writer-" + clientAddress);
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Bucle del escritor: envia los mensajes encolados agrupandolos en un
+     * unico flush mientras haya varios pendientes. El buffer de salida tiene
+     * el tamano de un registro TLS, asi que cada flush suele ser un registro
+     * y una escritura en el socket. Si el cliente negocio compresion, los
+     * lotes que superan el umbral se envian como un unico contenedor comprimido.
+     */
+    private void writeLoop() {
+        List<OutboundQueue.Entry> batch = new ArrayList<>(Constants.OUTBOUND_BATCH_SIZE);
+        try {
+            while (outbound.takeBatch(batch, Constants.OUTBOUND_BATCH_SIZE)) {
+                long bytes = 0;
+                for (OutboundQueue.Entry entry : batch) {
+                    bytes += entry.getBytes().length;
+                }
+                int threshold = compressionThreshold;
+                if (threshold > 0 && bytes >= threshold) {
+                    out.write(BatchCompressor.compress(batch, bytes, protocolVersion));
+                } else {
+                    for (OutboundQueue.Entry entry : batch) {
+                        out.write(entry.getBytes());
+                    }
+                }
+                for (OutboundQueue.Entry entry : batch) {
+                    System.out.println("[SERVER] Enviado a " + clientAddress + ": " + entry.getMessage().getAction());
+                }
+                out.flush();
+                outbound.markWritten(batch);
+                outbound.recordFlush(bytes, batch.size());
+                batch.clear();
+            }
+        } catch (IOException e) {
+            if (running) {
+                System.err.println("[SERVER] Error enviando a " + clientAddress + ": " + e.getMessage());
+                stop();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
     }
 
     /**
      * Detiene el manejador y cierra la conexión.
+     * Si quedan datos sin enviar se cierra con SO_LINGER a 0: el cierre TLS no
+     * espera a enviar close_notify (el escritor puede estar bloqueado en el
+     * socket de un cliente que no lee) y lo pendiente se descarta.
      */
+    @Override
     public void stop() {
         running = false;
+        if (outbound.getPendingBytes() > 0) {
+            try {
+                clientSocket.setSoLinger(true, 0);
+            } catch (IOException e) {
+                // Se cierra igualmente
+            }
+        }
         cleanup();
     }
 
+    @Override
+    public long getLastActivity() {
+        return lastActivity;
+    }
+
+    @Override
+    public void cork() {
+        outbound.cork();
+    }
+
+    @Override
+    public void uncork() {
+        outbound.uncork();
+    }
+
+    /**
+     * Obtiene la cola de salida de la conexión.
+     *
+     * @return cola de salida
+     */
+    @Override
+    public OutboundQueue getOutboundQueue() {
+        return outbound;
+    }
+
     /**
      * Limpia recursos: cierra streams y socket.
      */
     private void cleanup() {
         running = false;
+        outbound.close();
 
         // Notificar al servicio de notificaciones si hay usuario autenticado
         // (se implementará en fases posteriores)
@@ -187,6 +595,10 @@ public class ClientHandler implements Runnable {
             protocolHandler.handleClientDisconnect(this);
         }
 
+        if (admissionControl != null && admissionReleased.compareAndSet(false, true)) {
+            admissionControl.release();
+        }
+
         try {
             if (in != null) {
                 in.close();
@@ -195,8 +607,12 @@ public class ClientHandler implements Runnable {
             // Ignorar
         }
 
-        if (out != null) {
-            out.close();
+        try {
+            if (out != null) {
+                out.close();
+            }
+        } catch (IOException e) {
+            // Ignorar
         }
 
         try {
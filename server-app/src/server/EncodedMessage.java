@@ -0,0 +1,69 @@
+package server;
+
+import common.Constants;
+import common.Message;
+
+/**
+ * Mensaje que se envia a varias conexiones, codificado una sola vez.
+ * Guarda los bytes de cada protocolo la primera vez que una conexion los
+ * pide; el resto de destinatarios con el mismo protocolo encolan el mismo
+ * array por referencia. Los bytes no se modifican una vez creados: los
+ * escritores solo los leen (o los copian al comprimir un lote).
+ *
+ * <p>El mensaje no debe modificarse despues de crear el EncodedMessage.</p>
+ *
+ * @author NetAuction Team
+ * @version 1.0
+ */
+public final class EncodedMessage {
+
+    /** Mensaje original (las colas lo usan para decidir que descartar) */
+    private final Message message;
+
+    /** Linea JSON con '\n' (null hasta que la pide una conexion) */
+    private volatile byte[] json;
+
+    /** Trama binaria con longitud (null hasta que la pide una conexion) */
+    private volatile byte[] binary;
+
+    /**
+     * Constructor del mensaje compartido.
+     *
+     * @param message mensaje a enviar
+     */
+    public EncodedMessage(Message message) {
+        this.message = message;
+    }
+
+    /**
+     * @return mensaje original
+     */
+    public Message getMessage() {
+        return message;
+    }
+
+    /**
+     * Obtiene los bytes del mensaje en el protocolo de una conexion.
+     * Si dos hilos lo piden a la vez por primera vez ambos lo codifican y
+     * se queda uno de los resultados, que son identicos.
+     *
+     * @param protocol {@link Constants#PROTOCOL_JSON} o {@link Constants#PROTOCOL_BINARY}
+     * @return bytes listos para encolar (no deben modificarse)
+     */
+    public byte[] getBytes(int protocol) {
+        if (protocol == Constants.PROTOCOL_BINARY) {
+            byte[] bytes = binary;
+            if (bytes == null) {
+                bytes = new MessageEncoder().encode(message, protocol);
+                binary = bytes;
+            }
+            return bytes;
+        }
+        byte[] bytes = json;
+        if (bytes == null) {
+            bytes = new MessageEncoder().encode(message, protocol);
+            json = bytes;
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,112 @@
+package server;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Metricas globales de escritura en los sockets de los clientes.
+ * Cada flush de un escritor (un lote de mensajes enviado con una sola
+ * escritura y, con TLS, normalmente un solo registro) suma aqui sus bytes y
+ * mensajes. Una vez por segundo el servidor toma una muestra para calcular
+ * los flushes por segundo y el tamano medio de cada flush en ese intervalo.
+ *
+ * @author NetAuction Team
+ * @version 1.0
+ */
+public final class FlushStats {
+
+    /** Flushes realizados desde el arranque */
+    private static final AtomicLong FLUSHES = new AtomicLong();
+
+    /** Bytes enviados en esos flushes */
+    private static final AtomicLong BYTES = new AtomicLong();
+
+    /** Mensajes enviados en esos flushes */
+    private static final AtomicLong MESSAGES = new AtomicLong();
+
+    /** Totales en la ultima muestra */
+    private static long sampledFlushes;
+    private static long sampledBytes;
+    private static long sampledMessages;
+    private static long sampledAt = System.nanoTime();
+
+    /** Resultados de la ultima muestra */
+    private static volatile double flushesPerSecond;
+    private static volatile double bytesPerFlush;
+    private static volatile double messagesPerFlush;
+
+    /**
+     * Constructor privado para evitar instanciacion.
+     */
+    private FlushStats() {
+        throw new UnsupportedOperationException("FlushStats cannot be instantiated");
+    }
+
+    /**
+     * Registra un flush.
+     *
+     * @param bytes bytes enviados
+     * @param messages mensajes enviados
+     */
+    static void record(long bytes, int messages) {
+        FLUSHES.incrementAndGet();
+        BYTES.addAndGet(bytes);
+        MESSAGES.addAndGet(messages);
+    }
+
+    /**
+     * Calcula las tasas del intervalo transcurrido desde la muestra anterior.
+     * La invoca periodicamente el servidor.
+     */
+    public static synchronized void sample() {
+        long now = System.nanoTime();
+        long flushes = FLUSHES.get();
+        long bytes = BYTES.get();
+        long messages = MESSAGES.get();
+
+        long deltaFlushes = flushes - sampledFlushes;
+        double seconds = (now - sampledAt) / 1_000_000_000.0;
+        flushesPerSecond = seconds > 0 ? deltaFlushes / seconds : 0.0;
+        bytesPerFlush = deltaFlushes > 0 ? (double) (bytes - sampledBytes) / deltaFlushes : 0.0;
+        messagesPerFlush = deltaFlushes > 0 ? (double) (messages - sampledMessages) / deltaFlushes : 0.0;
+
+        sampledFlushes = flushes;
+        sampledBytes = bytes;
+        sampledMessages = messages;
+        sampledAt = now;
+    }
+
+    /**
+     * @return flushes realizados desde el arranque
+     */
+    public static long getTotalFlushes() {
+        return FLUSHES.get();
+    }
+
+    /**
+     * @return bytes enviados desde el arranque
+     */
+    public static long getTotalBytes() {
+        return BYTES.get();
+    }
+
+    /**
+     * @return flushes por segundo en el ultimo intervalo muestreado
+     */
+    public static double getFlushesPerSecond() {
+        return flushesPerSecond;
+    }
+
+    /**
+     * @return bytes medios por flush en el ultimo intervalo muestreado
+     */
+    public static double getBytesPerFlush() {
+        return bytesPerFlush;
+    }
+
+    /**
+     * @return mensajes medios por flush en el ultimo intervalo muestreado
+     */
+    public static double getMessagesPerFlush() {
+        return messagesPerFlush;
+    }
+}
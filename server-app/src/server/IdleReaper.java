@@ -0,0 +1,129 @@
+package server;
+
+import common.Constants;
+import common.Message;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Latido de las conexiones y cierre de las inactivas.
+ * Un unico temporizador del servidor invoca {@link #checkIdleConnections()} una vez por
+ * intervalo de latido: a cada conexion de la que no se ha recibido nada en
+ * un intervalo se le envia PING, y la que acumula el numero maximo de
+ * latidos sin respuesta se cierra. Al cerrarse, la conexion ejecuta su
+ * limpieza habitual ({@link ProtocolHandler#handleClientDisconnect}), de
+ * modo que las conexiones TCP medio abiertas no retienen indefinidamente
+ * un hilo, una sesion ni su registro de notificaciones.
+ *
+ * @author NetAuction Team
+ * @version 1.0
+ */
+public class IdleReaper {
+
+    /** Intervalo de latido en nanosegundos */
+    private final long intervalNanos;
+
+    /** Latidos sin respuesta tras los que se cierra la conexion */
+    private final int missedLimit;
+
+    /** Conexiones abiertas */
+    private final Set<ClientConnection> connections;
+
+    /** PING enviados desde el arranque */
+    private final AtomicLong pingCount;
+
+    /** Conexiones cerradas por inactividad desde el arranque */
+    private final AtomicLong reapedCount;
+
+    /**
+     * Constructor del recolector.
+     *
+     * @param intervalSeconds intervalo de latido en segundos
+     * @param missedLimit latidos sin respuesta tras los que se cierra la conexion
+     */
+    public IdleReaper(int intervalSeconds, int missedLimit) {
+        this.intervalNanos = TimeUnit.SECONDS.toNanos(intervalSeconds);
+        this.missedLimit = missedLimit;
+        this.connections = ConcurrentHashMap.newKeySet();
+        this.pingCount = new AtomicLong();
+        this.reapedCount = new AtomicLong();
+    }
+
+    /**
+     * Empieza a vigilar una conexion.
+     *
+     * @param connection conexion recien establecida
+     */
+    public void register(ClientConnection connection) {
+        connections.add(connection);
+    }
+
+    /**
+     * Deja de vigilar una conexion cerrada.
+     *
+     * @param connection conexion cerrada
+     */
+    public void unregister(ClientConnection connection) {
+        connections.remove(connection);
+    }
+
+    /**
+     * Revisa todas las conexiones: envia PING a las que llevan un intervalo
+     * sin enviar nada y cierra las que superan el limite de latidos.
+     */
+    public void checkIdleConnections() {
+        long now = System.nanoTime();
+        Message ping = new Message(Constants.ACTION_PING);
+        for (ClientConnection connection : connections) {
+            long idle = now - connection.getLastActivity();
+            if (idle >= intervalNanos * missedLimit) {
+                System.out.println("[SERVER] Cerrando conexion inactiva: " + connection.getClientAddress()
+                    + " (" + TimeUnit.NANOSECONDS.toSeconds(idle) + " s sin respuesta)");
+                reapedCount.incrementAndGet();
+                connections.remove(connection);
+                connection.stop();
+            } else if (idle >= intervalNanos) {
+                pingCount.incrementAndGet();
+                connection.sendMessage(ping);
+            }
+        }
+    }
+
+    /**
+     * @return intervalo de latido en segundos
+     */
+    public long getIntervalSeconds() {
+        return TimeUnit.NANOSECONDS.toSeconds(intervalNanos);
+    }
+
+    /**
+     * @return latidos sin respuesta tras los que se cierra la conexion
+     */
+    public int getMissedLimit() {
+        return missedLimit;
+    }
+
+    /**
+     * @return conexiones vigiladas
+     */
+    public int getConnectionCount() {
+        return connections.size();
+    }
+
+    /**
+     * @return PING enviados desde el arranque
+     */
+    public long getPingCount() {
+        return pingCount.get();
+    }
+
+    /**
+     * @return conexiones cerradas por inactividad desde el arranque
+     */
+    public long getReapedCount() {
+        return reapedCount.get();
+    }
+}
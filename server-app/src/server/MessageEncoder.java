@@ -0,0 +1,296 @@
+package server;
+
+import common.BinaryCodec;
+import common.Constants;
+import common.Message;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Codificador de los mensajes que una conexion envia al cliente.
+ * Escribe cada mensaje directamente en bytes sobre un buffer propio de la
+ * conexion que se reutiliza de un mensaje al siguiente: en JSON recorre el
+ * mensaje y genera el UTF-8 sin pasar por {@link Message#toJson()} (que
+ * construye un String con Gson y despues hay que volver a codificarlo), y
+ * en binario reserva la cabecera de longitud y la rellena al terminar, en
+ * lugar de copiar el contenido a una trama nueva. El unico array que se
+ * crea por mensaje es el que se entrega a la cola de salida.
+ *
+ * <p>No es thread-safe: cada conexion lo usa bajo su propio lock.</p>
+ *
+ * @author NetAuction Team
+ * @version 1.0
+ */
+public final class MessageEncoder extends ByteArrayOutputStream {
+
+    /** Digitos hexadecimales para los escapes \\uXXXX */
+    private static final byte[] HEX = {
+        '0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'a', 'b', 'c', 'd', 'e', 'f'
+    };
+
+    /** Espacio para los digitos de un long */
+    private final byte[] digits = new byte[20];
+
+    /**
+     * Constructor del codificador.
+     */
+    public MessageEncoder() {
+        super(Constants.ENCODER_INITIAL_BYTES);
+    }
+
+    /**
+     * Codifica un mensaje segun el protocolo negociado.
+     *
+     * @param message mensaje a codificar
+     * @param protocol {@link Constants#PROTOCOL_JSON} (linea con '\n') o
+     *                 {@link Constants#PROTOCOL_BINARY} (trama con longitud)
+     * @return bytes listos para escribir en el socket
+     */
+    public byte[] encode(Message message, int protocol) {
+        count = 0;
+        if (protocol == Constants.PROTOCOL_BINARY) {
+            ensureCapacity(4);
+            count = 4;
+            BinaryCodec.encodeInto(this, message);
+            int length = count - 4;
+            buf[0] = (byte) (length >>> 24);
+            buf[1] = (byte) (length >>> 16);
+            buf[2] = (byte) (length >>> 8);
+            buf[3] = (byte) length;
+        } else {
+            writeMessage(message);
+            write('\n');
+        }
+
+        byte[] bytes = Arrays.copyOf(buf, count);
+        if (buf.length > Constants.ENCODER_MAX_RETAINED_BYTES) {
+            // Un listado grande no debe dejar un buffer enorme en cada conexion
+            buf = new byte[Constants.ENCODER_INITIAL_BYTES];
+        }
+        count = 0;
+        return bytes;
+    }
+
+    // Sin synchronized: el buffer pertenece a una conexion y se usa bajo su lock
+
+    @Override
+    public void write(int b) {
+        ensureCapacity(1);
+        buf[count++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) {
+        ensureCapacity(length);
+        System.arraycopy(bytes, offset, buf, count, length);
+        count += length;
+    }
+
+    // ==================== JSON ====================
+
+    /**
+     * Escribe el mensaje con la misma estructura que {@link Message#toJson()}:
+     * action, id, token y data, omitiendo los campos nulos.
+     */
+    private void writeMessage(Message message) {
+        write('{');
+        boolean first = true;
+        if (message.getAction() != null) {
+            first = writeName("action", first);
+            writeString(message.getAction());
+        }
+        if (message.getId() != null) {
+            first = writeName("id", first);
+            writeLong(message.getId());
+        }
+        if (message.getToken() != null) {
+            first = writeName("token", first);
+            writeString(message.getToken());
+        }
+        if (message.getData() != null) {
+            writeName("data", first);
+            writeObject(message.getData());
+        }
+        write('}');
+    }
+
+    /**
+     * Escribe el nombre de un campo precedido de coma si no es el primero.
+     *
+     * @return false, para marcar que los siguientes ya no son el primero
+     */
+    private boolean writeName(String name, boolean first) {
+        if (!first) {
+            write(',');
+        }
+        writeString(name);
+        write(':');
+        return false;
+    }
+
+    private void writeObject(JsonObject object) {
+        write('{');
+        boolean first = true;
+        for (Map.Entry<String, JsonElement> entry : object.entrySet()) {
+            JsonElement value = entry.getValue();
+            if (value == null || value.isJsonNull()) {
+                // Como Gson sin serializeNulls: los campos nulos no se envian
+                continue;
+            }
+            first = writeName(entry.getKey(), first);
+            writeValue(value);
+        }
+        write('}');
+    }
+
+    private void writeValue(JsonElement value) {
+        if (value == null || value.isJsonNull()) {
+            writeAscii("null");
+        } else if (value.isJsonObject()) {
+            writeObject(value.getAsJsonObject());
+        } else if (value.isJsonArray()) {
+            JsonArray array = value.getAsJsonArray();
+            write('[');
+            for (int i = 0; i < array.size(); i++) {
+                if (i > 0) {
+                    write(',');
+                }
+                writeValue(array.get(i));
+            }
+            write(']');
+        } else {
+            JsonPrimitive primitive = value.getAsJsonPrimitive();
+            if (primitive.isBoolean()) {
+                writeAscii(primitive.getAsBoolean() ? "true" : "false");
+            } else if (primitive.isNumber()) {
+                writeNumber(primitive.getAsNumber());
+            } else {
+                writeString(primitive.getAsString());
+            }
+        }
+    }
+
+    private void writeNumber(Number number) {
+        if (number instanceof Long || number instanceof Integer
+                || number instanceof Short || number instanceof Byte) {
+            writeLong(number.longValue());
+            return;
+        }
+        if (number instanceof Double || number instanceof Float) {
+            double d = number.doubleValue();
+            if (Double.isNaN(d) || Double.isInfinite(d)) {
+                throw new IllegalArgumentException("Valor numerico no representable en JSON: " + d);
+            }
+        }
+        writeAscii(number.toString());
+    }
+
+    private void writeLong(long value) {
+        if (value == Long.MIN_VALUE) {
+            writeAscii(Long.toString(value));
+            return;
+        }
+        if (value < 0) {
+            write('-');
+            value = -value;
+        }
+        int position = digits.length;
+        do {
+            digits[--position] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value != 0);
+        write(digits, position, digits.length - position);
+    }
+
+    private void writeAscii(String value) {
+        int length = value.length();
+        ensureCapacity(length);
+        for (int i = 0; i < length; i++) {
+            buf[count++] = (byte) value.charAt(i);
+        }
+    }
+
+    /**
+     * Escribe un texto entre comillas, escapado y codificado en UTF-8.
+     */
+    private void writeString(String value) {
+        int length = value.length();
+        ensureCapacity(length + 2);
+        buf[count++] = '"';
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            // Peor caso por caracter: escape \\uXXXX (6 bytes) o la comilla final
+            ensureCapacity(7);
+            if (c == '"' || c == '\\') {
+                buf[count++] = '\\';
+                buf[count++] = (byte) c;
+            } else if (c < 0x20 || c == '\u2028' || c == '\u2029') {
+                writeEscaped(c);
+            } else if (c < 0x80) {
+                buf[count++] = (byte) c;
+            } else if (c < 0x800) {
+                buf[count++] = (byte) (0xC0 | (c >> 6));
+                buf[count++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length
+                    && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                buf[count++] = (byte) (0xF0 | (codePoint >> 18));
+                buf[count++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                buf[count++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                buf[count++] = (byte) (0x80 | (codePoint & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                // Surrogate suelto: lo mismo que haria String.getBytes(UTF_8)
+                buf[count++] = '?';
+            } else {
+                buf[count++] = (byte) (0xE0 | (c >> 12));
+                buf[count++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                buf[count++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        buf[count++] = '"';
+    }
+
+    private void writeEscaped(char c) {
+        buf[count++] = '\\';
+        switch (c) {
+            case '\n':
+                buf[count++] = 'n';
+                return;
+            case '\r':
+                buf[count++] = 'r';
+                return;
+            case '\t':
+                buf[count++] = 't';
+                return;
+            case '\b':
+                buf[count++] = 'b';
+                return;
+            case '\f':
+                buf[count++] = 'f';
+                return;
+            default:
+                buf[count++] = 'u';
+                buf[count++] = HEX[(c >> 12) & 0xF];
+                buf[count++] = HEX[(c >> 8) & 0xF];
+                buf[count++] = HEX[(c >> 4) & 0xF];
+                buf[count++] = HEX[c & 0xF];
+        }
+    }
+
+    /**
+     * Garantiza espacio para {@code extra} bytes mas, duplicando el buffer si hace falta.
+     */
+    private void ensureCapacity(int extra) {
+        int needed = count + extra;
+        if (needed > buf.length) {
+            buf = Arrays.copyOf(buf, Math.max(needed, buf.length * 2));
+        }
+    }
+}
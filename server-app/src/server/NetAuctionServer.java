@@ -4,19 +4,31 @@ import common.Constants;
 import server.manager.AuctionManager;
 import server.manager.SessionManager;
 import server.manager.UserManager;
+import server.http.HttpGateway;
 import server.model.Auction;
+import server.nio.NioServer;
 import server.persistence.Database;
+import server.persistence.Durability;
+import server.security.HandshakeStats;
 import server.security.SSLConfig;
 import server.service.NotificationService;
 
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocket;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.nio.charset.StandardCharsets;
 import java.sql.SQLException;
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -35,10 +47,61 @@ public class NetAuctionServer {
     /** Socket del servidor para aceptar conexiones */
     private ServerSocket serverSocket;
 
-    /** Pool de hilos para manejar clientes concurrentes */
+    /** Ejecutor de los manejadores de cliente (pool fijo o hilos virtuales) */
     private ExecutorService executorService;
 
-    /** Planificador para monitorizar subastas expiradas */
+    /** Ejecutor de las peticiones con id que llegan en paralelo por una conexion */
+    private ExecutorService requestExecutor;
+
+    /** Ejecutor de los escritores de cada conexion */
+    private ExecutorService writerExecutor;
+
+    /** Pool acotado donde se completan las negociaciones TLS (null sin SSL) */
+    private ThreadPoolExecutor handshakeExecutor;
+
+    /** Metricas de las negociaciones TLS */
+    private final HandshakeStats handshakeStats = new HandshakeStats();
+
+    /** Politica cuando la cola de salida de un cliente se llena */
+    private OutboundQueue.OverflowPolicy overflowPolicy = OutboundQueue.OverflowPolicy.COALESCE;
+
+    /** Conexiones simultaneas admitidas (0 para el valor por defecto del motor) */
+    private int maxConnections;
+
+    /** Espera maxima (ms) entre aceptar una conexion y empezar a atenderla */
+    private long maxQueueAgeMillis = Constants.ADMISSION_MAX_QUEUE_AGE_MS;
+
+    /** Control de admision de conexiones */
+    private AdmissionControl admissionControl;
+
+    /** Limitador de peticiones por conexion y usuario */
+    private final RateLimiter rateLimiter = new RateLimiter();
+
+    /** Segundos sin recibir nada de una conexion tras los que se le envia PING */
+    private int heartbeatIntervalSeconds = Constants.HEARTBEAT_INTERVAL_SECONDS;
+
+    /** Latidos sin respuesta tras los que se cierra una conexion */
+    private int heartbeatMissedLimit = Constants.HEARTBEAT_MISSED_LIMIT;
+
+    /** Latido y cierre de conexiones inactivas */
+    private IdleReaper idleReaper;
+
+    /** Bytes a partir de los cuales se comprime un lote de salida (0 sin compresion) */
+    private int compressionThreshold = Constants.COMPRESSION_THRESHOLD_BYTES;
+
+    /** Puerto de la pasarela HTTP de consulta (0 si esta deshabilitada) */
+    private int httpPort;
+
+    /** Durabilidad con la que se confirman las pujas */
+    private Durability bidDurability = Durability.fromName(Constants.BID_DURABILITY);
+
+    /** Durabilidad con la que se confirman las altas, los cierres y las cancelaciones */
+    private Durability closeDurability = Durability.fromName(Constants.CLOSE_DURABILITY);
+
+    /** Pasarela HTTP de consulta (null si esta deshabilitada) */
+    private HttpGateway httpGateway;
+
+    /** Planificador de las tareas periodicas (consumidores lentos, latido, metricas) */
     private ScheduledExecutorService auctionMonitor;
 
     /** Manejador del protocolo de comunicacion */
@@ -65,6 +128,12 @@ public class NetAuctionServer {
     /** Indica si SSL/TLS esta habilitado */
     private boolean sslEnabled;
 
+    /** Motor de conexiones utilizado para atender a los clientes */
+    private final ConnectionEngine connectionEngine;
+
+    /** Motor NIO (solo si connectionEngine es NIO) */
+    private NioServer nioServer;
+
     /**
      * Constructor con puerto por defecto y SSL habilitado.
      *
@@ -81,9 +150,106 @@ public class NetAuctionServer {
      * @param sslEnabled true para habilitar SSL/TLS
      */
     public NetAuctionServer(int port, boolean sslEnabled) {
+        this(port, sslEnabled, ConnectionEngine.THREAD_POOL);
+    }
+
+    /**
+     * Constructor con motor de conexiones explicito.
+     *
+     * @param port puerto en el que escuchara el servidor
+     * @param sslEnabled true para habilitar SSL/TLS
+     * @param connectionEngine motor de conexiones a utilizar
+     */
+    public NetAuctionServer(int port, boolean sslEnabled, ConnectionEngine connectionEngine) {
         this.port = port;
         this.running = false;
         this.sslEnabled = sslEnabled;
+        this.connectionEngine = connectionEngine;
+    }
+
+    /**
+     * Establece la politica a aplicar cuando la cola de salida de un cliente se llena.
+     *
+     * @param overflowPolicy politica de desbordamiento
+     */
+    public void setOverflowPolicy(OutboundQueue.OverflowPolicy overflowPolicy) {
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    /**
+     * Establece el maximo de conexiones simultaneas. Por defecto es
+     * {@link Constants#THREAD_POOL_SIZE} con el pool fijo (cada conexion ocupa
+     * un hilo) y {@link Constants#MAX_CONNECTIONS} con los demas motores.
+     *
+     * @param maxConnections conexiones simultaneas admitidas (0 para el valor por defecto)
+     */
+    public void setMaxConnections(int maxConnections) {
+        this.maxConnections = maxConnections;
+    }
+
+    /**
+     * Establece la espera maxima entre aceptar una conexion y empezar a atenderla.
+     *
+     * @param maxQueueAgeMillis espera maxima en milisegundos
+     */
+    public void setMaxQueueAgeMillis(long maxQueueAgeMillis) {
+        this.maxQueueAgeMillis = maxQueueAgeMillis;
+    }
+
+    /**
+     * Establece el intervalo de latido.
+     *
+     * @param heartbeatIntervalSeconds segundos sin recibir nada tras los que se envia PING
+     */
+    public void setHeartbeatIntervalSeconds(int heartbeatIntervalSeconds) {
+        this.heartbeatIntervalSeconds = heartbeatIntervalSeconds;
+    }
+
+    /**
+     * Establece cuantos latidos sin respuesta se toleran antes de cerrar una conexion.
+     *
+     * @param heartbeatMissedLimit latidos sin respuesta
+     */
+    public void setHeartbeatMissedLimit(int heartbeatMissedLimit) {
+        this.heartbeatMissedLimit = heartbeatMissedLimit;
+    }
+
+    /**
+     * Establece el umbral de compresion de los lotes de salida para los
+     * clientes que la solicitan en el HELLO.
+     *
+     * @param compressionThreshold bytes a partir de los cuales se comprime (0 para deshabilitarla)
+     */
+    public void setCompressionThreshold(int compressionThreshold) {
+        this.compressionThreshold = compressionThreshold;
+    }
+
+    /**
+     * Habilita la pasarela HTTP de solo lectura para consultar subastas sin sesion.
+     *
+     * @param httpPort puerto de la pasarela (0 para deshabilitarla)
+     */
+    public void setHttpPort(int httpPort) {
+        this.httpPort = httpPort;
+    }
+
+    /**
+     * Establece cuando se confirma una puja que no pide otra durabilidad.
+     *
+     * @param bidDurability durabilidad de las pujas
+     */
+    public void setBidDurability(Durability bidDurability) {
+        this.bidDurability = bidDurability;
+    }
+
+    /**
+     * Establece cuando se confirman las altas, los cierres y las
+     * cancelaciones que no piden otra durabilidad.
+     *
+     * @param closeDurability durabilidad de las altas, cierres y cancelaciones
+     */
+    public void setCloseDurability(Durability closeDurability) {
+        this.closeDurability = closeDurability;
     }
 
     /**
@@ -107,6 +273,9 @@ public class NetAuctionServer {
         userManager = new UserManager();
         sessionManager = new SessionManager();
         auctionManager = new AuctionManager();
+        auctionManager.setExpiryListener(this::notifyClosedAuctions);
+        auctionManager.setBidDurability(bidDurability);
+        auctionManager.setCloseDurability(closeDurability);
 
         if (database != null) {
             userManager.setDatabase(database);
@@ -120,10 +289,53 @@ public class NetAuctionServer {
 
         protocolHandler = new ProtocolHandler(userManager, sessionManager, auctionManager);
         protocolHandler.setNotificationService(notificationService);
+        if (sslEnabled) {
+            protocolHandler.setHandshakeStats(handshakeStats);
+        }
+
+        if (maxConnections <= 0) {
+            maxConnections = connectionEngine == ConnectionEngine.THREAD_POOL
+                ? Constants.THREAD_POOL_SIZE : Constants.MAX_CONNECTIONS;
+        }
+        admissionControl = new AdmissionControl(maxConnections, maxQueueAgeMillis);
+        protocolHandler.setAdmissionControl(admissionControl);
+        protocolHandler.setRateLimiter(rateLimiter);
+        idleReaper = new IdleReaper(heartbeatIntervalSeconds, heartbeatMissedLimit);
+        protocolHandler.setIdleReaper(idleReaper);
+        protocolHandler.setCompressionThreshold(compressionThreshold);
+
+        if (httpPort > 0) {
+            httpGateway = new HttpGateway(httpPort, auctionManager);
+            httpGateway.start();
+            protocolHandler.setHttpGateway(httpGateway);
+        }
 
-        executorService = Executors.newFixedThreadPool(Constants.THREAD_POOL_SIZE);
         auctionMonitor = Executors.newSingleThreadScheduledExecutor();
-        auctionMonitor.scheduleAtFixedRate(this::closeExpiredAuctionsSafely, 1, 1, TimeUnit.SECONDS);
+        auctionMonitor.scheduleAtFixedRate(this::checkSlowConsumersSafely, 1, 1, TimeUnit.SECONDS);
+        auctionMonitor.scheduleAtFixedRate(FlushStats::sample, 1, 1, TimeUnit.SECONDS);
+        auctionMonitor.scheduleAtFixedRate(rateLimiter::purgeIdle, Constants.RATE_LIMIT_PURGE_SECONDS,
+            Constants.RATE_LIMIT_PURGE_SECONDS, TimeUnit.SECONDS);
+        auctionMonitor.scheduleAtFixedRate(this::checkIdleConnectionsSafely, heartbeatIntervalSeconds,
+            heartbeatIntervalSeconds, TimeUnit.SECONDS);
+
+        if (sslEnabled) {
+            handshakeExecutor = createHandshakeExecutor();
+        }
+
+        if (connectionEngine == ConnectionEngine.NIO) {
+            startNioEngine();
+            return;
+        }
+
+        if (connectionEngine == ConnectionEngine.VIRTUAL_THREADS) {
+            executorService = createVirtualThreadExecutor();
+            requestExecutor = createVirtualThreadExecutor();
+            writerExecutor = createVirtualThreadExecutor();
+        } else {
+            executorService = Executors.newFixedThreadPool(Constants.THREAD_POOL_SIZE);
+            requestExecutor = Executors.newFixedThreadPool(Constants.THREAD_POOL_SIZE);
+            writerExecutor = Executors.newCachedThreadPool();
+        }
 
         if (sslEnabled) {
             try {
@@ -136,17 +348,19 @@ public class NetAuctionServer {
             serverSocket = new ServerSocket(port);
         }
         running = true;
-
-        System.out.println("[SERVER] Puerto: " + port);
-        System.out.println("[SERVER] SSL/TLS: " + (sslEnabled ? "HABILITADO" : "DESHABILITADO"));
-        System.out.println("[SERVER] Estado: ACTIVO - Esperando conexiones...");
+        printStatus();
 
         while (running) {
             try {
                 Socket clientSocket = serverSocket.accept();
-                ClientHandler clientHandler = new ClientHandler(clientSocket);
-                clientHandler.setProtocolHandler(protocolHandler);
-                executorService.submit(clientHandler);
+                long acceptedAt = System.nanoTime();
+                if (!admissionControl.tryAdmit()) {
+                    rejectBusy(clientSocket);
+                } else if (handshakeExecutor != null) {
+                    submitHandshake(clientSocket, acceptedAt);
+                } else {
+                    startClientHandler(clientSocket, acceptedAt);
+                }
             } catch (IOException e) {
                 if (running) {
                     System.err.println("[SERVER] Error aceptando conexion: " + e.getMessage());
@@ -155,9 +369,220 @@ public class NetAuctionServer {
         }
     }
 
+    /**
+     * Entrega una conexion admitida a su manejador de cliente.
+     * Si el ejecutor ya no acepta tareas se libera su hueco y se cierra.
+     *
+     * @param clientSocket socket del cliente (con la negociacion TLS ya completada)
+     * @param acceptedAt instante (System.nanoTime) en que se acepto
+     */
+    private void startClientHandler(Socket clientSocket, long acceptedAt) {
+        ClientHandler clientHandler = new ClientHandler(clientSocket);
+        clientHandler.setProtocolHandler(protocolHandler);
+        clientHandler.setRequestExecutor(requestExecutor);
+        clientHandler.setWriterExecutor(writerExecutor);
+        clientHandler.setOverflowPolicy(overflowPolicy);
+        clientHandler.setAdmissionControl(admissionControl, acceptedAt);
+        try {
+            executorService.submit(clientHandler);
+        } catch (RejectedExecutionException e) {
+            admissionControl.release();
+            closeQuietly(clientSocket);
+        }
+    }
+
+    /**
+     * Encola la negociacion TLS de una conexion admitida en el pool de negociacion.
+     * Si el pool esta saturado la conexion se cierra en el acto: es preferible
+     * a aceptar negociaciones que no daria tiempo a completar.
+     *
+     * @param clientSocket socket TLS aceptado
+     * @param acceptedAt instante (System.nanoTime) en que se acepto
+     */
+    private void submitHandshake(Socket clientSocket, long acceptedAt) {
+        try {
+            handshakeExecutor.execute(() -> completeHandshake((SSLSocket) clientSocket, acceptedAt));
+        } catch (RejectedExecutionException e) {
+            handshakeStats.recordRejected();
+            admissionControl.release();
+            closeQuietly(clientSocket);
+        }
+    }
+
+    /**
+     * Rechaza una conexion por haber alcanzado el maximo de conexiones: le
+     * envia SERVER_BUSY y la cierra. Con TLS hace falta negociar antes de
+     * poder enviarlo, asi que se hace en el pool de negociacion; si esta
+     * lleno la conexion se cierra sin aviso.
+     *
+     * @param clientSocket socket aceptado
+     */
+    private void rejectBusy(Socket clientSocket) {
+        if (handshakeExecutor == null) {
+            sendBusyAndClose(clientSocket);
+            return;
+        }
+        try {
+            handshakeExecutor.execute(() -> sendBusyAndClose(clientSocket));
+        } catch (RejectedExecutionException e) {
+            closeQuietly(clientSocket);
+        }
+    }
+
+    /**
+     * Envia SERVER_BUSY en JSON (aun no se ha negociado protocolo) y cierra el socket.
+     *
+     * @param clientSocket socket del cliente rechazado
+     */
+    private static void sendBusyAndClose(Socket clientSocket) {
+        try {
+            clientSocket.setSoTimeout(Constants.TLS_HANDSHAKE_TIMEOUT_MS);
+            clientSocket.setTcpNoDelay(true);
+            OutputStream out = clientSocket.getOutputStream();
+            out.write((AdmissionControl.createBusyMessage().toJson() + "\n").getBytes(StandardCharsets.UTF_8));
+            out.flush();
+        } catch (IOException e) {
+            // El cliente se fue antes de recibir el aviso
+        } finally {
+            closeQuietly(clientSocket);
+        }
+    }
+
+    /**
+     * Completa la negociacion TLS en el pool de negociacion y, si termina bien,
+     * entrega la conexion a su manejador. Asi el hilo del cliente solo atiende
+     * el protocolo y no le cuesta una negociacion completa la primera lectura.
+     *
+     * @param clientSocket socket TLS aceptado
+     * @param acceptedAt instante (System.nanoTime) en que se acepto
+     */
+    private void completeHandshake(SSLSocket clientSocket, long acceptedAt) {
+        long startMillis = System.currentTimeMillis();
+        long startNanos = System.nanoTime();
+        try {
+            // Sin Nagle: cada vuelo de la negociacion sale sin esperar al ACK retardado
+            clientSocket.setTcpNoDelay(true);
+            clientSocket.setSoTimeout(Constants.TLS_HANDSHAKE_TIMEOUT_MS);
+            clientSocket.startHandshake();
+            clientSocket.setSoTimeout(0);
+        } catch (IOException e) {
+            handshakeStats.recordFailure();
+            System.err.println("[SERVER] Negociacion TLS fallida con "
+                + clientSocket.getInetAddress().getHostAddress() + ": " + e.getMessage());
+            admissionControl.release();
+            closeQuietly(clientSocket);
+            return;
+        }
+        handshakeStats.recordHandshake(clientSocket.getSession(), startMillis, System.nanoTime() - startNanos);
+        startClientHandler(clientSocket, acceptedAt);
+    }
+
+    /**
+     * Crea el pool acotado de negociaciones TLS: un hilo por nucleo y una cola
+     * limitada, para que una oleada de reconexiones no acapare la CPU.
+     *
+     * @return pool de negociacion
+     */
+    private static ThreadPoolExecutor createHandshakeExecutor() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+            Constants.TLS_HANDSHAKE_THREADS, Constants.TLS_HANDSHAKE_THREADS,
+            60, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<>(Constants.TLS_HANDSHAKE_QUEUE_CAPACITY),
+            runnable -> {
+                Thread thread = new Thread(runnable, "tls-handshake");
+                thread.setDaemon(true);
+                return thread;
+            });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Cierra un socket ignorando errores.
+     *
+     * @param socket socket a cerrar
+     */
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // Ignorar
+        }
+    }
+
+    /**
+     * Arranca el motor NIO y bloquea hasta que se detenga el servidor.
+     *
+     * @throws IOException si no se puede abrir el puerto o inicializar SSL/TLS
+     */
+    private void startNioEngine() throws IOException {
+        SSLContext sslContext = null;
+        if (sslEnabled) {
+            try {
+                sslContext = SSLConfig.createServerContext();
+                System.out.println("[SERVER] SSL/TLS habilitado");
+            } catch (Exception e) {
+                throw new IOException("No se pudo inicializar SSL/TLS obligatorio", e);
+            }
+        }
+
+        nioServer = new NioServer(port, sslContext, protocolHandler);
+        nioServer.setOverflowPolicy(overflowPolicy);
+        nioServer.setHandshakeExecutor(handshakeExecutor);
+        nioServer.setHandshakeStats(handshakeStats);
+        nioServer.setAdmissionControl(admissionControl);
+        running = true;
+        printStatus();
+        nioServer.start();
+    }
+
+    /**
+     * Crea un ejecutor que lanza cada manejador de cliente en su propio hilo virtual.
+     * Se obtiene por reflexion para seguir compilando con JDK 17; si la JVM no
+     * soporta hilos virtuales (Java 21+) se vuelve al pool fijo.
+     *
+     * @return ejecutor de hilos virtuales o pool fijo si no estan disponibles
+     */
+    private static ExecutorService createVirtualThreadExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            System.err.println("[SERVER] Hilos virtuales no disponibles (requiere Java 21+), usando pool fijo");
+            return Executors.newFixedThreadPool(Constants.THREAD_POOL_SIZE);
+        }
+    }
+
+    /**
+     * Muestra por consola la configuracion con la que ha arrancado el servidor.
+     */
+    private void printStatus() {
+        System.out.println("[SERVER] Puerto: " + port);
+        System.out.println("[SERVER] SSL/TLS: " + (sslEnabled ? "HABILITADO" : "DESHABILITADO"));
+        System.out.println("[SERVER] Motor: " + connectionEngine);
+        System.out.println("[SERVER] Admision: " + admissionControl.getMaxConnections() + " conexiones, espera maxima "
+            + admissionControl.getMaxQueueAgeMillis() + " ms");
+        System.out.println("[SERVER] Latido: PING cada " + heartbeatIntervalSeconds + " s de inactividad, cierre tras "
+            + heartbeatMissedLimit + " sin respuesta");
+        System.out.println("[SERVER] Compresion: " + (compressionThreshold > 0
+            ? "deflate a partir de " + compressionThreshold + " bytes" : "DESHABILITADA"));
+        System.out.println("[SERVER] Pasarela HTTP: " + (httpGateway != null
+            ? "puerto " + httpGateway.getPort() : "DESHABILITADA"));
+        System.out.println("[SERVER] Durabilidad: pujas " + bidDurability.getName() + ", altas, cierres y cancelaciones "
+            + closeDurability.getName() + (database == null ? " (sin base de datos: se confirman en memoria)" : ""));
+        if (handshakeExecutor != null) {
+            System.out.println("[SERVER] Negociacion TLS: " + Constants.TLS_HANDSHAKE_THREADS + " hilos, cache de "
+                + Constants.TLS_SESSION_CACHE_SIZE + " sesiones durante " + Constants.TLS_SESSION_TIMEOUT_SECONDS + " s");
+        }
+        System.out.println("[SERVER] Cola de salida: " + Constants.OUTBOUND_QUEUE_CAPACITY + " mensajes, politica " + overflowPolicy);
+        System.out.println("[SERVER] Estado: ACTIVO - Esperando conexiones...");
+    }
+
     /**
      * Detiene el servidor de forma ordenada.
-     * Cierra el monitor de subastas, sesiones, notificaciones, socket y pool de hilos.
+     * Primero deja de aceptar conexiones y peticiones y espera a las que estan
+     * en curso; despues apaga el gestor de subastas, que guarda las escrituras
+     * pendientes, y por ultimo cierra sesiones, notificaciones y base de datos.
      */
     public void stop() {
         running = false;
@@ -167,12 +592,8 @@ public class NetAuctionServer {
             auctionMonitor.shutdownNow();
         }
 
-        if (sessionManager != null) {
-            sessionManager.shutdown();
-        }
-
-        if (notificationService != null) {
-            notificationService.clear();
+        if (httpGateway != null) {
+            httpGateway.stop();
         }
 
         try {
@@ -183,6 +604,14 @@ public class NetAuctionServer {
             System.err.println("[SERVER] Error cerrando socket: " + e.getMessage());
         }
 
+        if (nioServer != null) {
+            nioServer.stop();
+        }
+
+        if (handshakeExecutor != null) {
+            handshakeExecutor.shutdownNow();
+        }
+
         if (executorService != null) {
             executorService.shutdown();
             try {
@@ -195,6 +624,36 @@ public class NetAuctionServer {
             }
         }
 
+        if (requestExecutor != null) {
+            requestExecutor.shutdown();
+            try {
+                if (!requestExecutor.awaitTermination(5, TimeUnit.SECONDS)) {
+                    requestExecutor.shutdownNow();
+                }
+            } catch (InterruptedException e) {
+                requestExecutor.shutdownNow();
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        if (writerExecutor != null) {
+            writerExecutor.shutdownNow();
+        }
+
+        // Sin peticiones en curso: ya no llegan operaciones a las particiones
+        // ni escrituras a la cola, que se vacia antes de cerrar la base de datos
+        if (auctionManager != null) {
+            auctionManager.shutdown();
+        }
+
+        if (sessionManager != null) {
+            sessionManager.shutdown();
+        }
+
+        if (notificationService != null) {
+            notificationService.clear();
+        }
+
         if (database != null) {
             database.close();
         }
@@ -203,20 +662,48 @@ public class NetAuctionServer {
     }
 
     /**
-     * Cierra las subastas expiradas de forma segura y notifica a los participantes.
-     * Este metodo es invocado periodicamente por el planificador.
+     * Revisa los consumidores lentos sin dejar que un error cancele la tarea periodica.
      */
-    private void closeExpiredAuctionsSafely() {
-        if (!running || auctionManager == null) {
+    private void checkSlowConsumersSafely() {
+        if (!running || notificationService == null) {
             return;
         }
+        try {
+            notificationService.checkSlowConsumers();
+        } catch (Exception e) {
+            System.err.println("[SERVER] Error revisando consumidores lentos: " + e.getMessage());
+        }
+    }
 
+    /**
+     * Envia latidos a las conexiones inactivas, cierra las que no responden
+     * y elimina las sesiones expiradas, capturando cualquier excepcion.
+     */
+    private void checkIdleConnectionsSafely() {
+        if (!running || idleReaper == null) {
+            return;
+        }
         try {
-            List<Auction> closedAuctions = auctionManager.closeExpiredAuctions();
-            if (notificationService == null) {
-                return;
-            }
+            idleReaper.checkIdleConnections();
+            sessionManager.purgeExpiredSessions();
+        } catch (Exception e) {
+            System.err.println("[SERVER] Error revisando conexiones inactivas: " + e.getMessage());
+        }
+    }
 
+    /**
+     * Notifica a los participantes el cierre de las subastas que acaban de vencer.
+     * La invoca la rueda de vencimientos del gestor de subastas con todas las
+     * que vencen en el mismo tick.
+     *
+     * @param closedAuctions subastas cerradas por vencimiento
+     */
+    private void notifyClosedAuctions(List<Auction> closedAuctions) {
+        if (!running || notificationService == null) {
+            return;
+        }
+
+        try {
             for (Auction auction : closedAuctions) {
                 notificationService.notifyAuctionClosed(
                     auction.getId(),
@@ -227,7 +714,7 @@ public class NetAuctionServer {
                 );
             }
         } catch (Exception e) {
-            System.err.println("[SERVER] Error cerrando subastas expiradas: " + e.getMessage());
+            System.err.println("[SERVER] Error notificando subastas cerradas: " + e.getMessage());
         }
     }
 
@@ -235,15 +722,88 @@ public class NetAuctionServer {
      * Punto de entrada principal del servidor.
      * Parsea los argumentos de linea de comandos y arranca el servidor.
      *
-     * @param args argumentos de linea de comandos (puerto y --ssl)
+     * @param args argumentos de linea de comandos (puerto, --ssl, --nio, --virtual, --overflow=,
+     *             --max-connections=, --max-queue-age=, --heartbeat=, --heartbeat-missed=,
+     *             --compress-threshold=, --http-port=, --durability= y --close-durability=)
      */
     public static void main(String[] args) {
         int port = Constants.SERVER_PORT;
         boolean ssl = true;
+        ConnectionEngine engine = ConnectionEngine.THREAD_POOL;
+        OutboundQueue.OverflowPolicy overflowPolicy = OutboundQueue.OverflowPolicy.COALESCE;
+        int maxConnections = 0;
+        long maxQueueAge = Constants.ADMISSION_MAX_QUEUE_AGE_MS;
+        int heartbeatInterval = Constants.HEARTBEAT_INTERVAL_SECONDS;
+        int heartbeatMissed = Constants.HEARTBEAT_MISSED_LIMIT;
+        int compressionThreshold = Constants.COMPRESSION_THRESHOLD_BYTES;
+        int httpPort = 0;
+        Durability bidDurability = Durability.fromName(Constants.BID_DURABILITY);
+        Durability closeDurability = Durability.fromName(Constants.CLOSE_DURABILITY);
 
         for (String arg : args) {
             if ("--ssl".equalsIgnoreCase(arg) || "-ssl".equalsIgnoreCase(arg)) {
                 ssl = true;
+            } else if ("--nio".equalsIgnoreCase(arg)) {
+                engine = ConnectionEngine.NIO;
+            } else if ("--virtual".equalsIgnoreCase(arg)) {
+                engine = ConnectionEngine.VIRTUAL_THREADS;
+            } else if (arg.toLowerCase().startsWith("--overflow=")) {
+                try {
+                    overflowPolicy = OutboundQueue.OverflowPolicy.parse(arg.substring("--overflow=".length()));
+                } catch (IllegalArgumentException e) {
+                    System.err.println("[SERVER] Politica de desbordamiento desconocida: " + arg
+                        + " (drop-oldest, coalesce, disconnect)");
+                }
+            } else if (arg.toLowerCase().startsWith("--max-connections=")) {
+                try {
+                    maxConnections = Integer.parseInt(arg.substring("--max-connections=".length()));
+                } catch (NumberFormatException e) {
+                    System.err.println("[SERVER] Maximo de conexiones no valido: " + arg);
+                }
+            } else if (arg.toLowerCase().startsWith("--max-queue-age=")) {
+                try {
+                    maxQueueAge = Long.parseLong(arg.substring("--max-queue-age=".length()));
+                } catch (NumberFormatException e) {
+                    System.err.println("[SERVER] Espera maxima no valida: " + arg);
+                }
+            } else if (arg.toLowerCase().startsWith("--heartbeat=")) {
+                try {
+                    heartbeatInterval = Math.max(1, Integer.parseInt(arg.substring("--heartbeat=".length())));
+                } catch (NumberFormatException e) {
+                    System.err.println("[SERVER] Intervalo de latido no valido: " + arg);
+                }
+            } else if (arg.toLowerCase().startsWith("--heartbeat-missed=")) {
+                try {
+                    heartbeatMissed = Math.max(1, Integer.parseInt(arg.substring("--heartbeat-missed=".length())));
+                } catch (NumberFormatException e) {
+                    System.err.println("[SERVER] Limite de latidos no valido: " + arg);
+                }
+            } else if (arg.toLowerCase().startsWith("--compress-threshold=")) {
+                try {
+                    compressionThreshold = Math.max(0, Integer.parseInt(arg.substring("--compress-threshold=".length())));
+                } catch (NumberFormatException e) {
+                    System.err.println("[SERVER] Umbral de compresion no valido: " + arg);
+                }
+            } else if (arg.toLowerCase().startsWith("--http-port=")) {
+                try {
+                    httpPort = Math.max(0, Integer.parseInt(arg.substring("--http-port=".length())));
+                } catch (NumberFormatException e) {
+                    System.err.println("[SERVER] Puerto HTTP no valido: " + arg);
+                }
+            } else if (arg.toLowerCase().startsWith("--durability=")) {
+                Durability durability = Durability.fromName(arg.substring("--durability=".length()));
+                if (durability != null) {
+                    bidDurability = durability;
+                } else {
+                    System.err.println("[SERVER] Durabilidad desconocida: " + arg + " (memory, queued, durable)");
+                }
+            } else if (arg.toLowerCase().startsWith("--close-durability=")) {
+                Durability durability = Durability.fromName(arg.substring("--close-durability=".length()));
+                if (durability != null) {
+                    closeDurability = durability;
+                } else {
+                    System.err.println("[SERVER] Durabilidad desconocida: " + arg + " (memory, queued, durable)");
+                }
             } else {
                 try {
                     port = Integer.parseInt(arg);
@@ -253,7 +813,16 @@ public class NetAuctionServer {
             }
         }
 
-        NetAuctionServer server = new NetAuctionServer(port, ssl);
+        NetAuctionServer server = new NetAuctionServer(port, ssl, engine);
+        server.setOverflowPolicy(overflowPolicy);
+        server.setMaxConnections(maxConnections);
+        server.setMaxQueueAgeMillis(maxQueueAge);
+        server.setHeartbeatIntervalSeconds(heartbeatInterval);
+        server.setHeartbeatMissedLimit(heartbeatMissed);
+        server.setCompressionThreshold(compressionThreshold);
+        server.setHttpPort(httpPort);
+        server.setBidDurability(bidDurability);
+        server.setCloseDurability(closeDurability);
 
         Runtime.getRuntime().addShutdownHook(new Thread(() -> {
             System.out.println("\n[SERVER] Senal de apagado recibida...");
@@ -268,4 +837,16 @@ public class NetAuctionServer {
             System.exit(1);
         }
     }
+
+    /**
+     * Motores de conexiones disponibles para atender a los clientes.
+     */
+    public enum ConnectionEngine {
+        /** Un hilo del pool fijo por cliente conectado (modo clasico) */
+        THREAD_POOL,
+        /** Un hilo virtual por cliente conectado (requiere Java 21+) */
+        VIRTUAL_THREADS,
+        /** Bucles de eventos java.nio con SSLEngine; los clientes inactivos no ocupan hilos */
+        NIO
+    }
 }
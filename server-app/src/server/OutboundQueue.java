@@ -0,0 +1,607 @@
+package server;
+
+import common.Constants;
+import common.Message;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Cola de salida acotada de una conexion.
+ * Los hilos que responden o notifican solo encolan el mensaje ya serializado;
+ * el escritor de la conexion lo envia despues, de modo que un cliente lento
+ * nunca bloquea a quien genera las notificaciones.
+ *
+ * <p>Las respuestas y los cierres de subasta se aceptan siempre (las respuestas
+ * ya estan limitadas por las peticiones en vuelo). Cuando la cola esta llena,
+ * las notificaciones de puja se tratan segun la {@link OverflowPolicy}.</p>
+ *
+ * <p>Tambien mide al consumidor: bytes pendientes (encolados o en escritura),
+ * hora de la ultima escritura completada y latencia desde que se encola un
+ * mensaje hasta que se termina de escribir. Una cola degradada fusiona
+ * siempre las notificaciones de puja de la misma subasta, de modo que el
+ * cliente lento solo recibe el ultimo estado de cada una.</p>
+ *
+ * <p>Mientras se procesa una peticion que se responde en el acto la cola esta
+ * "taponada" ({@link #cork()}): el escritor no la vacia hasta {@link #uncork()},
+ * de modo que la respuesta y las notificaciones que genera salen juntas en un
+ * unico flush. Las que esperan a su particion no la retienen mientras.</p>
+ *
+ * @author NetAuction Team
+ * @version 1.0
+ */
+public class OutboundQueue {
+
+    /**
+     * Politica a aplicar cuando llega una notificacion con la cola llena.
+     */
+    public enum OverflowPolicy {
+        /** Descarta la notificacion de puja mas antigua de la cola */
+        DROP_OLDEST,
+        /** Sustituye la notificacion pendiente de la misma subasta (si no hay, descarta la mas antigua) */
+        COALESCE,
+        /** Cierra la conexion del cliente lento */
+        DISCONNECT;
+
+        /**
+         * Interpreta el nombre de una politica (drop-oldest, coalesce, disconnect).
+         *
+         * @param name nombre de la politica
+         * @return politica correspondiente
+         * @throws IllegalArgumentException si el nombre no es valido
+         */
+        public static OverflowPolicy parse(String name) {
+            return valueOf(name.trim().toUpperCase().replace('-', '_'));
+        }
+    }
+
+    /**
+     * Mensaje encolado junto con sus bytes ya codificados para la conexion.
+     */
+    public static final class Entry {
+        private final Message message;
+        private final byte[] bytes;
+        private final long enqueuedAt;
+
+        Entry(Message message, byte[] bytes) {
+            this.message = message;
+            this.bytes = bytes;
+            this.enqueuedAt = System.nanoTime();
+        }
+
+        /**
+         * @return mensaje original
+         */
+        public Message getMessage() {
+            return message;
+        }
+
+        /**
+         * @return bytes a enviar
+         */
+        public byte[] getBytes() {
+            return bytes;
+        }
+    }
+
+    /** Mensajes pendientes de enviar */
+    private final ArrayDeque<Entry> entries;
+
+    /** Numero de mensajes a partir del cual se aplica la politica */
+    private final int capacity;
+
+    /** Politica de desbordamiento */
+    private volatile OverflowPolicy policy;
+
+    /** Lock de la cola (ReentrantLock para no fijar hilos virtuales) */
+    private final ReentrantLock lock;
+
+    /** Condicion de cola no vacia o cerrada */
+    private final Condition notEmpty;
+
+    /** Indica si la cola se ha cerrado */
+    private boolean closed;
+
+    /** Notificaciones descartadas por desbordamiento */
+    private long droppedCount;
+
+    /** Notificaciones sustituidas por otra mas reciente */
+    private long coalescedCount;
+
+    /** Bytes encolados o en escritura que aun no se han enviado */
+    private long pendingBytes;
+
+    /** Mensajes encolados o en escritura que aun no se han enviado */
+    private int pendingMessages;
+
+    /** Hora (ms) de la ultima escritura completada (0 si aun no hubo ninguna) */
+    private long lastWriteTime;
+
+    /** Hora (ms) del ultimo avance: escritura completada o cola que deja de estar vacia */
+    private long lastProgressTime;
+
+    /** Media movil de la latencia de escritura en microsegundos */
+    private long averageLatencyMicros;
+
+    /** Latencia de escritura maxima observada en microsegundos */
+    private long maxLatencyMicros;
+
+    /** Indica si el cliente esta degradado a notificaciones resumidas */
+    private volatile boolean degraded;
+
+    /** Peticiones en proceso que retienen el envio (cork anidado) */
+    private int corks;
+
+    /** Flushes realizados por el escritor */
+    private long flushCount;
+
+    /** Bytes enviados en esos flushes */
+    private long flushedBytes;
+
+    /**
+     * Constructor de la cola.
+     *
+     * @param capacity numero de mensajes a partir del cual se aplica la politica
+     * @param policy politica de desbordamiento
+     */
+    public OutboundQueue(int capacity, OverflowPolicy policy) {
+        this.entries = new ArrayDeque<>();
+        this.capacity = capacity;
+        this.policy = policy;
+        this.lock = new ReentrantLock();
+        this.notEmpty = lock.newCondition();
+    }
+
+    /**
+     * Establece la politica de desbordamiento.
+     *
+     * @param policy politica a aplicar
+     */
+    public void setPolicy(OverflowPolicy policy) {
+        this.policy = policy;
+    }
+
+    /**
+     * Encola un mensaje ya codificado.
+     *
+     * @param message mensaje original (se usa para decidir que descartar)
+     * @param bytes bytes a enviar
+     * @return false si la politica es DISCONNECT y la cola esta llena: hay que cerrar la conexion
+     */
+    public boolean offer(Message message, byte[] bytes) {
+        Entry entry = new Entry(message, bytes);
+        lock.lock();
+        try {
+            if (closed) {
+                return true;
+            }
+            if (degraded && isDroppable(message) && removeSameAuction(message)) {
+                coalescedCount++;
+            } else if (entries.size() >= capacity && isDroppable(message)) {
+                if (policy == OverflowPolicy.DISCONNECT) {
+                    return false;
+                }
+                if (policy == OverflowPolicy.COALESCE && removeSameAuction(message)) {
+                    coalescedCount++;
+                } else {
+                    // DROP_OLDEST, o COALESCE sin notificacion de la misma subasta:
+                    // se descarta la mas antigua
+                    droppedCount++;
+                    if (!dropOldest()) {
+                        // Solo hay respuestas pendientes: se descarta la nueva
+                        return true;
+                    }
+                }
+            }
+            entries.addLast(entry);
+            if (pendingMessages == 0) {
+                lastProgressTime = System.currentTimeMillis();
+            }
+            pendingBytes += bytes.length;
+            pendingMessages++;
+            notEmpty.signal();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Extrae el siguiente mensaje sin bloquear.
+     *
+     * @return siguiente mensaje o null si la cola esta vacia
+     */
+    public Entry poll() {
+        lock.lock();
+        try {
+            return entries.pollFirst();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Extrae el siguiente mensaje solo si cabe en el espacio indicado.
+     *
+     * @param maxBytes bytes disponibles en el lote en curso
+     * @return siguiente mensaje o null si la cola esta vacia o no cabe
+     */
+    public Entry poll(int maxBytes) {
+        lock.lock();
+        try {
+            Entry next = entries.peekFirst();
+            return next != null && next.bytes.length <= maxBytes ? entries.pollFirst() : null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Retiene el envio hasta el {@link #uncork()} correspondiente.
+     * Las llamadas pueden anidarse (peticiones en paralelo de una conexion).
+     */
+    public void cork() {
+        lock.lock();
+        try {
+            corks++;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Libera una retencion de envio y despierta al escritor si era la ultima.
+     *
+     * @return true si la cola ya no esta retenida y tiene mensajes que enviar
+     */
+    public boolean uncork() {
+        lock.lock();
+        try {
+            if (corks > 0) {
+                corks--;
+            }
+            if (corks == 0 && !entries.isEmpty()) {
+                notEmpty.signal();
+                return true;
+            }
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Indica si el envio esta retenido por alguna peticion en proceso.
+     *
+     * @return true si hay algun cork activo
+     */
+    public boolean isCorked() {
+        lock.lock();
+        try {
+            return corks > 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Espera a que haya mensajes y extrae hasta maxEntries de una vez,
+     * para que el escritor los envie con un unico flush. Mientras la cola este
+     * retenida solo se extrae si ya se han acumulado maxEntries mensajes.
+     *
+     * @param batch lista donde se anaden los mensajes extraidos
+     * @param maxEntries numero maximo de mensajes a extraer
+     * @return false si la cola esta cerrada
+     * @throws InterruptedException si se interrumpe la espera
+     */
+    public boolean takeBatch(List<Entry> batch, int maxEntries) throws InterruptedException {
+        lock.lock();
+        try {
+            while ((entries.isEmpty() || (corks > 0 && entries.size() < maxEntries)) && !closed) {
+                notEmpty.await();
+            }
+            while (!entries.isEmpty() && batch.size() < maxEntries) {
+                batch.add(entries.pollFirst());
+            }
+            return !closed;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Registra que un mensaje extraido de la cola se ha terminado de escribir.
+     *
+     * @param entry mensaje escrito
+     */
+    public void markWritten(Entry entry) {
+        long latencyMicros = (System.nanoTime() - entry.enqueuedAt) / 1000;
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            pendingBytes -= entry.bytes.length;
+            pendingMessages--;
+            lastWriteTime = System.currentTimeMillis();
+            lastProgressTime = lastWriteTime;
+            averageLatencyMicros = averageLatencyMicros == 0
+                ? latencyMicros
+                : (averageLatencyMicros * 7 + latencyMicros) / 8;
+            maxLatencyMicros = Math.max(maxLatencyMicros, latencyMicros);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Registra un flush del escritor en las metricas de la cola y en las globales.
+     *
+     * @param bytes bytes enviados en el flush
+     * @param messages mensajes enviados en el flush
+     */
+    public void recordFlush(long bytes, int messages) {
+        lock.lock();
+        try {
+            flushCount++;
+            flushedBytes += bytes;
+        } finally {
+            lock.unlock();
+        }
+        FlushStats.record(bytes, messages);
+    }
+
+    /**
+     * Obtiene el numero de flushes realizados por el escritor.
+     *
+     * @return flushes realizados
+     */
+    public long getFlushCount() {
+        lock.lock();
+        try {
+            return flushCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Obtiene los bytes medios enviados en cada flush.
+     *
+     * @return bytes por flush (0 si aun no hubo ninguno)
+     */
+    public double getBytesPerFlush() {
+        lock.lock();
+        try {
+            return flushCount > 0 ? (double) flushedBytes / flushCount : 0.0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Registra que un lote de mensajes se ha terminado de escribir.
+     *
+     * @param batch mensajes escritos
+     */
+    public void markWritten(List<Entry> batch) {
+        for (Entry entry : batch) {
+            markWritten(entry);
+        }
+    }
+
+    /**
+     * Cierra la cola, descarta lo pendiente y despierta al escritor.
+     */
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            entries.clear();
+            pendingBytes = 0;
+            pendingMessages = 0;
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Obtiene el numero de mensajes pendientes.
+     *
+     * @return mensajes en cola
+     */
+    public int size() {
+        lock.lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Obtiene los bytes encolados o en escritura que aun no se han enviado.
+     *
+     * @return bytes pendientes
+     */
+    public long getPendingBytes() {
+        lock.lock();
+        try {
+            return pendingBytes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Obtiene la hora de la ultima escritura completada.
+     *
+     * @return hora en milisegundos o 0 si aun no se ha escrito nada
+     */
+    public long getLastWriteTime() {
+        lock.lock();
+        try {
+            return lastWriteTime;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Obtiene cuanto tiempo lleva la cola con datos pendientes sin avanzar.
+     *
+     * @param now hora actual en milisegundos
+     * @return milisegundos sin avanzar o 0 si no hay nada pendiente
+     */
+    public long getStalledMillis(long now) {
+        lock.lock();
+        try {
+            return pendingMessages > 0 ? Math.max(0, now - lastProgressTime) : 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Obtiene la media movil de la latencia de escritura.
+     *
+     * @return latencia media en milisegundos
+     */
+    public double getAverageLatencyMillis() {
+        lock.lock();
+        try {
+            return averageLatencyMicros / 1000.0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Obtiene la latencia de escritura maxima observada.
+     *
+     * @return latencia maxima en milisegundos
+     */
+    public double getMaxLatencyMillis() {
+        lock.lock();
+        try {
+            return maxLatencyMicros / 1000.0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Indica si el cliente esta degradado a notificaciones resumidas.
+     *
+     * @return true si esta degradado
+     */
+    public boolean isDegraded() {
+        return degraded;
+    }
+
+    /**
+     * Degrada o restablece el cliente. Degradado, solo se conserva la ultima
+     * notificacion de puja pendiente de cada subasta.
+     *
+     * @param degraded true para degradar
+     */
+    public void setDegraded(boolean degraded) {
+        this.degraded = degraded;
+    }
+
+    /**
+     * Obtiene el numero de notificaciones descartadas por desbordamiento.
+     *
+     * @return notificaciones descartadas
+     */
+    public long getDroppedCount() {
+        lock.lock();
+        try {
+            return droppedCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Obtiene el numero de notificaciones sustituidas por otra mas reciente.
+     *
+     * @return notificaciones fusionadas
+     */
+    public long getCoalescedCount() {
+        lock.lock();
+        try {
+            return coalescedCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Indica si un mensaje puede descartarse o fusionarse al desbordar la cola.
+     * Solo las notificaciones de puja: una posterior deja obsoleta a la anterior.
+     *
+     * @param message mensaje a evaluar
+     * @return true si es una notificacion NEW_BID u OUTBID
+     */
+    private static boolean isDroppable(Message message) {
+        String action = message.getAction();
+        return Constants.NOTIFY_NEW_BID.equals(action) || Constants.NOTIFY_OUTBID.equals(action);
+    }
+
+    /**
+     * Elimina la notificacion pendiente del mismo tipo y subasta (se llama con el lock).
+     *
+     * @param message notificacion nueva
+     * @return true si habia una y se ha eliminado
+     */
+    private boolean removeSameAuction(Message message) {
+        String auctionId = message.getDataString("auctionId");
+        if (auctionId == null) {
+            return false;
+        }
+        Iterator<Entry> it = entries.iterator();
+        while (it.hasNext()) {
+            Entry queued = it.next();
+            if (message.getAction().equals(queued.message.getAction())
+                    && auctionId.equals(queued.message.getDataString("auctionId"))) {
+                it.remove();
+                discard(queued);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Descarta la notificacion de puja mas antigua (se llama con el lock).
+     *
+     * @return true si habia alguna en la cola
+     */
+    private boolean dropOldest() {
+        Iterator<Entry> it = entries.iterator();
+        while (it.hasNext()) {
+            Entry queued = it.next();
+            if (isDroppable(queued.message)) {
+                it.remove();
+                discard(queued);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Descuenta de los pendientes un mensaje eliminado sin enviar (se llama con el lock).
+     *
+     * @param entry mensaje eliminado
+     */
+    private void discard(Entry entry) {
+        pendingBytes -= entry.bytes.length;
+        pendingMessages--;
+    }
+}
@@ -1,20 +1,43 @@
 package server;
 
+import common.BinaryCodec;
+import common.Compression;
 import common.Constants;
 import common.Message;
+import server.manager.AuctionIndex;
 import server.manager.AuctionManager;
+import server.manager.AuctionPartitions;
 import server.manager.SessionManager;
 import server.manager.UserManager;
+import server.http.HttpGateway;
 import server.model.Auction;
-import server.model.Bid;
+import server.model.BidHistory;
+import server.model.Money;
 import server.model.Session;
 import server.model.User;
+import server.persistence.AckStats;
+import server.persistence.Durability;
+import server.persistence.WriteBehindQueue;
+import server.request.AuctionRequest;
+import server.request.BidRequest;
+import server.request.BlockUserRequest;
+import server.request.CreateAuctionRequest;
+import server.request.HelloRequest;
+import server.request.ListAuctionsRequest;
+import server.request.LoginRequest;
+import server.request.RegisterRequest;
+import server.request.Request;
+import server.security.HandshakeStats;
 import server.service.NotificationService;
 
 import com.google.gson.JsonArray;
 import com.google.gson.JsonObject;
 
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Procesador del protocolo de comunicacion de NetAuction.
@@ -26,6 +49,11 @@ import java.util.List;
  */
 public class ProtocolHandler {
 
+    /** Error de una peticion con una durabilidad que no existe */
+    private static final String INVALID_DURABILITY = "Durabilidad no valida ("
+        + Constants.DURABILITY_MEMORY + ", " + Constants.DURABILITY_QUEUED + ", "
+        + Constants.DURABILITY_DURABLE + ")";
+
     /** Gestor de usuarios */
     private final UserManager userManager;
 
@@ -38,6 +66,27 @@ public class ProtocolHandler {
     /** Servicio de notificaciones push */
     private NotificationService notificationService;
 
+    /** Metricas de las negociaciones TLS (null sin SSL) */
+    private HandshakeStats handshakeStats;
+
+    /** Control de admision de conexiones */
+    private AdmissionControl admissionControl;
+
+    /** Limitador de peticiones por conexion y usuario (null si no se limita) */
+    private RateLimiter rateLimiter;
+
+    /** Latido y cierre de conexiones inactivas (null si no se vigilan) */
+    private IdleReaper idleReaper;
+
+    /** Bytes a partir de los cuales se comprime un lote de salida (0 para no ofrecer compresion) */
+    private int compressionThreshold = Constants.COMPRESSION_THRESHOLD_BYTES;
+
+    /** Pasarela HTTP de consulta (null si esta deshabilitada) */
+    private HttpGateway httpGateway;
+
+    /** Manejadores indexados por codigo de accion (ver {@link BinaryCodec#actionCode(String)}) */
+    private final AsyncActionHandler[] handlers;
+
     /**
      * Constructor del procesador de protocolo.
      *
@@ -50,6 +99,64 @@ public class ProtocolHandler {
         this.userManager = userManager;
         this.sessionManager = sessionManager;
         this.auctionManager = auctionManager;
+        this.handlers = buildDispatchTable();
+    }
+
+    /**
+     * Manejador de una accion del protocolo.
+     */
+    @FunctionalInterface
+    private interface ActionHandler {
+        Message handle(Request request, ClientConnection clientHandler);
+    }
+
+    /**
+     * Manejador de una accion que se completa en otro hilo (las escrituras
+     * sobre subastas, que se aplican en la particion de cada subasta).
+     */
+    @FunctionalInterface
+    private interface AsyncActionHandler {
+        CompletableFuture<Message> handle(Request request, ClientConnection clientHandler);
+    }
+
+    /**
+     * Construye la tabla de despacho. Cada peticion llega ya decodificada con
+     * su tipo y el codigo de su accion, de modo que despachar es un acceso
+     * por indice. HELLO no esta en la tabla: lo atiende el motor de
+     * conexiones con {@link #handleHello(HelloRequest)}.
+     *
+     * @return tabla con un manejador por codigo (null si la accion no se atiende)
+     */
+    private AsyncActionHandler[] buildDispatchTable() {
+        AsyncActionHandler[] table = new AsyncActionHandler[BinaryCodec.actionCodeCount()];
+        register(table, Constants.ACTION_REGISTER, (r, c) -> handleRegister((RegisterRequest) r));
+        register(table, Constants.ACTION_LOGIN, (r, c) -> handleLogin((LoginRequest) r, c));
+        register(table, Constants.ACTION_LOGOUT, this::handleLogout);
+        registerAsync(table, Constants.ACTION_CREATE_AUCTION, (r, c) -> handleCreateAuction((CreateAuctionRequest) r));
+        register(table, Constants.ACTION_LIST_AUCTIONS, (r, c) -> handleListAuctions((ListAuctionsRequest) r));
+        register(table, Constants.ACTION_MY_AUCTIONS, (r, c) -> handleMyActivity((ListAuctionsRequest) r));
+        register(table, Constants.ACTION_MY_BIDS, (r, c) -> handleMyActivity((ListAuctionsRequest) r));
+        register(table, Constants.ACTION_MY_WINS, (r, c) -> handleMyActivity((ListAuctionsRequest) r));
+        register(table, Constants.ACTION_AUCTION_DETAIL, (r, c) -> handleAuctionDetail((AuctionRequest) r));
+        registerAsync(table, Constants.ACTION_BID, (r, c) -> handleBid((BidRequest) r));
+        registerAsync(table, Constants.ACTION_CANCEL_AUCTION, (r, c) -> handleCancelAuction((AuctionRequest) r));
+        register(table, Constants.ACTION_BLOCK_USER, (r, c) -> handleBlockUser((BlockUserRequest) r));
+        register(table, Constants.ACTION_ADMIN_STATS, (r, c) -> handleAdminStats(r));
+        register(table, Constants.ACTION_PING,
+            (r, c) -> Message.createSuccessResponse(Constants.ACTION_PING, "PONG"));
+        return table;
+    }
+
+    private static void register(AsyncActionHandler[] table, String action, ActionHandler handler) {
+        registerAsync(table, action, (r, c) -> CompletableFuture.completedFuture(handler.handle(r, c)));
+    }
+
+    private static void registerAsync(AsyncActionHandler[] table, String action, AsyncActionHandler handler) {
+        int code = BinaryCodec.actionCode(action);
+        if (code == 0) {
+            throw new IllegalStateException("Accion sin codigo: " + action);
+        }
+        table[code] = handler;
     }
 
     /**
@@ -62,41 +169,198 @@ public class ProtocolHandler {
     }
 
     /**
-     * Procesa un mensaje entrante y devuelve la respuesta correspondiente.
-     * Enruta la peticion al manejador adecuado segun la accion del mensaje.
+     * Establece las metricas de negociacion TLS que se publican en ADMIN_STATS.
+     *
+     * @param handshakeStats metricas de negociacion
+     */
+    public void setHandshakeStats(HandshakeStats handshakeStats) {
+        this.handshakeStats = handshakeStats;
+    }
+
+    /**
+     * Establece el control de admision cuyas metricas se publican en ADMIN_STATS.
+     *
+     * @param admissionControl control de admision
+     */
+    public void setAdmissionControl(AdmissionControl admissionControl) {
+        this.admissionControl = admissionControl;
+    }
+
+    /**
+     * Establece el limitador de peticiones que se aplica antes de despachar cada accion.
      *
-     * @param request mensaje de peticion del cliente
+     * @param rateLimiter limitador de peticiones
+     */
+    public void setRateLimiter(RateLimiter rateLimiter) {
+        this.rateLimiter = rateLimiter;
+    }
+
+    /**
+     * Establece la pasarela HTTP cuyas metricas se publican en ADMIN_STATS.
+     *
+     * @param httpGateway pasarela HTTP de consulta
+     */
+    public void setHttpGateway(HttpGateway httpGateway) {
+        this.httpGateway = httpGateway;
+    }
+
+    /**
+     * Establece el recolector que envia latidos y cierra las conexiones inactivas.
+     *
+     * @param idleReaper recolector de conexiones inactivas
+     */
+    public void setIdleReaper(IdleReaper idleReaper) {
+        this.idleReaper = idleReaper;
+    }
+
+    /**
+     * Establece el umbral de compresion de los lotes de salida.
+     *
+     * @param compressionThreshold bytes a partir de los cuales se comprime (0 para no ofrecer compresion)
+     */
+    public void setCompressionThreshold(int compressionThreshold) {
+        this.compressionThreshold = compressionThreshold;
+    }
+
+    /**
+     * Obtiene el umbral de compresion de los lotes de salida.
+     *
+     * @return bytes a partir de los cuales se comprime (0 si no se ofrece compresion)
+     */
+    public int getCompressionThreshold() {
+        return compressionThreshold;
+    }
+
+    /**
+     * Procesa un mensaje entrante y devuelve la respuesta correspondiente,
+     * esperando a que se complete si la accion se aplica en una particion.
+     * La usa el motor de un hilo por conexion, que atiende las peticiones de
+     * una en una.
+     *
+     * @param request peticion del cliente
      * @param clientHandler manejador del cliente que envio la peticion
      * @return mensaje de respuesta
      */
-    public Message handleMessage(Message request, ClientHandler clientHandler) {
+    public Message handleMessage(Request request, ClientConnection clientHandler) {
+        return handleMessageAsync(request, clientHandler).join();
+    }
+
+    /**
+     * Procesa un mensaje entrante sin bloquear al hilo que lo atiende.
+     * Las consultas se responden en el acto; las pujas y cancelaciones se
+     * encolan en la particion de la subasta y la respuesta se completa en su
+     * hilo. La respuesta lleva el mismo id que la peticion para que el
+     * cliente pueda emparejarla aunque haya varias peticiones en vuelo.
+     * Puede invocarse de forma concurrente para una misma conexion.
+     *
+     * @param request peticion del cliente
+     * @param clientHandler manejador del cliente que envio la peticion
+     * @return respuesta, que puede completarse en otro hilo
+     */
+    public CompletableFuture<Message> handleMessageAsync(Request request, ClientConnection clientHandler) {
+        Message limited = checkRateLimit(request, clientHandler);
+        CompletableFuture<Message> response = limited != null
+            ? CompletableFuture.completedFuture(limited)
+            : dispatch(request, clientHandler);
+        return response.thenApply(message -> {
+            message.setId(request.getId());
+            return message;
+        });
+    }
+
+    /**
+     * Aplica el limite de peticiones de la conexion y del usuario autenticado.
+     * Se comprueba antes de llegar a los gestores, de modo que rechazar una
+     * peticion no cuesta mas que construir el error.
+     *
+     * @param request peticion del cliente
+     * @param clientHandler manejador del cliente que envio la peticion
+     * @return respuesta de error con retryAfterMs, o null si la peticion puede procesarse
+     */
+    private Message checkRateLimit(Request request, ClientConnection clientHandler) {
+        if (rateLimiter == null || clientHandler == null) {
+            return null;
+        }
+        long retryAfter = rateLimiter.tryAcquire(request.getAction(),
+            clientHandler.getClientAddress(), clientHandler.getAuthenticatedUser());
+        if (retryAfter == 0) {
+            return null;
+        }
+        String action = request.getAction() != null ? request.getAction() : "UNKNOWN";
+        Message response = Message.createErrorResponse(action,
+            "Demasiadas peticiones, reintente en " + retryAfter + " ms");
+        response.addData("retryAfterMs", retryAfter);
+        return response;
+    }
+
+    /**
+     * Enruta la peticion al manejador registrado para el codigo de su accion.
+     *
+     * @param request peticion del cliente
+     * @param clientHandler manejador del cliente que envio la peticion
+     * @return mensaje de respuesta
+     */
+    private CompletableFuture<Message> dispatch(Request request, ClientConnection clientHandler) {
         String action = request.getAction();
 
         if (action == null || action.isEmpty()) {
-            return Message.createErrorResponse("UNKNOWN", "Accion no especificada");
-        }
-
-        switch (action) {
-            case Constants.ACTION_REGISTER:
-                return handleRegister(request);
-            case Constants.ACTION_LOGIN:
-                return handleLogin(request, clientHandler);
-            case Constants.ACTION_LOGOUT:
-                return handleLogout(request, clientHandler);
-            case Constants.ACTION_CREATE_AUCTION:
-                return handleCreateAuction(request);
-            case Constants.ACTION_LIST_AUCTIONS:
-                return handleListAuctions(request);
-            case Constants.ACTION_AUCTION_DETAIL:
-                return handleAuctionDetail(request);
-            case Constants.ACTION_BID:
-                return handleBid(request, clientHandler);
-            case Constants.ACTION_CANCEL_AUCTION:
-                return handleCancelAuction(request);
-            case Constants.ACTION_BLOCK_USER:
-                return handleBlockUser(request);
-            default:
-                return Message.createErrorResponse(action, "Accion desconocida: " + action);
+            return CompletableFuture.completedFuture(
+                Message.createErrorResponse("UNKNOWN", "Accion no especificada"));
+        }
+
+        AsyncActionHandler handler = handlers[request.getCode()];
+        if (handler == null) {
+            return CompletableFuture.completedFuture(
+                Message.createErrorResponse(action, "Accion desconocida: " + action));
+        }
+        return handler.handle(request, clientHandler);
+    }
+
+    /**
+     * Negocia la version del protocolo de transporte (accion HELLO).
+     * La invoca el motor de conexiones antes del despacho normal, porque tras
+     * enviar la respuesta debe cambiar el entramado de la conexion.
+     *
+     * @param request peticion HELLO con la version solicitada
+     * @return respuesta con la version aceptada en el campo protocol y, si el
+     *         cliente la pidio y esta habilitada, la compresion aceptada y su umbral
+     */
+    public Message handleHello(HelloRequest request) {
+        int requested = request.getProtocol();
+        int accepted = requested >= Constants.PROTOCOL_BINARY ? Constants.PROTOCOL_BINARY : Constants.PROTOCOL_JSON;
+
+        Message response = Message.createSuccessResponse(Constants.ACTION_HELLO, "Protocolo " + accepted);
+        response.addData("protocol", accepted);
+        if (compressionThreshold > 0 && Compression.DEFLATE.equals(request.getCompression())) {
+            response.addData("compression", Compression.DEFLATE);
+            response.addData("threshold", compressionThreshold);
+        }
+        response.setId(request.getId());
+        return response;
+    }
+
+    /**
+     * Registra una conexion recien establecida para vigilar su latido.
+     *
+     * @param clientHandler conexion del cliente
+     */
+    public void handleClientConnect(ClientConnection clientHandler) {
+        if (idleReaper != null && clientHandler != null) {
+            idleReaper.register(clientHandler);
+        }
+    }
+
+    /**
+     * Atiende el PONG con el que un cliente responde al latido del servidor.
+     * El motor ya ha anotado la lectura; aqui solo se renueva la sesion para
+     * que un usuario conectado pero inactivo no la pierda.
+     *
+     * @param clientHandler conexion del cliente
+     */
+    public void handlePong(ClientConnection clientHandler) {
+        String username = clientHandler.getAuthenticatedUser();
+        if (username != null) {
+            sessionManager.renewUserSession(username);
         }
     }
 
@@ -106,11 +370,18 @@ public class ProtocolHandler {
      *
      * @param clientHandler manejador del cliente desconectado
      */
-    public void handleClientDisconnect(ClientHandler clientHandler) {
+    public void handleClientDisconnect(ClientConnection clientHandler) {
         if (clientHandler == null) {
             return;
         }
 
+        if (rateLimiter != null) {
+            rateLimiter.forgetConnection(clientHandler.getClientAddress());
+        }
+        if (idleReaper != null) {
+            idleReaper.unregister(clientHandler);
+        }
+
         String username = clientHandler.getAuthenticatedUser();
         if (username == null || username.isEmpty()) {
             return;
@@ -126,10 +397,10 @@ public class ProtocolHandler {
     /**
      * Valida el token de sesion contenido en un mensaje.
      *
-     * @param request mensaje que contiene el token
+     * @param request peticion que contiene el token
      * @return sesion valida o null si el token es invalido
      */
-    private Session validateToken(Message request) {
+    private Session validateToken(Request request) {
         String token = request.getToken();
         if (token == null || token.isEmpty()) {
             return null;
@@ -140,13 +411,13 @@ public class ProtocolHandler {
     /**
      * Maneja una peticion de registro de usuario.
      *
-     * @param request mensaje con los datos de registro (user, password, email)
+     * @param request peticion con los datos de registro (user, password, email)
      * @return mensaje de respuesta indicando exito o error
      */
-    private Message handleRegister(Message request) {
-        String username = request.getDataString("user");
-        String password = request.getDataString("password");
-        String email = request.getDataString("email");
+    private Message handleRegister(RegisterRequest request) {
+        String username = request.getUser();
+        String password = request.getPassword();
+        String email = request.getEmail();
 
         UserManager.RegistrationResult result = userManager.register(username, password, email);
 
@@ -160,13 +431,13 @@ public class ProtocolHandler {
      * Maneja una peticion de inicio de sesion.
      * Si la autenticacion es exitosa, crea una sesion y registra al cliente para notificaciones.
      *
-     * @param request mensaje con las credenciales (user, password)
+     * @param request peticion con las credenciales (user, password)
      * @param clientHandler manejador del cliente que inicia sesion
      * @return mensaje de respuesta con token si es exitoso, o error
      */
-    private Message handleLogin(Message request, ClientHandler clientHandler) {
-        String username = request.getDataString("user");
-        String password = request.getDataString("password");
+    private Message handleLogin(LoginRequest request, ClientConnection clientHandler) {
+        String username = request.getUser();
+        String password = request.getPassword();
 
         UserManager.AuthenticationResult result = userManager.authenticate(username, password);
 
@@ -175,7 +446,7 @@ public class ProtocolHandler {
             Session session = sessionManager.createSession(user.getUsername());
 
             if (notificationService != null) {
-                notificationService.registerClient(user.getUsername(), clientHandler.getOut());
+                notificationService.registerClient(user.getUsername(), clientHandler);
             }
 
             clientHandler.setAuthenticatedUser(user.getUsername());
@@ -193,11 +464,11 @@ public class ProtocolHandler {
      * Maneja una peticion de cierre de sesion.
      * Invalida la sesion y desregistra al cliente de las notificaciones.
      *
-     * @param request mensaje con el token de sesion
+     * @param request peticion con el token de sesion
      * @param clientHandler manejador del cliente que cierra sesion
      * @return mensaje de respuesta indicando exito o error
      */
-    private Message handleLogout(Message request, ClientHandler clientHandler) {
+    private Message handleLogout(Request request, ClientConnection clientHandler) {
         Session session = validateToken(request);
         if (session == null) {
             return Message.createErrorResponse(Constants.ACTION_LOGOUT, "Sesion no valida");
@@ -219,57 +490,92 @@ public class ProtocolHandler {
     /**
      * Maneja una peticion de creacion de subasta.
      *
-     * @param request mensaje con los datos de la subasta (title, description, startPrice, durationMinutes)
-     * @return mensaje de respuesta con el ID de la subasta creada o error
+     * @param request peticion con los datos de la subasta y opcionalmente la durabilidad
+     *                (title, description, startPrice, durationMinutes, durability)
+     * @return mensaje de respuesta con el ID de la subasta creada o error, completado
+     *         cuando el alta tiene la durabilidad pedida (o la de los cierres); si no
+     *         se ha podido guardar sigue publicada y el mensaje lo indica
      */
-    private Message handleCreateAuction(Message request) {
+    private CompletableFuture<Message> handleCreateAuction(CreateAuctionRequest request) {
         Session session = validateToken(request);
         if (session == null) {
-            return Message.createErrorResponse(Constants.ACTION_CREATE_AUCTION, "Sesion no valida");
+            return CompletableFuture.completedFuture(
+                Message.createErrorResponse(Constants.ACTION_CREATE_AUCTION, "Sesion no valida"));
         }
 
-        String title = request.getDataString("title");
-        String description = request.getDataString("description");
-        double startPrice = request.getDataDouble("startPrice", 0.0);
-        int durationMinutes = request.getDataInt("durationMinutes", 5);
-
-        AuctionManager.CreateAuctionResult result = auctionManager.createAuction(
-            title, description, session.getUsername(), startPrice, durationMinutes
-        );
-
-        if (result.isSuccess()) {
-            Auction auction = result.getAuction();
-            Message response = Message.createSuccessResponse(Constants.ACTION_CREATE_AUCTION, result.getMessage());
-            response.addData("auctionId", auction.getId());
-            response.addData("endTime", auction.getEndTime());
-            return response;
+        String title = request.getTitle();
+        String description = request.getDescription();
+        long startPrice = request.getStartPrice();
+        int durationMinutes = request.getDurationMinutes();
+
+        Durability durability = null;
+        if (request.getDurability() != null) {
+            durability = Durability.fromName(request.getDurability());
+            if (durability == null) {
+                return CompletableFuture.completedFuture(
+                    Message.createErrorResponse(Constants.ACTION_CREATE_AUCTION, INVALID_DURABILITY));
+            }
         }
-        return Message.createErrorResponse(Constants.ACTION_CREATE_AUCTION, result.getMessage());
+
+        return auctionManager.createAuction(title, description, session.getUsername(),
+                startPrice, durationMinutes, durability)
+            .thenApply(result -> {
+                if (!result.isSuccess()) {
+                    return Message.createErrorResponse(Constants.ACTION_CREATE_AUCTION, result.getMessage());
+                }
+                Auction auction = result.getAuction();
+                Message response = Message.createSuccessResponse(Constants.ACTION_CREATE_AUCTION, result.getMessage());
+                response.addData("auctionId", auction.getId());
+                response.addData("endTime", auction.getEndTime());
+                response.addData("durability", result.getDurability().getName());
+                return response;
+            })
+            .exceptionally(error -> Message.createErrorResponse(Constants.ACTION_CREATE_AUCTION,
+                "La subasta no se ha podido confirmar"));
     }
 
     /**
      * Maneja una peticion de listado de subastas activas.
+     * Devuelve una pagina leida directamente del indice del criterio pedido
+     * y, si hay mas subastas, el cursor para pedir la siguiente.
      *
-     * @param request mensaje con el token de sesion
+     * @param request peticion con el token de sesion y, opcionalmente, el
+     *                criterio de orden, el tamano de pagina y el cursor (sort, limit, cursor)
      * @return mensaje de respuesta con el array de subastas activas o error
      */
-    private Message handleListAuctions(Message request) {
+    private Message handleListAuctions(ListAuctionsRequest request) {
         Session session = validateToken(request);
         if (session == null) {
             return Message.createErrorResponse(Constants.ACTION_LIST_AUCTIONS, "Sesion no valida");
         }
 
-        List<Auction> auctions = auctionManager.getActiveAuctions();
+        AuctionIndex.SortKey sortKey = AuctionIndex.SortKey.fromName(request.getSort());
+        if (sortKey == null) {
+            return Message.createErrorResponse(Constants.ACTION_LIST_AUCTIONS,
+                "Orden no valido: " + request.getSort());
+        }
+        int limit = request.getLimit() > 0
+            ? Math.min(request.getLimit(), Constants.LIST_AUCTIONS_MAX_LIMIT)
+            : Constants.LIST_AUCTIONS_MAX_LIMIT;
+
+        AuctionIndex.Page page;
+        try {
+            page = auctionManager.getActiveAuctions(sortKey, request.getCursor(), limit);
+        } catch (IllegalArgumentException e) {
+            return Message.createErrorResponse(Constants.ACTION_LIST_AUCTIONS, e.getMessage());
+        }
+        List<Auction> auctions = page.getAuctions();
 
         JsonArray auctionsArray = new JsonArray();
         for (Auction auction : auctions) {
+            Auction.Snapshot snapshot = auction.getSnapshot();
             JsonObject auctionJson = new JsonObject();
             auctionJson.addProperty("id", auction.getId());
             auctionJson.addProperty("title", auction.getTitle());
-            auctionJson.addProperty("currentPrice", auction.getCurrentPrice());
+            auctionJson.addProperty("currentPrice", Money.toUnits(snapshot.getCurrentPrice()));
             auctionJson.addProperty("remainingTime", auction.getRemainingTimeFormatted());
             auctionJson.addProperty("remainingSeconds", auction.getRemainingSeconds());
-            auctionJson.addProperty("bidCount", auction.getBidCount());
+            auctionJson.addProperty("bidCount", snapshot.getBidCount());
             auctionJson.addProperty("seller", auction.getSeller());
             auctionsArray.add(auctionJson);
         }
@@ -278,23 +584,91 @@ public class ProtocolHandler {
             "Se encontraron " + auctions.size() + " subastas activas");
         response.getData().add("auctions", auctionsArray);
         response.addData("count", auctions.size());
+        response.addData("total", auctionManager.getActiveAuctionCount());
+        response.addData("sort", sortKey.getName());
+        if (page.getNext() != null) {
+            response.addData("next", page.getNext());
+        }
+        return response;
+    }
+
+    /**
+     * Maneja una peticion de actividad del usuario autenticado: las subastas
+     * que ha creado (MY_AUCTIONS), en las que ha pujado (MY_BIDS) o que ha
+     * ganado (MY_WINS). La pagina sale del indice del usuario, de modo que el
+     * coste depende de sus resultados y no del total de subastas.
+     *
+     * @param request peticion con el token de sesion y, opcionalmente, el
+     *                tamano de pagina y el cursor (limit, cursor)
+     * @return mensaje de respuesta con el array de subastas o error
+     */
+    private Message handleMyActivity(ListAuctionsRequest request) {
+        String action = request.getAction();
+        Session session = validateToken(request);
+        if (session == null) {
+            return Message.createErrorResponse(action, "Sesion no valida");
+        }
+
+        String username = session.getUsername();
+        int limit = request.getLimit() > 0
+            ? Math.min(request.getLimit(), Constants.LIST_AUCTIONS_MAX_LIMIT)
+            : Constants.LIST_AUCTIONS_MAX_LIMIT;
+
+        AuctionIndex.Page page;
+        try {
+            switch (action) {
+                case Constants.ACTION_MY_BIDS:
+                    page = auctionManager.getAuctionsByBidder(username, request.getCursor(), limit);
+                    break;
+                case Constants.ACTION_MY_WINS:
+                    page = auctionManager.getAuctionsWonBy(username, request.getCursor(), limit);
+                    break;
+                default:
+                    page = auctionManager.getAuctionsBySeller(username, request.getCursor(), limit);
+            }
+        } catch (IllegalArgumentException e) {
+            return Message.createErrorResponse(action, e.getMessage());
+        }
+
+        JsonArray auctionsArray = new JsonArray();
+        for (Auction auction : page.getAuctions()) {
+            Auction.Snapshot snapshot = auction.getSnapshot();
+            JsonObject auctionJson = new JsonObject();
+            auctionJson.addProperty("id", auction.getId());
+            auctionJson.addProperty("title", auction.getTitle());
+            auctionJson.addProperty("auctionStatus", snapshot.getStatus());
+            auctionJson.addProperty("currentPrice", Money.toUnits(snapshot.getCurrentPrice()));
+            auctionJson.addProperty("currentWinner", snapshot.getCurrentWinner());
+            auctionJson.addProperty("bidCount", snapshot.getBidCount());
+            auctionJson.addProperty("endTime", auction.getEndTime());
+            auctionJson.addProperty("seller", auction.getSeller());
+            auctionsArray.add(auctionJson);
+        }
+
+        Message response = Message.createSuccessResponse(action,
+            "Se encontraron " + auctionsArray.size() + " subastas");
+        response.getData().add("auctions", auctionsArray);
+        response.addData("count", auctionsArray.size());
+        if (page.getNext() != null) {
+            response.addData("next", page.getNext());
+        }
         return response;
     }
 
     /**
      * Maneja una peticion de detalle de una subasta especifica.
-     * Incluye informacion completa y las ultimas 10 pujas.
+     * Incluye informacion completa y las ultimas {@link Constants#RECENT_BIDS_LIMIT} pujas.
      *
-     * @param request mensaje con el ID de la subasta (auctionId)
+     * @param request peticion con el ID de la subasta (auctionId)
      * @return mensaje de respuesta con el detalle de la subasta o error
      */
-    private Message handleAuctionDetail(Message request) {
+    private Message handleAuctionDetail(AuctionRequest request) {
         Session session = validateToken(request);
         if (session == null) {
             return Message.createErrorResponse(Constants.ACTION_AUCTION_DETAIL, "Sesion no valida");
         }
 
-        String auctionId = request.getDataString("auctionId");
+        String auctionId = request.getAuctionId();
         if (auctionId == null || auctionId.isEmpty()) {
             return Message.createErrorResponse(Constants.ACTION_AUCTION_DETAIL, "ID de subasta requerido");
         }
@@ -304,29 +678,29 @@ public class ProtocolHandler {
             return Message.createErrorResponse(Constants.ACTION_AUCTION_DETAIL, "Subasta no encontrada");
         }
 
+        Auction.Snapshot snapshot = auction.getSnapshot();
         Message response = Message.createSuccessResponse(Constants.ACTION_AUCTION_DETAIL, "Detalle de subasta");
         response.addData("id", auction.getId());
         response.addData("title", auction.getTitle());
         response.addData("description", auction.getDescription());
         response.addData("seller", auction.getSeller());
-        response.addData("startPrice", auction.getStartPrice());
-        response.addData("currentPrice", auction.getCurrentPrice());
-        response.addData("currentWinner", auction.getCurrentWinner());
+        response.addData("startPrice", Money.toUnits(auction.getStartPrice()));
+        response.addData("currentPrice", Money.toUnits(snapshot.getCurrentPrice()));
+        response.addData("currentWinner", snapshot.getCurrentWinner());
         response.addData("startTime", auction.getStartTime());
         response.addData("endTime", auction.getEndTime());
         response.addData("remainingTime", auction.getRemainingTimeFormatted());
         response.addData("remainingSeconds", auction.getRemainingSeconds());
-        response.addData("auctionStatus", auction.getStatus());
-        response.addData("bidCount", auction.getBidCount());
+        response.addData("auctionStatus", snapshot.getStatus());
+        response.addData("bidCount", snapshot.getBidCount());
 
         JsonArray bidsArray = new JsonArray();
-        List<Bid> bids = auction.getBids();
-        for (int i = bids.size() - 1; i >= 0 && i >= bids.size() - 10; i--) {
-            Bid bid = bids.get(i);
+        BidHistory.View recentBids = snapshot.getRecentBids(Constants.RECENT_BIDS_LIMIT);
+        for (int i = 0; i < recentBids.size(); i++) {
             JsonObject bidJson = new JsonObject();
-            bidJson.addProperty("bidder", bid.getBidder());
-            bidJson.addProperty("amount", bid.getAmount());
-            bidJson.addProperty("timestamp", bid.getTimestamp());
+            bidJson.addProperty("bidder", recentBids.getBidder(i));
+            bidJson.addProperty("amount", Money.toUnits(recentBids.getAmount(i)));
+            bidJson.addProperty("timestamp", recentBids.getTimestamp(i));
             bidsArray.add(bidJson);
         }
         response.getData().add("recentBids", bidsArray);
@@ -336,43 +710,89 @@ public class ProtocolHandler {
 
     /**
      * Maneja una peticion de puja en una subasta.
-     * Notifica a los participantes sobre la nueva puja y al pujador anterior si fue superado.
+     * La puja se aplica en la particion de la subasta. Cuando tiene la
+     * durabilidad pedida (o la del servidor si no pide ninguna) se notifica a
+     * los participantes la nueva puja y al pujador anterior si fue superado,
+     * en el orden de las operaciones de la subasta, y se responde al pujador
+     * con la durabilidad alcanzada. Si la puja no se ha podido guardar sigue
+     * aplicada: la respuesta es de exito y lo indica en su mensaje.
      *
-     * @param request mensaje con el ID de la subasta y la cantidad (auctionId, amount)
-     * @param clientHandler manejador del cliente que realiza la puja
+     * @param request peticion con el ID de la subasta, la cantidad y opcionalmente
+     *                la durabilidad (auctionId, amount, durability)
      * @return mensaje de respuesta indicando exito o error
      */
-    private Message handleBid(Message request, ClientHandler clientHandler) {
+    private CompletableFuture<Message> handleBid(BidRequest request) {
         Session session = validateToken(request);
         if (session == null) {
-            return Message.createErrorResponse(Constants.ACTION_BID, "Sesion no valida");
+            return CompletableFuture.completedFuture(
+                Message.createErrorResponse(Constants.ACTION_BID, "Sesion no valida"));
         }
 
-        String auctionId = request.getDataString("auctionId");
-        double amount = request.getDataDouble("amount", 0.0);
+        String auctionId = request.getAuctionId();
+        long amount = request.getAmount();
 
         if (auctionId == null || auctionId.isEmpty()) {
-            return Message.createErrorResponse(Constants.ACTION_BID, "ID de subasta requerido");
+            return CompletableFuture.completedFuture(
+                Message.createErrorResponse(Constants.ACTION_BID, "ID de subasta requerido"));
         }
 
-        AuctionManager.BidResult result = auctionManager.placeBid(auctionId, session.getUsername(), amount);
+        Durability durability = null;
+        if (request.getDurability() != null) {
+            durability = Durability.fromName(request.getDurability());
+            if (durability == null) {
+                return CompletableFuture.completedFuture(
+                    Message.createErrorResponse(Constants.ACTION_BID, INVALID_DURABILITY));
+            }
+        }
 
-        if (result.isSuccess()) {
-            Auction auction = result.getAuction();
+        String bidder = session.getUsername();
+        return auctionManager.placeBid(auctionId, bidder, amount, durability,
+                result -> announceBid(result, auctionId, bidder, amount))
+            .thenApply(result -> bidResponse(result, auctionId, amount))
+            .exceptionally(error -> Message.createErrorResponse(Constants.ACTION_BID,
+                "La puja no se ha podido confirmar"));
+    }
 
-            if (notificationService != null) {
-                notificationService.notifyNewBid(auctionId, auction.getTitle(), amount, session.getUsername());
+    /**
+     * Notifica una puja aceptada que ya tiene su durabilidad.
+     */
+    private void announceBid(AuctionManager.BidResult result, String auctionId,
+                             String bidder, long amount) {
+        Auction auction = result.getAuction();
+
+        if (notificationService != null) {
+            // El pujador superado recibe NEW_BID y OUTBID en el mismo flush
+            ClientConnection outbidClient = result.getPreviousBidder() != null
+                ? notificationService.getClients().get(result.getPreviousBidder()) : null;
+            if (outbidClient != null) {
+                outbidClient.cork();
+            }
+            try {
+                notificationService.notifyNewBid(auctionId, auction.getTitle(), amount, bidder);
 
                 if (result.getPreviousBidder() != null) {
                     notificationService.notifyOutbid(result.getPreviousBidder(), auctionId,
-                        auction.getTitle(), amount, session.getUsername());
+                        auction.getTitle(), amount, bidder);
+                }
+            } finally {
+                if (outbidClient != null) {
+                    outbidClient.uncork();
                 }
             }
+        }
+    }
 
+    /**
+     * Construye la respuesta al pujador. El precio nuevo es el de su puja:
+     * al responder la subasta puede haber recibido ya otras.
+     */
+    private Message bidResponse(AuctionManager.BidResult result, String auctionId, long amount) {
+        if (result.isSuccess()) {
             Message response = Message.createSuccessResponse(Constants.ACTION_BID, result.getMessage());
             response.addData("auctionId", auctionId);
-            response.addData("amount", amount);
-            response.addData("newPrice", auction.getCurrentPrice());
+            response.addData("amount", Money.toUnits(amount));
+            response.addData("newPrice", Money.toUnits(amount));
+            response.addData("durability", result.getDurability().getName());
             return response;
         }
 
@@ -382,43 +802,62 @@ public class ProtocolHandler {
     /**
      * Maneja una peticion de cancelacion de subasta.
      *
-     * @param request mensaje con el ID de la subasta (auctionId)
-     * @return mensaje de respuesta indicando exito o error
+     * @param request peticion con el ID de la subasta y opcionalmente la durabilidad
+     *                (auctionId, durability)
+     * @return mensaje de respuesta indicando exito o error, completado cuando la
+     *         cancelacion tiene la durabilidad pedida (o la de los cierres); si no
+     *         se ha podido guardar sigue aplicada y el mensaje lo indica
      */
-    private Message handleCancelAuction(Message request) {
+    private CompletableFuture<Message> handleCancelAuction(AuctionRequest request) {
         Session session = validateToken(request);
         if (session == null) {
-            return Message.createErrorResponse(Constants.ACTION_CANCEL_AUCTION, "Sesion no valida");
+            return CompletableFuture.completedFuture(
+                Message.createErrorResponse(Constants.ACTION_CANCEL_AUCTION, "Sesion no valida"));
         }
 
-        String auctionId = request.getDataString("auctionId");
+        String auctionId = request.getAuctionId();
         if (auctionId == null || auctionId.isEmpty()) {
-            return Message.createErrorResponse(Constants.ACTION_CANCEL_AUCTION, "ID de subasta requerido");
+            return CompletableFuture.completedFuture(
+                Message.createErrorResponse(Constants.ACTION_CANCEL_AUCTION, "ID de subasta requerido"));
         }
 
-        AuctionManager.CancelResult result = auctionManager.cancelAuction(auctionId);
-
-        if (result.isSuccess()) {
-            return Message.createSuccessResponse(Constants.ACTION_CANCEL_AUCTION, result.getMessage());
+        Durability durability = null;
+        if (request.getDurability() != null) {
+            durability = Durability.fromName(request.getDurability());
+            if (durability == null) {
+                return CompletableFuture.completedFuture(
+                    Message.createErrorResponse(Constants.ACTION_CANCEL_AUCTION, INVALID_DURABILITY));
+            }
         }
-        return Message.createErrorResponse(Constants.ACTION_CANCEL_AUCTION, result.getMessage());
+
+        return auctionManager.cancelAuction(auctionId, durability)
+            .thenApply(result -> {
+                if (!result.isSuccess()) {
+                    return Message.createErrorResponse(Constants.ACTION_CANCEL_AUCTION, result.getMessage());
+                }
+                Message response = Message.createSuccessResponse(Constants.ACTION_CANCEL_AUCTION, result.getMessage());
+                response.addData("durability", result.getDurability().getName());
+                return response;
+            })
+            .exceptionally(error -> Message.createErrorResponse(Constants.ACTION_CANCEL_AUCTION,
+                "La cancelacion no se ha podido confirmar"));
     }
 
     /**
      * Maneja una peticion de bloqueo o desbloqueo de usuario.
      * Si se bloquea, invalida su sesion y lo desregistra de las notificaciones.
      *
-     * @param request mensaje con el username y estado de bloqueo (username, blocked)
+     * @param request peticion con el username y estado de bloqueo (username, blocked)
      * @return mensaje de respuesta indicando exito o error
      */
-    private Message handleBlockUser(Message request) {
+    private Message handleBlockUser(BlockUserRequest request) {
         Session session = validateToken(request);
         if (session == null) {
             return Message.createErrorResponse(Constants.ACTION_BLOCK_USER, "Sesion no valida");
         }
 
-        String username = request.getDataString("username");
-        boolean blocked = request.getDataBoolean("blocked", true);
+        String username = request.getUsername();
+        boolean blocked = request.isBlocked();
 
         if (username == null || username.isEmpty()) {
             return Message.createErrorResponse(Constants.ACTION_BLOCK_USER, "Username requerido");
@@ -444,4 +883,169 @@ public class ProtocolHandler {
 
         return Message.createErrorResponse(Constants.ACTION_BLOCK_USER, "Usuario no encontrado");
     }
+
+    /**
+     * Maneja una peticion de estadisticas de las colas de salida (solo administrador).
+     * Devuelve, por cada cliente registrado y ordenados de mayor a menor backlog,
+     * los bytes pendientes, el tiempo desde la ultima escritura y la latencia de
+     * escritura, junto a los umbrales de consumidor lento, las metricas globales
+     * de flush y las de negociacion TLS.
+     *
+     * @param request peticion con el token de sesion
+     * @return mensaje de respuesta con las estadisticas o error
+     */
+    private Message handleAdminStats(Request request) {
+        Session session = validateToken(request);
+        if (session == null) {
+            return Message.createErrorResponse(Constants.ACTION_ADMIN_STATS, "Sesion no valida");
+        }
+        if (!Constants.ADMIN_USERNAME.equalsIgnoreCase(session.getUsername())) {
+            return Message.createErrorResponse(Constants.ACTION_ADMIN_STATS, "Accion reservada al administrador");
+        }
+        if (notificationService == null) {
+            return Message.createErrorResponse(Constants.ACTION_ADMIN_STATS, "Servicio de notificaciones no disponible");
+        }
+
+        List<Map.Entry<String, ClientConnection>> clients =
+            new ArrayList<>(notificationService.getClients().entrySet());
+        clients.sort(Comparator.comparingLong(
+            (Map.Entry<String, ClientConnection> e) -> e.getValue().getOutboundQueue().getPendingBytes()).reversed());
+
+        long now = System.currentTimeMillis();
+        JsonArray clientsArray = new JsonArray();
+        for (Map.Entry<String, ClientConnection> entry : clients) {
+            OutboundQueue queue = entry.getValue().getOutboundQueue();
+            JsonObject clientJson = new JsonObject();
+            clientJson.addProperty("username", entry.getKey());
+            clientJson.addProperty("address", entry.getValue().getClientAddress());
+            clientJson.addProperty("backlogBytes", queue.getPendingBytes());
+            clientJson.addProperty("queuedMessages", queue.size());
+            long lastWrite = queue.getLastWriteTime();
+            clientJson.addProperty("lastWriteMsAgo", lastWrite > 0 ? now - lastWrite : -1);
+            clientJson.addProperty("avgLatencyMs", queue.getAverageLatencyMillis());
+            clientJson.addProperty("maxLatencyMs", queue.getMaxLatencyMillis());
+            clientJson.addProperty("dropped", queue.getDroppedCount());
+            clientJson.addProperty("coalesced", queue.getCoalescedCount());
+            clientJson.addProperty("degraded", queue.isDegraded());
+            clientJson.addProperty("flushes", queue.getFlushCount());
+            clientJson.addProperty("bytesPerFlush", queue.getBytesPerFlush());
+            clientsArray.add(clientJson);
+        }
+
+        JsonObject thresholds = new JsonObject();
+        thresholds.addProperty("degradeBytes", Constants.SLOW_CONSUMER_DEGRADE_BYTES);
+        thresholds.addProperty("degradeLatencyMs", Constants.SLOW_CONSUMER_DEGRADE_LATENCY_MS);
+        thresholds.addProperty("evictBytes", Constants.SLOW_CONSUMER_EVICT_BYTES);
+        thresholds.addProperty("evictStallMs", Constants.SLOW_CONSUMER_EVICT_STALL_MS);
+
+        Message response = Message.createSuccessResponse(Constants.ACTION_ADMIN_STATS,
+            clients.size() + " clientes conectados");
+        response.getData().add("clients", clientsArray);
+        response.getData().add("thresholds", thresholds);
+        response.addData("count", clients.size());
+        response.addData("evicted", notificationService.getEvictedCount());
+
+        JsonObject writes = new JsonObject();
+        writes.addProperty("flushes", FlushStats.getTotalFlushes());
+        writes.addProperty("flushedBytes", FlushStats.getTotalBytes());
+        writes.addProperty("flushesPerSecond", FlushStats.getFlushesPerSecond());
+        writes.addProperty("bytesPerFlush", FlushStats.getBytesPerFlush());
+        writes.addProperty("messagesPerFlush", FlushStats.getMessagesPerFlush());
+        response.getData().add("writes", writes);
+
+        AuctionPartitions auctionPartitions = auctionManager.getPartitions();
+        JsonObject partitions = new JsonObject();
+        partitions.addProperty("count", auctionPartitions.getPartitionCount());
+        partitions.addProperty("queued", auctionPartitions.getQueuedCount());
+        partitions.addProperty("completed", auctionPartitions.getCompletedCount());
+        response.getData().add("partitions", partitions);
+
+        WriteBehindQueue writeQueue = auctionManager.getWriteQueue();
+        if (writeQueue != null) {
+            JsonObject persistence = new JsonObject();
+            persistence.addProperty("queued", writeQueue.getQueuedCount());
+            persistence.addProperty("batches", writeQueue.getBatchCount());
+            persistence.addProperty("written", writeQueue.getWrittenCount());
+            persistence.addProperty("collapsed", writeQueue.getCollapsedCount());
+            persistence.addProperty("failed", writeQueue.getFailedCount());
+            persistence.addProperty("retries", writeQueue.getRetryCount());
+            response.getData().add("persistence", persistence);
+        }
+
+        AckStats ackStats = auctionManager.getAckStats();
+        JsonObject acks = new JsonObject();
+        for (Durability level : Durability.values()) {
+            JsonObject levelJson = new JsonObject();
+            levelJson.addProperty("count", ackStats.getCount(level));
+            levelJson.addProperty("avgLatencyMs", ackStats.getAverageLatencyMillis(level));
+            levelJson.addProperty("maxLatencyMs", ackStats.getMaxLatencyMillis(level));
+            levelJson.addProperty("failed", ackStats.getFailedCount(level));
+            acks.add(level.getName(), levelJson);
+        }
+        JsonObject durability = new JsonObject();
+        durability.addProperty("bids", auctionManager.getBidDurability().getName());
+        durability.addProperty("closes", auctionManager.getCloseDurability().getName());
+        durability.add("acks", acks);
+        response.getData().add("durability", durability);
+        if (admissionControl != null) {
+            JsonObject admission = new JsonObject();
+            admission.addProperty("activeConnections", admissionControl.getActiveConnections());
+            admission.addProperty("maxConnections", admissionControl.getMaxConnections());
+            admission.addProperty("maxQueueAgeMs", admissionControl.getMaxQueueAgeMillis());
+            admission.addProperty("occupancy", admissionControl.getOccupancy());
+            admission.addProperty("admitted", admissionControl.getAdmittedCount());
+            admission.addProperty("rejectedFull", admissionControl.getRejectedFullCount());
+            admission.addProperty("rejectedStale", admissionControl.getRejectedStaleCount());
+            response.getData().add("admission", admission);
+        }
+        if (rateLimiter != null) {
+            JsonObject rateLimit = new JsonObject();
+            rateLimit.addProperty("auth", rateLimiter.getRejectedCount(RateLimiter.ActionClass.AUTH));
+            rateLimit.addProperty("query", rateLimiter.getRejectedCount(RateLimiter.ActionClass.QUERY));
+            rateLimit.addProperty("write", rateLimiter.getRejectedCount(RateLimiter.ActionClass.WRITE));
+            rateLimit.addProperty("tracked", rateLimiter.getTrackedCount());
+            response.getData().add("rateLimit", rateLimit);
+        }
+        if (idleReaper != null) {
+            JsonObject heartbeat = new JsonObject();
+            heartbeat.addProperty("intervalSeconds", idleReaper.getIntervalSeconds());
+            heartbeat.addProperty("missedLimit", idleReaper.getMissedLimit());
+            heartbeat.addProperty("connections", idleReaper.getConnectionCount());
+            heartbeat.addProperty("pings", idleReaper.getPingCount());
+            heartbeat.addProperty("reaped", idleReaper.getReapedCount());
+            response.getData().add("heartbeat", heartbeat);
+        }
+
+        JsonObject compression = new JsonObject();
+        compression.addProperty("threshold", compressionThreshold);
+        compression.addProperty("batches", BatchCompressor.getBatchCount());
+        compression.addProperty("rawBytes", BatchCompressor.getRawBytes());
+        compression.addProperty("compressedBytes", BatchCompressor.getCompressedBytes());
+        compression.addProperty("savedBytes", BatchCompressor.getSavedBytes());
+        compression.addProperty("ratio", BatchCompressor.getRatio());
+        compression.addProperty("cpuMs", BatchCompressor.getCpuMillis());
+        response.getData().add("compression", compression);
+        if (httpGateway != null) {
+            JsonObject http = new JsonObject();
+            http.addProperty("port", httpGateway.getPort());
+            http.addProperty("requests", httpGateway.getRequestCount());
+            http.addProperty("notModified", httpGateway.getNotModifiedCount());
+            http.addProperty("renders", httpGateway.getRenderCount());
+            http.addProperty("gzipped", httpGateway.getGzipCount());
+            response.getData().add("http", http);
+        }
+        if (handshakeStats != null) {
+            JsonObject tls = new JsonObject();
+            tls.addProperty("handshakes", handshakeStats.getHandshakeCount());
+            tls.addProperty("full", handshakeStats.getFullCount());
+            tls.addProperty("resumed", handshakeStats.getResumedCount());
+            tls.addProperty("resumptionRatio", handshakeStats.getResumptionRatio());
+            tls.addProperty("failed", handshakeStats.getFailedCount());
+            tls.addProperty("rejected", handshakeStats.getRejectedCount());
+            tls.addProperty("avgLatencyMs", handshakeStats.getAverageLatencyMillis());
+            tls.addProperty("maxLatencyMs", handshakeStats.getMaxLatencyMillis());
+            response.getData().add("tls", tls);
+        }
+        return response;
+    }
 }
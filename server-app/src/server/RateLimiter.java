@@ -0,0 +1,242 @@
+package server;
+
+import common.Constants;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Limitador de peticiones por conexion y por usuario.
+ * Cada conexion y cada usuario autenticado tienen un cubo de fichas por
+ * clase de accion (autenticacion, consultas y escrituras), de modo que un
+ * cliente que inunda el servidor con LIST_AUCTIONS no agota su presupuesto
+ * de pujas y uno que abre varias conexiones no multiplica el suyo.
+ * Los cubos no usan locks: cada uno guarda en un AtomicLong el instante
+ * teorico en que volvera a estar lleno (GCRA) y se actualiza con CAS.
+ *
+ * @author NetAuction Team
+ * @version 1.0
+ */
+public class RateLimiter {
+
+    /**
+     * Clases de accion con presupuesto propio.
+     */
+    public enum ActionClass {
+        /** REGISTER y LOGIN: cada una calcula un hash de contrasena costoso */
+        AUTH(Constants.RATE_AUTH_PER_SECOND, Constants.RATE_AUTH_BURST),
+        /** Consultas de solo lectura */
+        QUERY(Constants.RATE_QUERY_PER_SECOND, Constants.RATE_QUERY_BURST),
+        /** Acciones que modifican el estado (pujas, subastas, bloqueos, cierre de sesion) */
+        WRITE(Constants.RATE_WRITE_PER_SECOND, Constants.RATE_WRITE_BURST);
+
+        /** Nanosegundos entre fichas */
+        private final long intervalNanos;
+
+        /** Rafaga maxima expresada en nanosegundos */
+        private final long burstNanos;
+
+        ActionClass(int perSecond, int burst) {
+            this.intervalNanos = TimeUnit.SECONDS.toNanos(1) / perSecond;
+            this.burstNanos = intervalNanos * burst;
+        }
+
+        /**
+         * Obtiene la clase de una accion del protocolo.
+         *
+         * @param action accion de la peticion
+         * @return clase de la accion (las desconocidas cuentan como consultas)
+         */
+        public static ActionClass of(String action) {
+            if (action == null) {
+                return QUERY;
+            }
+            switch (action) {
+                case Constants.ACTION_REGISTER:
+                case Constants.ACTION_LOGIN:
+                    return AUTH;
+                case Constants.ACTION_BID:
+                case Constants.ACTION_CREATE_AUCTION:
+                case Constants.ACTION_CANCEL_AUCTION:
+                case Constants.ACTION_BLOCK_USER:
+                case Constants.ACTION_LOGOUT:
+                    return WRITE;
+                default:
+                    return QUERY;
+            }
+        }
+    }
+
+    /** Cubos de cada conexion, por direccion IP:puerto */
+    private final Map<String, Bucket[]> connectionBuckets;
+
+    /** Cubos de cada usuario autenticado, compartidos por todas sus conexiones */
+    private final Map<String, Bucket[]> userBuckets;
+
+    /** Peticiones rechazadas por clase de accion */
+    private final AtomicLongArray rejected;
+
+    /**
+     * Constructor del limitador.
+     */
+    public RateLimiter() {
+        this.connectionBuckets = new ConcurrentHashMap<>();
+        this.userBuckets = new ConcurrentHashMap<>();
+        this.rejected = new AtomicLongArray(ActionClass.values().length);
+    }
+
+    /**
+     * Consume una ficha de la conexion y, si esta autenticada, otra del usuario.
+     *
+     * @param action accion de la peticion
+     * @param clientAddress direccion IP:puerto de la conexion
+     * @param username usuario autenticado o null
+     * @return 0 si la peticion puede procesarse; si no, milisegundos tras los que reintentar
+     */
+    public long tryAcquire(String action, String clientAddress, String username) {
+        ActionClass actionClass = ActionClass.of(action);
+        long now = System.nanoTime();
+
+        long waitNanos = buckets(connectionBuckets, clientAddress)[actionClass.ordinal()].tryAcquire(now);
+        if (waitNanos == 0 && username != null) {
+            waitNanos = buckets(userBuckets, username)[actionClass.ordinal()].tryAcquire(now);
+        }
+        if (waitNanos == 0) {
+            return 0;
+        }
+        rejected.incrementAndGet(actionClass.ordinal());
+        return Math.max(1, TimeUnit.NANOSECONDS.toMillis(waitNanos));
+    }
+
+    /**
+     * Olvida los cubos de una conexion cerrada.
+     *
+     * @param clientAddress direccion IP:puerto de la conexion
+     */
+    public void forgetConnection(String clientAddress) {
+        if (clientAddress != null) {
+            connectionBuckets.remove(clientAddress);
+        }
+    }
+
+    /**
+     * Elimina los cubos de usuario que ya se han rellenado por completo:
+     * recrearlos mas adelante da el mismo resultado. La invoca
+     * periodicamente el servidor.
+     */
+    public void purgeIdle() {
+        long now = System.nanoTime();
+        Iterator<Bucket[]> it = userBuckets.values().iterator();
+        while (it.hasNext()) {
+            if (isIdle(it.next(), now)) {
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * @param actionClass clase de accion
+     * @return peticiones de esa clase rechazadas desde el arranque
+     */
+    public long getRejectedCount(ActionClass actionClass) {
+        return rejected.get(actionClass.ordinal());
+    }
+
+    /**
+     * @return conexiones y usuarios con cubos en memoria
+     */
+    public int getTrackedCount() {
+        return connectionBuckets.size() + userBuckets.size();
+    }
+
+    /**
+     * Obtiene (o crea) los cubos de una clave.
+     */
+    private static Bucket[] buckets(Map<String, Bucket[]> map, String key) {
+        Bucket[] buckets = map.get(key);
+        if (buckets == null) {
+            buckets = map.computeIfAbsent(key, k -> newBuckets());
+        }
+        return buckets;
+    }
+
+    /**
+     * Crea un cubo lleno por cada clase de accion.
+     */
+    private static Bucket[] newBuckets() {
+        ActionClass[] classes = ActionClass.values();
+        Bucket[] buckets = new Bucket[classes.length];
+        for (ActionClass actionClass : classes) {
+            buckets[actionClass.ordinal()] = new Bucket(actionClass.intervalNanos, actionClass.burstNanos);
+        }
+        return buckets;
+    }
+
+    /**
+     * Indica si todos los cubos estan llenos.
+     */
+    private static boolean isIdle(Bucket[] buckets, long now) {
+        for (Bucket bucket : buckets) {
+            if (!bucket.isFull(now)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Cubo de fichas sin locks.
+     * En lugar de contar fichas guarda el instante teorico en que el cubo
+     * volvera a estar lleno: cada peticion lo adelanta un intervalo y se
+     * rechaza si con ello quedaria mas alla de la rafaga permitida.
+     */
+    private static final class Bucket {
+
+        /** Nanosegundos entre fichas */
+        private final long intervalNanos;
+
+        /** Rafaga maxima expresada en nanosegundos */
+        private final long burstNanos;
+
+        /** Instante (System.nanoTime) en que el cubo vuelve a estar lleno */
+        private final AtomicLong fullAt;
+
+        Bucket(long intervalNanos, long burstNanos) {
+            this.intervalNanos = intervalNanos;
+            this.burstNanos = burstNanos;
+            this.fullAt = new AtomicLong(System.nanoTime());
+        }
+
+        /**
+         * Intenta consumir una ficha.
+         *
+         * @param now instante actual (System.nanoTime)
+         * @return 0 si habia ficha; si no, nanosegundos hasta que la haya
+         */
+        long tryAcquire(long now) {
+            while (true) {
+                long current = fullAt.get();
+                long next = Math.max(current, now) + intervalNanos;
+                long excess = next - now - burstNanos;
+                if (excess > 0) {
+                    return excess;
+                }
+                if (fullAt.compareAndSet(current, next)) {
+                    return 0;
+                }
+            }
+        }
+
+        /**
+         * @param now instante actual (System.nanoTime)
+         * @return true si el cubo tiene todas sus fichas
+         */
+        boolean isFull(long now) {
+            return fullAt.get() - now <= 0;
+        }
+    }
+}
@@ -0,0 +1,479 @@
+package server.http;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import common.Constants;
+import server.manager.AuctionManager;
+import server.model.Auction;
+import server.model.BidHistory;
+import server.model.Money;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Pasarela HTTP de solo lectura para consultar subastas sin sesion.
+ * Atiende a los visitantes anonimos con su propio pool de hilos, de modo
+ * que la carga de navegacion no ocupa hilos de {@link server.ClientHandler}
+ * ni negociaciones TLS, y lee las subastas de {@link AuctionManager} en
+ * memoria, sin pasar por la base de datos.
+ *
+ * <pre>
+ * GET /auctions       subastas activas
+ * GET /auctions/{id}  detalle de una subasta con sus ultimas pujas
+ * </pre>
+ *
+ * <p>Cada respuesta se genera una sola vez por version (la del listado de
+ * {@link AuctionManager#getListingVersion()} o la de cada
+ * {@link Auction#getVersion()}) y se comparte entre peticiones, ya comprimida
+ * con gzip si merece la pena. La version forma el ETag, asi que un cliente
+ * que repite la peticion con If-None-Match recibe 304 sin cuerpo mientras no
+ * cambie nada. Por eso las respuestas no incluyen el tiempo restante: llevan
+ * la hora de fin y el cliente lo calcula con la cabecera Date.</p>
+ *
+ * @author NetAuction Team
+ * @version 1.0
+ */
+public class HttpGateway {
+
+    /** Ruta base de la pasarela */
+    private static final String AUCTIONS_PATH = "/auctions";
+
+    /** Tipo de contenido de todas las respuestas */
+    private static final String JSON_CONTENT_TYPE = "application/json; charset=utf-8";
+
+    /** Puerto de escucha */
+    private final int port;
+
+    /** Gestor de subastas del que se leen los datos */
+    private final AuctionManager auctionManager;
+
+    /** Prefijo de los ETag: distingue las versiones de arranques distintos del servidor */
+    private final String etagPrefix;
+
+    /** Listado de subastas activas generado para la ultima version */
+    private volatile CachedResponse listing;
+
+    /** Evita que varias peticiones generen a la vez el mismo listado */
+    private final ReentrantLock listingLock;
+
+    /** Detalle generado de cada subasta (id -> respuesta) */
+    private final Map<String, CachedResponse> details;
+
+    /** Servidor HTTP del JDK */
+    private HttpServer server;
+
+    /** Pool que atiende las peticiones */
+    private ExecutorService executor;
+
+    /** Peticiones atendidas */
+    private final AtomicLong requestCount;
+
+    /** Respuestas 304 (el cliente ya tenia la version actual) */
+    private final AtomicLong notModifiedCount;
+
+    /** Respuestas generadas (las demas se sirven ya generadas) */
+    private final AtomicLong renderCount;
+
+    /** Respuestas enviadas comprimidas con gzip */
+    private final AtomicLong gzipCount;
+
+    /**
+     * Constructor de la pasarela.
+     *
+     * @param port puerto de escucha
+     * @param auctionManager gestor de subastas
+     */
+    public HttpGateway(int port, AuctionManager auctionManager) {
+        this.port = port;
+        this.auctionManager = auctionManager;
+        this.etagPrefix = Long.toString(System.currentTimeMillis(), 36) + "-";
+        this.listingLock = new ReentrantLock();
+        this.details = new ConcurrentHashMap<>();
+        this.requestCount = new AtomicLong();
+        this.notModifiedCount = new AtomicLong();
+        this.renderCount = new AtomicLong();
+        this.gzipCount = new AtomicLong();
+    }
+
+    /**
+     * Abre el puerto y empieza a atender peticiones.
+     *
+     * @throws IOException si no se puede abrir el puerto
+     */
+    public void start() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(port), 0);
+        server.createContext(AUCTIONS_PATH, this::handle);
+        executor = Executors.newFixedThreadPool(Constants.HTTP_THREADS, runnable -> {
+            Thread thread = new Thread(runnable, "http-gateway");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(executor);
+        server.start();
+        System.out.println("[HTTP] Pasarela de consulta escuchando en el puerto " + port);
+    }
+
+    /**
+     * Deja de atender peticiones y libera el puerto.
+     */
+    public void stop() {
+        if (server != null) {
+            server.stop(0);
+        }
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    // ==================== PETICIONES ====================
+
+    /**
+     * Atiende una peticion de la ruta /auctions.
+     *
+     * @param exchange intercambio HTTP
+     * @throws IOException si falla el envio de la respuesta
+     */
+    private void handle(HttpExchange exchange) throws IOException {
+        requestCount.incrementAndGet();
+        try {
+            String method = exchange.getRequestMethod();
+            boolean head = "HEAD".equals(method);
+            if (!head && !"GET".equals(method)) {
+                exchange.getResponseHeaders().set("Allow", "GET, HEAD");
+                sendError(exchange, 405, "Metodo no permitido");
+                return;
+            }
+
+            String path = exchange.getRequestURI().getPath();
+            CachedResponse response;
+            if (AUCTIONS_PATH.equals(path) || (AUCTIONS_PATH + "/").equals(path)) {
+                response = getListing();
+            } else if (path.startsWith(AUCTIONS_PATH + "/")) {
+                Auction auction = auctionManager.getAuction(path.substring(AUCTIONS_PATH.length() + 1));
+                if (auction == null) {
+                    sendError(exchange, 404, "Subasta no encontrada");
+                    return;
+                }
+                response = getDetail(auction);
+            } else {
+                sendError(exchange, 404, "Recurso no encontrado");
+                return;
+            }
+            send(exchange, response, head);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Envia una respuesta generada, o 304 si el cliente ya tiene esa version.
+     *
+     * @param exchange intercambio HTTP
+     * @param response respuesta a enviar
+     * @param head true si es una peticion HEAD (sin cuerpo)
+     * @throws IOException si falla el envio
+     */
+    private void send(HttpExchange exchange, CachedResponse response, boolean head) throws IOException {
+        Headers headers = exchange.getResponseHeaders();
+        headers.set("ETag", response.etag);
+        headers.set("Cache-Control", "no-cache");
+        headers.set("Vary", "Accept-Encoding");
+
+        if (matchesEtag(exchange.getRequestHeaders().getFirst("If-None-Match"), response.etag)) {
+            notModifiedCount.incrementAndGet();
+            exchange.sendResponseHeaders(304, -1);
+            return;
+        }
+
+        byte[] body = response.body;
+        if (response.gzipBody != null && acceptsGzip(exchange.getRequestHeaders().getFirst("Accept-Encoding"))) {
+            body = response.gzipBody;
+            headers.set("Content-Encoding", "gzip");
+            gzipCount.incrementAndGet();
+        }
+        headers.set("Content-Type", JSON_CONTENT_TYPE);
+        if (head) {
+            headers.set("Content-Length", Integer.toString(body.length));
+            exchange.sendResponseHeaders(200, -1);
+            return;
+        }
+        // Con la longitud conocida la conexion se mantiene abierta para la siguiente peticion
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    /**
+     * Envia un error con cuerpo JSON.
+     *
+     * @param exchange intercambio HTTP
+     * @param code codigo de estado
+     * @param message descripcion del error
+     * @throws IOException si falla el envio
+     */
+    private static void sendError(HttpExchange exchange, int code, String message) throws IOException {
+        JsonObject json = new JsonObject();
+        json.addProperty("status", Constants.STATUS_ERROR);
+        json.addProperty("message", message);
+        byte[] body = json.toString().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", JSON_CONTENT_TYPE);
+        exchange.sendResponseHeaders(code, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    /**
+     * Comprueba si alguno de los ETag de If-None-Match coincide con el actual.
+     *
+     * @param ifNoneMatch valor de la cabecera (puede ser null)
+     * @param etag ETag de la version actual
+     * @return true si el cliente ya tiene la version actual
+     */
+    private static boolean matchesEtag(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            candidate = candidate.trim();
+            if (candidate.startsWith("W/")) {
+                candidate = candidate.substring(2);
+            }
+            if (candidate.equals("*") || candidate.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param acceptEncoding valor de la cabecera Accept-Encoding (puede ser null)
+     * @return true si el cliente acepta gzip
+     */
+    private static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.trim().split(";");
+            if (parts[0].trim().equalsIgnoreCase("gzip")) {
+                return parts.length < 2 || !parts[1].replace(" ", "").equalsIgnoreCase("q=0");
+            }
+        }
+        return false;
+    }
+
+    // ==================== GENERACION ====================
+
+    /**
+     * Obtiene el listado de subastas activas, generandolo solo si cambio la version.
+     *
+     * @return listado de la version actual
+     */
+    private CachedResponse getListing() {
+        long version = auctionManager.getListingVersion();
+        CachedResponse cached = listing;
+        if (cached != null && cached.version == version) {
+            return cached;
+        }
+        listingLock.lock();
+        try {
+            // La version se lee antes que los datos: si cambian mientras se genera,
+            // el resultado queda con una version antigua y se regenera en la siguiente
+            version = auctionManager.getListingVersion();
+            cached = listing;
+            if (cached == null || cached.version != version) {
+                cached = renderListing(version);
+                listing = cached;
+            }
+            return cached;
+        } finally {
+            listingLock.unlock();
+        }
+    }
+
+    /**
+     * Obtiene el detalle de una subasta, generandolo solo si cambio su version.
+     *
+     * @param auction subasta
+     * @return detalle de la version actual
+     */
+    private CachedResponse getDetail(Auction auction) {
+        Auction.Snapshot snapshot = auction.getSnapshot();
+        long version = snapshot.getVersion();
+        CachedResponse cached = details.get(auction.getId());
+        if (cached != null && cached.version == version) {
+            return cached;
+        }
+        return details.compute(auction.getId(), (id, current) ->
+            current != null && current.version == version ? current : renderDetail(auction, snapshot));
+    }
+
+    /**
+     * Genera el listado de subastas activas.
+     *
+     * @param version version del listado leida antes de generarlo
+     * @return respuesta generada
+     */
+    private CachedResponse renderListing(long version) {
+        List<Auction> auctions = auctionManager.getActiveAuctions();
+        JsonArray auctionsArray = new JsonArray();
+        for (Auction auction : auctions) {
+            Auction.Snapshot snapshot = auction.getSnapshot();
+            JsonObject auctionJson = new JsonObject();
+            auctionJson.addProperty("id", auction.getId());
+            auctionJson.addProperty("title", auction.getTitle());
+            auctionJson.addProperty("currentPrice", Money.toUnits(snapshot.getCurrentPrice()));
+            auctionJson.addProperty("endTime", auction.getEndTime());
+            auctionJson.addProperty("bidCount", snapshot.getBidCount());
+            auctionJson.addProperty("seller", auction.getSeller());
+            auctionsArray.add(auctionJson);
+        }
+
+        JsonObject json = new JsonObject();
+        json.addProperty("status", Constants.STATUS_OK);
+        json.addProperty("count", auctions.size());
+        json.add("auctions", auctionsArray);
+        return render(json, version, etagPrefix + "l" + version);
+    }
+
+    /**
+     * Genera el detalle de una subasta con sus ultimas pujas.
+     *
+     * @param auction subasta
+     * @param snapshot estado de la subasta del que se genera
+     * @return respuesta generada
+     */
+    private CachedResponse renderDetail(Auction auction, Auction.Snapshot snapshot) {
+        JsonObject json = new JsonObject();
+        json.addProperty("status", Constants.STATUS_OK);
+        json.addProperty("id", auction.getId());
+        json.addProperty("title", auction.getTitle());
+        json.addProperty("description", auction.getDescription());
+        json.addProperty("seller", auction.getSeller());
+        json.addProperty("startPrice", Money.toUnits(auction.getStartPrice()));
+        json.addProperty("currentPrice", Money.toUnits(snapshot.getCurrentPrice()));
+        json.addProperty("currentWinner", snapshot.getCurrentWinner());
+        json.addProperty("startTime", auction.getStartTime());
+        json.addProperty("endTime", auction.getEndTime());
+        json.addProperty("auctionStatus", snapshot.getStatus());
+        json.addProperty("bidCount", snapshot.getBidCount());
+
+        JsonArray bidsArray = new JsonArray();
+        BidHistory.View recentBids = snapshot.getRecentBids(Constants.RECENT_BIDS_LIMIT);
+        for (int i = 0; i < recentBids.size(); i++) {
+            JsonObject bidJson = new JsonObject();
+            bidJson.addProperty("bidder", recentBids.getBidder(i));
+            bidJson.addProperty("amount", Money.toUnits(recentBids.getAmount(i)));
+            bidJson.addProperty("timestamp", recentBids.getTimestamp(i));
+            bidsArray.add(bidJson);
+        }
+        json.add("recentBids", bidsArray);
+        long version = snapshot.getVersion();
+        return render(json, version, etagPrefix + auction.getId() + "-" + version);
+    }
+
+    /**
+     * Serializa una respuesta y, si supera el minimo, prepara tambien su version gzip.
+     *
+     * @param json contenido de la respuesta
+     * @param version version de los datos
+     * @param tag identificador de la version (sin comillas)
+     * @return respuesta lista para compartir entre peticiones
+     */
+    private CachedResponse render(JsonObject json, long version, String tag) {
+        renderCount.incrementAndGet();
+        byte[] body = json.toString().getBytes(StandardCharsets.UTF_8);
+        byte[] gzipBody = null;
+        if (body.length >= Constants.HTTP_GZIP_MIN_BYTES) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(body.length / 3);
+            try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+                gzip.write(body);
+            } catch (IOException e) {
+                // No ocurre con un ByteArrayOutputStream
+            }
+            if (out.size() < body.length) {
+                gzipBody = out.toByteArray();
+            }
+        }
+        return new CachedResponse(version, "\"" + tag + "\"", body, gzipBody);
+    }
+
+    // ==================== ESTADISTICAS ====================
+
+    /**
+     * @return puerto de escucha
+     */
+    public int getPort() {
+        return port;
+    }
+
+    /**
+     * @return peticiones atendidas
+     */
+    public long getRequestCount() {
+        return requestCount.get();
+    }
+
+    /**
+     * @return respuestas 304 enviadas
+     */
+    public long getNotModifiedCount() {
+        return notModifiedCount.get();
+    }
+
+    /**
+     * @return respuestas generadas
+     */
+    public long getRenderCount() {
+        return renderCount.get();
+    }
+
+    /**
+     * @return respuestas enviadas comprimidas con gzip
+     */
+    public long getGzipCount() {
+        return gzipCount.get();
+    }
+
+    /**
+     * Respuesta generada para una version concreta, inmutable y compartida.
+     */
+    private static final class CachedResponse {
+
+        /** Version de los datos con la que se genero */
+        private final long version;
+
+        /** ETag entre comillas */
+        private final String etag;
+
+        /** Cuerpo JSON en UTF-8 */
+        private final byte[] body;
+
+        /** Cuerpo comprimido con gzip (null si no compensa) */
+        private final byte[] gzipBody;
+
+        CachedResponse(long version, String etag, byte[] body, byte[] gzipBody) {
+            this.version = version;
+            this.etag = etag;
+            this.body = body;
+            this.gzipBody = gzipBody;
+        }
+    }
+}
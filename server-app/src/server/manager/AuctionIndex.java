@@ -0,0 +1,254 @@
+package server.manager;
+
+import server.model.Auction;
+import common.Constants;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Indices ordenados de las subastas activas.
+ * Mantiene un {@link ConcurrentSkipListMap} por criterio de orden (fin,
+ * precio actual y numero de pujas) con clave valor + ID, de modo que un
+ * listado recorre el indice desde el principio o desde un cursor y solo
+ * visita las subastas de la pagina, sin filtrar ni ordenar el mapa completo.
+ *
+ * <p>Los indices se actualizan en el hilo de la particion de cada subasta
+ * (al aceptar una puja y al cerrarla o cancelarla), que es el unico que la
+ * modifica. Los lectores recorren los indices sin bloqueo: recolocar una
+ * subasta quita su entrada anterior y anade la nueva, y un listado que se
+ * cruza con ese movimiento puede no verla o verla dos veces (en la posicion
+ * anterior y en la nueva). Del mismo modo, entre las paginas de un listado
+ * con cursor una subasta que pasa de un lado a otro del cursor puede
+ * saltarse o repetirse. Los datos que muestra se leen siempre de su estado
+ * actual.</p>
+ *
+ * @author NetAuction Team
+ * @version 1.0
+ */
+public class AuctionIndex {
+
+    /**
+     * Criterio de orden de un listado.
+     */
+    public enum SortKey {
+        /** Fin de la subasta, la que antes termina primero */
+        END_TIME(Constants.SORT_END_TIME),
+        /** Precio actual, la mas cara primero */
+        PRICE(Constants.SORT_PRICE),
+        /** Numero de pujas, la que mas tiene primero */
+        BID_COUNT(Constants.SORT_BID_COUNT);
+
+        private final String name;
+
+        SortKey(String name) {
+            this.name = name;
+        }
+
+        /**
+         * @return nombre del criterio en el protocolo
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Obtiene el criterio por su nombre en el protocolo.
+         *
+         * @param name nombre del criterio (null para el de por defecto)
+         * @return criterio, o null si el nombre no es valido
+         */
+        public static SortKey fromName(String name) {
+            if (name == null || name.isEmpty()) {
+                return END_TIME;
+            }
+            for (SortKey key : values()) {
+                if (key.name.equals(name)) {
+                    return key;
+                }
+            }
+            return null;
+        }
+    }
+
+    /** Subastas activas por fin */
+    private final ConcurrentSkipListMap<IndexKey, Auction> byEndTime;
+
+    /** Subastas activas por precio actual */
+    private final ConcurrentSkipListMap<IndexKey, Auction> byPrice;
+
+    /** Subastas activas por numero de pujas */
+    private final ConcurrentSkipListMap<IndexKey, Auction> byBidCount;
+
+    /** Subastas en los indices (size() de un ConcurrentSkipListMap recorre el mapa) */
+    private final AtomicInteger size;
+
+    /**
+     * Constructor de los indices vacios.
+     */
+    public AuctionIndex() {
+        this.byEndTime = new ConcurrentSkipListMap<>();
+        this.byPrice = new ConcurrentSkipListMap<>();
+        this.byBidCount = new ConcurrentSkipListMap<>();
+        this.size = new AtomicInteger();
+    }
+
+    /**
+     * Anade una subasta activa a los indices.
+     *
+     * @param auction subasta
+     */
+    public void add(Auction auction) {
+        Auction.Snapshot snapshot = auction.getSnapshot();
+        byEndTime.put(new IndexKey(auction.getEndTime(), auction.getId()), auction);
+        byPrice.put(new IndexKey(snapshot.getCurrentPrice(), auction.getId()), auction);
+        byBidCount.put(new IndexKey(snapshot.getBidCount(), auction.getId()), auction);
+        size.incrementAndGet();
+    }
+
+    /**
+     * Recoloca una subasta tras aceptar una puja. El fin no cambia, asi que
+     * solo se mueven sus entradas de precio y numero de pujas. No es atomico
+     * para los lectores (ver la descripcion de la clase).
+     *
+     * @param auction subasta
+     * @param before estado anterior a la puja
+     * @param after estado tras la puja
+     */
+    public void update(Auction auction, Auction.Snapshot before, Auction.Snapshot after) {
+        String id = auction.getId();
+        byPrice.remove(new IndexKey(before.getCurrentPrice(), id));
+        byPrice.put(new IndexKey(after.getCurrentPrice(), id), auction);
+        byBidCount.remove(new IndexKey(before.getBidCount(), id));
+        byBidCount.put(new IndexKey(after.getBidCount(), id), auction);
+    }
+
+    /**
+     * Quita una subasta de los indices al cerrarla o cancelarla.
+     *
+     * @param auction subasta
+     */
+    public void remove(Auction auction) {
+        Auction.Snapshot snapshot = auction.getSnapshot();
+        if (byEndTime.remove(new IndexKey(auction.getEndTime(), auction.getId())) != null) {
+            size.decrementAndGet();
+        }
+        byPrice.remove(new IndexKey(snapshot.getCurrentPrice(), auction.getId()));
+        byBidCount.remove(new IndexKey(snapshot.getBidCount(), auction.getId()));
+    }
+
+    /**
+     * @return numero de subastas en los indices
+     */
+    public int size() {
+        return size.get();
+    }
+
+    /**
+     * Obtiene una pagina de subastas activas.
+     * Omite las que ya han vencido y esperan su cierre.
+     *
+     * @param sortKey criterio de orden
+     * @param cursor cursor devuelto con la pagina anterior (null para la primera)
+     * @param limit tamano maximo de la pagina
+     * @return pagina, con el cursor de la siguiente si hay mas subastas
+     * @throws IllegalArgumentException si el cursor no es valido
+     */
+    public Page page(SortKey sortKey, String cursor, int limit) {
+        return page(view(sortKey), cursor, limit, true);
+    }
+
+    /**
+     * Recorre un indice desde un cursor hasta llenar una pagina.
+     *
+     * @param index indice en su sentido de recorrido
+     * @param cursor cursor devuelto con la pagina anterior (null para la primera)
+     * @param limit tamano maximo de la pagina (al menos 1)
+     * @param activeOnly si se omiten las subastas que ya no estan activas
+     * @return pagina, con el cursor de la siguiente si hay mas subastas
+     * @throws IllegalArgumentException si el cursor no es valido
+     */
+    static Page page(NavigableMap<IndexKey, Auction> index, String cursor, int limit, boolean activeOnly) {
+        if (cursor != null && !cursor.isEmpty()) {
+            index = index.tailMap(IndexKey.parse(cursor), false);
+        }
+
+        List<Auction> auctions = new ArrayList<>(Math.min(limit, 64));
+        IndexKey last = null;
+        for (Map.Entry<IndexKey, Auction> entry : index.entrySet()) {
+            if (activeOnly && !entry.getValue().isActive()) {
+                continue;
+            }
+            if (auctions.size() == limit) {
+                return new Page(auctions, last.format());
+            }
+            auctions.add(entry.getValue());
+            last = entry.getKey();
+        }
+        return new Page(auctions, null);
+    }
+
+    /**
+     * Obtiene todas las subastas activas en el orden de un criterio.
+     *
+     * @param sortKey criterio de orden
+     * @return lista de subastas activas
+     */
+    public List<Auction> list(SortKey sortKey) {
+        List<Auction> auctions = new ArrayList<>(size.get());
+        for (Auction auction : view(sortKey).values()) {
+            if (auction.isActive()) {
+                auctions.add(auction);
+            }
+        }
+        return auctions;
+    }
+
+    /**
+     * @return indice de un criterio en su sentido de recorrido
+     */
+    private NavigableMap<IndexKey, Auction> view(SortKey sortKey) {
+        switch (sortKey) {
+            case PRICE:
+                return byPrice.descendingMap();
+            case BID_COUNT:
+                return byBidCount.descendingMap();
+            default:
+                return byEndTime;
+        }
+    }
+
+    // ==================== CLASES AUXILIARES ====================
+
+    /**
+     * Pagina de un listado.
+     */
+    public static class Page {
+        private final List<Auction> auctions;
+        private final String next;
+
+        public Page(List<Auction> auctions, String next) {
+            this.auctions = Collections.unmodifiableList(auctions);
+            this.next = next;
+        }
+
+        /**
+         * @return subastas de la pagina
+         */
+        public List<Auction> getAuctions() {
+            return auctions;
+        }
+
+        /**
+         * @return cursor de la pagina siguiente, o null si es la ultima
+         */
+        public String getNext() {
+            return next;
+        }
+    }
+}
@@ -2,48 +2,158 @@ package server.manager;
 
 import server.model.Auction;
 import server.model.Bid;
+import server.model.Money;
+import server.persistence.AckStats;
 import server.persistence.Database;
+import server.persistence.Durability;
+import server.persistence.WriteBehindQueue;
 import server.security.CryptoUtils;
 import common.Constants;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 /**
  * Gestor de subastas del sistema.
  * Maneja creación, listado, pujas y cierre de subastas.
- * Thread-safe mediante ConcurrentHashMap y locks internos de Auction.
- * Soporta persistencia opcional con SQLite.
+ * Thread-safe mediante ConcurrentHashMap y el estado atomico de cada Auction.
+ * Las altas, pujas, cierres y cancelaciones se aplican en la particion
+ * propietaria de cada subasta ({@link AuctionPartitions}), de una en una y en orden, y
+ * se devuelven como {@link CompletableFuture}. Los vencimientos se programan
+ * en una {@link ExpiryWheel} al crear o cargar cada subasta.
+ * Soporta persistencia opcional con SQLite; cada puja, cierre y cancelacion
+ * se confirma con la {@link Durability} configurada o pedida.
  *
  * @author NetAuction Team
  * @version 1.0
  */
 public class AuctionManager {
 
+    /** Espera ya cumplida para los avisos que no dependen de la base de datos */
+    private static final CompletableFuture<Void> DONE = CompletableFuture.completedFuture(null);
+
     /** Almacén de subastas (id -> Auction) */
     private final ConcurrentHashMap<String, Auction> auctions;
 
     /** Base de datos para persistencia (opcional) */
     private Database database;
 
+    /** Escritura diferida en la base de datos (null sin persistencia) */
+    private WriteBehindQueue writeQueue;
+
+    /** Durabilidad con la que se confirman las pujas que no piden otra */
+    private volatile Durability bidDurability;
+
+    /** Durabilidad con la que se confirman las altas, los cierres y las cancelaciones que no piden otra */
+    private volatile Durability closeDurability;
+
+    /** Latencia de confirmacion por durabilidad */
+    private final AckStats ackStats;
+
+    /** Ultimo anuncio pendiente de cada subasta con una operacion durable sin guardar */
+    private final ConcurrentHashMap<String, CompletableFuture<Void>> announcements;
+
+    /** Version del conjunto de subastas; aumenta con cada alta, puja, cierre o cancelacion */
+    private final AtomicLong listingVersion;
+
+    /** Particiones que aplican las operaciones de escritura sobre las subastas */
+    private final AuctionPartitions partitions;
+
+    /** Indices ordenados de las subastas activas */
+    private final AuctionIndex activeIndex;
+
+    /** Subastas de cada vendedor, la mas reciente primero */
+    private final UserAuctionIndex sellerIndex;
+
+    /** Subastas en las que ha pujado cada usuario, la mas reciente primero */
+    private final UserAuctionIndex bidderIndex;
+
+    /** Subastas ganadas por cada usuario, la ultima en terminar primero */
+    private final UserAuctionIndex winnerIndex;
+
+    /** Vencimientos programados de las subastas activas */
+    private final ExpiryWheel expiryWheel;
+
+    /** Recibe las subastas cerradas por vencimiento (null si nadie las atiende) */
+    private volatile Consumer<List<Auction>> expiryListener;
+
     /**
      * Constructor del gestor de subastas.
      */
     public AuctionManager() {
         this.auctions = new ConcurrentHashMap<>();
-        System.out.println("[AuctionManager] Iniciado");
+        this.listingVersion = new AtomicLong();
+        this.bidDurability = Durability.fromName(Constants.BID_DURABILITY);
+        this.closeDurability = Durability.fromName(Constants.CLOSE_DURABILITY);
+        this.ackStats = new AckStats();
+        this.announcements = new ConcurrentHashMap<>();
+        this.partitions = new AuctionPartitions(Constants.AUCTION_PARTITIONS);
+        this.activeIndex = new AuctionIndex();
+        this.sellerIndex = new UserAuctionIndex(Auction::getStartTime);
+        this.bidderIndex = new UserAuctionIndex(Auction::getStartTime);
+        this.winnerIndex = new UserAuctionIndex(Auction::getEndTime);
+        this.expiryWheel = new ExpiryWheel(Constants.EXPIRY_TICK_MS, Constants.EXPIRY_WHEEL_SIZE,
+            this::closeExpired);
+        this.expiryWheel.start();
+        System.out.println("[AuctionManager] Iniciado con " +
+            partitions.getPartitionCount() + " particiones");
     }
 
     /**
-     * Establece la base de datos para persistencia.
+     * Establece la base de datos para persistencia y arranca su escritura
+     * diferida: las altas, pujas, cierres y cancelaciones se guardan en lote
+     * desde un hilo propio, sin esperar a la base de datos.
      *
      * @param database instancia de base de datos
      */
     public void setDatabase(Database database) {
         this.database = database;
+        this.writeQueue = new WriteBehindQueue(database,
+            Constants.WRITE_QUEUE_CAPACITY, Constants.WRITE_BATCH_MAX,
+            Constants.WRITE_RETRY_ATTEMPTS, Constants.WRITE_RETRY_BACKOFF_MS);
+        this.writeQueue.start();
+    }
+
+    /**
+     * Establece la durabilidad con la que se confirman las pujas que no
+     * piden otra.
+     *
+     * @param bidDurability durabilidad de las pujas
+     */
+    public void setBidDurability(Durability bidDurability) {
+        this.bidDurability = bidDurability;
+    }
+
+    /**
+     * Establece la durabilidad con la que se confirman las altas, los
+     * cierres por vencimiento y las cancelaciones que no piden otra.
+     *
+     * @param closeDurability durabilidad de las altas, cierres y cancelaciones
+     */
+    public void setCloseDurability(Durability closeDurability) {
+        this.closeDurability = closeDurability;
+    }
+
+    /**
+     * Establece quien recibe las subastas cerradas por vencimiento (para
+     * notificar a los participantes). Se invoca en el hilo de la rueda con
+     * todas las subastas que vencen en el mismo tick.
+     *
+     * @param expiryListener oyente de vencimientos
+     */
+    public void setExpiryListener(Consumer<List<Auction>> expiryListener) {
+        this.expiryListener = expiryListener;
     }
 
     /**
@@ -55,10 +165,13 @@ public class AuctionManager {
         }
 
         List<Auction> dbAuctions = database.getAllAuctions();
+        Map<String, List<String>> bidders = database.getBiddersByAuction();
         for (Auction auction : dbAuctions) {
-            auction.initializeLock();
             auctions.put(auction.getId(), auction);
+            indexUsers(auction, bidders.getOrDefault(auction.getId(), Collections.emptyList()));
+            track(auction);
         }
+        listingVersion.incrementAndGet();
 
         System.out.println("[AuctionManager] Cargadas " + dbAuctions.size() + " subastas desde la BD");
     }
@@ -69,42 +182,49 @@ public class AuctionManager {
      * @param title título de la subasta
      * @param description descripción del artículo
      * @param seller username del vendedor
-     * @param startPrice precio de salida
+     * @param startPrice precio de salida en centimos
      * @param durationMinutes duración en minutos
-     * @return resultado de la creación
+     * @param durability durabilidad de la confirmacion (null para la de los cierres)
+     * @return resultado de la creación, completado cuando tiene la durabilidad pedida
      */
-    public CreateAuctionResult createAuction(String title, String description,
-            String seller, double startPrice, int durationMinutes) {
+    public CompletableFuture<CreateAuctionResult> createAuction(String title, String description,
+            String seller, long startPrice, int durationMinutes, Durability durability) {
 
         // Validaciones
         if (title == null || title.trim().isEmpty()) {
-            return new CreateAuctionResult(false, "El título es obligatorio", null);
+            return CompletableFuture.completedFuture(
+                new CreateAuctionResult(false, "El título es obligatorio", null));
         }
         title = title.trim();
 
         if (title.length() > 100) {
-            return new CreateAuctionResult(false,
-                "El título no puede tener más de 100 caracteres", null);
+            return CompletableFuture.completedFuture(new CreateAuctionResult(false,
+                "El título no puede tener más de 100 caracteres", null));
         }
 
         if (description != null && description.length() > 1000) {
-            return new CreateAuctionResult(false,
-                "La descripción no puede tener más de 1000 caracteres", null);
+            return CompletableFuture.completedFuture(new CreateAuctionResult(false,
+                "La descripción no puede tener más de 1000 caracteres", null));
+        }
+
+        if (startPrice == Money.INVALID) {
+            return CompletableFuture.completedFuture(new CreateAuctionResult(false,
+                "El precio de salida no es valido (como maximo dos decimales)", null));
         }
 
-        if (startPrice < Constants.MIN_START_PRICE) {
-            return new CreateAuctionResult(false,
-                "El precio de salida debe ser al menos " + Constants.MIN_START_PRICE, null);
+        if (startPrice < Constants.MIN_START_PRICE_CENTS) {
+            return CompletableFuture.completedFuture(new CreateAuctionResult(false,
+                "El precio de salida debe ser al menos " + Money.format(Constants.MIN_START_PRICE_CENTS), null));
         }
 
         if (durationMinutes < Constants.MIN_AUCTION_DURATION_MINUTES) {
-            return new CreateAuctionResult(false,
-                "La duración mínima es " + Constants.MIN_AUCTION_DURATION_MINUTES + " minutos", null);
+            return CompletableFuture.completedFuture(new CreateAuctionResult(false,
+                "La duración mínima es " + Constants.MIN_AUCTION_DURATION_MINUTES + " minutos", null));
         }
 
         if (durationMinutes > Constants.MAX_AUCTION_DURATION_MINUTES) {
-            return new CreateAuctionResult(false,
-                "La duración máxima es " + Constants.MAX_AUCTION_DURATION_MINUTES + " minutos", null);
+            return CompletableFuture.completedFuture(new CreateAuctionResult(false,
+                "La duración máxima es " + Constants.MAX_AUCTION_DURATION_MINUTES + " minutos", null));
         }
 
         // Crear subasta
@@ -112,15 +232,67 @@ public class AuctionManager {
         Auction auction = new Auction(id, title, description != null ? description.trim() : "",
             seller, startPrice, durationMinutes);
 
-        auctions.put(id, auction);
+        Durability level = durability != null ? durability : closeDurability;
+        long requestedAt = System.nanoTime();
+        return submitAcknowledged(id, ack -> applyCreate(auction, level, requestedAt, ack));
+    }
+
+    /**
+     * Publica una subasta nueva desde el hilo de su particion y confirma su
+     * alta con su durabilidad.
+     */
+    private Void applyCreate(Auction auction, Durability durability, long requestedAt,
+                             CompletableFuture<CreateAuctionResult> ack) {
+        String auctionId = auction.getId();
+
+        // En los indices antes que en el mapa: ninguna puja la encuentra sin indexar.
+        // Las pujas pasan por esta misma particion, asi que su alta se encola antes
+        sellerIndex.add(auction.getSeller(), auction);
+        track(auction);
+        auctions.put(auctionId, auction);
+        listingVersion.incrementAndGet();
+
+        System.out.println("[AuctionManager] Subasta creada: " + auctionId + " por " + auction.getSeller());
+
+        // Persistir en BD (escritura diferida)
+        acknowledge(auctionId, durability, requestedAt, () -> writeQueue.insertAuction(auction),
+            () -> { },
+            (achieved, lost) -> ack.complete(lost
+                ? new CreateAuctionResult(true, "Subasta creada, pero no se ha podido guardar en la base de datos",
+                    auction, achieved)
+                : new CreateAuctionResult(true, "Subasta creada correctamente", auction, achieved)));
+        return null;
+    }
 
-        // Persistir en BD si está disponible
-        if (database != null) {
-            database.insertAuction(auction);
+    /**
+     * Anade una subasta activa a los indices ordenados y programa su vencimiento.
+     * Las que vencieron con el servidor parado se cierran en cuanto arranca la rueda.
+     *
+     * @param auction subasta creada o cargada
+     */
+    private void track(Auction auction) {
+        if (Constants.AUCTION_STATUS_ACTIVE.equals(auction.getStatus())) {
+            activeIndex.add(auction);
+            expiryWheel.schedule(auction.getId(), auction.getEndTime());
         }
+    }
 
-        System.out.println("[AuctionManager] Subasta creada: " + id + " por " + seller);
-        return new CreateAuctionResult(true, "Subasta creada correctamente", auction);
+    /**
+     * Anade una subasta creada antes de arrancar a los indices de vendedor,
+     * pujadores y ganador. Los pujadores se leen de la base de datos: la
+     * subasta solo conserva en memoria sus ultimas pujas.
+     *
+     * @param auction subasta cargada
+     * @param bidders usernames de todos sus pujadores
+     */
+    private void indexUsers(Auction auction, Collection<String> bidders) {
+        sellerIndex.add(auction.getSeller(), auction);
+        for (String bidder : bidders) {
+            bidderIndex.add(bidder, auction);
+        }
+        if (Constants.AUCTION_STATUS_FINISHED.equals(auction.getStatus())) {
+            winnerIndex.add(auction.getCurrentWinner(), auction);
+        }
     }
 
     /**
@@ -133,11 +305,7 @@ public class AuctionManager {
         if (auctionId == null) {
             return null;
         }
-        Auction auction = auctions.get(auctionId);
-        if (auction != null) {
-            auction.initializeLock();
-        }
-        return auction;
+        return auctions.get(auctionId);
     }
 
     /**
@@ -146,11 +314,22 @@ public class AuctionManager {
      * @return lista de subastas activas ordenadas por tiempo restante
      */
     public List<Auction> getActiveAuctions() {
-        return auctions.values().stream()
-            .filter(Auction::isActive)
-            .sorted((a, b) -> Long.compare(a.getEndTime(), b.getEndTime()))
-            .peek(Auction::initializeLock)
-            .collect(Collectors.toList());
+        return activeIndex.list(AuctionIndex.SortKey.END_TIME);
+    }
+
+    /**
+     * Obtiene una pagina de subastas activas directamente del indice de un
+     * criterio de orden. El coste depende del tamano de la pagina, no del
+     * numero de subastas.
+     *
+     * @param sortKey criterio de orden
+     * @param cursor cursor devuelto con la pagina anterior (null para la primera)
+     * @param limit tamano maximo de la pagina
+     * @return pagina de subastas activas
+     * @throws IllegalArgumentException si el cursor no es valido
+     */
+    public AuctionIndex.Page getActiveAuctions(AuctionIndex.SortKey sortKey, String cursor, int limit) {
+        return activeIndex.page(sortKey, cursor, limit);
     }
 
     /**
@@ -162,7 +341,6 @@ public class AuctionManager {
         return auctions.values().stream()
             .filter(a -> Constants.AUCTION_STATUS_FINISHED.equals(a.getStatus()))
             .sorted((a, b) -> Long.compare(b.getEndTime(), a.getEndTime()))
-            .peek(Auction::initializeLock)
             .collect(Collectors.toList());
     }
 
@@ -173,11 +351,20 @@ public class AuctionManager {
      * @return lista de subastas del vendedor
      */
     public List<Auction> getAuctionsBySeller(String seller) {
-        return auctions.values().stream()
-            .filter(a -> seller.equals(a.getSeller()))
-            .sorted((a, b) -> Long.compare(b.getStartTime(), a.getStartTime()))
-            .peek(Auction::initializeLock)
-            .collect(Collectors.toList());
+        return sellerIndex.list(seller);
+    }
+
+    /**
+     * Obtiene una pagina de las subastas creadas por un usuario.
+     *
+     * @param seller username del vendedor
+     * @param cursor cursor devuelto con la pagina anterior (null para la primera)
+     * @param limit tamano maximo de la pagina
+     * @return pagina de subastas del vendedor, la mas reciente primero
+     * @throws IllegalArgumentException si el cursor no es valido
+     */
+    public AuctionIndex.Page getAuctionsBySeller(String seller, String cursor, int limit) {
+        return sellerIndex.page(seller, cursor, limit);
     }
 
     /**
@@ -187,11 +374,20 @@ public class AuctionManager {
      * @return lista de subastas donde ha pujado
      */
     public List<Auction> getAuctionsByBidder(String bidder) {
-        return auctions.values().stream()
-            .filter(a -> a.getBids().stream().anyMatch(b -> bidder.equals(b.getBidder())))
-            .sorted((a, b) -> Long.compare(b.getStartTime(), a.getStartTime()))
-            .peek(Auction::initializeLock)
-            .collect(Collectors.toList());
+        return bidderIndex.list(bidder);
+    }
+
+    /**
+     * Obtiene una pagina de las subastas en las que ha pujado un usuario.
+     *
+     * @param bidder username del pujador
+     * @param cursor cursor devuelto con la pagina anterior (null para la primera)
+     * @param limit tamano maximo de la pagina
+     * @return pagina de subastas, la mas reciente primero
+     * @throws IllegalArgumentException si el cursor no es valido
+     */
+    public AuctionIndex.Page getAuctionsByBidder(String bidder, String cursor, int limit) {
+        return bidderIndex.page(bidder, cursor, limit);
     }
 
     /**
@@ -201,12 +397,20 @@ public class AuctionManager {
      * @return lista de subastas ganadas
      */
     public List<Auction> getAuctionsWonBy(String winner) {
-        return auctions.values().stream()
-            .filter(a -> Constants.AUCTION_STATUS_FINISHED.equals(a.getStatus()))
-            .filter(a -> winner.equals(a.getCurrentWinner()))
-            .sorted((a, b) -> Long.compare(b.getEndTime(), a.getEndTime()))
-            .peek(Auction::initializeLock)
-            .collect(Collectors.toList());
+        return winnerIndex.list(winner);
+    }
+
+    /**
+     * Obtiene una pagina de las subastas ganadas por un usuario.
+     *
+     * @param winner username del ganador
+     * @param cursor cursor devuelto con la pagina anterior (null para la primera)
+     * @param limit tamano maximo de la pagina
+     * @return pagina de subastas ganadas, la ultima en terminar primero
+     * @throws IllegalArgumentException si el cursor no es valido
+     */
+    public AuctionIndex.Page getAuctionsWonBy(String winner, String cursor, int limit) {
+        return winnerIndex.page(winner, cursor, limit);
     }
 
     /**
@@ -214,116 +418,337 @@ public class AuctionManager {
      *
      * @param auctionId ID de la subasta
      * @param bidder username del pujador
-     * @param amount cantidad de la puja
-     * @return resultado de la puja
+     * @param amount cantidad de la puja en centimos
+     * @return resultado de la puja, completado cuando tiene la durabilidad de las pujas
+     */
+    public CompletableFuture<BidResult> placeBid(String auctionId, String bidder, long amount) {
+        return placeBid(auctionId, bidder, amount, null, result -> { });
+    }
+
+    /**
+     * Realiza una puja en una subasta con una durabilidad y anuncia la puja
+     * aceptada. El anuncio (por ejemplo notificar la nueva puja) se ejecuta
+     * cuando la puja tiene su durabilidad y siempre despues de los de las
+     * pujas, cierres y cancelaciones anteriores de la subasta, de modo que
+     * los avisos de una subasta salen en el orden en que se aplicaron.
+     *
+     * <p>Si la escritura de una puja {@link Durability#DURABLE} se descarta
+     * (ver {@link #acknowledge}), la puja sigue aplicada y se anuncia; el
+     * resultado lo indica con la durabilidad alcanzada y su mensaje.</p>
+     *
+     * @param auctionId ID de la subasta
+     * @param bidder username del pujador
+     * @param amount cantidad de la puja en centimos
+     * @param durability durabilidad de la confirmacion (null para la del servidor)
+     * @param announce anuncio de la puja aceptada
+     * @return resultado de la puja, completado cuando tiene la durabilidad pedida
      */
-    public BidResult placeBid(String auctionId, String bidder, double amount) {
+    public CompletableFuture<BidResult> placeBid(String auctionId, String bidder, long amount,
+                                                 Durability durability, Consumer<BidResult> announce) {
         Auction auction = getAuction(auctionId);
         if (auction == null) {
-            return new BidResult(false, "La subasta no existe", null, null);
+            return CompletableFuture.completedFuture(new BidResult(false, "La subasta no existe", null, null));
+        }
+        if (amount == Money.INVALID) {
+            return CompletableFuture.completedFuture(
+                new BidResult(false, "Cantidad no valida (como maximo dos decimales)", null, null));
         }
+        Durability level = durability != null ? durability : bidDurability;
+        long requestedAt = System.nanoTime();
+        return submitAcknowledged(auctionId,
+            ack -> applyBid(auction, bidder, amount, level, requestedAt, announce, ack));
+    }
+
+    /**
+     * Aplica una puja desde el hilo de la particion de la subasta y la
+     * confirma con su durabilidad.
+     */
+    private Void applyBid(Auction auction, String bidder, long amount, Durability durability,
+                          long requestedAt, Consumer<BidResult> announce, CompletableFuture<BidResult> ack) {
+        String auctionId = auction.getId();
 
-        auction.initializeLock();
+        Auction.Snapshot before = auction.getSnapshot();
         Auction.BidResult result = auction.placeBid(bidder, amount);
+        if (!result.isSuccess()) {
+            ack.complete(new BidResult(false, result.getMessage(), null, auction));
+            return null;
+        }
 
-        if (result.isSuccess()) {
-            // Persistir la puja y actualizar subasta en BD
-            if (database != null) {
-                Bid bid = new Bid(auctionId, bidder, amount);
-                database.insertBid(bid);
-                database.updateAuction(auction);
-            }
+        activeIndex.update(auction, before, auction.getSnapshot());
+        bidderIndex.add(bidder, auction);
+        listingVersion.incrementAndGet();
+
+        System.out.println("[AuctionManager] Puja registrada: " + Money.format(amount) +
+            " de " + bidder + " en " + auctionId);
+
+        BidResult accepted = new BidResult(true, result.getMessage(), result.getPreviousBidder(), auction);
+        // Persistir la puja y actualizar subasta en BD (escritura diferida)
+        acknowledge(auctionId, durability, requestedAt,
+            () -> CompletableFuture.allOf(
+                writeQueue.insertBid(result.getBid()),
+                writeQueue.updateAuction(auction)),
+            () -> announce.accept(accepted),
+            (achieved, lost) -> ack.complete(lost
+                ? new BidResult(true, "Puja registrada, pero no se ha podido guardar en la base de datos",
+                    result.getPreviousBidder(), auction, achieved)
+                : new BidResult(true, result.getMessage(), result.getPreviousBidder(), auction, achieved)));
+        return null;
+    }
+
+    /**
+     * Confirma una operacion ya aplicada en memoria y encola su escritura.
+     * Se invoca en el hilo de la particion de la subasta.
+     *
+     * <ul>
+     *   <li>{@link Durability#MEMORY}: se confirma y se anuncia antes de encolar.</li>
+     *   <li>{@link Durability#QUEUED}: se confirma y se anuncia al encolar (la
+     *       cola llena lo retrasa).</li>
+     *   <li>{@link Durability#DURABLE}: se anuncia y se confirma cuando el lote
+     *       que la guarda se ha confirmado en disco.</li>
+     * </ul>
+     *
+     * <p>El anuncio espera ademas a los anuncios pendientes de la subasta
+     * (de operaciones durables aun sin guardar); la confirmacion de
+     * MEMORY y QUEUED no los espera. Sin base de datos todo se confirma y
+     * anuncia al aplicarlo, con durabilidad alcanzada MEMORY.</p>
+     *
+     * <p>Una operacion aplicada no se deshace: las siguientes de la subasta
+     * pueden haberse aplicado ya sobre ella. Si la escritura diferida
+     * descarta su escritura tras agotar los reintentos, la operacion se
+     * anuncia igualmente, se registra en el log y en las metricas, y se
+     * confirma con durabilidad alcanzada MEMORY indicando que se perdio. Es
+     * la misma politica para altas, pujas, cierres y cancelaciones.</p>
+     *
+     * @param auctionId ID de la subasta
+     * @param durability durabilidad pedida
+     * @param requestedAt instante (System.nanoTime) en que se pidio la operacion
+     * @param persist encola las escrituras de la operacion y devuelve cuando quedan guardadas
+     * @param announce avisos de la operacion
+     * @param ack recibe la durabilidad alcanzada y si la escritura se perdio
+     */
+    private void acknowledge(String auctionId, Durability durability, long requestedAt,
+                             Supplier<CompletableFuture<Void>> persist, Runnable announce,
+                             BiConsumer<Durability, Boolean> ack) {
+        if (writeQueue == null) {
+            announceInOrder(auctionId, DONE, announce);
+            recordAck(durability, requestedAt);
+            ack.accept(Durability.MEMORY, false);
+            return;
+        }
+        if (durability == Durability.MEMORY) {
+            announceInOrder(auctionId, DONE, announce);
+            recordAck(durability, requestedAt);
+            ack.accept(durability, false);
+            persist.get();
+            return;
+        }
 
-            System.out.println("[AuctionManager] Puja registrada: " + amount +
-                " de " + bidder + " en " + auctionId);
+        CompletableFuture<Void> persisted = persist.get();
+        if (durability == Durability.QUEUED) {
+            announceInOrder(auctionId, DONE, announce);
+            recordAck(durability, requestedAt);
+            ack.accept(durability, false);
+            return;
         }
+        announceInOrder(auctionId, persisted, () -> {
+            try {
+                announce.run();
+            } finally {
+                if (persisted.isCompletedExceptionally()) {
+                    ackStats.recordFailure(durability);
+                    System.err.println("[AuctionManager] Operacion sobre " + auctionId +
+                        " aplicada pero no guardada en la BD");
+                    ack.accept(Durability.MEMORY, true);
+                } else {
+                    recordAck(durability, requestedAt);
+                    ack.accept(durability, false);
+                }
+            }
+        });
+    }
 
-        return new BidResult(
-            result.isSuccess(),
-            result.getMessage(),
-            result.getPreviousBidder(),
-            auction
-        );
+    /**
+     * Ejecuta los avisos de una operacion cuando {@code ready} termina (bien o
+     * mal) y despues de los avisos pendientes de la subasta. Si no hay nada
+     * que esperar se ejecutan ya, en el hilo de la particion; si no, en el
+     * hilo que complete la espera (normalmente el de la escritura diferida).
+     * Solo lo invoca el hilo de la particion de la subasta.
+     */
+    private void announceInOrder(String auctionId, CompletableFuture<Void> ready, Runnable step) {
+        CompletableFuture<Void> previous = announcements.get(auctionId);
+        if (ready.isDone() && (previous == null || previous.isDone())) {
+            step.run();
+            return;
+        }
+        CompletableFuture<Void> gate = previous == null ? ready : CompletableFuture.allOf(previous, ready);
+        CompletableFuture<Void> next = gate.handle((ignored, error) -> {
+            try {
+                step.run();
+            } catch (RuntimeException e) {
+                System.err.println("[AuctionManager] Error en los avisos de " + auctionId + ": " + e.getMessage());
+            }
+            return null;
+        });
+        announcements.put(auctionId, next);
+        next.whenComplete((ignored, error) -> announcements.remove(auctionId, next));
     }
 
     /**
-     * Obtiene las subastas que han expirado pero no se han cerrado.
-     *
-     * @return lista de subastas expiradas activas
+     * Registra la latencia de una confirmacion.
      */
-    public List<Auction> getExpiredAuctions() {
-        return auctions.values().stream()
-            .filter(a -> Constants.AUCTION_STATUS_ACTIVE.equals(a.getStatus()))
-            .filter(Auction::hasExpired)
-            .peek(Auction::initializeLock)
-            .collect(Collectors.toList());
+    private void recordAck(Durability durability, long requestedAt) {
+        ackStats.recordAck(durability, System.nanoTime() - requestedAt);
     }
 
     /**
-     * Cierra una subasta.
+     * Cierra una subasta en su particion.
      *
      * @param auctionId ID de la subasta
-     * @return true si se cerró correctamente
+     * @return true si estaba activa y se ha cerrado con esta llamada, completado
+     *         cuando el cierre tiene la durabilidad de los cierres
      */
-    public boolean closeAuction(String auctionId) {
+    public CompletableFuture<Boolean> closeAuction(String auctionId) {
         Auction auction = getAuction(auctionId);
         if (auction == null) {
-            return false;
+            return CompletableFuture.completedFuture(false);
         }
-        auction.initializeLock();
-        auction.close();
+        long requestedAt = System.nanoTime();
+        return submitAcknowledged(auctionId, closed -> applyClose(auction, requestedAt, closed));
+    }
 
-        // Persistir en BD
-        if (database != null) {
-            database.updateAuction(auction);
+    /**
+     * Cierra una subasta desde el hilo de su particion. El cierre se
+     * completa como anuncio, con la durabilidad de los cierres: despues de
+     * los avisos pendientes de la subasta.
+     */
+    private Void applyClose(Auction auction, long requestedAt, CompletableFuture<Boolean> closed) {
+        String auctionId = auction.getId();
+        if (!auction.close()) {
+            // Ya estaba cerrada o cancelada
+            closed.complete(false);
+            return null;
         }
+        activeIndex.remove(auction);
+        winnerIndex.add(auction.getCurrentWinner(), auction);
+        listingVersion.incrementAndGet();
 
         System.out.println("[AuctionManager] Subasta cerrada: " + auctionId +
             (auction.isDeserted() ? " (desierta)" : " (ganador: " + auction.getCurrentWinner() + ")"));
-        return true;
+
+        // Persistir en BD (escritura diferida)
+        acknowledge(auctionId, closeDurability, requestedAt, () -> writeQueue.updateAuction(auction),
+            () -> closed.complete(true), (achieved, lost) -> { });
+        return null;
+    }
+
+    /**
+     * Encola en la particion de una subasta una operacion que completa su
+     * propia confirmacion. Si la operacion falla antes de completarla, la
+     * confirmacion falla con ella.
+     *
+     * @param auctionId ID de la subasta
+     * @param operation operacion que recibe la confirmacion
+     * @param <T> tipo del resultado
+     * @return confirmacion de la operacion
+     */
+    private <T> CompletableFuture<T> submitAcknowledged(String auctionId,
+                                                        Function<CompletableFuture<T>, Void> operation) {
+        CompletableFuture<T> ack = new CompletableFuture<>();
+        partitions.submit(auctionId, () -> operation.apply(ack))
+            .whenComplete((ignored, error) -> {
+                if (error != null) {
+                    ack.completeExceptionally(error);
+                }
+            });
+        return ack;
     }
 
     /**
-     * Cierra todas las subastas expiradas que sigan activas.
+     * Cierra las subastas que vencen en un mismo tick de la rueda.
+     * Encola los cierres en sus particiones a la vez y, cuando todos se han
+     * completado con la durabilidad de los cierres, entrega las cerradas al
+     * oyente de vencimientos desde el hilo que complete el ultimo. Sus
+     * actualizaciones llegan juntas a la escritura diferida, que las guarda
+     * en el mismo lote. Se ejecuta en el hilo de la rueda y no espera a la
+     * base de datos, de modo que no retrasa los siguientes vencimientos.
      *
-     * @return lista de subastas que se acaban de cerrar
+     * @param auctionIds IDs de las subastas vencidas
      */
-    public List<Auction> closeExpiredAuctions() {
-        List<Auction> closedAuctions = new ArrayList<>();
-        for (Auction auction : getExpiredAuctions()) {
-            if (closeAuction(auction.getId())) {
-                closedAuctions.add(getAuction(auction.getId()));
+    private void closeExpired(List<String> auctionIds) {
+        List<Auction> expired = new ArrayList<>(auctionIds.size());
+        List<CompletableFuture<Boolean>> closes = new ArrayList<>(auctionIds.size());
+        long requestedAt = System.nanoTime();
+        for (String auctionId : auctionIds) {
+            Auction auction = getAuction(auctionId);
+            if (auction != null) {
+                expired.add(auction);
+                closes.add(submitAcknowledged(auctionId, closed -> applyClose(auction, requestedAt, closed)));
             }
         }
-        return closedAuctions;
+        if (expired.isEmpty()) {
+            return;
+        }
+
+        CompletableFuture.allOf(closes.toArray(CompletableFuture<?>[]::new)).whenComplete((ignored, error) -> {
+            List<Auction> closedAuctions = new ArrayList<>();
+            for (int i = 0; i < expired.size(); i++) {
+                CompletableFuture<Boolean> close = closes.get(i);
+                if (close.isCompletedExceptionally()) {
+                    // La particion no lo aplico (apagado): sigue activa
+                    continue;
+                }
+                if (close.join()) {
+                    closedAuctions.add(expired.get(i));
+                }
+            }
+            Consumer<List<Auction>> listener = expiryListener;
+            if (!closedAuctions.isEmpty() && listener != null) {
+                listener.accept(closedAuctions);
+            }
+        });
     }
 
     /**
      * Cancela una subasta (solo ADMIN).
      *
      * @param auctionId ID de la subasta
-     * @return resultado de la cancelación
+     * @param durability durabilidad de la confirmacion (null para la de los cierres)
+     * @return resultado de la cancelación, completado cuando tiene la durabilidad pedida
      */
-    public CancelResult cancelAuction(String auctionId) {
+    public CompletableFuture<CancelResult> cancelAuction(String auctionId, Durability durability) {
         Auction auction = getAuction(auctionId);
         if (auction == null) {
-            return new CancelResult(false, "La subasta no existe");
-        }
-
-        if (!Constants.AUCTION_STATUS_ACTIVE.equals(auction.getStatus())) {
-            return new CancelResult(false, "Solo se pueden cancelar subastas activas");
+            return CompletableFuture.completedFuture(
+                new CancelResult(false, "La subasta no existe"));
         }
+        Durability level = durability != null ? durability : closeDurability;
+        long requestedAt = System.nanoTime();
+        return submitAcknowledged(auctionId, ack -> applyCancel(auction, level, requestedAt, ack));
+    }
 
-        auction.initializeLock();
-        auction.cancel();
-
-        // Persistir en BD
-        if (database != null) {
-            database.updateAuction(auction);
+    /**
+     * Cancela una subasta desde el hilo de su particion y confirma la
+     * cancelacion con su durabilidad.
+     */
+    private Void applyCancel(Auction auction, Durability durability, long requestedAt,
+                             CompletableFuture<CancelResult> ack) {
+        String auctionId = auction.getId();
+        if (!auction.cancel()) {
+            ack.complete(new CancelResult(false, "Solo se pueden cancelar subastas activas"));
+            return null;
         }
+        activeIndex.remove(auction);
+        listingVersion.incrementAndGet();
 
         System.out.println("[AuctionManager] Subasta cancelada: " + auctionId);
-        return new CancelResult(true, "Subasta cancelada correctamente");
+
+        // Persistir en BD (escritura diferida)
+        acknowledge(auctionId, durability, requestedAt, () -> writeQueue.updateAuction(auction),
+            () -> { },
+            (achieved, lost) -> ack.complete(lost
+                ? new CancelResult(true, "Subasta cancelada, pero no se ha podido guardar en la base de datos", achieved)
+                : new CancelResult(true, "Subasta cancelada correctamente", achieved)));
+        return null;
     }
 
     /**
@@ -342,8 +767,17 @@ public class AuctionManager {
      */
     public void saveAuction(Auction auction) {
         if (auction != null && auction.getId() != null) {
-            auction.initializeLock();
-            auctions.put(auction.getId(), auction);
+            Auction previous = auctions.put(auction.getId(), auction);
+            if (previous != null) {
+                activeIndex.remove(previous);
+            }
+            List<String> bidders = new ArrayList<>();
+            for (Bid bid : auction.getBids()) {
+                bidders.add(bid.getBidder());
+            }
+            indexUsers(auction, bidders);
+            track(auction);
+            listingVersion.incrementAndGet();
         }
     }
 
@@ -356,15 +790,89 @@ public class AuctionManager {
         return auctions.size();
     }
 
+    /**
+     * Version del conjunto de subastas. Cambia siempre que cambia algo de lo
+     * que muestra el listado de subastas activas, salvo el tiempo restante,
+     * que se deriva de la hora de fin.
+     *
+     * @return version actual
+     */
+    public long getListingVersion() {
+        return listingVersion.get();
+    }
+
     /**
      * Obtiene el número de subastas activas.
      *
      * @return cantidad de subastas activas
      */
     public int getActiveAuctionCount() {
-        return (int) auctions.values().stream()
-            .filter(Auction::isActive)
-            .count();
+        return activeIndex.size();
+    }
+
+    /**
+     * @return particiones que aplican las operaciones sobre las subastas
+     */
+    public AuctionPartitions getPartitions() {
+        return partitions;
+    }
+
+    /**
+     * @return vencimientos programados pendientes
+     */
+    public int getPendingExpiryCount() {
+        return expiryWheel.getPendingCount();
+    }
+
+    /**
+     * @return escritura diferida en la base de datos (null sin persistencia)
+     */
+    public WriteBehindQueue getWriteQueue() {
+        return writeQueue;
+    }
+
+    /**
+     * @return durabilidad con la que se confirman las pujas que no piden otra
+     */
+    public Durability getBidDurability() {
+        return bidDurability;
+    }
+
+    /**
+     * @return durabilidad con la que se confirman las altas, cierres y cancelaciones que no piden otra
+     */
+    public Durability getCloseDurability() {
+        return closeDurability;
+    }
+
+    /**
+     * @return latencia de confirmacion por durabilidad
+     */
+    public AckStats getAckStats() {
+        return ackStats;
+    }
+
+    /**
+     * Detiene la rueda de vencimientos y las particiones, espera a que
+     * completen las operaciones ya encoladas y guarda en la base de datos
+     * todas las escrituras pendientes. Debe invocarse cuando ya no llegan
+     * peticiones: las operaciones enviadas despues se rechazan.
+     */
+    public void shutdown() {
+        expiryWheel.shutdown();
+        partitions.shutdown();
+        if (!partitions.awaitTermination(Constants.WRITE_FLUSH_TIMEOUT_MS)) {
+            System.err.println("[AuctionManager] Particiones sin terminar al apagar");
+        }
+        if (writeQueue != null) {
+            int pending = writeQueue.getQueuedCount();
+            if (writeQueue.close(Constants.WRITE_FLUSH_TIMEOUT_MS)) {
+                System.out.println("[AuctionManager] Escrituras pendientes guardadas: " + pending);
+            } else {
+                System.err.println("[AuctionManager] Escrituras sin guardar al apagar: " +
+                    writeQueue.getQueuedCount());
+            }
+        }
     }
 
     // ==================== CLASES DE RESULTADO ====================
@@ -376,11 +884,17 @@ public class AuctionManager {
         private final boolean success;
         private final String message;
         private final Auction auction;
+        private final Durability durability;
 
         public CreateAuctionResult(boolean success, String message, Auction auction) {
+            this(success, message, auction, null);
+        }
+
+        public CreateAuctionResult(boolean success, String message, Auction auction, Durability durability) {
             this.success = success;
             this.message = message;
             this.auction = auction;
+            this.durability = durability;
         }
 
         public boolean isSuccess() {
@@ -394,6 +908,13 @@ public class AuctionManager {
         public Auction getAuction() {
             return auction;
         }
+
+        /**
+         * @return durabilidad alcanzada por el alta (null si no se creo)
+         */
+        public Durability getDurability() {
+            return durability;
+        }
     }
 
     /**
@@ -404,12 +925,19 @@ public class AuctionManager {
         private final String message;
         private final String previousBidder;
         private final Auction auction;
+        private final Durability durability;
 
         public BidResult(boolean success, String message, String previousBidder, Auction auction) {
+            this(success, message, previousBidder, auction, null);
+        }
+
+        public BidResult(boolean success, String message, String previousBidder, Auction auction,
+                         Durability durability) {
             this.success = success;
             this.message = message;
             this.previousBidder = previousBidder;
             this.auction = auction;
+            this.durability = durability;
         }
 
         public boolean isSuccess() {
@@ -427,6 +955,13 @@ public class AuctionManager {
         public Auction getAuction() {
             return auction;
         }
+
+        /**
+         * @return durabilidad alcanzada por la puja aceptada (null si se rechazo)
+         */
+        public Durability getDurability() {
+            return durability;
+        }
     }
 
     /**
@@ -435,10 +970,16 @@ public class AuctionManager {
     public static class CancelResult {
         private final boolean success;
         private final String message;
+        private final Durability durability;
 
         public CancelResult(boolean success, String message) {
+            this(success, message, null);
+        }
+
+        public CancelResult(boolean success, String message, Durability durability) {
             this.success = success;
             this.message = message;
+            this.durability = durability;
         }
 
         public boolean isSuccess() {
@@ -448,5 +989,12 @@ public class AuctionManager {
         public String getMessage() {
             return message;
         }
+
+        /**
+         * @return durabilidad alcanzada por la cancelacion (null si no se cancelo)
+         */
+        public Durability getDurability() {
+            return durability;
+        }
     }
 }
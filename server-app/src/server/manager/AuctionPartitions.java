@@ -0,0 +1,141 @@
+package server.manager;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Particiones de ejecucion de las subastas.
+ * Cada subasta pertenece a una particion segun el hash de su ID, y cada
+ * particion tiene un unico hilo que aplica en orden las pujas, cierres y
+ * cancelaciones de sus subastas. Asi las operaciones sobre una misma subasta
+ * nunca compiten entre si y se aplican en el orden en que llegaron, mientras
+ * que subastas de particiones distintas avanzan en paralelo.
+ *
+ * <p>Las operaciones se encolan y devuelven un {@link CompletableFuture}: el
+ * hilo que atiende la conexion no tiene que esperar a la particion.</p>
+ *
+ * @author NetAuction Team
+ * @version 1.0
+ */
+public class AuctionPartitions {
+
+    /** Un ejecutor de un solo hilo por particion */
+    private final ThreadPoolExecutor[] executors;
+
+    /** Operaciones completadas por todas las particiones */
+    private final AtomicLong completedCount;
+
+    /**
+     * Constructor de las particiones.
+     *
+     * @param count numero de particiones (al menos 1)
+     */
+    public AuctionPartitions(int count) {
+        this.executors = new ThreadPoolExecutor[Math.max(1, count)];
+        this.completedCount = new AtomicLong();
+        for (int i = 0; i < executors.length; i++) {
+            String name = "auction-partition-" + i;
+            executors[i] = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), r -> {
+                    Thread thread = new Thread(r, name);
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        }
+    }
+
+    /**
+     * Obtiene la particion propietaria de una subasta.
+     *
+     * @param auctionId ID de la subasta
+     * @return indice de la particion
+     */
+    public int partitionOf(String auctionId) {
+        return (auctionId.hashCode() & Integer.MAX_VALUE) % executors.length;
+    }
+
+    /**
+     * Encola una operacion en la particion propietaria de una subasta.
+     *
+     * @param auctionId ID de la subasta
+     * @param operation operacion a aplicar
+     * @param <T> tipo del resultado
+     * @return resultado de la operacion cuando la particion la haya aplicado
+     */
+    public <T> CompletableFuture<T> submit(String auctionId, Supplier<T> operation) {
+        ExecutorService executor = executors[partitionOf(auctionId)];
+        try {
+            return CompletableFuture.supplyAsync(() -> {
+                try {
+                    return operation.get();
+                } finally {
+                    completedCount.incrementAndGet();
+                }
+            }, executor);
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * @return numero de particiones
+     */
+    public int getPartitionCount() {
+        return executors.length;
+    }
+
+    /**
+     * @return operaciones pendientes en todas las particiones
+     */
+    public int getQueuedCount() {
+        int queued = 0;
+        for (ThreadPoolExecutor executor : executors) {
+            queued += executor.getQueue().size();
+        }
+        return queued;
+    }
+
+    /**
+     * @return operaciones completadas por todas las particiones
+     */
+    public long getCompletedCount() {
+        return completedCount.get();
+    }
+
+    /**
+     * Detiene las particiones. Las operaciones ya encoladas se completan.
+     */
+    public void shutdown() {
+        for (ExecutorService executor : executors) {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Espera a que las particiones detenidas completen sus operaciones.
+     *
+     * @param timeoutMs espera maxima en milisegundos para todas
+     * @return true si todas terminaron dentro del plazo
+     */
+    public boolean awaitTermination(long timeoutMs) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        try {
+            for (ExecutorService executor : executors) {
+                long remaining = deadline - System.nanoTime();
+                if (!executor.awaitTermination(Math.max(0, remaining), TimeUnit.NANOSECONDS)) {
+                    return false;
+                }
+            }
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
@@ -0,0 +1,291 @@
+package server.manager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * Rueda de tiempo jerarquica con los vencimientos de las subastas.
+ * Cada nivel tiene {@code wheelSize} casillas; una casilla del primer nivel
+ * cubre un tick y una del nivel siguiente cubre la vuelta completa del
+ * anterior. Programar un vencimiento es O(1): se anade a la casilla de su
+ * hora de fin en el nivel mas bajo que la alcanza. La hora de fin se
+ * redondea al final de su tick, de modo que un vencimiento nunca se entrega
+ * antes de ella.
+ *
+ * <p>Solo las casillas con vencimientos entran en una {@link DelayQueue}, de
+ * modo que el hilo de la rueda duerme hasta la siguiente casilla ocupada en
+ * lugar de avanzar tick a tick. Al vencer una casilla de un nivel superior
+ * sus entradas bajan de nivel; las del primer nivel se entregan juntas al
+ * consumidor, con todas las demas casillas que hayan vencido a la vez.</p>
+ *
+ * @author NetAuction Team
+ * @version 1.0
+ */
+public class ExpiryWheel {
+
+    /** Casillas ocupadas ordenadas por vencimiento */
+    private final DelayQueue<Bucket> queue;
+
+    /** Duracion de un tick del primer nivel en milisegundos */
+    private final long tickMs;
+
+    /** Lock que protege los niveles y el contenido de las casillas */
+    private final ReentrantLock lock;
+
+    /** Primer nivel de la rueda (los superiores se crean al necesitarlos) */
+    private final Level root;
+
+    /** Recibe los IDs de las subastas que vencen en un mismo tick */
+    private final Consumer<List<String>> onExpired;
+
+    /** Vencimientos programados pendientes de entregar */
+    private final AtomicInteger pending;
+
+    /** Hilo que espera las casillas y entrega los vencimientos */
+    private final Thread thread;
+
+    /**
+     * Constructor de la rueda. El hilo se arranca con {@link #start()}.
+     *
+     * @param tickMs duracion de una casilla del primer nivel en milisegundos
+     * @param wheelSize casillas por nivel
+     * @param onExpired consumidor de los IDs vencidos (se invoca en el hilo de la rueda)
+     */
+    public ExpiryWheel(long tickMs, int wheelSize, Consumer<List<String>> onExpired) {
+        this.queue = new DelayQueue<>();
+        this.tickMs = tickMs;
+        this.lock = new ReentrantLock();
+        this.root = new Level(tickMs, wheelSize, System.currentTimeMillis());
+        this.onExpired = onExpired;
+        this.pending = new AtomicInteger();
+        this.thread = new Thread(this::run, "auction-expiry");
+        this.thread.setDaemon(true);
+    }
+
+    /**
+     * Arranca el hilo de la rueda.
+     */
+    public void start() {
+        thread.start();
+    }
+
+    /**
+     * Programa el vencimiento de una subasta. Si ya ha pasado se entrega en
+     * cuanto el hilo de la rueda lo recoja.
+     *
+     * @param auctionId ID de la subasta
+     * @param endTime hora de fin en milisegundos
+     */
+    public void schedule(String auctionId, long endTime) {
+        // Una casilla vence al empezar su tick: se programa en el siguiente
+        // salvo que la hora de fin coincida con su inicio
+        long deadline = (endTime + tickMs - 1) / tickMs * tickMs;
+        Entry entry = new Entry(auctionId, deadline);
+        pending.incrementAndGet();
+        lock.lock();
+        try {
+            if (!root.add(entry)) {
+                // Vencida: casilla propia que la cola entrega de inmediato
+                Bucket overdue = new Bucket();
+                overdue.entries.add(entry);
+                overdue.setExpiration(System.currentTimeMillis());
+                queue.offer(overdue);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return vencimientos programados pendientes de entregar
+     */
+    public int getPendingCount() {
+        return pending.get();
+    }
+
+    /**
+     * Detiene el hilo de la rueda. Los vencimientos pendientes se descartan.
+     */
+    public void shutdown() {
+        thread.interrupt();
+    }
+
+    /**
+     * Bucle del hilo: espera la siguiente casilla, avanza el reloj y entrega
+     * juntos los vencimientos de todas las casillas ya vencidas.
+     */
+    private void run() {
+        while (!Thread.currentThread().isInterrupted()) {
+            Bucket bucket;
+            try {
+                bucket = queue.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+
+            List<String> expired = new ArrayList<>();
+            lock.lock();
+            try {
+                while (bucket != null) {
+                    root.advanceClock(bucket.getExpiration());
+                    for (Entry entry : bucket.flush()) {
+                        // Las entradas de niveles superiores bajan; las del primero vencen
+                        if (!root.add(entry)) {
+                            expired.add(entry.auctionId);
+                        }
+                    }
+                    bucket = queue.poll();
+                }
+            } finally {
+                lock.unlock();
+            }
+
+            if (expired.isEmpty()) {
+                continue;
+            }
+            pending.addAndGet(-expired.size());
+            try {
+                onExpired.accept(expired);
+            } catch (RuntimeException e) {
+                System.err.println("[ExpiryWheel] Error cerrando subastas vencidas: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Nivel de la rueda. Solo se usa bajo el lock de la rueda.
+     */
+    private final class Level {
+
+        /** Duracion de una casilla */
+        private final long tickMs;
+
+        /** Tiempo que cubre el nivel completo */
+        private final long interval;
+
+        /** Casillas del nivel */
+        private final Bucket[] buckets;
+
+        /** Inicio de la casilla actual (multiplo de tickMs) */
+        private long currentTime;
+
+        /** Nivel siguiente, para vencimientos mas alla de este */
+        private Level overflow;
+
+        Level(long tickMs, int wheelSize, long startMs) {
+            this.tickMs = tickMs;
+            this.interval = tickMs * wheelSize;
+            this.buckets = new Bucket[wheelSize];
+            for (int i = 0; i < wheelSize; i++) {
+                buckets[i] = new Bucket();
+            }
+            this.currentTime = startMs - (startMs % tickMs);
+        }
+
+        /**
+         * Anade una entrada a la casilla que le corresponde en este nivel o en
+         * uno superior.
+         *
+         * @return false si la entrada ya ha vencido
+         */
+        boolean add(Entry entry) {
+            long expiration = entry.endTime;
+            if (expiration < currentTime + tickMs) {
+                return false;
+            }
+            if (expiration < currentTime + interval) {
+                long slot = expiration / tickMs;
+                Bucket bucket = buckets[(int) (slot % buckets.length)];
+                bucket.entries.add(entry);
+                if (bucket.setExpiration(slot * tickMs)) {
+                    queue.offer(bucket);
+                }
+                return true;
+            }
+            if (overflow == null) {
+                overflow = new Level(interval, buckets.length, currentTime);
+            }
+            return overflow.add(entry);
+        }
+
+        /**
+         * Avanza el reloj del nivel (y de los superiores) hasta la casilla de
+         * una hora dada.
+         */
+        void advanceClock(long timeMs) {
+            if (timeMs >= currentTime + tickMs) {
+                currentTime = timeMs - (timeMs % tickMs);
+                if (overflow != null) {
+                    overflow.advanceClock(currentTime);
+                }
+            }
+        }
+    }
+
+    /**
+     * Casilla de la rueda: las entradas que vencen en el mismo tick de su nivel.
+     */
+    private static final class Bucket implements Delayed {
+
+        /** Entradas de la casilla (se modifican bajo el lock de la rueda) */
+        private final List<Entry> entries = new ArrayList<>();
+
+        /** Vencimiento de la casilla en milisegundos (-1 si esta vacia) */
+        private volatile long expiration = -1;
+
+        /**
+         * @return true si el vencimiento ha cambiado y la casilla debe volver a la cola
+         */
+        boolean setExpiration(long expiration) {
+            if (this.expiration == expiration) {
+                return false;
+            }
+            this.expiration = expiration;
+            return true;
+        }
+
+        long getExpiration() {
+            return expiration;
+        }
+
+        /**
+         * Vacia la casilla y devuelve sus entradas.
+         */
+        List<Entry> flush() {
+            List<Entry> flushed = new ArrayList<>(entries);
+            entries.clear();
+            expiration = -1;
+            return flushed;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(expiration - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            return Long.compare(expiration, ((Bucket) other).expiration);
+        }
+    }
+
+    /**
+     * Vencimiento programado de una subasta: su hora de fin redondeada al
+     * final de su tick.
+     */
+    private static final class Entry {
+        private final String auctionId;
+        private final long endTime;
+
+        Entry(String auctionId, long endTime) {
+            this.auctionId = auctionId;
+            this.endTime = endTime;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package server.manager;
+
+/**
+ * Clave de los indices ordenados de subastas: el valor por el que se ordena
+ * y el ID de la subasta para desempatar. Todos los valores (fines, inicios,
+ * precios en centimos y numeros de pujas) son enteros.
+ *
+ * <p>Un cursor de paginacion es la clave de la ultima subasta de la pagina
+ * en forma de texto ({@code valor:ID}).</p>
+ *
+ * @author NetAuction Team
+ * @version 1.0
+ */
+final class IndexKey implements Comparable<IndexKey> {
+
+    /** Valor ordenado */
+    private final long value;
+
+    /** ID de la subasta */
+    private final String auctionId;
+
+    /**
+     * Constructor de la clave.
+     *
+     * @param value valor ordenado
+     * @param auctionId ID de la subasta
+     */
+    IndexKey(long value, String auctionId) {
+        this.value = value;
+        this.auctionId = auctionId;
+    }
+
+    @Override
+    public int compareTo(IndexKey other) {
+        int byValue = Long.compare(value, other.value);
+        return byValue != 0 ? byValue : auctionId.compareTo(other.auctionId);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof IndexKey && compareTo((IndexKey) other) == 0;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(value) * 31 + auctionId.hashCode();
+    }
+
+    /**
+     * @return cursor que apunta a esta clave
+     */
+    String format() {
+        return value + ":" + auctionId;
+    }
+
+    /**
+     * Reconstruye la clave de un cursor.
+     *
+     * @param cursor cursor devuelto con una pagina
+     * @return clave del cursor
+     * @throws IllegalArgumentException si el cursor no tiene el formato esperado
+     */
+    static IndexKey parse(String cursor) {
+        int separator = cursor.indexOf(':');
+        if (separator <= 0 || separator == cursor.length() - 1) {
+            throw new IllegalArgumentException("Cursor no valido");
+        }
+        try {
+            return new IndexKey(Long.parseLong(cursor.substring(0, separator)),
+                cursor.substring(separator + 1));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Cursor no valido");
+        }
+    }
+}
@@ -4,12 +4,13 @@ import server.model.Session;
 import server.security.CryptoUtils;
 
 import java.util.Collection;
+import java.util.Iterator;
 import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Gestor de sesiones del sistema NetAuction.
  * Administra la creacion, validacion e invalidacion de sesiones de usuario.
- * Implementacion simplificada sin expiracion automatica.
+ * Las sesiones expiradas se rechazan al validarlas y se purgan periodicamente.
  *
  * @author NetAuction Team
  * @version 1.0
@@ -56,16 +57,59 @@ public class SessionManager {
     }
 
     /**
-     * Valida un token de sesion.
+     * Valida un token de sesion y, si es valido, renueva la sesion.
      *
      * @param token token a validar
-     * @return sesion asociada al token o null si no es valido
+     * @return sesion asociada al token o null si no es valido o ha expirado
      */
     public Session validateSession(String token) {
         if (token == null || token.isEmpty()) {
             return null;
         }
-        return sessions.get(token);
+        Session session = sessions.get(token);
+        if (session == null) {
+            return null;
+        }
+        if (session.isExpired()) {
+            invalidateSession(token);
+            return null;
+        }
+        session.renew();
+        return session;
+    }
+
+    /**
+     * Renueva la sesion activa de un usuario, si la tiene.
+     *
+     * @param username nombre del usuario
+     */
+    public void renewUserSession(String username) {
+        Session session = getSessionByUsername(username);
+        if (session != null) {
+            session.renew();
+        }
+    }
+
+    /**
+     * Elimina las sesiones expiradas.
+     *
+     * @return numero de sesiones eliminadas
+     */
+    public int purgeExpiredSessions() {
+        int purged = 0;
+        Iterator<Session> it = sessions.values().iterator();
+        while (it.hasNext()) {
+            Session session = it.next();
+            if (session.isExpired()) {
+                it.remove();
+                userSessions.remove(session.getUsername(), session.getToken());
+                purged++;
+            }
+        }
+        if (purged > 0) {
+            System.out.println("[SessionManager] Sesiones expiradas eliminadas: " + purged);
+        }
+        return purged;
     }
 
     /**
@@ -0,0 +1,94 @@
+package server.manager;
+
+import server.model.Auction;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.ToLongFunction;
+
+/**
+ * Indice de subastas por usuario (vendedor, pujador o ganador).
+ * Cada usuario tiene su propio {@link ConcurrentSkipListMap}, ordenado de
+ * mas reciente a mas antigua segun el valor que se indique al crearlo, de
+ * modo que las pantallas de actividad de un usuario recorren solo sus
+ * subastas y no el mapa completo ni las pujas de cada una.
+ *
+ * @author NetAuction Team
+ * @version 1.0
+ */
+public class UserAuctionIndex {
+
+    /** Subastas de cada usuario */
+    private final Map<String, ConcurrentSkipListMap<IndexKey, Auction>> byUser;
+
+    /** Valor por el que se ordenan las subastas de un usuario */
+    private final ToLongFunction<Auction> orderBy;
+
+    /**
+     * Constructor del indice vacio.
+     *
+     * @param orderBy valor de orden de cada subasta (no debe cambiar mientras este en el indice)
+     */
+    public UserAuctionIndex(ToLongFunction<Auction> orderBy) {
+        this.byUser = new ConcurrentHashMap<>();
+        this.orderBy = orderBy;
+    }
+
+    /**
+     * Anade una subasta a las de un usuario. Si ya estaba no cambia nada.
+     *
+     * @param username usuario
+     * @param auction subasta
+     */
+    public void add(String username, Auction auction) {
+        if (username == null || username.isEmpty()) {
+            return;
+        }
+        byUser.computeIfAbsent(username, u -> new ConcurrentSkipListMap<>())
+            .put(new IndexKey(orderBy.applyAsLong(auction), auction.getId()), auction);
+    }
+
+    /**
+     * Obtiene una pagina de las subastas de un usuario, la mas reciente primero.
+     *
+     * @param username usuario
+     * @param cursor cursor devuelto con la pagina anterior (null para la primera)
+     * @param limit tamano maximo de la pagina (al menos 1)
+     * @return pagina de subastas
+     * @throws IllegalArgumentException si el cursor no es valido
+     */
+    public AuctionIndex.Page page(String username, String cursor, int limit) {
+        ConcurrentSkipListMap<IndexKey, Auction> auctions = byUser.get(username);
+        if (auctions == null) {
+            if (cursor != null && !cursor.isEmpty()) {
+                IndexKey.parse(cursor);
+            }
+            return new AuctionIndex.Page(Collections.emptyList(), null);
+        }
+        return AuctionIndex.page(auctions.descendingMap(), cursor, limit, false);
+    }
+
+    /**
+     * Obtiene todas las subastas de un usuario, la mas reciente primero.
+     *
+     * @param username usuario
+     * @return lista de subastas
+     */
+    public List<Auction> list(String username) {
+        ConcurrentSkipListMap<IndexKey, Auction> auctions = byUser.get(username);
+        if (auctions == null) {
+            return Collections.emptyList();
+        }
+        return List.copyOf(auctions.descendingMap().values());
+    }
+
+    /**
+     * @return numero de usuarios con alguna subasta en el indice
+     */
+    public int getUserCount() {
+        return byUser.size();
+    }
+}
@@ -5,12 +5,22 @@ import common.Constants;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Modelo que representa una subasta.
- * Incluye sincronización con ReadWriteLock para operaciones de puja.
+ * Los datos que cambian con las pujas (precio, ganador, pujas, estado y
+ * version) forman una instantanea inmutable ({@link Snapshot}) tras una
+ * unica referencia atomica: las lecturas no bloquean y ven siempre un
+ * estado coherente, y cada puja, cierre o cancelacion se confirma con
+ * compare-and-set sobre la instantanea que se leyo.
+ *
+ * <p>Los importes (precio de salida, precio actual y pujas) son centimos
+ * en un {@code long}; ver {@link Money}.</p>
+ *
+ * <p>Las pujas se guardan en un {@link BidHistory} compartido por todas las
+ * instantaneas, que solo conserva en memoria las mas recientes; cada
+ * instantanea ve las pujas hasta su numero de pujas.</p>
  *
  * @author NetAuction Team
  * @version 1.0
@@ -29,14 +39,8 @@ public class Auction {
     /** Username del vendedor */
     private String seller;
 
-    /** Precio de salida */
-    private double startPrice;
-
-    /** Precio actual (última puja o precio de salida) */
-    private double currentPrice;
-
-    /** Username del pujador actual (null si no hay pujas) */
-    private String currentWinner;
+    /** Precio de salida en centimos */
+    private long startPrice;
 
     /** Timestamp de inicio de la subasta */
     private long startTime;
@@ -44,22 +48,19 @@ public class Auction {
     /** Timestamp de fin de la subasta */
     private long endTime;
 
-    /** Estado de la subasta (ACTIVE, FINISHED, CANCELLED) */
-    private String status;
+    /** Pujas recientes (un unico escritor, ver {@link #placeBid}) */
+    private final BidHistory history;
 
-    /** Lista de pujas */
-    private List<Bid> bids;
-
-    /** Lock para sincronización de pujas */
-    private transient ReadWriteLock lock;
+    /** Estado actual: precio, ganador, pujas, estado y version */
+    private final AtomicReference<Snapshot> state;
 
     /**
      * Constructor por defecto.
      */
     public Auction() {
-        this.bids = new ArrayList<>();
-        this.lock = new ReentrantReadWriteLock();
-        this.status = Constants.AUCTION_STATUS_ACTIVE;
+        this.history = new BidHistory(Constants.BID_HISTORY_CHUNK_SIZE, Constants.BID_HISTORY_WINDOW);
+        this.state = new AtomicReference<>(
+            new Snapshot(Constants.AUCTION_STATUS_ACTIVE, 0, null, history, 0, 0));
         this.startTime = System.currentTimeMillis();
     }
 
@@ -70,18 +71,18 @@ public class Auction {
      * @param title título de la subasta
      * @param description descripción del artículo
      * @param seller username del vendedor
-     * @param startPrice precio de salida
+     * @param startPrice precio de salida en centimos
      * @param durationMinutes duración en minutos
      */
     public Auction(String id, String title, String description, String seller,
-                   double startPrice, int durationMinutes) {
+                   long startPrice, int durationMinutes) {
         this();
         this.id = id;
         this.title = title;
         this.description = description;
         this.seller = seller;
         this.startPrice = startPrice;
-        this.currentPrice = startPrice;
+        setCurrentPrice(startPrice);
         this.endTime = this.startTime + (durationMinutes * 60 * 1000L);
     }
 
@@ -144,55 +145,68 @@ public class Auction {
     }
 
     /**
-     * @return precio de salida
+     * @return precio de salida en centimos
      */
-    public double getStartPrice() {
+    public long getStartPrice() {
         return startPrice;
     }
 
     /**
-     * @param startPrice precio de salida
+     * @param startPrice precio de salida en centimos
      */
-    public void setStartPrice(double startPrice) {
+    public void setStartPrice(long startPrice) {
         this.startPrice = startPrice;
     }
 
     /**
-     * @return precio actual
+     * Obtiene el estado actual de la subasta. Para mostrar varios datos a la
+     * vez conviene leerlos de una misma instantanea y no con los getters
+     * sueltos, que pueden ver pujas distintas.
+     *
+     * @return instantanea inmutable del estado
      */
-    public double getCurrentPrice() {
-        lock.readLock().lock();
-        try {
-            return currentPrice;
-        } finally {
-            lock.readLock().unlock();
-        }
+    public Snapshot getSnapshot() {
+        return state.get();
     }
 
     /**
-     * @param currentPrice precio actual
+     * @return precio actual en centimos
      */
-    public void setCurrentPrice(double currentPrice) {
-        this.currentPrice = currentPrice;
+    public long getCurrentPrice() {
+        return state.get().currentPrice;
+    }
+
+    /**
+     * Establece el precio actual (carga desde la base de datos).
+     *
+     * @param currentPrice precio actual en centimos
+     */
+    public void setCurrentPrice(long currentPrice) {
+        Snapshot current;
+        do {
+            current = state.get();
+        } while (!state.compareAndSet(current, new Snapshot(current.status, currentPrice,
+            current.currentWinner, current.bids, current.bidCount, current.version)));
     }
 
     /**
      * @return username del pujador actual
      */
     public String getCurrentWinner() {
-        lock.readLock().lock();
-        try {
-            return currentWinner;
-        } finally {
-            lock.readLock().unlock();
-        }
+        return state.get().currentWinner;
     }
 
     /**
+     * Establece el pujador actual (carga desde la base de datos).
+     *
      * @param currentWinner username del pujador actual
      */
     public void setCurrentWinner(String currentWinner) {
-        this.currentWinner = currentWinner;
+        Snapshot current;
+        do {
+            current = state.get();
+        } while (!state.compareAndSet(current, new Snapshot(current.status, current.currentPrice,
+            currentWinner, current.bids, current.bidCount, current.version)));
     }
 
     /**
@@ -227,54 +241,59 @@ public class Auction {
      * @return estado de la subasta
      */
     public String getStatus() {
-        return status;
+        return state.get().status;
     }
 
     /**
+     * Establece el estado (carga desde la base de datos).
+     *
      * @param status estado de la subasta
      */
     public void setStatus(String status) {
-        this.status = status;
+        Snapshot current;
+        do {
+            current = state.get();
+        } while (!state.compareAndSet(current, new Snapshot(status, current.currentPrice,
+            current.currentWinner, current.bids, current.bidCount, current.version)));
     }
 
     /**
-     * @return lista inmutable de pujas
+     * Obtiene las pujas que se conservan en memoria (las mas recientes; el
+     * historial completo esta en la base de datos).
+     *
+     * @return lista inmutable de pujas en orden cronologico
      */
     public List<Bid> getBids() {
-        lock.readLock().lock();
-        try {
-            return Collections.unmodifiableList(new ArrayList<>(bids));
-        } finally {
-            lock.readLock().unlock();
-        }
+        return state.get().getBids(id);
     }
 
     /**
-     * @param bids lista de pujas
+     * Establece las pujas (carga desde la base de datos, antes de publicar
+     * la subasta en el gestor).
+     *
+     * @param bids ultimas pujas en orden cronologico
+     * @param bidCount numero total de pujas de la subasta
      */
-    public void setBids(List<Bid> bids) {
-        this.bids = bids != null ? new ArrayList<>(bids) : new ArrayList<>();
+    public void setBids(List<Bid> bids, int bidCount) {
+        if (bids != null) {
+            history.load(bids, Math.max(bidCount, bids.size()));
+        }
+        Snapshot current;
+        do {
+            current = state.get();
+        } while (!state.compareAndSet(current, new Snapshot(current.status, current.currentPrice,
+            current.currentWinner, current.bids, bidCount, current.version)));
     }
 
     // ==================== MÉTODOS DE NEGOCIO ====================
 
-    /**
-     * Inicializa el lock después de deserialización.
-     */
-    public void initializeLock() {
-        if (this.lock == null) {
-            this.lock = new ReentrantReadWriteLock();
-        }
-    }
-
     /**
      * Verifica si la subasta está activa.
      *
      * @return true si está activa y no ha expirado
      */
     public boolean isActive() {
-        return Constants.AUCTION_STATUS_ACTIVE.equals(status) &&
-               System.currentTimeMillis() < endTime;
+        return state.get().isActive(endTime);
     }
 
     /**
@@ -314,16 +333,22 @@ public class Auction {
         return secs + "s";
     }
 
+    /**
+     * Version del estado de la subasta. Permite reutilizar lo que se haya
+     * generado a partir de ella (p. ej. las respuestas de la pasarela HTTP)
+     * mientras no cambie.
+     *
+     * @return version actual
+     */
+    public long getVersion() {
+        return state.get().version;
+    }
+
     /**
      * @return número de pujas
      */
     public int getBidCount() {
-        lock.readLock().lock();
-        try {
-            return bids.size();
-        } finally {
-            lock.readLock().unlock();
-        }
+        return state.get().bidCount;
     }
 
     /**
@@ -332,26 +357,28 @@ public class Auction {
      * @return true si no hubo pujas
      */
     public boolean isDeserted() {
-        lock.readLock().lock();
-        try {
-            return bids.isEmpty();
-        } finally {
-            lock.readLock().unlock();
-        }
+        return state.get().bidCount == 0;
     }
 
     /**
-     * Realiza una puja de forma atómica y sincronizada.
+     * Realiza una puja. Se valida contra la instantanea actual sin bloqueo:
+     * las pujas que no la superan se rechazan sin escribir nada. El resto se
+     * escriben en la posicion siguiente del historial y se confirman con
+     * compare-and-set; si otro cambio de estado se confirmo antes, se
+     * vuelven a validar contra el nuevo. Solo la invoca el hilo de la
+     * particion de la subasta, que es el unico escritor del historial.
      *
      * @param bidder username del pujador
-     * @param amount cantidad de la puja
+     * @param amount cantidad de la puja en centimos
      * @return resultado de la puja
      */
-    public BidResult placeBid(String bidder, double amount) {
-        lock.writeLock().lock();
-        try {
+    public BidResult placeBid(String bidder, long amount) {
+        long timestamp = System.currentTimeMillis();
+        while (true) {
+            Snapshot current = state.get();
+
             // Validaciones
-            if (!isActive()) {
+            if (!current.isActive(endTime)) {
                 return new BidResult(false, "La subasta no está activa", null);
             }
 
@@ -359,65 +386,169 @@ public class Auction {
                 return new BidResult(false, "No puedes pujar en tu propia subasta", null);
             }
 
-            if (amount <= currentPrice) {
+            if (amount <= current.currentPrice) {
                 return new BidResult(false,
-                    "La puja debe ser mayor que el precio actual (" + currentPrice + ")",
+                    "La puja debe ser mayor que el precio actual (" + Money.format(current.currentPrice) + ")",
                     null);
             }
 
-            // Guardar el pujador anterior para notificación OUTBID
-            String previousBidder = currentWinner;
-
-            // Registrar la puja
-            Bid bid = new Bid(id, bidder, amount);
-            bids.add(bid);
-
-            // Actualizar estado
-            currentPrice = amount;
-            currentWinner = bidder;
-
-            return new BidResult(true, "Puja registrada correctamente", previousBidder);
-
-        } finally {
-            lock.writeLock().unlock();
+            // La posicion no es visible hasta publicar la instantanea que la cuenta
+            history.set(current.bidCount, bidder, amount, timestamp);
+            Snapshot next = new Snapshot(current.status, amount, bidder,
+                current.bids, current.bidCount + 1, current.version + 1);
+            if (state.compareAndSet(current, next)) {
+                Bid bid = new Bid(id, bidder, amount);
+                bid.setTimestamp(timestamp);
+                // El pujador anterior recibe la notificación OUTBID
+                return new BidResult(true, "Puja registrada correctamente", current.currentWinner, bid);
+            }
         }
     }
 
     /**
      * Cierra la subasta.
+     *
+     * @return true si estaba activa y se ha cerrado con esta llamada
      */
-    public void close() {
-        lock.writeLock().lock();
-        try {
-            this.status = Constants.AUCTION_STATUS_FINISHED;
-        } finally {
-            lock.writeLock().unlock();
-        }
+    public boolean close() {
+        return finish(Constants.AUCTION_STATUS_FINISHED);
     }
 
     /**
      * Cancela la subasta.
+     *
+     * @return true si estaba activa y se ha cancelado con esta llamada
      */
-    public void cancel() {
-        lock.writeLock().lock();
-        try {
-            this.status = Constants.AUCTION_STATUS_CANCELLED;
-        } finally {
-            lock.writeLock().unlock();
+    public boolean cancel() {
+        return finish(Constants.AUCTION_STATUS_CANCELLED);
+    }
+
+    /**
+     * Pasa la subasta de activa a un estado final.
+     */
+    private boolean finish(String status) {
+        while (true) {
+            Snapshot current = state.get();
+            if (!Constants.AUCTION_STATUS_ACTIVE.equals(current.status)) {
+                return false;
+            }
+            Snapshot next = new Snapshot(status, current.currentPrice, current.currentWinner,
+                current.bids, current.bidCount, current.version + 1);
+            if (state.compareAndSet(current, next)) {
+                return true;
+            }
         }
     }
 
     @Override
     public String toString() {
+        Snapshot current = state.get();
         return "Auction{" +
                 "id='" + id + '\'' +
                 ", title='" + title + '\'' +
                 ", seller='" + seller + '\'' +
-                ", currentPrice=" + currentPrice +
-                ", status='" + status + '\'' +
+                ", currentPrice=" + Money.format(current.currentPrice) +
+                ", status='" + current.status + '\'' +
                 '}';
     }
 
+    // ==================== INSTANTANEA DEL ESTADO ====================
+
+    /**
+     * Estado de una subasta en un instante. Es inmutable: cada cambio crea
+     * una instantanea nueva que comparte con la anterior el historial de
+     * pujas, del que solo ve las primeras {@code bidCount}.
+     */
+    public static final class Snapshot {
+        private final String status;
+        private final long currentPrice;
+        private final String currentWinner;
+        private final BidHistory bids;
+        private final int bidCount;
+        private final long version;
+
+        private Snapshot(String status, long currentPrice, String currentWinner,
+                         BidHistory bids, int bidCount, long version) {
+            this.status = status;
+            this.currentPrice = currentPrice;
+            this.currentWinner = currentWinner;
+            this.bids = bids;
+            this.bidCount = bidCount;
+            this.version = version;
+        }
+
+        /**
+         * @return estado de la subasta
+         */
+        public String getStatus() {
+            return status;
+        }
+
+        /**
+         * @return precio actual en centimos
+         */
+        public long getCurrentPrice() {
+            return currentPrice;
+        }
+
+        /**
+         * @return username del pujador actual (null si no hay pujas)
+         */
+        public String getCurrentWinner() {
+            return currentWinner;
+        }
+
+        /**
+         * @return número de pujas
+         */
+        public int getBidCount() {
+            return bidCount;
+        }
+
+        /**
+         * @return version del estado
+         */
+        public long getVersion() {
+            return version;
+        }
+
+        /**
+         * @param endTime timestamp de fin de la subasta
+         * @return true si el estado es activo y no ha expirado
+         */
+        public boolean isActive(long endTime) {
+            return Constants.AUCTION_STATUS_ACTIVE.equals(status) && System.currentTimeMillis() < endTime;
+        }
+
+        /**
+         * Copia en objetos {@link Bid} las pujas que se conservan en memoria.
+         *
+         * @param auctionId ID de la subasta
+         * @return lista inmutable de pujas en orden cronologico
+         */
+        private List<Bid> getBids(String auctionId) {
+            BidHistory.View view = bids.recent(bidCount, bidCount);
+            List<Bid> list = new ArrayList<>(view.size());
+            for (int i = view.size() - 1; i >= 0; i--) {
+                Bid bid = new Bid(auctionId, view.getBidder(i), view.getAmount(i));
+                bid.setTimestamp(view.getTimestamp(i));
+                list.add(bid);
+            }
+            return Collections.unmodifiableList(list);
+        }
+
+        /**
+         * Obtiene las pujas mas recientes sin copiarlas ni recorrer el resto
+         * del historial.
+         *
+         * @param limit numero maximo de pujas
+         * @return vista de la mas reciente a la mas antigua
+         */
+        public BidHistory.View getRecentBids(int limit) {
+            return bids.recent(bidCount, limit);
+        }
+    }
+
     // ==================== CLASE INTERNA PARA RESULTADO DE PUJA ====================
 
     /**
@@ -427,18 +558,32 @@ public class Auction {
         private final boolean success;
         private final String message;
         private final String previousBidder;
+        private final Bid bid;
 
         /**
-         * Constructor del resultado.
+         * Constructor del resultado de una puja rechazada.
          *
          * @param success si la puja fue exitosa
          * @param message mensaje descriptivo
          * @param previousBidder username del pujador anterior (para OUTBID)
          */
         public BidResult(boolean success, String message, String previousBidder) {
+            this(success, message, previousBidder, null);
+        }
+
+        /**
+         * Constructor del resultado.
+         *
+         * @param success si la puja fue exitosa
+         * @param message mensaje descriptivo
+         * @param previousBidder username del pujador anterior (para OUTBID)
+         * @param bid puja registrada en el historial (null si se rechazo)
+         */
+        public BidResult(boolean success, String message, String previousBidder, Bid bid) {
             this.success = success;
             this.message = message;
             this.previousBidder = previousBidder;
+            this.bid = bid;
         }
 
         /**
@@ -461,5 +606,12 @@ public class Auction {
         public String getPreviousBidder() {
             return previousBidder;
         }
+
+        /**
+         * @return puja registrada, con la hora que guarda el historial (null si se rechazo)
+         */
+        public Bid getBid() {
+            return bid;
+        }
     }
 }
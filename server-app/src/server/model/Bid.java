@@ -17,8 +17,8 @@ public class Bid {
     /** Username del pujador */
     private String bidder;
 
-    /** Cantidad pujada */
-    private double amount;
+    /** Cantidad pujada en centimos */
+    private long amount;
 
     /** Timestamp de la puja */
     private long timestamp;
@@ -35,9 +35,9 @@ public class Bid {
      *
      * @param auctionId ID de la subasta
      * @param bidder username del pujador
-     * @param amount cantidad pujada
+     * @param amount cantidad pujada en centimos
      */
-    public Bid(String auctionId, String bidder, double amount) {
+    public Bid(String auctionId, String bidder, long amount) {
         this();
         this.auctionId = auctionId;
         this.bidder = bidder;
@@ -89,16 +89,16 @@ public class Bid {
     }
 
     /**
-     * @return cantidad pujada
+     * @return cantidad pujada en centimos
      */
-    public double getAmount() {
+    public long getAmount() {
         return amount;
     }
 
     /**
-     * @param amount cantidad pujada
+     * @param amount cantidad pujada en centimos
      */
-    public void setAmount(double amount) {
+    public void setAmount(long amount) {
         this.amount = amount;
     }
 
@@ -125,7 +125,7 @@ public class Bid {
     public String toString() {
         return "Bid{" +
                 "bidder='" + bidder + '\'' +
-                ", amount=" + amount +
+                ", amount=" + Money.format(amount) +
                 ", timestamp=" + timestamp +
                 '}';
     }
@@ -0,0 +1,208 @@
+package server.model;
+
+import java.util.List;
+
+/**
+ * Historial compacto de las pujas de una subasta.
+ * Guarda las pujas en tramos de arrays paralelos (importe, timestamp y
+ * pujador) en lugar de un objeto {@link Bid} por puja; el pujador es el
+ * mismo String de la sesion que pujo, sin copiarlo. Solo se conservan en
+ * memoria los ultimos tramos: el historial completo esta en la base de
+ * datos.
+ *
+ * <p>Tiene un unico escritor (el hilo de la particion de la subasta) y
+ * lectores sin bloqueo. Una posicion se escribe antes de publicar la
+ * instantanea que la cuenta, y los tramos no se reutilizan al descartarlos,
+ * de modo que un lector nunca ve una posicion a medio escribir.</p>
+ *
+ * @author NetAuction Team
+ * @version 1.0
+ */
+public final class BidHistory {
+
+    /** Pujas por tramo */
+    private final int chunkSize;
+
+    /** Tramos que se conservan en memoria */
+    private final int retainedChunks;
+
+    /** Tramo con las pujas mas recientes */
+    private volatile Chunk head;
+
+    /**
+     * Constructor del historial vacio.
+     *
+     * @param chunkSize pujas por tramo
+     * @param window pujas recientes que se conservan en memoria como minimo
+     */
+    public BidHistory(int chunkSize, int window) {
+        this.chunkSize = Math.max(1, chunkSize);
+        this.retainedChunks = (Math.max(1, window) + this.chunkSize - 1) / this.chunkSize + 1;
+    }
+
+    /**
+     * Escribe la puja de una posicion. Solo la invoca el escritor, siempre
+     * con la posicion siguiente a la ultima publicada; si la publicacion
+     * falla y se reintenta, la posicion se sobrescribe.
+     *
+     * @param index posicion de la puja (numero de pujas anteriores)
+     * @param bidder username del pujador
+     * @param amount cantidad pujada en centimos
+     * @param timestamp timestamp de la puja
+     */
+    void set(int index, String bidder, long amount, long timestamp) {
+        Chunk chunk = head;
+        if (chunk == null || index >= chunk.base + chunkSize) {
+            chunk = new Chunk(index - (index % chunkSize), chunkSize, head);
+            trim(chunk);
+            head = chunk;
+        }
+        int slot = index - chunk.base;
+        chunk.bidders[slot] = bidder;
+        chunk.amounts[slot] = amount;
+        chunk.timestamps[slot] = timestamp;
+    }
+
+    /**
+     * Carga las ultimas pujas de una subasta. Las que quedan por delante del
+     * primer tramo completo se descartan para no dejar huecos en la ventana.
+     *
+     * @param bids ultimas pujas en orden cronologico
+     * @param count numero total de pujas de la subasta
+     */
+    void load(List<Bid> bids, int count) {
+        int first = count - bids.size();
+        int start = first % chunkSize == 0 ? first : first + chunkSize - first % chunkSize;
+        for (int index = Math.max(0, start); index < count; index++) {
+            Bid bid = bids.get(index - first);
+            set(index, bid.getBidder(), bid.getAmount(), bid.getTimestamp());
+        }
+    }
+
+    /**
+     * Obtiene una vista de las pujas mas recientes de una instantanea, sin
+     * copiarlas. Si parte de ellas ya no esta en memoria la vista es menor.
+     *
+     * @param count numero de pujas de la instantanea
+     * @param limit numero maximo de pujas de la vista
+     * @return vista de la mas reciente a la mas antigua
+     */
+    public View recent(int count, int limit) {
+        Chunk top = head;
+        while (top != null && top.base >= count) {
+            top = top.previous;
+        }
+        if (top == null || count - top.base > chunkSize || limit <= 0) {
+            return new View(new Chunk[0], count, 0);
+        }
+
+        // Tramos de la vista: si el escritor los descarta despues, la vista los sigue viendo
+        int size = Math.min(limit, count);
+        int needed = (size - (count - top.base) + chunkSize - 1) / chunkSize + 1;
+        Chunk[] chunks = new Chunk[Math.max(1, needed)];
+        int available = 0;
+        int n = 0;
+        for (Chunk chunk = top; chunk != null && n < chunks.length; chunk = chunk.previous) {
+            chunks[n++] = chunk;
+            available = count - chunk.base;
+        }
+        return new View(chunks, count, Math.min(size, available));
+    }
+
+    /**
+     * Descarta los tramos que quedan fuera de la ventana al anadir uno nuevo.
+     */
+    private void trim(Chunk newest) {
+        Chunk chunk = newest;
+        for (int i = 1; i < retainedChunks && chunk != null; i++) {
+            chunk = chunk.previous;
+        }
+        if (chunk != null) {
+            chunk.previous = null;
+        }
+    }
+
+    // ==================== CLASES AUXILIARES ====================
+
+    /**
+     * Tramo de pujas consecutivas. Sus posiciones solo se escriben antes de
+     * publicarlas.
+     */
+    private static final class Chunk {
+        private final int base;
+        private final String[] bidders;
+        private final long[] amounts;
+        private final long[] timestamps;
+        private volatile Chunk previous;
+
+        Chunk(int base, int size, Chunk previous) {
+            this.base = base;
+            this.bidders = new String[size];
+            this.amounts = new long[size];
+            this.timestamps = new long[size];
+            this.previous = previous;
+        }
+    }
+
+    /**
+     * Pujas mas recientes de una instantanea, leidas directamente de los
+     * tramos del historial. La posicion 0 es la mas reciente.
+     */
+    public static final class View {
+        private final Chunk[] chunks;
+        private final int end;
+        private final int size;
+
+        private View(Chunk[] chunks, int end, int size) {
+            this.chunks = chunks;
+            this.end = end;
+            this.size = size;
+        }
+
+        /**
+         * @return numero de pujas de la vista
+         */
+        public int size() {
+            return size;
+        }
+
+        /**
+         * @param i posicion en la vista (0 es la mas reciente)
+         * @return username del pujador
+         */
+        public String getBidder(int i) {
+            Chunk chunk = chunkOf(i);
+            return chunk.bidders[end - 1 - i - chunk.base];
+        }
+
+        /**
+         * @param i posicion en la vista (0 es la mas reciente)
+         * @return cantidad pujada en centimos
+         */
+        public long getAmount(int i) {
+            Chunk chunk = chunkOf(i);
+            return chunk.amounts[end - 1 - i - chunk.base];
+        }
+
+        /**
+         * @param i posicion en la vista (0 es la mas reciente)
+         * @return timestamp de la puja
+         */
+        public long getTimestamp(int i) {
+            Chunk chunk = chunkOf(i);
+            return chunk.timestamps[end - 1 - i - chunk.base];
+        }
+
+        private Chunk chunkOf(int i) {
+            if (i < 0 || i >= size) {
+                throw new IndexOutOfBoundsException("Puja " + i + " fuera de la vista (" + size + ")");
+            }
+            int index = end - 1 - i;
+            Chunk chunk = chunks[0];
+            for (int c = 1; chunk.base > index; c++) {
+                chunk = chunks[c];
+            }
+            return chunk;
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package server.model;
+
+import java.math.BigDecimal;
+
+/**
+ * Conversion de importes entre el protocolo y su representacion interna.
+ * El servidor guarda todos los importes como un {@code long} de centimos:
+ * las comparaciones de pujas son exactas y la aritmetica no reserva nada.
+ * En el protocolo los importes siguen viajando en unidades (12.5), y solo
+ * se convierten al decodificar la peticion (desde el texto del numero, sin
+ * pasar por double) y al generar las respuestas.
+ *
+ * @author NetAuction Team
+ * @version 1.0
+ */
+public final class Money {
+
+    /** Centimos por unidad */
+    public static final int CENTS_PER_UNIT = 100;
+
+    /** Importe que no se puede representar en centimos (mas de dos decimales o fuera de rango) */
+    public static final long INVALID = Long.MIN_VALUE;
+
+    /**
+     * Constructor privado: solo metodos estaticos.
+     */
+    private Money() {
+    }
+
+    /**
+     * Convierte a centimos un importe escrito en unidades, sin pasar por double.
+     *
+     * @param text numero en unidades (p. ej. "12.50" o "1e2")
+     * @return centimos, o {@link #INVALID} si tiene mas de dos decimales o no cabe en un long
+     * @throws NumberFormatException si el texto no es un numero
+     */
+    public static long parse(String text) {
+        return toCents(new BigDecimal(text));
+    }
+
+    /**
+     * Convierte centimos a unidades para enviarlos en el protocolo.
+     *
+     * @param cents importe en centimos
+     * @return importe en unidades
+     */
+    public static double toUnits(long cents) {
+        return cents / (double) CENTS_PER_UNIT;
+    }
+
+    /**
+     * Formatea un importe en unidades con dos decimales, para mensajes y logs.
+     *
+     * @param cents importe en centimos
+     * @return texto del importe (p. ej. "12.50")
+     */
+    public static String format(long cents) {
+        return BigDecimal.valueOf(cents, 2).toPlainString();
+    }
+
+    /**
+     * Convierte un importe en unidades a centimos. Descarta por la escala
+     * los exponentes extremos (1e-999999999) antes de operar con ellos.
+     */
+    private static long toCents(BigDecimal units) {
+        try {
+            BigDecimal cents = units.movePointRight(2);
+            if (cents.scale() > 0) {
+                cents = cents.stripTrailingZeros();
+                if (cents.scale() > 0) {
+                    return INVALID;
+                }
+            }
+            if (cents.precision() - cents.scale() > 18) {
+                return INVALID;
+            }
+            return cents.longValueExact();
+        } catch (ArithmeticException e) {
+            return INVALID;
+        }
+    }
+}
@@ -1,8 +1,11 @@
 package server.model;
 
+import common.Constants;
+
 /**
  * Modelo que representa una sesion de usuario.
- * Implementacion simplificada sin expiracion automatica.
+ * La sesion expira tras {@link Constants#SESSION_TIMEOUT_MINUTES} sin uso;
+ * cada peticion autenticada y cada PONG del cliente la renuevan.
  *
  * @author NetAuction Team
  * @version 1.0
@@ -18,11 +21,15 @@ public class Session {
     /** Timestamp de creacion */
     private long createdAt;
 
+    /** Timestamp del ultimo uso */
+    private volatile long lastAccessedAt;
+
     /**
      * Constructor por defecto.
      */
     public Session() {
         this.createdAt = System.currentTimeMillis();
+        this.lastAccessedAt = createdAt;
     }
 
     /**
@@ -91,42 +98,48 @@ public class Session {
         this.createdAt = createdAt;
     }
 
+    /**
+     * Obtiene el timestamp del ultimo uso de la sesion.
+     *
+     * @return timestamp en milisegundos
+     */
+    public long getLastAccessedAt() {
+        return lastAccessedAt;
+    }
+
     /**
      * Verifica si la sesion ha expirado.
-     * En la version simplificada siempre devuelve false.
      *
-     * @return false siempre (sin expiracion automatica)
+     * @return true si lleva mas de SESSION_TIMEOUT_MINUTES sin usarse
      */
     public boolean isExpired() {
-        return false;
+        return getRemainingSeconds() == 0;
     }
 
     /**
      * Verifica si la sesion es valida.
-     * En la version simplificada siempre devuelve true.
      *
-     * @return true siempre (sin expiracion automatica)
+     * @return true si no ha expirado
      */
     public boolean isValid() {
-        return true;
+        return !isExpired();
     }
 
     /**
-     * Renueva la sesion.
-     * En la version simplificada no realiza ninguna accion.
+     * Renueva la sesion: el plazo de expiracion vuelve a contar desde ahora.
      */
     public void renew() {
-        // Sin expiracion automatica.
+        this.lastAccessedAt = System.currentTimeMillis();
     }
 
     /**
      * Obtiene los segundos restantes de la sesion.
-     * En la version simplificada devuelve -1 (sin limite).
      *
-     * @return -1 siempre (sin expiracion automatica)
+     * @return segundos hasta que expire (0 si ya ha expirado)
      */
     public long getRemainingSeconds() {
-        return -1;
+        long expiresAt = lastAccessedAt + Constants.SESSION_TIMEOUT_MINUTES * 60_000L;
+        return Math.max(0, (expiresAt - System.currentTimeMillis()) / 1000);
     }
 
     @Override
@@ -0,0 +1,1235 @@
+package server.nio;
+
+import common.BinaryCodec;
+import common.Compression;
+import common.Constants;
+import common.Message;
+import server.AdmissionControl;
+import server.BatchCompressor;
+import server.ClientConnection;
+import server.EncodedMessage;
+import server.MessageEncoder;
+import server.OutboundQueue;
+import server.ProtocolHandler;
+import server.request.HelloRequest;
+import server.request.Request;
+import server.request.RequestDecoder;
+import server.security.HandshakeStats;
+
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Conexion de un cliente atendida por el motor NIO.
+ * La lectura, la escritura y el TLS (mediante SSLEngine) se hacen en el hilo
+ * de su {@link NioEventLoop}; cada linea JSON (o trama binaria, si se negocio
+ * con HELLO) completa se entrega al pool de trabajo, que la procesa con
+ * {@link ProtocolHandler} en orden de llegada. Las peticiones que llevan id
+ * se reparten a su vez entre varios hilos del pool y pueden responderse
+ * en cualquier orden.
+ * Las operaciones criptograficas de la negociacion TLS (tareas delegadas del
+ * SSLEngine) se ejecutan en el pool de negociacion, de modo que una oleada de
+ * reconexiones no frena la lectura del resto de conexiones del bucle.
+ * Los mensajes pendientes se envian por lotes: un unico wrap (un registro TLS)
+ * y una escritura agrupada por lote, en lugar de una por mensaje. Si el
+ * cliente negocio compresion, los lotes que superan el umbral salen como un
+ * unico contenedor comprimido.
+ * Una conexion inactiva no ocupa ningun hilo.
+ * Una conexion rechazada por el control de admision descarta lo que reciba,
+ * envia SERVER_BUSY (tras la negociacion TLS, si la hay) y se cierra.
+ *
+ * @author NetAuction Team
+ * @version 1.0
+ */
+public class NioConnection implements ClientConnection {
+
+    /** Longitud maxima de una linea del protocolo en bytes */
+    private static final int MAX_LINE_LENGTH = 1024 * 1024;
+
+    /** Buffer vacio usado para los wrap de la negociacion TLS */
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+
+    /** Canal del cliente (no bloqueante) */
+    private final SocketChannel channel;
+
+    /** Bucle de eventos propietario de la conexion */
+    private final NioEventLoop eventLoop;
+
+    /** Motor TLS (null si SSL esta deshabilitado) */
+    private final SSLEngine sslEngine;
+
+    /** Procesador de protocolo para manejar acciones */
+    private final ProtocolHandler protocolHandler;
+
+    /** Pool donde se ejecuta el procesamiento de mensajes */
+    private final Executor workerPool;
+
+    /** Direccion IP:puerto del cliente */
+    private final String clientAddress;
+
+    /** Pool donde se ejecutan las tareas de la negociacion TLS (null para ejecutarlas en el bucle) */
+    private Executor handshakeExecutor;
+
+    /** Metricas de negociacion TLS (null si no se registran) */
+    private HandshakeStats handshakeStats;
+
+    /** Control de admision que concedio el hueco de la conexion (null si no lo ocupa) */
+    private AdmissionControl admissionControl;
+
+    /** Instante (System.nanoTime) en que se acepto la conexion */
+    private long acceptedAt;
+
+    /** Indica si la conexion se rechaza con SERVER_BUSY en lugar de atenderse */
+    private boolean rejected;
+
+    /** Indica si hay que cerrar la conexion en cuanto se vacie la cola de salida (solo hilo del bucle) */
+    private boolean closeAfterFlush;
+
+    /** Clave de registro en el Selector (solo hilo del bucle) */
+    private SelectionKey key;
+
+    /** Indica si hay tareas de negociacion en el pool (solo hilo del bucle) */
+    private boolean delegatedTasksRunning;
+
+    /** Indica si la negociacion TLS ya termino o se contabilizo (solo hilo del bucle) */
+    private boolean handshakeDone;
+
+    /** Hora (ms) a la que empezo la negociacion TLS */
+    private long handshakeStartMillis;
+
+    /** Instante (ns) en el que empezo la negociacion TLS */
+    private long handshakeStartNanos;
+
+    /** Bytes cifrados recibidos pendientes de descifrar (modo escritura) */
+    private ByteBuffer netIn;
+
+    /** Bytes en claro descifrados (modo escritura) */
+    private ByteBuffer appIn;
+
+    /** Bytes listos para enviar por el canal (modo lectura) */
+    private ByteBuffer netOut;
+
+    /** Acumulador de la linea o trama en curso */
+    private final ByteArrayOutputStream lineBuffer;
+
+    /** Longitud de la trama binaria en curso (-1 mientras se lee la cabecera) */
+    private int frameLength;
+
+    /** Bytes leidos de la cabecera de longitud */
+    private int headerBytes;
+
+    /** Indica si aun no se ha recibido la primera linea (la unica que puede ser HELLO) */
+    private boolean awaitingHello;
+
+    /** Version del protocolo para la entrada (solo hilo del bucle) */
+    private int inboundProtocol;
+
+    /** Version del protocolo para la salida */
+    private volatile int outboundProtocol;
+
+    /** Umbral de compresion aceptado en el HELLO, aun sin activar (solo hilo del bucle) */
+    private int pendingCompressionThreshold;
+
+    /** Bytes a partir de los cuales se comprime un lote (0 sin compresion; solo hilo del bucle) */
+    private int compressionThreshold;
+
+    /** Codificador con el buffer de salida reutilizable de la conexion (bajo encodeLock) */
+    private final MessageEncoder encoder;
+
+    /**
+     * Serializa la codificacion y el encolado de los mensajes de la conexion,
+     * que pueden enviarse desde varios hilos a la vez.
+     */
+    private final ReentrantLock encodeLock;
+
+    /** Mensajes serializados pendientes de enviar (acotada) */
+    private final OutboundQueue outbound;
+
+    /** Mensajes del lote que se esta escribiendo (solo hilo del bucle) */
+    private final List<OutboundQueue.Entry> batchEntries;
+
+    /** Bytes de cada mensaje del lote en curso (solo hilo del bucle) */
+    private final ByteBuffer[] batchBuffers;
+
+    /** Primer buffer del lote con bytes por enviar (solo hilo del bucle) */
+    private int batchOffset;
+
+    /** Bytes totales del lote en curso (solo hilo del bucle) */
+    private long batchBytes;
+
+    /** Indica si ya hay un vaciado de la cola de salida programado */
+    private final AtomicBoolean flushScheduled;
+
+    /** Mensajes recibidos pendientes de procesar */
+    private final ConcurrentLinkedQueue<InboundFrame> inbound;
+
+    /** Indica si un hilo del pool esta procesando las lineas de esta conexion */
+    private final AtomicBoolean processing;
+
+    /** Peticiones con id que se estan procesando en paralelo */
+    private final AtomicInteger pipelined;
+
+    /** Indica si la conexion esta cerrada */
+    private final AtomicBoolean closed;
+
+    /** Username del cliente autenticado (null si no esta autenticado) */
+    private volatile String authenticatedUser;
+
+    /** Instante (System.nanoTime) de la ultima lectura del canal */
+    private volatile long lastActivity;
+
+    /**
+     * Constructor de la conexion.
+     *
+     * @param channel canal aceptado, ya en modo no bloqueante
+     * @param eventLoop bucle de eventos que atendera la conexion
+     * @param sslEngine motor TLS en modo servidor o null para texto plano
+     * @param protocolHandler procesador de protocolo
+     * @param workerPool pool donde se procesan los mensajes
+     */
+    public NioConnection(SocketChannel channel, NioEventLoop eventLoop, SSLEngine sslEngine,
+                         ProtocolHandler protocolHandler, Executor workerPool) {
+        this.channel = channel;
+        this.eventLoop = eventLoop;
+        this.sslEngine = sslEngine;
+        this.protocolHandler = protocolHandler;
+        this.workerPool = workerPool;
+        this.clientAddress = describe(channel);
+        this.lineBuffer = new ByteArrayOutputStream(256);
+        this.encoder = new MessageEncoder();
+        this.encodeLock = new ReentrantLock();
+        this.outbound = new OutboundQueue(Constants.OUTBOUND_QUEUE_CAPACITY, OutboundQueue.OverflowPolicy.COALESCE);
+        this.batchEntries = new ArrayList<>();
+        this.batchBuffers = new ByteBuffer[Constants.OUTBOUND_BATCH_SIZE];
+        this.flushScheduled = new AtomicBoolean(false);
+        this.inbound = new ConcurrentLinkedQueue<>();
+        this.processing = new AtomicBoolean(false);
+        this.pipelined = new AtomicInteger();
+        this.closed = new AtomicBoolean(false);
+        this.frameLength = -1;
+        this.awaitingHello = true;
+        this.inboundProtocol = Constants.PROTOCOL_JSON;
+        this.outboundProtocol = Constants.PROTOCOL_JSON;
+        this.lastActivity = System.nanoTime();
+
+        if (sslEngine != null) {
+            int packetSize = sslEngine.getSession().getPacketBufferSize();
+            int appSize = sslEngine.getSession().getApplicationBufferSize();
+            this.netIn = ByteBuffer.allocate(packetSize);
+            this.appIn = ByteBuffer.allocate(appSize);
+            this.netOut = allocateEmpty(packetSize);
+        } else {
+            this.netIn = ByteBuffer.allocate(8192);
+            this.netOut = allocateEmpty(0);
+        }
+    }
+
+    // ==================== CLIENTCONNECTION ====================
+
+    /**
+     * Establece la politica a aplicar cuando la cola de salida se llena.
+     *
+     * @param policy politica de desbordamiento
+     */
+    public void setOverflowPolicy(OutboundQueue.OverflowPolicy policy) {
+        outbound.setPolicy(policy);
+    }
+
+    /**
+     * Establece el pool donde se ejecutan las tareas de la negociacion TLS.
+     *
+     * @param handshakeExecutor pool de negociacion
+     */
+    public void setHandshakeExecutor(Executor handshakeExecutor) {
+        this.handshakeExecutor = handshakeExecutor;
+    }
+
+    /**
+     * Establece las metricas donde se registra la negociacion TLS.
+     *
+     * @param handshakeStats metricas de negociacion
+     */
+    public void setHandshakeStats(HandshakeStats handshakeStats) {
+        this.handshakeStats = handshakeStats;
+    }
+
+    /**
+     * Establece el control de admision que concedio el hueco de esta conexion,
+     * que se libera al cerrarla.
+     *
+     * @param admissionControl control de admision
+     * @param acceptedAt instante (System.nanoTime) en que se acepto la conexion
+     */
+    public void setAdmissionControl(AdmissionControl admissionControl, long acceptedAt) {
+        this.admissionControl = admissionControl;
+        this.acceptedAt = acceptedAt;
+    }
+
+    /**
+     * Marca la conexion para rechazarla con SERVER_BUSY al registrarla.
+     */
+    public void reject() {
+        this.rejected = true;
+    }
+
+    @Override
+    public OutboundQueue getOutboundQueue() {
+        return outbound;
+    }
+
+    @Override
+    public String getAuthenticatedUser() {
+        return authenticatedUser;
+    }
+
+    @Override
+    public void setAuthenticatedUser(String username) {
+        this.authenticatedUser = username;
+    }
+
+    @Override
+    public String getClientAddress() {
+        return clientAddress;
+    }
+
+    @Override
+    public long getLastActivity() {
+        return lastActivity;
+    }
+
+    /**
+     * Encola un mensaje para el cliente y programa su envio en el bucle de eventos.
+     * Puede invocarse desde cualquier hilo y nunca bloquea en el socket: si el
+     * cliente no lee, se aplica la politica de desbordamiento de la cola.
+     *
+     * @param message mensaje a enviar
+     */
+    @Override
+    public void sendMessage(Message message) {
+        if (closed.get()) {
+            return;
+        }
+        boolean accepted;
+        encodeLock.lock();
+        try {
+            accepted = outbound.offer(message, encoder.encode(message, outboundProtocol));
+        } finally {
+            encodeLock.unlock();
+        }
+        if (!accepted) {
+            System.err.println("[SERVER] Cola de salida llena, desconectando cliente lento: " + clientAddress);
+            stop();
+            return;
+        }
+        System.out.println("[SERVER] Enviado a " + clientAddress + ": " + message.getAction());
+        scheduleFlush();
+    }
+
+    /**
+     * Encola un mensaje compartido con los bytes del protocolo de salida y
+     * programa su envio, igual que {@link #sendMessage(Message)} pero sin codificar.
+     *
+     * @param message mensaje compartido
+     */
+    @Override
+    public void sendEncoded(EncodedMessage message) {
+        if (closed.get()) {
+            return;
+        }
+        if (!outbound.offer(message.getMessage(), message.getBytes(outboundProtocol))) {
+            System.err.println("[SERVER] Cola de salida llena, desconectando cliente lento: " + clientAddress);
+            stop();
+            return;
+        }
+        scheduleFlush();
+    }
+
+    @Override
+    public void cork() {
+        outbound.cork();
+    }
+
+    @Override
+    public void uncork() {
+        if (outbound.uncork()) {
+            scheduleFlush();
+        }
+    }
+
+    /**
+     * Programa el vaciado de la cola de salida en el bucle de eventos si no hay uno pendiente.
+     */
+    private void scheduleFlush() {
+        if (flushScheduled.compareAndSet(false, true)) {
+            eventLoop.execute(this::flushFromLoop);
+        }
+    }
+
+    /**
+     * Cierra la conexion y libera los recursos asociados.
+     */
+    @Override
+    public void stop() {
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+        eventLoop.execute(this::closeChannel);
+        try {
+            workerPool.execute(this::cleanup);
+        } catch (RejectedExecutionException e) {
+            cleanup();
+        }
+    }
+
+    /**
+     * Limpia el estado de protocolo de la conexion (sesion y notificaciones).
+     */
+    private void cleanup() {
+        if (protocolHandler != null) {
+            protocolHandler.handleClientDisconnect(this);
+        }
+        if (admissionControl != null) {
+            admissionControl.release();
+        }
+        System.out.println("[SERVER] Recursos liberados para: " + clientAddress);
+    }
+
+    // ==================== HILO DEL BUCLE DE EVENTOS ====================
+
+    /**
+     * Registra el canal en el Selector e inicia la negociacion TLS.
+     *
+     * @param selector selector del bucle propietario
+     */
+    void register(Selector selector) {
+        try {
+            key = channel.register(selector, SelectionKey.OP_READ, this);
+            // Sin pool de conexiones el unico tiempo de espera es la cola del bucle de eventos
+            if (!rejected && admissionControl != null && admissionControl.isStale(acceptedAt)) {
+                rejected = true;
+            }
+            System.out.println("[SERVER] Cliente " + (rejected ? "rechazado (servidor ocupado): " : "conectado: ")
+                + clientAddress);
+            if (sslEngine != null) {
+                handshakeStartMillis = System.currentTimeMillis();
+                handshakeStartNanos = System.nanoTime();
+                sslEngine.beginHandshake();
+                advanceHandshake();
+            } else if (rejected) {
+                sendBusy();
+            }
+            if (!rejected && protocolHandler != null) {
+                protocolHandler.handleClientConnect(this);
+            }
+        } catch (IOException e) {
+            stop();
+        }
+    }
+
+    /**
+     * Lee del canal y procesa los bytes recibidos.
+     *
+     * @throws IOException si el canal falla
+     */
+    void onReadable() throws IOException {
+        if (delegatedTasksRunning) {
+            return;
+        }
+        int read = channel.read(netIn);
+        if (read < 0) {
+            System.out.println("[SERVER] Cliente desconectado: " + clientAddress);
+            stop();
+            return;
+        }
+        lastActivity = System.nanoTime();
+
+        if (sslEngine == null) {
+            netIn.flip();
+            consumeInbound(netIn);
+            netIn.clear();
+            return;
+        }
+
+        unwrapAll();
+        advanceHandshake();
+        checkHandshakeFinished();
+        writePending();
+    }
+
+    /**
+     * Continua una escritura que quedo a medias porque el buffer de envio estaba lleno.
+     *
+     * @throws IOException si el canal falla
+     */
+    void onWritable() throws IOException {
+        if (!drainNetOut()) {
+            return;
+        }
+        if (sslEngine != null) {
+            advanceHandshake();
+            checkHandshakeFinished();
+        }
+        writePending();
+    }
+
+    /**
+     * Vacia la cola de salida desde el bucle de eventos.
+     */
+    private void flushFromLoop() {
+        flushScheduled.set(false);
+        if (closed.get() || key == null) {
+            return;
+        }
+        try {
+            writePending();
+        } catch (IOException e) {
+            stop();
+        }
+    }
+
+    /**
+     * Descifra todo lo recibido y entrega el texto en claro al separador de lineas.
+     *
+     * @throws IOException si la negociacion o el descifrado fallan
+     */
+    private void unwrapAll() throws IOException {
+        netIn.flip();
+        try {
+            while (netIn.hasRemaining() && !closed.get()) {
+                SSLEngineResult result = sslEngine.unwrap(netIn, appIn);
+                switch (result.getStatus()) {
+                    case BUFFER_UNDERFLOW:
+                        if (netIn.position() == 0 && netIn.limit() == netIn.capacity()) {
+                            netIn = enlarge(netIn, sslEngine.getSession().getPacketBufferSize(), true);
+                        }
+                        return;
+                    case BUFFER_OVERFLOW:
+                        appIn = enlarge(appIn, sslEngine.getSession().getApplicationBufferSize(), false);
+                        continue;
+                    case CLOSED:
+                        stop();
+                        return;
+                    default:
+                        break;
+                }
+
+                if (result.bytesProduced() > 0) {
+                    appIn.flip();
+                    consumeInbound(appIn);
+                    appIn.clear();
+                }
+
+                SSLEngineResult.HandshakeStatus hs = result.getHandshakeStatus();
+                if (hs == SSLEngineResult.HandshakeStatus.NEED_TASK) {
+                    if (!runDelegatedTasks()) {
+                        return;
+                    }
+                } else if (hs == SSLEngineResult.HandshakeStatus.NEED_WRAP) {
+                    if (!wrapHandshake()) {
+                        return;
+                    }
+                } else if (result.bytesConsumed() == 0 && result.bytesProduced() == 0) {
+                    return;
+                }
+            }
+        } finally {
+            netIn.compact();
+        }
+    }
+
+    /**
+     * Avanza la negociacion TLS mientras no requiera datos nuevos del cliente.
+     *
+     * @throws IOException si la negociacion falla
+     */
+    private void advanceHandshake() throws IOException {
+        while (!closed.get()) {
+            SSLEngineResult.HandshakeStatus hs = sslEngine.getHandshakeStatus();
+            if (hs == SSLEngineResult.HandshakeStatus.NEED_TASK) {
+                if (!runDelegatedTasks()) {
+                    return;
+                }
+            } else if (hs == SSLEngineResult.HandshakeStatus.NEED_WRAP) {
+                if (!wrapHandshake()) {
+                    return;
+                }
+            } else {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Ejecuta las tareas delegadas de la negociacion (operaciones criptograficas).
+     * Con pool de negociacion se ejecutan alli y la conexion deja de leer hasta
+     * que terminan; la negociacion continua despues en {@link #resumeHandshake()}.
+     *
+     * @return true si se ejecutaron aqui y la negociacion puede continuar
+     */
+    private boolean runDelegatedTasks() {
+        if (handshakeExecutor == null) {
+            Runnable task;
+            while ((task = sslEngine.getDelegatedTask()) != null) {
+                task.run();
+            }
+            return true;
+        }
+        if (delegatedTasksRunning) {
+            return false;
+        }
+
+        List<Runnable> tasks = new ArrayList<>();
+        Runnable task;
+        while ((task = sslEngine.getDelegatedTask()) != null) {
+            tasks.add(task);
+        }
+        delegatedTasksRunning = true;
+        setWriteInterest(netOut.hasRemaining());
+        try {
+            handshakeExecutor.execute(() -> {
+                try {
+                    for (Runnable delegated : tasks) {
+                        delegated.run();
+                    }
+                } finally {
+                    eventLoop.execute(this::resumeHandshake);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // Pool de negociacion saturado: se descarta la conexion
+            handshakeDone = true;
+            if (handshakeStats != null) {
+                handshakeStats.recordRejected();
+            }
+            stop();
+        }
+        return false;
+    }
+
+    /**
+     * Continua la negociacion en el bucle cuando terminan sus tareas delegadas.
+     */
+    private void resumeHandshake() {
+        delegatedTasksRunning = false;
+        if (closed.get()) {
+            return;
+        }
+        try {
+            setWriteInterest(netOut.hasRemaining());
+            advanceHandshake();
+            unwrapAll();
+            advanceHandshake();
+            checkHandshakeFinished();
+            writePending();
+        } catch (IOException | RuntimeException e) {
+            stop();
+        }
+    }
+
+    /**
+     * Registra la negociacion en las metricas la primera vez que termina.
+     */
+    private void checkHandshakeFinished() {
+        if (handshakeDone || delegatedTasksRunning || isHandshaking()) {
+            return;
+        }
+        handshakeDone = true;
+        if (handshakeStats != null) {
+            handshakeStats.recordHandshake(sslEngine.getSession(), handshakeStartMillis,
+                System.nanoTime() - handshakeStartNanos);
+        }
+        if (rejected) {
+            sendBusy();
+        }
+    }
+
+    /**
+     * Envia SERVER_BUSY y programa el cierre de la conexion en cuanto salga.
+     */
+    private void sendBusy() {
+        closeAfterFlush = true;
+        sendMessage(AdmissionControl.createBusyMessage());
+    }
+
+    /**
+     * Genera y envia un registro de negociacion TLS.
+     *
+     * @return true si se envio completo, false si queda pendiente de OP_WRITE
+     * @throws IOException si el canal falla
+     */
+    private boolean wrapHandshake() throws IOException {
+        if (!drainNetOut()) {
+            return false;
+        }
+        while (true) {
+            netOut.clear();
+            SSLEngineResult result = sslEngine.wrap(EMPTY, netOut);
+            netOut.flip();
+            if (result.getStatus() == SSLEngineResult.Status.BUFFER_OVERFLOW) {
+                netOut = allocateEmpty(Math.max(sslEngine.getSession().getPacketBufferSize(), netOut.capacity() * 2));
+                continue;
+            }
+            if (result.getStatus() == SSLEngineResult.Status.CLOSED) {
+                drainNetOut();
+                stop();
+                return false;
+            }
+            return drainNetOut();
+        }
+    }
+
+    /**
+     * Escribe en el canal los mensajes encolados, cifrandolos si hay TLS.
+     * Cada lote sale con una escritura agrupada (texto plano) o un wrap que
+     * reune todos sus mensajes en un registro TLS.
+     *
+     * @throws IOException si el canal falla
+     */
+    private void writePending() throws IOException {
+        if (closed.get() || !drainNetOut()) {
+            return;
+        }
+
+        while (true) {
+            if (!batchHasRemaining()) {
+                completeBatch();
+                if (!fillBatch()) {
+                    break;
+                }
+            }
+            int length = batchEntries.size() - batchOffset;
+
+            if (sslEngine == null) {
+                channel.write(batchBuffers, batchOffset, length);
+                if (batchHasRemaining()) {
+                    setWriteInterest(true);
+                    return;
+                }
+                continue;
+            }
+
+            if (isHandshaking()) {
+                setWriteInterest(false);
+                return;
+            }
+            netOut.clear();
+            SSLEngineResult result = sslEngine.wrap(batchBuffers, batchOffset, length, netOut);
+            netOut.flip();
+            if (result.getStatus() == SSLEngineResult.Status.BUFFER_OVERFLOW) {
+                netOut = allocateEmpty(Math.max(sslEngine.getSession().getPacketBufferSize(), netOut.capacity() * 2));
+                continue;
+            }
+            if (result.getStatus() == SSLEngineResult.Status.CLOSED) {
+                stop();
+                return;
+            }
+            if (!drainNetOut()) {
+                return;
+            }
+        }
+        setWriteInterest(false);
+        if (closeAfterFlush) {
+            stop();
+        }
+    }
+
+    /**
+     * Forma el siguiente lote con los mensajes encolados: hasta
+     * {@link Constants#OUTBOUND_BATCH_SIZE} mensajes y {@link Constants#WRITE_BUFFER_SIZE}
+     * bytes (un mensaje mayor va solo). Mientras la cola este retenida por una
+     * peticion en proceso no se forma lote, salvo que ya este llena.
+     *
+     * @return true si hay un lote que enviar
+     */
+    private boolean fillBatch() {
+        if (outbound.isCorked() && outbound.size() < Constants.OUTBOUND_BATCH_SIZE) {
+            return false;
+        }
+        OutboundQueue.Entry entry = outbound.poll();
+        while (entry != null) {
+            batchBuffers[batchEntries.size()] = ByteBuffer.wrap(entry.getBytes());
+            batchEntries.add(entry);
+            batchBytes += entry.getBytes().length;
+            if (batchEntries.size() == batchBuffers.length) {
+                break;
+            }
+            entry = outbound.poll((int) Math.max(0, Constants.WRITE_BUFFER_SIZE - batchBytes));
+        }
+        if (compressionThreshold > 0 && batchBytes >= compressionThreshold) {
+            batchBuffers[0] = ByteBuffer.wrap(BatchCompressor.compress(batchEntries, batchBytes, outboundProtocol));
+            for (int i = 1; i < batchEntries.size(); i++) {
+                batchBuffers[i] = EMPTY;
+            }
+        }
+        return !batchEntries.isEmpty();
+    }
+
+    /**
+     * Indica si al lote en curso le quedan bytes por entregar al canal o al SSLEngine.
+     *
+     * @return true si queda algo del lote
+     */
+    private boolean batchHasRemaining() {
+        while (batchOffset < batchEntries.size() && !batchBuffers[batchOffset].hasRemaining()) {
+            batchOffset++;
+        }
+        return batchOffset < batchEntries.size();
+    }
+
+    /**
+     * Da por escrito el lote en curso (ya no queda nada de el en netOut) y lo registra como un flush.
+     */
+    private void completeBatch() {
+        if (batchEntries.isEmpty()) {
+            return;
+        }
+        outbound.markWritten(batchEntries);
+        outbound.recordFlush(batchBytes, batchEntries.size());
+        clearBatch();
+    }
+
+    /**
+     * Vacia el lote en curso sin darlo por escrito.
+     */
+    private void clearBatch() {
+        for (int i = 0; i < batchEntries.size(); i++) {
+            batchBuffers[i] = null;
+        }
+        batchEntries.clear();
+        batchOffset = 0;
+        batchBytes = 0;
+    }
+
+    /**
+     * Envia los bytes cifrados pendientes.
+     *
+     * @return true si no queda nada pendiente
+     * @throws IOException si el canal falla
+     */
+    private boolean drainNetOut() throws IOException {
+        while (netOut.hasRemaining()) {
+            if (channel.write(netOut) == 0) {
+                setWriteInterest(true);
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Indica si la negociacion TLS sigue en curso.
+     *
+     * @return true si aun no se pueden enviar datos de aplicacion
+     */
+    private boolean isHandshaking() {
+        SSLEngineResult.HandshakeStatus hs = sslEngine.getHandshakeStatus();
+        return hs != SSLEngineResult.HandshakeStatus.NOT_HANDSHAKING
+            && hs != SSLEngineResult.HandshakeStatus.FINISHED;
+    }
+
+    /**
+     * Activa o desactiva el interes por OP_WRITE (y por OP_READ, salvo mientras
+     * haya tareas de negociacion en el pool).
+     *
+     * @param enabled true si hay datos pendientes de escribir
+     */
+    private void setWriteInterest(boolean enabled) {
+        if (key == null || !key.isValid()) {
+            return;
+        }
+        // Mientras el pool ejecuta tareas de negociacion no se lee del canal
+        int ops = delegatedTasksRunning ? 0 : SelectionKey.OP_READ;
+        if (enabled) {
+            ops |= SelectionKey.OP_WRITE;
+        }
+        if (key.interestOps() != ops) {
+            key.interestOps(ops);
+        }
+    }
+
+    /**
+     * Entrega los bytes en claro al separador que corresponda al protocolo.
+     * Si el protocolo cambia a mitad de buffer (tras el HELLO) se continua con el nuevo.
+     *
+     * @param buffer bytes en claro (modo lectura)
+     */
+    private void consumeInbound(ByteBuffer buffer) {
+        if (rejected) {
+            buffer.position(buffer.limit());
+            return;
+        }
+        while (buffer.hasRemaining() && !closed.get()) {
+            if (inboundProtocol == Constants.PROTOCOL_BINARY) {
+                consumeFrames(buffer);
+            } else {
+                consumeLines(buffer);
+            }
+        }
+    }
+
+    /**
+     * Separa tramas binarias (longitud + contenido) y las entrega al pool de trabajo.
+     *
+     * @param buffer bytes en claro (modo lectura)
+     */
+    private void consumeFrames(ByteBuffer buffer) {
+        while (buffer.hasRemaining()) {
+            if (frameLength < 0) {
+                lineBuffer.write(buffer.get());
+                if (++headerBytes < 4) {
+                    continue;
+                }
+                byte[] header = lineBuffer.toByteArray();
+                lineBuffer.reset();
+                headerBytes = 0;
+                frameLength = ((header[0] & 0xFF) << 24) | ((header[1] & 0xFF) << 16)
+                    | ((header[2] & 0xFF) << 8) | (header[3] & 0xFF);
+                if (frameLength < 0 || frameLength > BinaryCodec.MAX_FRAME_LENGTH) {
+                    System.err.println("[SERVER] Trama demasiado larga de " + clientAddress);
+                    stop();
+                    return;
+                }
+            }
+
+            int chunk = Math.min(buffer.remaining(), frameLength - lineBuffer.size());
+            for (int i = 0; i < chunk; i++) {
+                lineBuffer.write(buffer.get());
+            }
+            if (lineBuffer.size() == frameLength) {
+                enqueue(new InboundFrame(null, lineBuffer.toByteArray()));
+                lineBuffer.reset();
+                frameLength = -1;
+            }
+        }
+    }
+
+    /**
+     * Separa el texto en claro en lineas y las entrega al pool de trabajo.
+     * Tras negociar el protocolo binario vuelve para que el resto se lea como tramas.
+     *
+     * @param buffer bytes en claro (modo lectura)
+     */
+    private void consumeLines(ByteBuffer buffer) {
+        while (buffer.hasRemaining()) {
+            byte b = buffer.get();
+            if (b == '\n') {
+                String line = lineBuffer.toString(StandardCharsets.UTF_8);
+                lineBuffer.reset();
+                if (line.endsWith("\r")) {
+                    line = line.substring(0, line.length() - 1);
+                }
+                if (line.isEmpty()) {
+                    continue;
+                }
+                if (awaitingHello) {
+                    awaitingHello = false;
+                    if (line.contains(Constants.ACTION_HELLO) && negotiateProtocol(line)) {
+                        return;
+                    }
+                }
+                enqueue(new InboundFrame(line, null));
+            } else {
+                lineBuffer.write(b);
+                if (lineBuffer.size() > MAX_LINE_LENGTH) {
+                    System.err.println("[SERVER] Linea demasiado larga de " + clientAddress);
+                    stop();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Cierra el canal y cancela su registro en el Selector.
+     */
+    private void closeChannel() {
+        if (sslEngine != null && !handshakeDone) {
+            handshakeDone = true;
+            if (handshakeStats != null) {
+                handshakeStats.recordFailure();
+            }
+        }
+        if (sslEngine != null) {
+            try {
+                sslEngine.closeOutbound();
+                netOut.clear();
+                sslEngine.wrap(EMPTY, netOut);
+                netOut.flip();
+                channel.write(netOut);
+            } catch (IOException e) {
+                // Cierre TLS de mejor esfuerzo
+            }
+        }
+        if (key != null) {
+            key.cancel();
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // Ignorar
+        }
+        outbound.close();
+        clearBatch();
+    }
+
+    // ==================== POOL DE TRABAJO ====================
+
+    /**
+     * Atiende el HELLO en el propio bucle: responde en JSON y cambia el protocolo
+     * de entrada y salida antes de leer el siguiente byte, de modo que las
+     * tramas que el cliente envie a continuacion ya se interpretan bien.
+     *
+     * @param line primera linea recibida
+     * @return true si era un HELLO y se ha respondido
+     */
+    private boolean negotiateProtocol(String line) {
+        Request request;
+        try {
+            request = RequestDecoder.INSTANCE.decode(line);
+        } catch (com.google.gson.JsonSyntaxException e) {
+            return false;
+        }
+        if (!(request instanceof HelloRequest)) {
+            return false;
+        }
+
+        Message response = protocolHandler.handleHello((HelloRequest) request);
+        sendMessage(response);
+        int accepted = response.getDataInt("protocol", Constants.PROTOCOL_JSON);
+        inboundProtocol = accepted;
+        outboundProtocol = accepted;
+        if (Compression.DEFLATE.equals(response.getDataString("compression"))) {
+            pendingCompressionThreshold = protocolHandler.getCompressionThreshold();
+        }
+        return true;
+    }
+
+    /**
+     * Encola un mensaje y programa su procesamiento si no hay uno en curso.
+     * Solo hay un hilo procesando cada conexion para conservar el orden.
+     *
+     * @param frame mensaje recibido
+     */
+    private void enqueue(InboundFrame frame) {
+        // La compresion se activa con el primer mensaje posterior al HELLO: el cliente
+        // no lo envia sin haber leido la respuesta, que asi nunca va en un contenedor
+        if (pendingCompressionThreshold > 0) {
+            compressionThreshold = pendingCompressionThreshold;
+            pendingCompressionThreshold = 0;
+        }
+        inbound.add(frame);
+        if (processing.compareAndSet(false, true)) {
+            resumeInbound();
+        }
+    }
+
+    /**
+     * Programa en el pool el procesado de las lineas pendientes. Se llama con
+     * processing ya a true.
+     */
+    private void resumeInbound() {
+        try {
+            workerPool.execute(this::processInbound);
+        } catch (RejectedExecutionException e) {
+            processing.set(false);
+        }
+    }
+
+    /**
+     * Procesa en orden todas las lineas pendientes de la conexion.
+     * Las peticiones con id se delegan en otro hilo del pool mientras haya
+     * huecos; el resto se procesan aqui, en orden de llegada. Si una
+     * peticion se esta aplicando en la particion de su subasta, el hilo
+     * queda libre y el resto de lineas se retoma al enviar su respuesta
+     * (processing sigue a true mientras tanto).
+     */
+    private void processInbound() {
+        do {
+            InboundFrame frame;
+            while ((frame = inbound.poll()) != null) {
+                Request request = decode(frame);
+                if (request == null) {
+                    continue;
+                }
+                if (Constants.ACTION_PONG.equals(request.getAction())) {
+                    protocolHandler.handlePong(this);
+                    continue;
+                }
+                if (request.getId() != null && dispatchPipelined(request)) {
+                    continue;
+                }
+                // Una respuesta inmediata sale en el mismo lote que las notificaciones
+                // que provoque; si espera a su particion (o a la base de datos) la
+                // cola se libera ya, sin retener las demas notificaciones mientras
+                cork();
+                CompletableFuture<Void> reply = handleRequest(request);
+                uncork();
+                if (!reply.isDone()) {
+                    reply.whenComplete((ignored, error) -> resumeInbound());
+                    return;
+                }
+            }
+            processing.set(false);
+        } while (!inbound.isEmpty() && processing.compareAndSet(false, true));
+    }
+
+    /**
+     * Decodifica un mensaje recibido. Si no es valido responde con el error.
+     *
+     * @param frame linea JSON o trama binaria recibida
+     * @return peticion decodificada o null si no es valida o la conexion esta cerrada
+     */
+    private Request decode(InboundFrame frame) {
+        if (closed.get()) {
+            return null;
+        }
+        try {
+            Request request = frame.line != null
+                ? RequestDecoder.INSTANCE.decode(frame.line)
+                : RequestDecoder.INSTANCE.decode(BinaryCodec.decode(frame.payload));
+            System.out.println("[SERVER] Recibido de " + clientAddress + ": " + request.getAction());
+            return request;
+        } catch (IllegalArgumentException e) {
+            System.err.println("[SERVER] Trama inválida de " + clientAddress + ": " + e.getMessage());
+            sendMessage(Message.createErrorResponse("UNKNOWN", "Trama inválida: " + e.getMessage()));
+        } catch (com.google.gson.JsonSyntaxException e) {
+            System.err.println("[SERVER] JSON inválido de " + clientAddress + ": " + e.getMessage());
+            sendMessage(Message.createErrorResponse("UNKNOWN", "JSON inválido: " + e.getMessage()));
+        } catch (RuntimeException e) {
+            // Un error inesperado no puede dejar la conexion sin procesar mas peticiones
+            System.err.println("[SERVER] Error procesando mensaje de " + clientAddress + ": " + e.getMessage());
+            e.printStackTrace();
+            sendMessage(Message.createErrorResponse("UNKNOWN", "Error interno del servidor"));
+        }
+        return null;
+    }
+
+    /**
+     * Procesa una peticion con id en otro hilo del pool.
+     *
+     * @param request peticion decodificada
+     * @return true si se delego, false si no quedan huecos y debe procesarse en orden
+     */
+    private boolean dispatchPipelined(Request request) {
+        if (pipelined.incrementAndGet() > Constants.MAX_PIPELINED_REQUESTS) {
+            pipelined.decrementAndGet();
+            return false;
+        }
+        try {
+            workerPool.execute(() -> handleRequest(request)
+                .whenComplete((ignored, error) -> pipelined.decrementAndGet()));
+            return true;
+        } catch (RejectedExecutionException e) {
+            pipelined.decrementAndGet();
+            return false;
+        }
+    }
+
+    /**
+     * Procesa una peticion y envia la respuesta cuando este lista.
+     *
+     * @param request peticion decodificada
+     * @return se completa tras encolar la respuesta (en el hilo de la
+     *         particion si la peticion se aplico en una)
+     */
+    private CompletableFuture<Void> handleRequest(Request request) {
+        if (closed.get()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        CompletableFuture<Message> response;
+        try {
+            response = protocolHandler.handleMessageAsync(request, this);
+        } catch (RuntimeException e) {
+            response = CompletableFuture.failedFuture(e);
+        }
+        return response.handle((message, error) -> {
+            if (error != null) {
+                Throwable cause = error.getCause() != null ? error.getCause() : error;
+                System.err.println("[SERVER] Error procesando mensaje de " + clientAddress + ": " + cause.getMessage());
+                cause.printStackTrace();
+                message = request.createErrorReply("Error interno del servidor");
+            }
+            sendMessage(message);
+            return null;
+        });
+    }
+
+    // ==================== UTILIDADES ====================
+
+    /**
+     * Amplia un buffer conservando su contenido.
+     *
+     * @param buffer buffer actual
+     * @param minCapacity capacidad minima recomendada por la sesion TLS
+     * @param readMode true si el buffer esta en modo lectura
+     * @return buffer ampliado en el mismo modo que el original
+     */
+    private static ByteBuffer enlarge(ByteBuffer buffer, int minCapacity, boolean readMode) {
+        int capacity = Math.max(minCapacity, buffer.capacity() * 2);
+        ByteBuffer enlarged = ByteBuffer.allocate(capacity);
+        if (!readMode) {
+            buffer.flip();
+        }
+        enlarged.put(buffer);
+        if (readMode) {
+            enlarged.flip();
+        }
+        return enlarged;
+    }
+
+    /**
+     * Crea un buffer vacio en modo lectura.
+     *
+     * @param capacity capacidad del buffer
+     * @return buffer sin bytes pendientes
+     */
+    private static ByteBuffer allocateEmpty(int capacity) {
+        ByteBuffer buffer = ByteBuffer.allocate(capacity);
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Construye la descripcion IP:puerto de un canal.
+     *
+     * @param channel canal del cliente
+     * @return direccion del cliente
+     */
+    private static String describe(SocketChannel channel) {
+        try {
+            java.net.InetSocketAddress remote = (java.net.InetSocketAddress) channel.getRemoteAddress();
+            return remote.getAddress().getHostAddress() + ":" + remote.getPort();
+        } catch (IOException | ClassCastException | NullPointerException e) {
+            return "desconocido";
+        }
+    }
+
+    /**
+     * Mensaje recibido pendiente de decodificar: una linea JSON o una trama binaria.
+     */
+    private static final class InboundFrame {
+        private final String line;
+        private final byte[] payload;
+
+        InboundFrame(String line, byte[] payload) {
+            this.line = line;
+            this.payload = payload;
+        }
+    }
+}
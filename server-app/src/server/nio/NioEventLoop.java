@@ -0,0 +1,185 @@
+package server.nio;
+
+import java.io.IOException;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Bucle de eventos del motor NIO.
+ * Cada instancia posee un Selector y un hilo propio que atiende la lectura,
+ * escritura y negociacion TLS de todas las conexiones que tiene asignadas.
+ * El resto de hilos solo interactua con el bucle encolando tareas.
+ *
+ * @author NetAuction Team
+ * @version 1.0
+ */
+public class NioEventLoop implements Runnable {
+
+    /** Selector que multiplexa las conexiones asignadas */
+    private final Selector selector;
+
+    /** Tareas pendientes de ejecutar en el hilo del bucle */
+    private final ConcurrentLinkedQueue<Runnable> tasks;
+
+    /** Nombre del bucle (se usa como nombre del hilo) */
+    private final String name;
+
+    /** Hilo que ejecuta el bucle */
+    private Thread thread;
+
+    /** Indica si el bucle esta activo */
+    private volatile boolean running;
+
+    /**
+     * Constructor del bucle de eventos.
+     *
+     * @param name nombre del bucle
+     * @throws IOException si no se puede abrir el Selector
+     */
+    public NioEventLoop(String name) throws IOException {
+        this.selector = Selector.open();
+        this.tasks = new ConcurrentLinkedQueue<>();
+        this.name = name;
+        this.running = false;
+    }
+
+    /**
+     * Arranca el hilo del bucle.
+     */
+    public void start() {
+        running = true;
+        thread = new Thread(this, name);
+        thread.start();
+    }
+
+    /**
+     * Indica si el hilo actual es el hilo de este bucle.
+     *
+     * @return true si se invoca desde el propio bucle
+     */
+    public boolean inEventLoop() {
+        return Thread.currentThread() == thread;
+    }
+
+    /**
+     * Ejecuta una tarea en el hilo del bucle.
+     * Si ya se esta en el bucle se ejecuta inmediatamente.
+     *
+     * @param task tarea a ejecutar
+     */
+    public void execute(Runnable task) {
+        if (inEventLoop()) {
+            task.run();
+            return;
+        }
+        tasks.add(task);
+        selector.wakeup();
+    }
+
+    /**
+     * Asigna una conexion nueva a este bucle.
+     *
+     * @param connection conexion aceptada
+     */
+    public void register(NioConnection connection) {
+        execute(() -> connection.register(selector));
+    }
+
+    /**
+     * Detiene el bucle y cierra todas sus conexiones.
+     */
+    public void stop() {
+        running = false;
+        selector.wakeup();
+    }
+
+    /**
+     * Espera a que el hilo del bucle termine.
+     *
+     * @param millis tiempo maximo de espera en milisegundos
+     * @throws InterruptedException si se interrumpe la espera
+     */
+    public void join(long millis) throws InterruptedException {
+        if (thread != null) {
+            thread.join(millis);
+        }
+    }
+
+    /**
+     * Bucle principal: espera eventos, ejecuta tareas y despacha lecturas y escrituras.
+     */
+    @Override
+    public void run() {
+        while (running) {
+            try {
+                selector.select();
+                runTasks();
+                processSelectedKeys();
+            } catch (IOException e) {
+                System.err.println("[NIO] Error en " + name + ": " + e.getMessage());
+            }
+        }
+        closeAll();
+    }
+
+    /**
+     * Ejecuta las tareas encoladas por otros hilos.
+     */
+    private void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                System.err.println("[NIO] Error ejecutando tarea en " + name + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Despacha los eventos listos a sus conexiones.
+     */
+    private void processSelectedKeys() {
+        Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+        while (it.hasNext()) {
+            SelectionKey key = it.next();
+            it.remove();
+
+            NioConnection connection = (NioConnection) key.attachment();
+            try {
+                if (key.isValid() && key.isReadable()) {
+                    connection.onReadable();
+                }
+                if (key.isValid() && key.isWritable()) {
+                    connection.onWritable();
+                }
+            } catch (IOException | CancelledKeyException e) {
+                connection.stop();
+            } catch (RuntimeException e) {
+                System.err.println("[NIO] Error en conexion " + connection.getClientAddress() + ": " + e.getMessage());
+                connection.stop();
+            }
+        }
+    }
+
+    /**
+     * Cierra todas las conexiones del bucle y el Selector.
+     */
+    private void closeAll() {
+        runTasks();
+        for (SelectionKey key : selector.keys()) {
+            if (key.attachment() instanceof NioConnection) {
+                ((NioConnection) key.attachment()).stop();
+            }
+        }
+        runTasks();
+        try {
+            selector.close();
+        } catch (IOException e) {
+            // Ignorar
+        }
+    }
+}
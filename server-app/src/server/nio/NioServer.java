@@ -0,0 +1,208 @@
+package server.nio;
+
+import common.Constants;
+import server.AdmissionControl;
+import server.OutboundQueue;
+import server.ProtocolHandler;
+import server.security.HandshakeStats;
+import server.security.SSLConfig;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Motor de conexiones basado en java.nio.
+ * Un hilo aceptador reparte las conexiones entre unos pocos {@link NioEventLoop}
+ * que multiplexan miles de clientes inactivos; solo los mensajes recibidos
+ * ocupan un hilo del pool de trabajo mientras se procesan.
+ *
+ * @author NetAuction Team
+ * @version 1.0
+ */
+public class NioServer {
+
+    /** Puerto de escucha */
+    private final int port;
+
+    /** Contexto SSL del servidor (null si SSL esta deshabilitado) */
+    private final SSLContext sslContext;
+
+    /** Procesador de protocolo compartido por todas las conexiones */
+    private final ProtocolHandler protocolHandler;
+
+    /** Politica de desbordamiento de las colas de salida */
+    private OutboundQueue.OverflowPolicy overflowPolicy;
+
+    /** Pool donde se ejecutan las tareas de negociacion TLS (null para hacerlo en los bucles) */
+    private Executor handshakeExecutor;
+
+    /** Metricas de negociacion TLS */
+    private HandshakeStats handshakeStats;
+
+    /** Control de admision de conexiones (null si no se limita) */
+    private AdmissionControl admissionControl;
+
+    /** Canal de escucha */
+    private ServerSocketChannel serverChannel;
+
+    /** Bucles de eventos */
+    private NioEventLoop[] eventLoops;
+
+    /** Pool donde se procesan los mensajes recibidos */
+    private ExecutorService workerPool;
+
+    /** Indice del siguiente bucle al que asignar una conexion */
+    private int nextLoop;
+
+    /** Indica si el motor esta en ejecucion */
+    private volatile boolean running;
+
+    /**
+     * Constructor del motor NIO.
+     *
+     * @param port puerto de escucha
+     * @param sslContext contexto SSL del servidor o null para texto plano
+     * @param protocolHandler procesador de protocolo
+     */
+    public NioServer(int port, SSLContext sslContext, ProtocolHandler protocolHandler) {
+        this.port = port;
+        this.sslContext = sslContext;
+        this.protocolHandler = protocolHandler;
+        this.overflowPolicy = OutboundQueue.OverflowPolicy.COALESCE;
+        this.running = false;
+    }
+
+    /**
+     * Establece la politica a aplicar cuando la cola de salida de un cliente se llena.
+     *
+     * @param overflowPolicy politica de desbordamiento
+     */
+    public void setOverflowPolicy(OutboundQueue.OverflowPolicy overflowPolicy) {
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    /**
+     * Establece el pool donde se ejecutan las operaciones criptograficas de la negociacion TLS.
+     *
+     * @param handshakeExecutor pool de negociacion acotado
+     */
+    public void setHandshakeExecutor(Executor handshakeExecutor) {
+        this.handshakeExecutor = handshakeExecutor;
+    }
+
+    /**
+     * Establece las metricas donde se registran las negociaciones TLS.
+     *
+     * @param handshakeStats metricas de negociacion
+     */
+    public void setHandshakeStats(HandshakeStats handshakeStats) {
+        this.handshakeStats = handshakeStats;
+    }
+
+    /**
+     * Establece el control de admision de conexiones.
+     *
+     * @param admissionControl control de admision
+     */
+    public void setAdmissionControl(AdmissionControl admissionControl) {
+        this.admissionControl = admissionControl;
+    }
+
+    /**
+     * Abre el puerto, arranca los bucles de eventos y acepta conexiones
+     * hasta que se invoque {@link #stop()}. Bloquea el hilo llamante.
+     *
+     * @throws IOException si no se puede abrir el puerto
+     */
+    public void start() throws IOException {
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(port), Constants.NIO_ACCEPT_BACKLOG);
+
+        workerPool = Executors.newFixedThreadPool(Constants.THREAD_POOL_SIZE);
+        eventLoops = new NioEventLoop[Constants.NIO_EVENT_LOOPS];
+        for (int i = 0; i < eventLoops.length; i++) {
+            eventLoops[i] = new NioEventLoop("nio-loop-" + i);
+            eventLoops[i].start();
+        }
+        running = true;
+
+        System.out.println("[NIO] Motor NIO activo con " + eventLoops.length + " bucles de eventos");
+
+        while (running) {
+            try {
+                SocketChannel channel = serverChannel.accept();
+                long acceptedAt = System.nanoTime();
+                channel.configureBlocking(false);
+                channel.socket().setTcpNoDelay(true);
+
+                SSLEngine sslEngine = sslContext != null ? SSLConfig.createServerEngine(sslContext) : null;
+                NioEventLoop eventLoop = eventLoops[nextLoop];
+                nextLoop = (nextLoop + 1) % eventLoops.length;
+
+                NioConnection connection = new NioConnection(channel, eventLoop, sslEngine, protocolHandler, workerPool);
+                connection.setOverflowPolicy(overflowPolicy);
+                connection.setHandshakeExecutor(handshakeExecutor);
+                connection.setHandshakeStats(handshakeStats);
+                if (admissionControl == null || admissionControl.tryAdmit()) {
+                    connection.setAdmissionControl(admissionControl, acceptedAt);
+                } else {
+                    // Se registra igualmente para poder enviarle SERVER_BUSY sin bloquear al aceptador
+                    connection.reject();
+                }
+                eventLoop.register(connection);
+            } catch (IOException e) {
+                if (running) {
+                    System.err.println("[NIO] Error aceptando conexion: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Detiene el motor: deja de aceptar, cierra las conexiones y el pool de trabajo.
+     */
+    public void stop() {
+        running = false;
+
+        try {
+            if (serverChannel != null) {
+                serverChannel.close();
+            }
+        } catch (IOException e) {
+            System.err.println("[NIO] Error cerrando canal: " + e.getMessage());
+        }
+
+        if (eventLoops != null) {
+            for (NioEventLoop eventLoop : eventLoops) {
+                eventLoop.stop();
+            }
+            for (NioEventLoop eventLoop : eventLoops) {
+                try {
+                    eventLoop.join(5000);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+
+        if (workerPool != null) {
+            workerPool.shutdown();
+            try {
+                if (!workerPool.awaitTermination(10, TimeUnit.SECONDS)) {
+                    workerPool.shutdownNow();
+                }
+            } catch (InterruptedException e) {
+                workerPool.shutdownNow();
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package server.persistence;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Latencia de confirmacion de las operaciones por durabilidad: desde que
+ * se pide la operacion hasta que su confirmacion esta lista para enviarse.
+ * Permite comparar lo que cuesta cada nivel con la carga real. La consulta
+ * la accion ADMIN_STATS.
+ *
+ * @author NetAuction Team
+ * @version 1.0
+ */
+public class AckStats {
+
+    /** Confirmaciones por durabilidad (indice = ordinal) */
+    private final AtomicLongArray counts;
+
+    /** Operaciones aplicadas cuya escritura se perdio, por durabilidad */
+    private final AtomicLongArray failures;
+
+    /** Suma de las latencias de confirmacion en nanosegundos */
+    private final AtomicLongArray totalNanos;
+
+    /** Latencia de confirmacion maxima observada en nanosegundos */
+    private final AtomicLongArray maxNanos;
+
+    /**
+     * Constructor de las metricas.
+     */
+    public AckStats() {
+        int levels = Durability.values().length;
+        this.counts = new AtomicLongArray(levels);
+        this.failures = new AtomicLongArray(levels);
+        this.totalNanos = new AtomicLongArray(levels);
+        this.maxNanos = new AtomicLongArray(levels);
+    }
+
+    /**
+     * Registra una confirmacion.
+     *
+     * @param durability durabilidad con la que se confirmo
+     * @param elapsedNanos tiempo desde que se pidio la operacion en nanosegundos
+     */
+    public void recordAck(Durability durability, long elapsedNanos) {
+        int i = durability.ordinal();
+        counts.incrementAndGet(i);
+        totalNanos.addAndGet(i, elapsedNanos);
+        maxNanos.accumulateAndGet(i, elapsedNanos, Math::max);
+    }
+
+    /**
+     * Registra una operacion aplicada cuya escritura se perdio; se confirma
+     * sin la durabilidad pedida.
+     *
+     * @param durability durabilidad pedida
+     */
+    public void recordFailure(Durability durability) {
+        failures.incrementAndGet(durability.ordinal());
+    }
+
+    /**
+     * @param durability durabilidad
+     * @return confirmaciones con esa durabilidad
+     */
+    public long getCount(Durability durability) {
+        return counts.get(durability.ordinal());
+    }
+
+    /**
+     * @param durability durabilidad
+     * @return operaciones con esa durabilidad cuya escritura se perdio
+     */
+    public long getFailedCount(Durability durability) {
+        return failures.get(durability.ordinal());
+    }
+
+    /**
+     * Obtiene la latencia media de confirmacion.
+     *
+     * @param durability durabilidad
+     * @return latencia media en milisegundos
+     */
+    public double getAverageLatencyMillis(Durability durability) {
+        long count = getCount(durability);
+        return count > 0 ? totalNanos.get(durability.ordinal()) / (double) count / 1_000_000.0 : 0.0;
+    }
+
+    /**
+     * Obtiene la latencia de confirmacion maxima observada.
+     *
+     * @param durability durabilidad
+     * @return latencia maxima en milisegundos
+     */
+    public double getMaxLatencyMillis(Durability durability) {
+        return maxNanos.get(durability.ordinal()) / 1_000_000.0;
+    }
+}
@@ -8,7 +8,11 @@ import server.model.Bid;
 import java.io.File;
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Clase de persistencia que maneja la conexión con SQLite.
@@ -26,6 +30,14 @@ public class Database {
     /** Conexión a la base de datos */
     private Connection connection;
 
+    /**
+     * Lock que serializa el acceso a la conexión compartida.
+     * El driver SQLite sincroniza internamente con monitores, lo que fija (pin)
+     * el hilo portador de un hilo virtual; con este lock los hilos esperan
+     * aparcados fuera del driver y las transacciones no se entrelazan.
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+
     /**
      * Constructor con ruta personalizada.
      *
@@ -73,7 +85,8 @@ public class Database {
     }
 
     /**
-     * Crea las tablas si no existen.
+     * Crea las tablas si no existen y convierte a centimos los importes de
+     * una base de datos anterior.
      */
     private void createTables() throws SQLException {
         String createUsers = """
@@ -87,14 +100,38 @@ public class Database {
             )
             """;
 
-        String createAuctions = """
-            CREATE TABLE IF NOT EXISTS auctions (
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute(createUsers);
+        }
+
+        // Antes de crearlas: una tabla que falte puede estar a medio renombrar
+        migrateMoneyColumns();
+
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute(auctionsTable("auctions"));
+            stmt.execute(bidsTable("bids"));
+
+            // Crear índices
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_auctions_status ON auctions(status)");
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_auctions_seller ON auctions(seller)");
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_bids_auction ON bids(auction_id)");
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_bids_bidder ON bids(bidder)");
+        }
+    }
+
+    /**
+     * Sentencia de creacion de la tabla de subastas. Los precios son
+     * centimos en una columna INTEGER.
+     */
+    private static String auctionsTable(String name) {
+        return """
+            CREATE TABLE IF NOT EXISTS %s (
                 id              TEXT PRIMARY KEY,
                 title           TEXT NOT NULL,
                 description     TEXT,
                 seller          TEXT NOT NULL,
-                start_price     REAL NOT NULL,
-                current_price   REAL NOT NULL,
+                start_price     INTEGER NOT NULL,
+                current_price   INTEGER NOT NULL,
                 current_winner  TEXT,
                 start_time      INTEGER NOT NULL,
                 end_time        INTEGER NOT NULL,
@@ -102,31 +139,170 @@ public class Database {
                 FOREIGN KEY (seller) REFERENCES users(username),
                 FOREIGN KEY (current_winner) REFERENCES users(username)
             )
-            """;
+            """.formatted(name);
+    }
 
-        String createBids = """
-            CREATE TABLE IF NOT EXISTS bids (
+    /**
+     * Sentencia de creacion de la tabla de pujas. Las cantidades son
+     * centimos en una columna INTEGER.
+     */
+    private static String bidsTable(String name) {
+        return """
+            CREATE TABLE IF NOT EXISTS %s (
                 id              INTEGER PRIMARY KEY AUTOINCREMENT,
                 auction_id      TEXT NOT NULL,
                 bidder          TEXT NOT NULL,
-                amount          REAL NOT NULL,
+                amount          INTEGER NOT NULL,
                 timestamp       INTEGER NOT NULL,
                 FOREIGN KEY (auction_id) REFERENCES auctions(id),
                 FOREIGN KEY (bidder) REFERENCES users(username)
             )
-            """;
+            """.formatted(name);
+    }
+
+    /**
+     * Convierte a centimos los importes de una base de datos creada cuando
+     * se guardaban como REAL en unidades. SQLite no permite cambiar el tipo
+     * de una columna, asi que cada tabla se copia a una nueva con columnas
+     * INTEGER ({@code <tabla>_cents}), se borra la antigua y la nueva toma su
+     * nombre. Todo va en una unica transaccion, con las claves foraneas
+     * desactivadas mientras dura (el borrado de la tabla antigua no debe
+     * comprobarlas ni propagarse). Los indices se vuelven a crear despues.
+     *
+     * <p>Es idempotente: cada tabla se migra solo si su importe sigue siendo
+     * REAL, y se retoma el estado que pudiera dejar una ejecucion
+     * interrumpida (una copia sobrante se descarta y se vuelve a hacer; una
+     * copia completa sin la tabla original solo falta renombrarla).</p>
+     */
+    private void migrateMoneyColumns() throws SQLException {
+        boolean auctions = needsMoneyMigration("auctions", "start_price");
+        boolean bids = needsMoneyMigration("bids", "amount");
+        if (!auctions && !bids) {
+            dropTableIfExists("auctions_cents");
+            dropTableIfExists("bids_cents");
+            return;
+        }
 
+        // foreign_keys no se puede cambiar dentro de una transaccion
+        boolean foreignKeys = pragmaEnabled("foreign_keys");
         try (Statement stmt = connection.createStatement()) {
-            stmt.execute(createUsers);
-            stmt.execute(createAuctions);
-            stmt.execute(createBids);
+            stmt.execute("PRAGMA foreign_keys = OFF");
+        }
+        connection.setAutoCommit(false);
+        try (Statement stmt = connection.createStatement()) {
+            if (auctions) {
+                migrateTable(stmt, "auctions", auctionsTable("auctions_cents"), """
+                    INSERT INTO auctions_cents (id, title, description, seller, start_price, current_price,
+                                                current_winner, start_time, end_time, status)
+                    SELECT id, title, description, seller,
+                           CAST(ROUND(start_price * 100) AS INTEGER), CAST(ROUND(current_price * 100) AS INTEGER),
+                           current_winner, start_time, end_time, status
+                    FROM auctions
+                    """);
+            }
+            if (bids) {
+                migrateTable(stmt, "bids", bidsTable("bids_cents"), """
+                    INSERT INTO bids_cents (id, auction_id, bidder, amount, timestamp)
+                    SELECT id, auction_id, bidder, CAST(ROUND(amount * 100) AS INTEGER), timestamp
+                    FROM bids
+                    """);
+            }
+            connection.commit();
+            System.out.println("[Database] Importes convertidos a centimos");
+        } catch (SQLException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(true);
+            if (foreignKeys) {
+                try (Statement stmt = connection.createStatement()) {
+                    stmt.execute("PRAGMA foreign_keys = ON");
+                }
+            }
+        }
+    }
 
-            // Crear índices
-            stmt.execute("CREATE INDEX IF NOT EXISTS idx_auctions_status ON auctions(status)");
-            stmt.execute("CREATE INDEX IF NOT EXISTS idx_auctions_seller ON auctions(seller)");
-            stmt.execute("CREATE INDEX IF NOT EXISTS idx_bids_auction ON bids(auction_id)");
-            stmt.execute("CREATE INDEX IF NOT EXISTS idx_bids_bidder ON bids(bidder)");
+    /**
+     * Indica si una tabla tiene pendiente la conversion a centimos: su
+     * importe sigue siendo REAL, o falta y queda su copia por renombrar.
+     */
+    private boolean needsMoneyMigration(String table, String column) throws SQLException {
+        String type = columnType(table, column);
+        if (type == null) {
+            return tableExists(table + "_cents");
+        }
+        return "REAL".equalsIgnoreCase(type);
+    }
+
+    /**
+     * Sustituye una tabla por su copia en centimos. Si la tabla ya no existe
+     * (ejecucion anterior interrumpida tras borrarla) la copia esta completa
+     * y solo se renombra.
+     *
+     * @param stmt sentencia de la transaccion de la migracion
+     * @param table tabla a convertir
+     * @param createCopy creacion de la copia ({@code <tabla>_cents})
+     * @param copyRows copia de las filas convirtiendo los importes
+     */
+    private void migrateTable(Statement stmt, String table, String createCopy, String copyRows)
+            throws SQLException {
+        String copy = table + "_cents";
+        if (tableExists(table)) {
+            stmt.execute("DROP TABLE IF EXISTS " + copy);
+            stmt.execute(createCopy);
+            stmt.execute(copyRows);
+            stmt.execute("DROP TABLE " + table);
         }
+        stmt.execute("ALTER TABLE " + copy + " RENAME TO " + table);
+    }
+
+    /**
+     * @return true si existe la tabla
+     */
+    private boolean tableExists(String table) throws SQLException {
+        try (PreparedStatement pstmt = connection.prepareStatement(
+                "SELECT 1 FROM sqlite_master WHERE type = 'table' AND name = ?")) {
+            pstmt.setString(1, table);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next();
+            }
+        }
+    }
+
+    /**
+     * Borra una tabla auxiliar si existe.
+     */
+    private void dropTableIfExists(String table) throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("DROP TABLE IF EXISTS " + table);
+        }
+    }
+
+    /**
+     * @return true si un PRAGMA booleano esta activado en la conexion
+     */
+    private boolean pragmaEnabled(String pragma) throws SQLException {
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("PRAGMA " + pragma)) {
+            return rs.next() && rs.getInt(1) != 0;
+        }
+    }
+
+    /**
+     * Obtiene el tipo declarado de una columna.
+     *
+     * @return tipo declarado, o null si la columna no existe
+     */
+    private String columnType(String table, String column) throws SQLException {
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("PRAGMA table_info(" + table + ")")) {
+            while (rs.next()) {
+                if (column.equals(rs.getString("name"))) {
+                    return rs.getString("type");
+                }
+            }
+        }
+        return null;
     }
 
     /**
@@ -160,23 +336,28 @@ public class Database {
      * @return true si se insertó correctamente
      */
     public boolean insertUser(User user) {
-        String sql = """
-            INSERT INTO users (username, password_hash, salt, email, blocked, created_at)
-            VALUES (?, ?, ?, ?, ?, ?)
-            """;
-
-        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
-            pstmt.setString(1, user.getUsername());
-            pstmt.setString(2, user.getPasswordHash());
-            pstmt.setString(3, user.getSalt());
-            pstmt.setString(4, user.getEmail());
-            pstmt.setInt(5, user.isBlocked() ? 1 : 0);
-            pstmt.setLong(6, user.getCreatedAt());
-
-            return pstmt.executeUpdate() > 0;
-        } catch (SQLException e) {
-            System.err.println("[Database] Error insertando usuario: " + e.getMessage());
-            return false;
+        lock.lock();
+        try {
+            String sql = """
+                INSERT INTO users (username, password_hash, salt, email, blocked, created_at)
+                VALUES (?, ?, ?, ?, ?, ?)
+                """;
+
+            try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+                pstmt.setString(1, user.getUsername());
+                pstmt.setString(2, user.getPasswordHash());
+                pstmt.setString(3, user.getSalt());
+                pstmt.setString(4, user.getEmail());
+                pstmt.setInt(5, user.isBlocked() ? 1 : 0);
+                pstmt.setLong(6, user.getCreatedAt());
+
+                return pstmt.executeUpdate() > 0;
+            } catch (SQLException e) {
+                System.err.println("[Database] Error insertando usuario: " + e.getMessage());
+                return false;
+            }
+        } finally {
+            lock.unlock();
         }
     }
 
@@ -187,22 +368,27 @@ public class Database {
      * @return true si se actualizó correctamente
      */
     public boolean updateUser(User user) {
-        String sql = """
-            UPDATE users SET password_hash = ?, salt = ?, email = ?, blocked = ?
-            WHERE username = ?
-            """;
-
-        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
-            pstmt.setString(1, user.getPasswordHash());
-            pstmt.setString(2, user.getSalt());
-            pstmt.setString(3, user.getEmail());
-            pstmt.setInt(4, user.isBlocked() ? 1 : 0);
-            pstmt.setString(5, user.getUsername());
-
-            return pstmt.executeUpdate() > 0;
-        } catch (SQLException e) {
-            System.err.println("[Database] Error actualizando usuario: " + e.getMessage());
-            return false;
+        lock.lock();
+        try {
+            String sql = """
+                UPDATE users SET password_hash = ?, salt = ?, email = ?, blocked = ?
+                WHERE username = ?
+                """;
+
+            try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+                pstmt.setString(1, user.getPasswordHash());
+                pstmt.setString(2, user.getSalt());
+                pstmt.setString(3, user.getEmail());
+                pstmt.setInt(4, user.isBlocked() ? 1 : 0);
+                pstmt.setString(5, user.getUsername());
+
+                return pstmt.executeUpdate() > 0;
+            } catch (SQLException e) {
+                System.err.println("[Database] Error actualizando usuario: " + e.getMessage());
+                return false;
+            }
+        } finally {
+            lock.unlock();
         }
     }
 
@@ -213,19 +399,24 @@ public class Database {
      * @return usuario o null si no existe
      */
     public User getUser(String username) {
-        String sql = "SELECT * FROM users WHERE username = ?";
+        lock.lock();
+        try {
+            String sql = "SELECT * FROM users WHERE username = ?";
 
-        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
-            pstmt.setString(1, username);
-            ResultSet rs = pstmt.executeQuery();
+            try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+                pstmt.setString(1, username);
+                ResultSet rs = pstmt.executeQuery();
 
-            if (rs.next()) {
-                return mapResultSetToUser(rs);
+                if (rs.next()) {
+                    return mapResultSetToUser(rs);
+                }
+            } catch (SQLException e) {
+                System.err.println("[Database] Error obteniendo usuario: " + e.getMessage());
             }
-        } catch (SQLException e) {
-            System.err.println("[Database] Error obteniendo usuario: " + e.getMessage());
+            return null;
+        } finally {
+            lock.unlock();
         }
-        return null;
     }
 
     /**
@@ -234,19 +425,24 @@ public class Database {
      * @return lista de usuarios
      */
     public List<User> getAllUsers() {
-        List<User> users = new ArrayList<>();
-        String sql = "SELECT * FROM users";
+        lock.lock();
+        try {
+            List<User> users = new ArrayList<>();
+            String sql = "SELECT * FROM users";
 
-        try (Statement stmt = connection.createStatement();
-             ResultSet rs = stmt.executeQuery(sql)) {
+            try (Statement stmt = connection.createStatement();
+                 ResultSet rs = stmt.executeQuery(sql)) {
 
-            while (rs.next()) {
-                users.add(mapResultSetToUser(rs));
+                while (rs.next()) {
+                    users.add(mapResultSetToUser(rs));
+                }
+            } catch (SQLException e) {
+                System.err.println("[Database] Error obteniendo usuarios: " + e.getMessage());
             }
-        } catch (SQLException e) {
-            System.err.println("[Database] Error obteniendo usuarios: " + e.getMessage());
+            return users;
+        } finally {
+            lock.unlock();
         }
-        return users;
     }
 
     /**
@@ -256,14 +452,19 @@ public class Database {
      * @return true si existe
      */
     public boolean userExists(String username) {
-        String sql = "SELECT 1 FROM users WHERE username = ?";
+        lock.lock();
+        try {
+            String sql = "SELECT 1 FROM users WHERE username = ?";
 
-        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
-            pstmt.setString(1, username);
-            ResultSet rs = pstmt.executeQuery();
-            return rs.next();
-        } catch (SQLException e) {
-            return false;
+            try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+                pstmt.setString(1, username);
+                ResultSet rs = pstmt.executeQuery();
+                return rs.next();
+            } catch (SQLException e) {
+                return false;
+            }
+        } finally {
+            lock.unlock();
         }
     }
 
@@ -290,28 +491,33 @@ public class Database {
      * @return true si se insertó correctamente
      */
     public boolean insertAuction(Auction auction) {
-        String sql = """
-            INSERT INTO auctions (id, title, description, seller, start_price,
-                                 current_price, current_winner, start_time, end_time, status)
-            VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)
-            """;
-
-        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
-            pstmt.setString(1, auction.getId());
-            pstmt.setString(2, auction.getTitle());
-            pstmt.setString(3, auction.getDescription());
-            pstmt.setString(4, auction.getSeller());
-            pstmt.setDouble(5, auction.getStartPrice());
-            pstmt.setDouble(6, auction.getCurrentPrice());
-            pstmt.setString(7, auction.getCurrentWinner());
-            pstmt.setLong(8, auction.getStartTime());
-            pstmt.setLong(9, auction.getEndTime());
-            pstmt.setString(10, auction.getStatus());
-
-            return pstmt.executeUpdate() > 0;
-        } catch (SQLException e) {
-            System.err.println("[Database] Error insertando subasta: " + e.getMessage());
-            return false;
+        lock.lock();
+        try {
+            String sql = """
+                INSERT INTO auctions (id, title, description, seller, start_price,
+                                     current_price, current_winner, start_time, end_time, status)
+                VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)
+                """;
+
+            try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+                pstmt.setString(1, auction.getId());
+                pstmt.setString(2, auction.getTitle());
+                pstmt.setString(3, auction.getDescription());
+                pstmt.setString(4, auction.getSeller());
+                pstmt.setLong(5, auction.getStartPrice());
+                pstmt.setLong(6, auction.getCurrentPrice());
+                pstmt.setString(7, auction.getCurrentWinner());
+                pstmt.setLong(8, auction.getStartTime());
+                pstmt.setLong(9, auction.getEndTime());
+                pstmt.setString(10, auction.getStatus());
+
+                return pstmt.executeUpdate() > 0;
+            } catch (SQLException e) {
+                System.err.println("[Database] Error insertando subasta: " + e.getMessage());
+                return false;
+            }
+        } finally {
+            lock.unlock();
         }
     }
 
@@ -322,25 +528,118 @@ public class Database {
      * @return true si se actualizó correctamente
      */
     public boolean updateAuction(Auction auction) {
-        String sql = """
+        lock.lock();
+        try {
+            String sql = """
+                UPDATE auctions SET title = ?, description = ?, current_price = ?,
+                                   current_winner = ?, status = ?
+                WHERE id = ?
+                """;
+
+            try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+                pstmt.setString(1, auction.getTitle());
+                pstmt.setString(2, auction.getDescription());
+                pstmt.setLong(3, auction.getCurrentPrice());
+                pstmt.setString(4, auction.getCurrentWinner());
+                pstmt.setString(5, auction.getStatus());
+                pstmt.setString(6, auction.getId());
+
+                return pstmt.executeUpdate() > 0;
+            } catch (SQLException e) {
+                System.err.println("[Database] Error actualizando subasta: " + e.getMessage());
+                return false;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Guarda un lote de la escritura diferida en una unica transaccion: las
+     * subastas nuevas, las pujas y las actualizaciones, cada grupo con una
+     * sentencia en batch. Cada subasta se guarda con la instantanea que la
+     * acompana (la de su ultima escritura en el lote), no con su estado
+     * actual, que puede ir por delante de las pujas del lote. Una
+     * actualizacion de una subasta que no esta en la tabla hace fallar la
+     * transaccion.
+     *
+     * @param inserts subastas nuevas con su instantanea
+     * @param bids pujas
+     * @param updates subastas cuyo estado ha cambiado con su instantanea
+     * @return true si se confirmo la transaccion
+     */
+    public boolean writeBatch(Map<Auction, Auction.Snapshot> inserts, List<Bid> bids,
+                              Map<Auction, Auction.Snapshot> updates) {
+        String insertAuctionSql = """
+            INSERT INTO auctions (id, title, description, seller, start_price,
+                                 current_price, current_winner, start_time, end_time, status)
+            VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)
+            """;
+        String insertBidSql = "INSERT INTO bids (auction_id, bidder, amount, timestamp) VALUES (?, ?, ?, ?)";
+        String updateAuctionSql = """
             UPDATE auctions SET title = ?, description = ?, current_price = ?,
                                current_winner = ?, status = ?
             WHERE id = ?
             """;
 
-        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
-            pstmt.setString(1, auction.getTitle());
-            pstmt.setString(2, auction.getDescription());
-            pstmt.setDouble(3, auction.getCurrentPrice());
-            pstmt.setString(4, auction.getCurrentWinner());
-            pstmt.setString(5, auction.getStatus());
-            pstmt.setString(6, auction.getId());
-
-            return pstmt.executeUpdate() > 0;
-        } catch (SQLException e) {
-            System.err.println("[Database] Error actualizando subasta: " + e.getMessage());
-            return false;
-        }
+        return executeTransaction(() -> {
+            if (!inserts.isEmpty()) {
+                try (PreparedStatement pstmt = connection.prepareStatement(insertAuctionSql)) {
+                    for (Map.Entry<Auction, Auction.Snapshot> entry : inserts.entrySet()) {
+                        Auction auction = entry.getKey();
+                        Auction.Snapshot snapshot = entry.getValue();
+                        pstmt.setString(1, auction.getId());
+                        pstmt.setString(2, auction.getTitle());
+                        pstmt.setString(3, auction.getDescription());
+                        pstmt.setString(4, auction.getSeller());
+                        pstmt.setLong(5, auction.getStartPrice());
+                        pstmt.setLong(6, snapshot.getCurrentPrice());
+                        pstmt.setString(7, snapshot.getCurrentWinner());
+                        pstmt.setLong(8, auction.getStartTime());
+                        pstmt.setLong(9, auction.getEndTime());
+                        pstmt.setString(10, snapshot.getStatus());
+                        pstmt.addBatch();
+                    }
+                    pstmt.executeBatch();
+                }
+            }
+            if (!bids.isEmpty()) {
+                try (PreparedStatement pstmt = connection.prepareStatement(insertBidSql)) {
+                    for (Bid bid : bids) {
+                        pstmt.setString(1, bid.getAuctionId());
+                        pstmt.setString(2, bid.getBidder());
+                        pstmt.setLong(3, bid.getAmount());
+                        pstmt.setLong(4, bid.getTimestamp());
+                        pstmt.addBatch();
+                    }
+                    pstmt.executeBatch();
+                }
+            }
+            if (!updates.isEmpty()) {
+                try (PreparedStatement pstmt = connection.prepareStatement(updateAuctionSql)) {
+                    List<String> ids = new ArrayList<>(updates.size());
+                    for (Map.Entry<Auction, Auction.Snapshot> entry : updates.entrySet()) {
+                        Auction auction = entry.getKey();
+                        Auction.Snapshot snapshot = entry.getValue();
+                        ids.add(auction.getId());
+                        pstmt.setString(1, auction.getTitle());
+                        pstmt.setString(2, auction.getDescription());
+                        pstmt.setLong(3, snapshot.getCurrentPrice());
+                        pstmt.setString(4, snapshot.getCurrentWinner());
+                        pstmt.setString(5, snapshot.getStatus());
+                        pstmt.setString(6, auction.getId());
+                        pstmt.addBatch();
+                    }
+                    int[] counts = pstmt.executeBatch();
+                    for (int i = 0; i < counts.length; i++) {
+                        if (counts[i] == 0) {
+                            // Su alta no se guardo: el estado no tiene fila que actualizar
+                            throw new SQLException("Subasta inexistente: " + ids.get(i));
+                        }
+                    }
+                }
+            }
+        });
     }
 
     /**
@@ -350,22 +649,27 @@ public class Database {
      * @return subasta o null si no existe
      */
     public Auction getAuction(String auctionId) {
-        String sql = "SELECT * FROM auctions WHERE id = ?";
+        lock.lock();
+        try {
+            String sql = "SELECT * FROM auctions WHERE id = ?";
 
-        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
-            pstmt.setString(1, auctionId);
-            ResultSet rs = pstmt.executeQuery();
+            try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+                pstmt.setString(1, auctionId);
+                ResultSet rs = pstmt.executeQuery();
 
-            if (rs.next()) {
-                Auction auction = mapResultSetToAuction(rs);
-                // Cargar pujas
-                auction.setBids(getBidsByAuction(auctionId));
-                return auction;
+                if (rs.next()) {
+                    Auction auction = mapResultSetToAuction(rs);
+                    // Cargar pujas
+                    loadRecentBids(auction);
+                    return auction;
+                }
+            } catch (SQLException e) {
+                System.err.println("[Database] Error obteniendo subasta: " + e.getMessage());
             }
-        } catch (SQLException e) {
-            System.err.println("[Database] Error obteniendo subasta: " + e.getMessage());
+            return null;
+        } finally {
+            lock.unlock();
         }
-        return null;
     }
 
     /**
@@ -374,21 +678,26 @@ public class Database {
      * @return lista de subastas
      */
     public List<Auction> getAllAuctions() {
-        List<Auction> auctions = new ArrayList<>();
-        String sql = "SELECT * FROM auctions";
+        lock.lock();
+        try {
+            List<Auction> auctions = new ArrayList<>();
+            String sql = "SELECT * FROM auctions";
 
-        try (Statement stmt = connection.createStatement();
-             ResultSet rs = stmt.executeQuery(sql)) {
+            try (Statement stmt = connection.createStatement();
+                 ResultSet rs = stmt.executeQuery(sql)) {
 
-            while (rs.next()) {
-                Auction auction = mapResultSetToAuction(rs);
-                auction.setBids(getBidsByAuction(auction.getId()));
-                auctions.add(auction);
+                while (rs.next()) {
+                    Auction auction = mapResultSetToAuction(rs);
+                    loadRecentBids(auction);
+                    auctions.add(auction);
+                }
+            } catch (SQLException e) {
+                System.err.println("[Database] Error obteniendo subastas: " + e.getMessage());
             }
-        } catch (SQLException e) {
-            System.err.println("[Database] Error obteniendo subastas: " + e.getMessage());
+            return auctions;
+        } finally {
+            lock.unlock();
         }
-        return auctions;
     }
 
     /**
@@ -398,22 +707,27 @@ public class Database {
      * @return lista de subastas
      */
     public List<Auction> getAuctionsByStatus(String status) {
-        List<Auction> auctions = new ArrayList<>();
-        String sql = "SELECT * FROM auctions WHERE status = ?";
+        lock.lock();
+        try {
+            List<Auction> auctions = new ArrayList<>();
+            String sql = "SELECT * FROM auctions WHERE status = ?";
 
-        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
-            pstmt.setString(1, status);
-            ResultSet rs = pstmt.executeQuery();
+            try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+                pstmt.setString(1, status);
+                ResultSet rs = pstmt.executeQuery();
 
-            while (rs.next()) {
-                Auction auction = mapResultSetToAuction(rs);
-                auction.setBids(getBidsByAuction(auction.getId()));
-                auctions.add(auction);
+                while (rs.next()) {
+                    Auction auction = mapResultSetToAuction(rs);
+                    loadRecentBids(auction);
+                    auctions.add(auction);
+                }
+            } catch (SQLException e) {
+                System.err.println("[Database] Error obteniendo subastas por estado: " + e.getMessage());
             }
-        } catch (SQLException e) {
-            System.err.println("[Database] Error obteniendo subastas por estado: " + e.getMessage());
+            return auctions;
+        } finally {
+            lock.unlock();
         }
-        return auctions;
     }
 
     /**
@@ -425,13 +739,12 @@ public class Database {
         auction.setTitle(rs.getString("title"));
         auction.setDescription(rs.getString("description"));
         auction.setSeller(rs.getString("seller"));
-        auction.setStartPrice(rs.getDouble("start_price"));
-        auction.setCurrentPrice(rs.getDouble("current_price"));
+        auction.setStartPrice(rs.getLong("start_price"));
+        auction.setCurrentPrice(rs.getLong("current_price"));
         auction.setCurrentWinner(rs.getString("current_winner"));
         auction.setStartTime(rs.getLong("start_time"));
         auction.setEndTime(rs.getLong("end_time"));
         auction.setStatus(rs.getString("status"));
-        auction.initializeLock();
         return auction;
     }
 
@@ -444,26 +757,31 @@ public class Database {
      * @return true si se insertó correctamente
      */
     public boolean insertBid(Bid bid) {
-        String sql = "INSERT INTO bids (auction_id, bidder, amount, timestamp) VALUES (?, ?, ?, ?)";
-
-        try (PreparedStatement pstmt = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
-            pstmt.setString(1, bid.getAuctionId());
-            pstmt.setString(2, bid.getBidder());
-            pstmt.setDouble(3, bid.getAmount());
-            pstmt.setLong(4, bid.getTimestamp());
-
-            int affected = pstmt.executeUpdate();
-            if (affected > 0) {
-                ResultSet generatedKeys = pstmt.getGeneratedKeys();
-                if (generatedKeys.next()) {
-                    bid.setId(generatedKeys.getLong(1));
+        lock.lock();
+        try {
+            String sql = "INSERT INTO bids (auction_id, bidder, amount, timestamp) VALUES (?, ?, ?, ?)";
+
+            try (PreparedStatement pstmt = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+                pstmt.setString(1, bid.getAuctionId());
+                pstmt.setString(2, bid.getBidder());
+                pstmt.setLong(3, bid.getAmount());
+                pstmt.setLong(4, bid.getTimestamp());
+
+                int affected = pstmt.executeUpdate();
+                if (affected > 0) {
+                    ResultSet generatedKeys = pstmt.getGeneratedKeys();
+                    if (generatedKeys.next()) {
+                        bid.setId(generatedKeys.getLong(1));
+                    }
+                    return true;
                 }
-                return true;
+            } catch (SQLException e) {
+                System.err.println("[Database] Error insertando puja: " + e.getMessage());
             }
-        } catch (SQLException e) {
-            System.err.println("[Database] Error insertando puja: " + e.getMessage());
+            return false;
+        } finally {
+            lock.unlock();
         }
-        return false;
     }
 
     /**
@@ -473,20 +791,81 @@ public class Database {
      * @return lista de pujas ordenadas por timestamp
      */
     public List<Bid> getBidsByAuction(String auctionId) {
-        List<Bid> bids = new ArrayList<>();
-        String sql = "SELECT * FROM bids WHERE auction_id = ? ORDER BY timestamp ASC";
+        lock.lock();
+        try {
+            List<Bid> bids = new ArrayList<>();
+            String sql = "SELECT * FROM bids WHERE auction_id = ? ORDER BY timestamp ASC";
 
-        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
-            pstmt.setString(1, auctionId);
+            try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+                pstmt.setString(1, auctionId);
+                ResultSet rs = pstmt.executeQuery();
+
+                while (rs.next()) {
+                    bids.add(mapResultSetToBid(rs));
+                }
+            } catch (SQLException e) {
+                System.err.println("[Database] Error obteniendo pujas: " + e.getMessage());
+            }
+            return bids;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Carga en una subasta su numero de pujas y solo las ultimas, las que
+     * la subasta conserva en memoria.
+     */
+    private void loadRecentBids(Auction auction) throws SQLException {
+        int count = 0;
+        try (PreparedStatement pstmt = connection.prepareStatement(
+                "SELECT COUNT(*) FROM bids WHERE auction_id = ?")) {
+            pstmt.setString(1, auction.getId());
             ResultSet rs = pstmt.executeQuery();
+            if (rs.next()) {
+                count = rs.getInt(1);
+            }
+        }
 
+        List<Bid> bids = new ArrayList<>();
+        String sql = "SELECT * FROM bids WHERE auction_id = ? ORDER BY timestamp DESC, id DESC LIMIT ?";
+        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+            pstmt.setString(1, auction.getId());
+            pstmt.setInt(2, Constants.BID_HISTORY_WINDOW + Constants.BID_HISTORY_CHUNK_SIZE);
+            ResultSet rs = pstmt.executeQuery();
             while (rs.next()) {
                 bids.add(mapResultSetToBid(rs));
             }
-        } catch (SQLException e) {
-            System.err.println("[Database] Error obteniendo pujas: " + e.getMessage());
         }
-        return bids;
+        Collections.reverse(bids);
+        auction.setBids(bids, count);
+    }
+
+    /**
+     * Obtiene los pujadores distintos de cada subasta.
+     *
+     * @return usernames de los pujadores por ID de subasta
+     */
+    public Map<String, List<String>> getBiddersByAuction() {
+        lock.lock();
+        try {
+            Map<String, List<String>> bidders = new HashMap<>();
+            String sql = "SELECT DISTINCT auction_id, bidder FROM bids";
+
+            try (Statement stmt = connection.createStatement();
+                 ResultSet rs = stmt.executeQuery(sql)) {
+
+                while (rs.next()) {
+                    bidders.computeIfAbsent(rs.getString("auction_id"), id -> new ArrayList<>())
+                        .add(rs.getString("bidder"));
+                }
+            } catch (SQLException e) {
+                System.err.println("[Database] Error obteniendo pujadores: " + e.getMessage());
+            }
+            return bidders;
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
@@ -496,20 +875,25 @@ public class Database {
      * @return lista de pujas
      */
     public List<Bid> getBidsByBidder(String bidder) {
-        List<Bid> bids = new ArrayList<>();
-        String sql = "SELECT * FROM bids WHERE bidder = ? ORDER BY timestamp DESC";
+        lock.lock();
+        try {
+            List<Bid> bids = new ArrayList<>();
+            String sql = "SELECT * FROM bids WHERE bidder = ? ORDER BY timestamp DESC";
 
-        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
-            pstmt.setString(1, bidder);
-            ResultSet rs = pstmt.executeQuery();
+            try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+                pstmt.setString(1, bidder);
+                ResultSet rs = pstmt.executeQuery();
 
-            while (rs.next()) {
-                bids.add(mapResultSetToBid(rs));
+                while (rs.next()) {
+                    bids.add(mapResultSetToBid(rs));
+                }
+            } catch (SQLException e) {
+                System.err.println("[Database] Error obteniendo pujas por usuario: " + e.getMessage());
             }
-        } catch (SQLException e) {
-            System.err.println("[Database] Error obteniendo pujas por usuario: " + e.getMessage());
+            return bids;
+        } finally {
+            lock.unlock();
         }
-        return bids;
     }
 
     /**
@@ -520,7 +904,7 @@ public class Database {
         bid.setId(rs.getLong("id"));
         bid.setAuctionId(rs.getString("auction_id"));
         bid.setBidder(rs.getString("bidder"));
-        bid.setAmount(rs.getDouble("amount"));
+        bid.setAmount(rs.getLong("amount"));
         bid.setTimestamp(rs.getLong("timestamp"));
         return bid;
     }
@@ -531,13 +915,18 @@ public class Database {
      * Cierra la conexión a la base de datos.
      */
     public void close() {
+        lock.lock();
         try {
-            if (connection != null && !connection.isClosed()) {
-                connection.close();
-                System.out.println("[Database] Conexión cerrada");
+            try {
+                if (connection != null && !connection.isClosed()) {
+                    connection.close();
+                    System.out.println("[Database] Conexión cerrada");
+                }
+            } catch (SQLException e) {
+                System.err.println("[Database] Error cerrando conexión: " + e.getMessage());
             }
-        } catch (SQLException e) {
-            System.err.println("[Database] Error cerrando conexión: " + e.getMessage());
+        } finally {
+            lock.unlock();
         }
     }
 
@@ -548,25 +937,30 @@ public class Database {
      * @return true si la transacción fue exitosa
      */
     public boolean executeTransaction(TransactionOperation transaction) {
+        lock.lock();
         try {
-            connection.setAutoCommit(false);
-            transaction.execute();
-            connection.commit();
-            return true;
-        } catch (Exception e) {
             try {
-                connection.rollback();
-            } catch (SQLException rollbackEx) {
-                System.err.println("[Database] Error en rollback: " + rollbackEx.getMessage());
+                connection.setAutoCommit(false);
+                transaction.execute();
+                connection.commit();
+                return true;
+            } catch (Exception e) {
+                try {
+                    connection.rollback();
+                } catch (SQLException rollbackEx) {
+                    System.err.println("[Database] Error en rollback: " + rollbackEx.getMessage());
+                }
+                System.err.println("[Database] Error en transacción: " + e.getMessage());
+                return false;
+            } finally {
+                try {
+                    connection.setAutoCommit(true);
+                } catch (SQLException e) {
+                    System.err.println("[Database] Error restaurando autocommit: " + e.getMessage());
+                }
             }
-            System.err.println("[Database] Error en transacción: " + e.getMessage());
-            return false;
         } finally {
-            try {
-                connection.setAutoCommit(true);
-            } catch (SQLException e) {
-                System.err.println("[Database] Error restaurando autocommit: " + e.getMessage());
-            }
+            lock.unlock();
         }
     }
 
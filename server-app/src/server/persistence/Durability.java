@@ -0,0 +1,57 @@
+package server.persistence;
+
+import common.Constants;
+
+/**
+ * Momento en que se confirma al cliente una operacion que modifica una
+ * subasta (puja, cierre o cancelacion). La operacion siempre se aplica en
+ * memoria y se guarda en la base de datos con la escritura diferida; la
+ * durabilidad solo decide cuanto de ese camino se espera antes de responder.
+ *
+ * <p>La base de datos usa el modo de sincronizacion por defecto de SQLite
+ * (FULL): cada transaccion de la escritura diferida hace fsync al
+ * confirmarse, de modo que {@link #DURABLE} espera a que la operacion este
+ * en disco. Las operaciones que esperan al mismo lote comparten ese fsync.</p>
+ *
+ * @author NetAuction Team
+ * @version 1.0
+ */
+public enum Durability {
+    /** En cuanto se aplica en memoria; una caida puede perderla */
+    MEMORY(Constants.DURABILITY_MEMORY),
+    /** Cuando su escritura esta en la cola; espera si la cola esta llena */
+    QUEUED(Constants.DURABILITY_QUEUED),
+    /** Cuando la transaccion que la guarda se ha confirmado en disco */
+    DURABLE(Constants.DURABILITY_DURABLE);
+
+    private final String name;
+
+    Durability(String name) {
+        this.name = name;
+    }
+
+    /**
+     * @return nombre de la durabilidad en el protocolo y en la linea de comandos
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Obtiene la durabilidad por su nombre.
+     *
+     * @param name nombre de la durabilidad
+     * @return durabilidad, o null si el nombre no es valido
+     */
+    public static Durability fromName(String name) {
+        if (name == null) {
+            return null;
+        }
+        for (Durability durability : values()) {
+            if (durability.name.equalsIgnoreCase(name.trim())) {
+                return durability;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,365 @@
+package server.persistence;
+
+import server.model.Auction;
+import server.model.Bid;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Escritura diferida de subastas y pujas en la base de datos.
+ * Las particiones encolan las escrituras al confirmar cada operacion y
+ * siguen con la siguiente; un unico hilo vacia la cola y guarda cada lote
+ * en una transaccion con sentencias en batch (un solo commit, y un solo
+ * fsync, por lote en lugar de dos por puja).
+ *
+ * <p>Cada escritura de una subasta lleva la instantanea de su estado al
+ * encolarla, de modo que una fila de subastas nunca va por delante de las
+ * pujas guardadas con ella o antes. Dentro de un lote las actualizaciones
+ * de una misma subasta se reducen a una, la ultima encolada; una subasta
+ * creada en el mismo lote se inserta directamente con ella.</p>
+ *
+ * <p>Si la transaccion de un lote falla (base de datos ocupada, disco
+ * lleno) se reintenta el mismo lote con esperas crecientes antes de tomar
+ * mas escrituras, de modo que el orden se mantiene y los fallos
+ * transitorios no pierden nada. Solo si fallan todos los intentos se
+ * descarta el lote: sus escrituras fallan y se registran en el log.</p>
+ *
+ * <p>La cola es acotada: si la base de datos no da abasto, encolar bloquea
+ * a la particion hasta que haya hueco. Al cerrar se escriben las
+ * escrituras pendientes, de modo que un apagado ordenado no pierde nada y
+ * una caida pierde como mucho lo que hubiera en la cola. Una escritura
+ * encolada cuando el hilo escritor ya ha terminado falla en lugar de
+ * quedarse sin completar.</p>
+ *
+ * @author NetAuction Team
+ * @version 1.0
+ */
+public class WriteBehindQueue {
+
+    /** Base de datos destino */
+    private final Database database;
+
+    /** Escrituras pendientes */
+    private final BlockingQueue<Write> queue;
+
+    /** Escrituras maximas por transaccion */
+    private final int maxBatch;
+
+    /** Intentos de guardar un lote antes de descartarlo */
+    private final int retryAttempts;
+
+    /** Espera (ms) antes del primer reintento; se duplica en cada uno */
+    private final long retryBackoffMs;
+
+    /** Hilo escritor */
+    private final Thread thread;
+
+    /** true tras {@link #close(long)}: no se aceptan mas escrituras */
+    private volatile boolean closed;
+
+    /** Transacciones confirmadas */
+    private final AtomicLong batchCount;
+
+    /** Escrituras guardadas */
+    private final AtomicLong writtenCount;
+
+    /** Actualizaciones absorbidas por otra de la misma subasta en el lote */
+    private final AtomicLong collapsedCount;
+
+    /** Escrituras de lotes que fallaron */
+    private final AtomicLong failedCount;
+
+    /** Reintentos de lotes cuya transaccion fallo */
+    private final AtomicLong retryCount;
+
+    /**
+     * Constructor de la cola. El hilo escritor se arranca con {@link #start()}.
+     *
+     * @param database base de datos destino
+     * @param capacity escrituras pendientes como maximo
+     * @param maxBatch escrituras maximas por transaccion
+     * @param retryAttempts intentos de guardar un lote antes de descartarlo
+     * @param retryBackoffMs espera (ms) antes del primer reintento, que se duplica en cada uno
+     */
+    public WriteBehindQueue(Database database, int capacity, int maxBatch,
+                            int retryAttempts, long retryBackoffMs) {
+        this.database = database;
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, capacity));
+        this.maxBatch = Math.max(1, maxBatch);
+        this.retryAttempts = Math.max(1, retryAttempts);
+        this.retryBackoffMs = Math.max(0, retryBackoffMs);
+        this.thread = new Thread(this::run, "db-writer");
+        this.thread.setDaemon(true);
+        this.batchCount = new AtomicLong();
+        this.writtenCount = new AtomicLong();
+        this.collapsedCount = new AtomicLong();
+        this.failedCount = new AtomicLong();
+        this.retryCount = new AtomicLong();
+    }
+
+    /**
+     * Arranca el hilo escritor.
+     */
+    public void start() {
+        thread.start();
+    }
+
+    /**
+     * Encola la insercion de una subasta nueva con su estado actual.
+     *
+     * @param auction subasta
+     * @return completado cuando la transaccion que la guarda se confirma
+     */
+    public CompletableFuture<Void> insertAuction(Auction auction) {
+        return enqueue(new Write(Write.INSERT_AUCTION, auction, auction.getSnapshot(), null));
+    }
+
+    /**
+     * Encola la insercion de una puja.
+     *
+     * @param bid puja
+     * @return completado cuando la transaccion que la guarda se confirma
+     */
+    public CompletableFuture<Void> insertBid(Bid bid) {
+        return enqueue(new Write(Write.INSERT_BID, null, null, bid));
+    }
+
+    /**
+     * Encola la actualizacion del estado de una subasta. Se guarda su estado
+     * actual: se invoca en el hilo de su particion tras aplicar el cambio.
+     *
+     * @param auction subasta
+     * @return completado cuando la transaccion que la guarda se confirma
+     */
+    public CompletableFuture<Void> updateAuction(Auction auction) {
+        return enqueue(new Write(Write.UPDATE_AUCTION, auction, auction.getSnapshot(), null));
+    }
+
+    /**
+     * @return escrituras pendientes
+     */
+    public int getQueuedCount() {
+        return queue.size();
+    }
+
+    /**
+     * @return transacciones confirmadas
+     */
+    public long getBatchCount() {
+        return batchCount.get();
+    }
+
+    /**
+     * @return escrituras guardadas
+     */
+    public long getWrittenCount() {
+        return writtenCount.get();
+    }
+
+    /**
+     * @return actualizaciones absorbidas por otra de la misma subasta
+     */
+    public long getCollapsedCount() {
+        return collapsedCount.get();
+    }
+
+    /**
+     * @return escrituras de lotes que fallaron
+     */
+    public long getFailedCount() {
+        return failedCount.get();
+    }
+
+    /**
+     * @return reintentos de lotes cuya transaccion fallo
+     */
+    public long getRetryCount() {
+        return retryCount.get();
+    }
+
+    /**
+     * Deja de aceptar escrituras y espera a que el hilo escritor guarde las
+     * pendientes. Las que siguen en la cola al terminar la espera (llegadas
+     * despues de que el hilo vaciara la cola, o pendientes si se agoto el
+     * plazo) fallan y se registran en el log.
+     *
+     * @param timeoutMs espera maxima en milisegundos
+     * @return true si se guardaron todas dentro del plazo
+     */
+    public boolean close(long timeoutMs) {
+        closed = true;
+        thread.interrupt();
+        try {
+            thread.join(timeoutMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        List<Write> leftover = new ArrayList<>();
+        queue.drainTo(leftover);
+        if (!leftover.isEmpty()) {
+            fail(leftover, new IllegalStateException("Escritura diferida cerrada"), "sin guardar al cerrar");
+        }
+        return !thread.isAlive() && leftover.isEmpty();
+    }
+
+    private CompletableFuture<Void> enqueue(Write write) {
+        if (closed) {
+            return CompletableFuture.failedFuture(
+                new IllegalStateException("Escritura diferida cerrada"));
+        }
+        try {
+            queue.put(write);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            write.done.completeExceptionally(e);
+            return write.done;
+        }
+        // Cerrada mientras se encolaba: si nadie la ha tomado ya no la tomara nadie
+        if (closed && queue.remove(write)) {
+            write.done.completeExceptionally(new IllegalStateException("Escritura diferida cerrada"));
+        }
+        return write.done;
+    }
+
+    /**
+     * Bucle del hilo: espera la primera escritura, recoge las que ya
+     * esten encoladas hasta completar un lote y lo guarda. Al cerrar vacia
+     * la cola antes de terminar.
+     */
+    private void run() {
+        List<Write> batch = new ArrayList<>(maxBatch);
+        while (true) {
+            try {
+                Write first = closed ? queue.poll() : queue.poll(1, TimeUnit.SECONDS);
+                if (first == null) {
+                    if (closed) {
+                        return;
+                    }
+                    continue;
+                }
+                batch.add(first);
+            } catch (InterruptedException e) {
+                // close(): se sigue vaciando la cola sin esperar
+                continue;
+            }
+            queue.drainTo(batch, maxBatch - 1);
+            commit(batch);
+            batch.clear();
+        }
+    }
+
+    /**
+     * Guarda un lote en una transaccion, reintentandolo si falla, y completa
+     * sus escrituras.
+     */
+    private void commit(List<Write> batch) {
+        Map<Auction, Auction.Snapshot> inserts = new LinkedHashMap<>();
+        Map<Auction, Auction.Snapshot> updates = new LinkedHashMap<>();
+        List<Bid> bids = new ArrayList<>();
+        int collapsed = 0;
+        for (Write write : batch) {
+            switch (write.kind) {
+                case Write.INSERT_AUCTION:
+                    inserts.put(write.auction, write.snapshot);
+                    break;
+                case Write.INSERT_BID:
+                    bids.add(write.bid);
+                    break;
+                default:
+                    // La ultima instantanea encolada sustituye a las anteriores
+                    if (inserts.containsKey(write.auction)) {
+                        inserts.put(write.auction, write.snapshot);
+                        collapsed++;
+                    } else if (updates.put(write.auction, write.snapshot) != null) {
+                        collapsed++;
+                    }
+            }
+        }
+
+        for (int attempt = 1; ; attempt++) {
+            if (database.writeBatch(inserts, bids, updates)) {
+                batchCount.incrementAndGet();
+                writtenCount.addAndGet(batch.size());
+                collapsedCount.addAndGet(collapsed);
+                for (Write write : batch) {
+                    write.done.complete(null);
+                }
+                return;
+            }
+            if (attempt == retryAttempts) {
+                fail(batch, new IllegalStateException("Error guardando lote en la BD"),
+                    "descartadas tras " + attempt + " intentos");
+                return;
+            }
+            retryCount.incrementAndGet();
+            backoff(retryBackoffMs << (attempt - 1));
+        }
+    }
+
+    /**
+     * Espera antes de reintentar un lote. Si la espera se interrumpe (cierre)
+     * se reintenta sin esperar mas.
+     */
+    private static void backoff(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            // close(): el lote se sigue intentando guardar
+        }
+    }
+
+    /**
+     * Hace fallar unas escrituras que no se van a guardar y registra en el
+     * log que subastas y pujas se han perdido.
+     */
+    private void fail(List<Write> writes, IllegalStateException error, String reason) {
+        failedCount.addAndGet(writes.size());
+        StringBuilder lost = new StringBuilder();
+        for (Write write : writes) {
+            lost.append(lost.length() == 0 ? "" : ", ");
+            if (write.kind == Write.INSERT_BID) {
+                Bid bid = write.bid;
+                lost.append("puja ").append(bid.getAuctionId()).append('/').append(bid.getBidder())
+                    .append('/').append(bid.getAmount()).append('@').append(bid.getTimestamp());
+            } else {
+                lost.append(write.kind == Write.INSERT_AUCTION ? "alta " : "estado ")
+                    .append(write.auction.getId());
+            }
+        }
+        System.err.println("[WriteBehindQueue] " + writes.size() + " escrituras " + reason + ": " + lost);
+        for (Write write : writes) {
+            write.done.completeExceptionally(error);
+        }
+    }
+
+    /**
+     * Escritura pendiente.
+     */
+    private static final class Write {
+        static final int INSERT_AUCTION = 0;
+        static final int INSERT_BID = 1;
+        static final int UPDATE_AUCTION = 2;
+
+        private final int kind;
+        private final Auction auction;
+        /** Estado de la subasta al encolar la escritura (null en las pujas) */
+        private final Auction.Snapshot snapshot;
+        private final Bid bid;
+        private final CompletableFuture<Void> done = new CompletableFuture<>();
+
+        Write(int kind, Auction auction, Auction.Snapshot snapshot, Bid bid) {
+            this.kind = kind;
+            this.auction = auction;
+            this.snapshot = snapshot;
+            this.bid = bid;
+        }
+    }
+}
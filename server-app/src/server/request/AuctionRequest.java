@@ -0,0 +1,47 @@
+package server.request;
+
+/**
+ * Peticion sobre una subasta concreta: AUCTION_DETAIL y CANCEL_AUCTION.
+ *
+ * @author NetAuction Team
+ * @version 1.0
+ */
+public final class AuctionRequest extends Request {
+
+    /** ID de la subasta */
+    private final String auctionId;
+
+    /** Durabilidad pedida para la confirmacion de CANCEL_AUCTION (null para la del servidor) */
+    private final String durability;
+
+    /**
+     * Constructor de la peticion.
+     *
+     * @param code codigo de la accion
+     * @param action nombre de la accion
+     * @param id identificador de peticion o null
+     * @param token token de sesion o null
+     * @param auctionId ID de la subasta
+     * @param durability durabilidad pedida o null
+     */
+    public AuctionRequest(int code, String action, Long id, String token, String auctionId,
+                          String durability) {
+        super(code, action, id, token);
+        this.auctionId = auctionId;
+        this.durability = durability;
+    }
+
+    /**
+     * @return ID de la subasta
+     */
+    public String getAuctionId() {
+        return auctionId;
+    }
+
+    /**
+     * @return durabilidad pedida para la confirmacion de CANCEL_AUCTION (null para la del servidor)
+     */
+    public String getDurability() {
+        return durability;
+    }
+}
@@ -0,0 +1,61 @@
+package server.request;
+
+import server.model.Money;
+
+/**
+ * Peticion BID: puja en una subasta.
+ *
+ * @author NetAuction Team
+ * @version 1.0
+ */
+public final class BidRequest extends Request {
+
+    /** ID de la subasta */
+    private final String auctionId;
+
+    /** Cantidad pujada en centimos (0 si no se indico, {@link Money#INVALID} si no es valida) */
+    private final long amount;
+
+    /** Durabilidad pedida para la confirmacion (null para la del servidor) */
+    private final String durability;
+
+    /**
+     * Constructor de la peticion.
+     *
+     * @param code codigo de la accion
+     * @param action nombre de la accion
+     * @param id identificador de peticion o null
+     * @param token token de sesion o null
+     * @param auctionId ID de la subasta
+     * @param amount cantidad pujada en centimos
+     * @param durability durabilidad pedida o null
+     */
+    public BidRequest(int code, String action, Long id, String token, String auctionId, long amount,
+                      String durability) {
+        super(code, action, id, token);
+        this.auctionId = auctionId;
+        this.amount = amount;
+        this.durability = durability;
+    }
+
+    /**
+     * @return ID de la subasta
+     */
+    public String getAuctionId() {
+        return auctionId;
+    }
+
+    /**
+     * @return cantidad pujada en centimos
+     */
+    public long getAmount() {
+        return amount;
+    }
+
+    /**
+     * @return durabilidad pedida para la confirmacion (null para la del servidor)
+     */
+    public String getDurability() {
+        return durability;
+    }
+}
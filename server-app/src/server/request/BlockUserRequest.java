@@ -0,0 +1,46 @@
+package server.request;
+
+/**
+ * Peticion BLOCK_USER: bloqueo o desbloqueo de un usuario.
+ *
+ * @author NetAuction Team
+ * @version 1.0
+ */
+public final class BlockUserRequest extends Request {
+
+    /** Usuario afectado */
+    private final String username;
+
+    /** true para bloquear, false para desbloquear */
+    private final boolean blocked;
+
+    /**
+     * Constructor de la peticion.
+     *
+     * @param code codigo de la accion
+     * @param action nombre de la accion
+     * @param id identificador de peticion o null
+     * @param token token de sesion o null
+     * @param username usuario afectado
+     * @param blocked true para bloquear
+     */
+    public BlockUserRequest(int code, String action, Long id, String token, String username, boolean blocked) {
+        super(code, action, id, token);
+        this.username = username;
+        this.blocked = blocked;
+    }
+
+    /**
+     * @return usuario afectado
+     */
+    public String getUsername() {
+        return username;
+    }
+
+    /**
+     * @return true para bloquear, false para desbloquear
+     */
+    public boolean isBlocked() {
+        return blocked;
+    }
+}
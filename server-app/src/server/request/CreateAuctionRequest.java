@@ -0,0 +1,86 @@
+package server.request;
+
+import server.model.Money;
+
+/**
+ * Peticion CREATE_AUCTION: alta de una subasta.
+ *
+ * @author NetAuction Team
+ * @version 1.0
+ */
+public final class CreateAuctionRequest extends Request {
+
+    /** Titulo de la subasta */
+    private final String title;
+
+    /** Descripcion del articulo */
+    private final String description;
+
+    /** Precio de salida en centimos (0 si no se indico, {@link Money#INVALID} si no es valido) */
+    private final long startPrice;
+
+    /** Duracion en minutos */
+    private final int durationMinutes;
+
+    /** Durabilidad pedida para la confirmacion del alta (null para la del servidor) */
+    private final String durability;
+
+    /**
+     * Constructor de la peticion.
+     *
+     * @param code codigo de la accion
+     * @param action nombre de la accion
+     * @param id identificador de peticion o null
+     * @param token token de sesion o null
+     * @param title titulo de la subasta
+     * @param description descripcion del articulo
+     * @param startPrice precio de salida en centimos
+     * @param durationMinutes duracion en minutos
+     * @param durability durabilidad pedida o null
+     */
+    public CreateAuctionRequest(int code, String action, Long id, String token,
+                                String title, String description, long startPrice, int durationMinutes,
+                                String durability) {
+        super(code, action, id, token);
+        this.title = title;
+        this.description = description;
+        this.startPrice = startPrice;
+        this.durationMinutes = durationMinutes;
+        this.durability = durability;
+    }
+
+    /**
+     * @return titulo de la subasta
+     */
+    public String getTitle() {
+        return title;
+    }
+
+    /**
+     * @return descripcion del articulo
+     */
+    public String getDescription() {
+        return description;
+    }
+
+    /**
+     * @return precio de salida en centimos
+     */
+    public long getStartPrice() {
+        return startPrice;
+    }
+
+    /**
+     * @return duracion en minutos
+     */
+    public int getDurationMinutes() {
+        return durationMinutes;
+    }
+
+    /**
+     * @return durabilidad pedida para la confirmacion del alta (null para la del servidor)
+     */
+    public String getDurability() {
+        return durability;
+    }
+}
@@ -0,0 +1,46 @@
+package server.request;
+
+/**
+ * Peticion HELLO: negociacion del protocolo y de la compresion.
+ *
+ * @author NetAuction Team
+ * @version 1.0
+ */
+public final class HelloRequest extends Request {
+
+    /** Version de protocolo solicitada */
+    private final int protocol;
+
+    /** Algoritmo de compresion solicitado (null si no se pide) */
+    private final String compression;
+
+    /**
+     * Constructor de la peticion.
+     *
+     * @param code codigo de la accion
+     * @param action nombre de la accion
+     * @param id identificador de peticion o null
+     * @param token token de sesion o null
+     * @param protocol version de protocolo solicitada
+     * @param compression compresion solicitada o null
+     */
+    public HelloRequest(int code, String action, Long id, String token, int protocol, String compression) {
+        super(code, action, id, token);
+        this.protocol = protocol;
+        this.compression = compression;
+    }
+
+    /**
+     * @return version de protocolo solicitada
+     */
+    public int getProtocol() {
+        return protocol;
+    }
+
+    /**
+     * @return compresion solicitada o null
+     */
+    public String getCompression() {
+        return compression;
+    }
+}
@@ -0,0 +1,61 @@
+package server.request;
+
+/**
+ * Peticion de una pagina de subastas: LIST_AUCTIONS (activas, en el orden
+ * pedido) y MY_AUCTIONS, MY_BIDS y MY_WINS (actividad del usuario, que
+ * ignoran el orden).
+ *
+ * @author NetAuction Team
+ * @version 1.0
+ */
+public final class ListAuctionsRequest extends Request {
+
+    /** Criterio de orden (null para el orden por defecto; solo LIST_AUCTIONS) */
+    private final String sort;
+
+    /** Tamano de pagina pedido (0 para el tamano por defecto) */
+    private final int limit;
+
+    /** Cursor devuelto con la pagina anterior (null para la primera) */
+    private final String cursor;
+
+    /**
+     * Constructor de la peticion.
+     *
+     * @param code codigo de la accion
+     * @param action nombre de la accion
+     * @param id identificador de peticion o null
+     * @param token token de sesion o null
+     * @param sort criterio de orden o null
+     * @param limit tamano de pagina o 0
+     * @param cursor cursor de la pagina anterior o null
+     */
+    public ListAuctionsRequest(int code, String action, Long id, String token,
+                               String sort, int limit, String cursor) {
+        super(code, action, id, token);
+        this.sort = sort;
+        this.limit = limit;
+        this.cursor = cursor;
+    }
+
+    /**
+     * @return criterio de orden o null
+     */
+    public String getSort() {
+        return sort;
+    }
+
+    /**
+     * @return tamano de pagina pedido o 0
+     */
+    public int getLimit() {
+        return limit;
+    }
+
+    /**
+     * @return cursor de la pagina anterior o null
+     */
+    public String getCursor() {
+        return cursor;
+    }
+}
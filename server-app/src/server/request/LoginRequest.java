@@ -0,0 +1,46 @@
+package server.request;
+
+/**
+ * Peticion LOGIN: inicio de sesion.
+ *
+ * @author NetAuction Team
+ * @version 1.0
+ */
+public final class LoginRequest extends Request {
+
+    /** Nombre de usuario */
+    private final String user;
+
+    /** Contrasena en claro */
+    private final String password;
+
+    /**
+     * Constructor de la peticion.
+     *
+     * @param code codigo de la accion
+     * @param action nombre de la accion
+     * @param id identificador de peticion o null
+     * @param token token de sesion o null
+     * @param user nombre de usuario
+     * @param password contrasena
+     */
+    public LoginRequest(int code, String action, Long id, String token, String user, String password) {
+        super(code, action, id, token);
+        this.user = user;
+        this.password = password;
+    }
+
+    /**
+     * @return nombre de usuario
+     */
+    public String getUser() {
+        return user;
+    }
+
+    /**
+     * @return contrasena
+     */
+    public String getPassword() {
+        return password;
+    }
+}
@@ -0,0 +1,59 @@
+package server.request;
+
+/**
+ * Peticion REGISTER: alta de un usuario.
+ *
+ * @author NetAuction Team
+ * @version 1.0
+ */
+public final class RegisterRequest extends Request {
+
+    /** Nombre de usuario */
+    private final String user;
+
+    /** Contrasena en claro */
+    private final String password;
+
+    /** Correo electronico */
+    private final String email;
+
+    /**
+     * Constructor de la peticion.
+     *
+     * @param code codigo de la accion
+     * @param action nombre de la accion
+     * @param id identificador de peticion o null
+     * @param token token de sesion o null
+     * @param user nombre de usuario
+     * @param password contrasena
+     * @param email correo electronico
+     */
+    public RegisterRequest(int code, String action, Long id, String token,
+                           String user, String password, String email) {
+        super(code, action, id, token);
+        this.user = user;
+        this.password = password;
+        this.email = email;
+    }
+
+    /**
+     * @return nombre de usuario
+     */
+    public String getUser() {
+        return user;
+    }
+
+    /**
+     * @return contrasena
+     */
+    public String getPassword() {
+        return password;
+    }
+
+    /**
+     * @return correo electronico
+     */
+    public String getEmail() {
+        return email;
+    }
+}
@@ -0,0 +1,97 @@
+package server.request;
+
+import common.Constants;
+import common.Message;
+
+/**
+ * Peticion de un cliente ya decodificada.
+ * Lleva la cabecera comun de todos los mensajes (accion, id y token) y el
+ * codigo de la accion en la tabla compartida de {@link common.BinaryCodec},
+ * que {@link server.ProtocolHandler} usa como indice de su tabla de despacho.
+ * Las acciones con datos tienen su propia subclase con los campos ya
+ * convertidos a su tipo; las que solo necesitan el token (LOGOUT,
+ * ADMIN_STATS, PING...) usan esta clase directamente.
+ *
+ * @author NetAuction Team
+ * @version 1.0
+ */
+public class Request {
+
+    /** Codigo de la accion (0 si no tiene codigo) */
+    private final int code;
+
+    /** Nombre de la accion (la constante compartida si tiene codigo) */
+    private final String action;
+
+    /** Identificador de peticion para correlacionar la respuesta (null si no se usa) */
+    private final Long id;
+
+    /** Token de sesion (null si no esta autenticado) */
+    private final String token;
+
+    /**
+     * Constructor de la peticion.
+     *
+     * @param code codigo de la accion
+     * @param action nombre de la accion
+     * @param id identificador de peticion o null
+     * @param token token de sesion o null
+     */
+    public Request(int code, String action, Long id, String token) {
+        this.code = code;
+        this.action = action;
+        this.id = id;
+        this.token = token;
+    }
+
+    /**
+     * @return codigo de la accion (0 si no tiene codigo)
+     */
+    public int getCode() {
+        return code;
+    }
+
+    /**
+     * @return nombre de la accion
+     */
+    public String getAction() {
+        return action;
+    }
+
+    /**
+     * @return identificador de peticion o null
+     */
+    public Long getId() {
+        return id;
+    }
+
+    /**
+     * @return token de sesion o null
+     */
+    public String getToken() {
+        return token;
+    }
+
+    /**
+     * Crea la respuesta a esta peticion conservando su identificador.
+     *
+     * @param status estado de la respuesta (OK o ERROR)
+     * @param message mensaje descriptivo
+     * @return mensaje de respuesta
+     */
+    public Message createReply(String status, String message) {
+        Message response = Message.createResponse(action != null ? action : "UNKNOWN", status, message);
+        response.setId(id);
+        return response;
+    }
+
+    /**
+     * Crea la respuesta de error a esta peticion conservando su identificador.
+     *
+     * @param message mensaje de error
+     * @return mensaje de respuesta
+     */
+    public Message createErrorReply(String message) {
+        return createReply(Constants.STATUS_ERROR, message);
+    }
+}
@@ -0,0 +1,725 @@
+package server.request;
+
+import common.BinaryCodec;
+import common.Constants;
+import common.Message;
+import server.model.Money;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonSyntaxException;
+
+/**
+ * Decodificador de las peticiones de los clientes.
+ * Recorre cada linea JSON directamente sobre el String recibido, sin
+ * reflexion, sin construir el arbol de {@link JsonObject} y sin el buffer
+ * que reserva cada {@code JsonReader}: la cabecera y los campos de datos que
+ * usa alguna accion se guardan en variables y el resto se salta. Al terminar
+ * se crea la peticion tipada que corresponde a la accion, con el codigo de la
+ * tabla compartida de {@link BinaryCodec} y el nombre canonico de la accion
+ * (no el String recien leido). El orden de los campos no importa.
+ *
+ * <p>El recorrido solo acepta el JSON estandar que generan los clientes. Si
+ * encuentra cualquier otra cosa (sintaxis tolerada por Gson, tipos distintos
+ * de los esperados, errores) la linea se decodifica con {@link Message#fromJson(String)}
+ * como hasta ahora, de modo que el resultado y los mensajes de error son los
+ * mismos que antes.</p>
+ *
+ * <p>En el protocolo binario la trama ya llega decodificada como
+ * {@link Message}; {@link #decode(Message)} la convierte a la misma
+ * peticion tipada.</p>
+ *
+ * <p>No guarda estado: una unica instancia se comparte entre todas las conexiones.</p>
+ *
+ * @author NetAuction Team
+ * @version 1.0
+ */
+public final class RequestDecoder {
+
+    /** Instancia compartida */
+    public static final RequestDecoder INSTANCE = new RequestDecoder();
+
+    /** Profundidad maxima de anidamiento que se salta sin recurrir a Gson */
+    private static final int MAX_SKIP_DEPTH = 16;
+
+    /**
+     * Constructor privado: se usa {@link #INSTANCE}.
+     */
+    private RequestDecoder() {
+    }
+
+    /**
+     * Decodifica una linea JSON.
+     *
+     * @param json linea recibida
+     * @return peticion tipada
+     * @throws JsonSyntaxException si la linea no es un mensaje valido
+     * @throws IllegalArgumentException si un campo no tiene el tipo esperado
+     */
+    public Request decode(String json) {
+        Fields fields = new Fields();
+        if (new Scanner(json).scanMessage(fields)) {
+            return build(fields);
+        }
+        Message message = Message.fromJson(json);
+        if (message == null) {
+            throw new JsonSyntaxException("Mensaje vacio");
+        }
+        return decode(message);
+    }
+
+    /**
+     * Convierte un mensaje ya decodificado (protocolo binario, o linea que no
+     * admite el recorrido directo) en peticion tipada.
+     *
+     * @param message mensaje recibido
+     * @return peticion tipada
+     * @throws IllegalArgumentException si un campo no tiene el tipo esperado
+     */
+    public Request decode(Message message) {
+        Fields fields = new Fields();
+        fields.action = message.getAction();
+        fields.id = message.getId();
+        fields.token = message.getToken();
+        JsonObject data = message.getData();
+        if (data != null) {
+            fields.user = string(data, "user");
+            fields.password = string(data, "password");
+            fields.email = string(data, "email");
+            fields.title = string(data, "title");
+            fields.description = string(data, "description");
+            fields.startPrice = money(data, "startPrice", fields.startPrice);
+            fields.durationMinutes = integer(data, "durationMinutes", fields.durationMinutes);
+            fields.auctionId = string(data, "auctionId");
+            fields.amount = money(data, "amount", fields.amount);
+            fields.username = string(data, "username");
+            fields.blocked = bool(data, "blocked", fields.blocked);
+            fields.protocol = integer(data, "protocol", fields.protocol);
+            fields.compression = string(data, "compression");
+            fields.sort = string(data, "sort");
+            fields.limit = integer(data, "limit", fields.limit);
+            fields.cursor = string(data, "cursor");
+            fields.durability = string(data, "durability");
+        }
+        return build(fields);
+    }
+
+    /**
+     * Lee un importe de los datos y lo convierte a centimos. Se parte del
+     * texto del numero (el original en JSON, la representacion mas corta del
+     * double en el protocolo binario), nunca de su valor en coma flotante.
+     *
+     * @return centimos, defaultValue si no viene o {@link Money#INVALID} si no es valido
+     */
+    private static long money(JsonObject data, String key, long defaultValue) {
+        JsonElement value = primitive(data, key);
+        return value != null ? Money.parse(value.getAsString()) : defaultValue;
+    }
+
+    /**
+     * Lee un texto de los datos.
+     *
+     * @return texto o null si no viene
+     */
+    private static String string(JsonObject data, String key) {
+        JsonElement value = primitive(data, key);
+        return value != null ? value.getAsString() : null;
+    }
+
+    /**
+     * Lee un entero de los datos.
+     *
+     * @return entero o defaultValue si no viene
+     */
+    private static int integer(JsonObject data, String key, int defaultValue) {
+        JsonElement value = primitive(data, key);
+        return value != null ? value.getAsInt() : defaultValue;
+    }
+
+    /**
+     * Lee un booleano de los datos.
+     *
+     * @return booleano o defaultValue si no viene
+     */
+    private static boolean bool(JsonObject data, String key, boolean defaultValue) {
+        JsonElement value = primitive(data, key);
+        return value != null ? value.getAsBoolean() : defaultValue;
+    }
+
+    /**
+     * Obtiene un campo de los datos que debe ser un valor simple. Un objeto o
+     * un array en su lugar se rechazan como trama invalida: Gson no los
+     * convierte a texto ni a numero.
+     *
+     * @return valor o null si no viene
+     * @throws IllegalArgumentException si el valor no es un texto, numero o booleano
+     */
+    private static JsonElement primitive(JsonObject data, String key) {
+        JsonElement value = data.get(key);
+        if (value == null || value.isJsonNull()) {
+            return null;
+        }
+        if (!value.isJsonPrimitive()) {
+            throw new IllegalArgumentException("Campo " + key + " no valido");
+        }
+        return value;
+    }
+
+    /**
+     * Crea la peticion tipada de la accion.
+     */
+    private static Request build(Fields f) {
+        String action = f.action;
+        int code = BinaryCodec.actionCode(action);
+        if (code != 0) {
+            action = BinaryCodec.actionName(code);
+        }
+        Long id = f.id;
+        String token = f.token;
+        switch (action != null ? action : "") {
+            case Constants.ACTION_REGISTER:
+                return new RegisterRequest(code, action, id, token, f.user, f.password, f.email);
+            case Constants.ACTION_LOGIN:
+                return new LoginRequest(code, action, id, token, f.user, f.password);
+            case Constants.ACTION_CREATE_AUCTION:
+                return new CreateAuctionRequest(code, action, id, token,
+                        f.title, f.description, f.startPrice, f.durationMinutes, f.durability);
+            case Constants.ACTION_LIST_AUCTIONS:
+            case Constants.ACTION_MY_AUCTIONS:
+            case Constants.ACTION_MY_BIDS:
+            case Constants.ACTION_MY_WINS:
+                return new ListAuctionsRequest(code, action, id, token, f.sort, f.limit, f.cursor);
+            case Constants.ACTION_AUCTION_DETAIL:
+            case Constants.ACTION_CANCEL_AUCTION:
+                return new AuctionRequest(code, action, id, token, f.auctionId, f.durability);
+            case Constants.ACTION_BID:
+                return new BidRequest(code, action, id, token, f.auctionId, f.amount, f.durability);
+            case Constants.ACTION_BLOCK_USER:
+                return new BlockUserRequest(code, action, id, token, f.username, f.blocked);
+            case Constants.ACTION_HELLO:
+                return new HelloRequest(code, action, id, token, f.protocol, f.compression);
+            default:
+                return new Request(code, action, id, token);
+        }
+    }
+
+    /**
+     * Campos leidos de un mensaje, con los mismos valores por defecto que
+     * aplicaban los manejadores cuando el campo no venia.
+     */
+    private static final class Fields {
+        String action;
+        Long id;
+        String token;
+        String user;
+        String password;
+        String email;
+        String title;
+        String description;
+        long startPrice = 0;
+        int durationMinutes = 5;
+        String auctionId;
+        long amount = 0;
+        String username;
+        boolean blocked = true;
+        int protocol = Constants.PROTOCOL_JSON;
+        String compression;
+        String sort;
+        int limit = 0;
+        String cursor;
+        String durability;
+    }
+
+    /**
+     * Recorrido de una linea JSON. Cada metodo de lectura devuelve false si
+     * el valor no es el esperado; en ese caso se abandona el recorrido y la
+     * linea se decodifica con Gson.
+     */
+    private static final class Scanner {
+
+        private final String json;
+        private final int length;
+        private int pos;
+
+        /** Ultimo texto leido (null si el valor era null) */
+        private String text;
+
+        /** Ultimo importe leido, en centimos */
+        private long cents;
+
+        /** Ultimo entero leido */
+        private long whole;
+
+        /** Ultimo booleano leido */
+        private boolean bool;
+
+        /** true si el ultimo valor leido era null */
+        private boolean nullValue;
+
+        Scanner(String json) {
+            this.json = json;
+            this.length = json.length();
+        }
+
+        boolean scanMessage(Fields f) {
+            if (!consume('{')) {
+                return false;
+            }
+            if (!consume('}')) {
+                do {
+                    String name = name();
+                    if (name == null || !consume(':')) {
+                        return false;
+                    }
+                    switch (name) {
+                        case "action":
+                            if (!textValue()) {
+                                return false;
+                            }
+                            f.action = text;
+                            break;
+                        case "id":
+                            if (!longValue()) {
+                                return false;
+                            }
+                            f.id = nullValue ? null : whole;
+                            break;
+                        case "token":
+                            if (!textValue()) {
+                                return false;
+                            }
+                            f.token = text;
+                            break;
+                        case "data":
+                            if (!scanData(f)) {
+                                return false;
+                            }
+                            break;
+                        default:
+                            if (!skipValue(0)) {
+                                return false;
+                            }
+                    }
+                } while (consume(','));
+                if (!consume('}')) {
+                    return false;
+                }
+            }
+            skipWhitespace();
+            return pos == length;
+        }
+
+        private boolean scanData(Fields f) {
+            // "data": null tampoco lo acepta Gson (JsonNull no es JsonObject)
+            if (!consume('{')) {
+                return false;
+            }
+            if (consume('}')) {
+                return true;
+            }
+            do {
+                String name = name();
+                if (name == null || !consume(':')) {
+                    return false;
+                }
+                boolean ok;
+                switch (name) {
+                    case "user":
+                        ok = textValue();
+                        f.user = text;
+                        break;
+                    case "password":
+                        ok = textValue();
+                        f.password = text;
+                        break;
+                    case "email":
+                        ok = textValue();
+                        f.email = text;
+                        break;
+                    case "title":
+                        ok = textValue();
+                        f.title = text;
+                        break;
+                    case "description":
+                        ok = textValue();
+                        f.description = text;
+                        break;
+                    case "startPrice":
+                        ok = moneyValue();
+                        f.startPrice = nullValue ? 0 : cents;
+                        break;
+                    case "durationMinutes":
+                        ok = intValue();
+                        f.durationMinutes = nullValue ? 5 : (int) whole;
+                        break;
+                    case "auctionId":
+                        ok = textValue();
+                        f.auctionId = text;
+                        break;
+                    case "amount":
+                        ok = moneyValue();
+                        f.amount = nullValue ? 0 : cents;
+                        break;
+                    case "username":
+                        ok = textValue();
+                        f.username = text;
+                        break;
+                    case "blocked":
+                        ok = booleanValue();
+                        f.blocked = nullValue || bool;
+                        break;
+                    case "protocol":
+                        ok = intValue();
+                        f.protocol = nullValue ? Constants.PROTOCOL_JSON : (int) whole;
+                        break;
+                    case "compression":
+                        ok = textValue();
+                        f.compression = text;
+                        break;
+                    case "sort":
+                        ok = textValue();
+                        f.sort = text;
+                        break;
+                    case "limit":
+                        ok = intValue();
+                        f.limit = nullValue ? 0 : (int) whole;
+                        break;
+                    case "cursor":
+                        ok = textValue();
+                        f.cursor = text;
+                        break;
+                    case "durability":
+                        ok = textValue();
+                        f.durability = text;
+                        break;
+                    default:
+                        ok = skipValue(0);
+                }
+                if (!ok) {
+                    return false;
+                }
+            } while (consume(','));
+            return consume('}');
+        }
+
+        // ==================== VALORES ====================
+
+        /**
+         * Lee un valor como texto; numeros y booleanos se aceptan como su
+         * texto, igual que {@code JsonElement.getAsString()}.
+         */
+        private boolean textValue() {
+            skipWhitespace();
+            nullValue = false;
+            text = null;
+            if (pos >= length) {
+                return false;
+            }
+            char c = json.charAt(pos);
+            if (c == '"') {
+                return string(true);
+            }
+            if (literal("null")) {
+                nullValue = true;
+                return true;
+            }
+            if (literal("true")) {
+                text = "true";
+                return true;
+            }
+            if (literal("false")) {
+                text = "false";
+                return true;
+            }
+            int start = pos;
+            if (!numberToken()) {
+                return false;
+            }
+            text = json.substring(start, pos);
+            return true;
+        }
+
+        /** Importe en unidades, convertido a centimos desde el texto sin pasar por double */
+        private boolean moneyValue() {
+            skipWhitespace();
+            nullValue = false;
+            if (literal("null")) {
+                nullValue = true;
+                return true;
+            }
+            int start = pos;
+            if (!numberToken()) {
+                return false;
+            }
+            try {
+                cents = Money.parse(json.substring(start, pos));
+            } catch (NumberFormatException e) {
+                return false;
+            }
+            return true;
+        }
+
+        /** Entero de hasta 9 cifras, sin parte decimal ni exponente */
+        private boolean intValue() {
+            return integer(9);
+        }
+
+        /** Entero de hasta 18 cifras, sin parte decimal ni exponente */
+        private boolean longValue() {
+            return integer(18);
+        }
+
+        private boolean integer(int maxDigits) {
+            skipWhitespace();
+            nullValue = false;
+            if (literal("null")) {
+                nullValue = true;
+                return true;
+            }
+            boolean negative = pos < length && json.charAt(pos) == '-';
+            int start = negative ? pos + 1 : pos;
+            int end = start;
+            long value = 0;
+            while (end < length && json.charAt(end) >= '0' && json.charAt(end) <= '9') {
+                value = value * 10 + (json.charAt(end) - '0');
+                end++;
+            }
+            int digits = end - start;
+            if (digits == 0 || digits > maxDigits || !delimiter(end)) {
+                return false;
+            }
+            pos = end;
+            whole = negative ? -value : value;
+            return true;
+        }
+
+        private boolean booleanValue() {
+            skipWhitespace();
+            nullValue = false;
+            if (literal("null")) {
+                nullValue = true;
+                return true;
+            }
+            if (literal("true")) {
+                bool = true;
+                return true;
+            }
+            if (literal("false")) {
+                bool = false;
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * Salta un valor de cualquier tipo.
+         */
+        private boolean skipValue(int depth) {
+            skipWhitespace();
+            if (pos >= length || depth > MAX_SKIP_DEPTH) {
+                return false;
+            }
+            char c = json.charAt(pos);
+            if (c == '"') {
+                return string(false);
+            }
+            if (c == '{') {
+                pos++;
+                if (consume('}')) {
+                    return true;
+                }
+                do {
+                    if (name() == null || !consume(':') || !skipValue(depth + 1)) {
+                        return false;
+                    }
+                } while (consume(','));
+                return consume('}');
+            }
+            if (c == '[') {
+                pos++;
+                if (consume(']')) {
+                    return true;
+                }
+                do {
+                    if (!skipValue(depth + 1)) {
+                        return false;
+                    }
+                } while (consume(','));
+                return consume(']');
+            }
+            return literal("null") || literal("true") || literal("false") || numberToken();
+        }
+
+        // ==================== ELEMENTOS ====================
+
+        /**
+         * Lee el nombre de un campo (sin escapes).
+         */
+        private String name() {
+            skipWhitespace();
+            if (pos >= length || json.charAt(pos) != '"') {
+                return null;
+            }
+            int start = pos + 1;
+            int end = start;
+            while (end < length) {
+                char c = json.charAt(end);
+                if (c == '"') {
+                    pos = end + 1;
+                    return json.substring(start, end);
+                }
+                if (c == '\\') {
+                    return null;
+                }
+                end++;
+            }
+            return null;
+        }
+
+        /**
+         * Lee un texto entre comillas, interpretando los escapes.
+         *
+         * @param keep si false solo se salta y no se guarda en {@link #text}
+         */
+        private boolean string(boolean keep) {
+            int start = pos + 1;
+            int end = start;
+            while (end < length) {
+                char c = json.charAt(end);
+                if (c == '"') {
+                    if (keep) {
+                        text = json.substring(start, end);
+                    }
+                    pos = end + 1;
+                    return true;
+                }
+                if (c == '\\') {
+                    return escapedString(start, end, keep);
+                }
+                end++;
+            }
+            return false;
+        }
+
+        private boolean escapedString(int start, int firstEscape, boolean keep) {
+            StringBuilder builder = new StringBuilder(firstEscape - start + 16);
+            builder.append(json, start, firstEscape);
+            int i = firstEscape;
+            while (i < length) {
+                char c = json.charAt(i++);
+                if (c == '"') {
+                    if (keep) {
+                        text = builder.toString();
+                    }
+                    pos = i;
+                    return true;
+                }
+                if (c != '\\') {
+                    builder.append(c);
+                    continue;
+                }
+                if (i >= length) {
+                    return false;
+                }
+                char e = json.charAt(i++);
+                switch (e) {
+                    case '"':
+                    case '\\':
+                    case '/':
+                        builder.append(e);
+                        break;
+                    case 'b':
+                        builder.append('\b');
+                        break;
+                    case 'f':
+                        builder.append('\f');
+                        break;
+                    case 'n':
+                        builder.append('\n');
+                        break;
+                    case 'r':
+                        builder.append('\r');
+                        break;
+                    case 't':
+                        builder.append('\t');
+                        break;
+                    case 'u':
+                        if (i + 4 > length) {
+                            return false;
+                        }
+                        int value = 0;
+                        for (int k = 0; k < 4; k++) {
+                            int digit = Character.digit(json.charAt(i++), 16);
+                            if (digit < 0) {
+                                return false;
+                            }
+                            value = (value << 4) | digit;
+                        }
+                        builder.append((char) value);
+                        break;
+                    default:
+                        return false;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Avanza sobre un numero JSON; su validez la comprueba quien lo convierte.
+         */
+        private boolean numberToken() {
+            int end = pos;
+            while (end < length) {
+                char c = json.charAt(end);
+                if ((c >= '0' && c <= '9') || c == '-' || c == '+' || c == '.' || c == 'e' || c == 'E') {
+                    end++;
+                } else {
+                    break;
+                }
+            }
+            if (end == pos || !delimiter(end)) {
+                return false;
+            }
+            pos = end;
+            return true;
+        }
+
+        private boolean literal(String word) {
+            if (json.startsWith(word, pos) && delimiter(pos + word.length())) {
+                pos += word.length();
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * @return true si en la posicion termina un valor (fin, espacio, coma o cierre)
+         */
+        private boolean delimiter(int index) {
+            if (index >= length) {
+                return true;
+            }
+            char c = json.charAt(index);
+            return c == ',' || c == '}' || c == ']' || c == ' ' || c == '\t' || c == '\n' || c == '\r';
+        }
+
+        private boolean consume(char expected) {
+            skipWhitespace();
+            if (pos < length && json.charAt(pos) == expected) {
+                pos++;
+                return true;
+            }
+            return false;
+        }
+
+        private void skipWhitespace() {
+            while (pos < length) {
+                char c = json.charAt(pos);
+                if (c != ' ' && c != '\t' && c != '\n' && c != '\r') {
+                    return;
+                }
+                pos++;
+            }
+        }
+    }
+}
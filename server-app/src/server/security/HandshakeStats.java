@@ -0,0 +1,154 @@
+package server.security;
+
+import javax.net.ssl.SSLSession;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Metricas de las negociaciones TLS del servidor.
+ * Cuenta las negociaciones completas y las reanudadas (sesion en cache o
+ * ticket TLS 1.3), las fallidas y las rechazadas por tener el pool de
+ * negociacion lleno, y mide su latencia. La comparten ambos motores de
+ * conexiones y la consulta la accion ADMIN_STATS.
+ *
+ * @author NetAuction Team
+ * @version 1.0
+ */
+public class HandshakeStats {
+
+    /** Negociaciones completas (con intercambio de claves y certificado) */
+    private final AtomicLong fullHandshakes;
+
+    /** Negociaciones que reanudaron una sesion anterior */
+    private final AtomicLong resumedHandshakes;
+
+    /** Negociaciones que fallaron o que el cliente abandono */
+    private final AtomicLong failedHandshakes;
+
+    /** Conexiones cerradas sin negociar por tener el pool de negociacion lleno */
+    private final AtomicLong rejectedHandshakes;
+
+    /** Suma de las latencias de negociacion en nanosegundos */
+    private final AtomicLong totalNanos;
+
+    /** Latencia de negociacion maxima observada en nanosegundos */
+    private final AtomicLong maxNanos;
+
+    /**
+     * Constructor de las metricas.
+     */
+    public HandshakeStats() {
+        this.fullHandshakes = new AtomicLong();
+        this.resumedHandshakes = new AtomicLong();
+        this.failedHandshakes = new AtomicLong();
+        this.rejectedHandshakes = new AtomicLong();
+        this.totalNanos = new AtomicLong();
+        this.maxNanos = new AtomicLong();
+    }
+
+    /**
+     * Registra una negociacion completada.
+     * Una sesion creada antes de empezar la negociacion es una sesion reanudada.
+     *
+     * @param session sesion TLS resultante
+     * @param startMillis hora (ms) a la que empezo la negociacion
+     * @param elapsedNanos duracion de la negociacion en nanosegundos
+     */
+    public void recordHandshake(SSLSession session, long startMillis, long elapsedNanos) {
+        if (isResumed(session, startMillis)) {
+            resumedHandshakes.incrementAndGet();
+        } else {
+            fullHandshakes.incrementAndGet();
+        }
+        totalNanos.addAndGet(elapsedNanos);
+        maxNanos.accumulateAndGet(elapsedNanos, Math::max);
+    }
+
+    /**
+     * Registra una negociacion fallida o abandonada.
+     */
+    public void recordFailure() {
+        failedHandshakes.incrementAndGet();
+    }
+
+    /**
+     * Registra una conexion rechazada por tener el pool de negociacion lleno.
+     */
+    public void recordRejected() {
+        rejectedHandshakes.incrementAndGet();
+    }
+
+    /**
+     * Indica si una sesion se ha reanudado en lugar de negociarse desde cero.
+     *
+     * @param session sesion TLS resultante
+     * @param startMillis hora (ms) a la que empezo la negociacion
+     * @return true si la sesion es anterior a la negociacion
+     */
+    private static boolean isResumed(SSLSession session, long startMillis) {
+        return session != null && session.getCreationTime() < startMillis;
+    }
+
+    /**
+     * @return negociaciones completadas (completas y reanudadas)
+     */
+    public long getHandshakeCount() {
+        return fullHandshakes.get() + resumedHandshakes.get();
+    }
+
+    /**
+     * @return negociaciones completas
+     */
+    public long getFullCount() {
+        return fullHandshakes.get();
+    }
+
+    /**
+     * @return negociaciones reanudadas
+     */
+    public long getResumedCount() {
+        return resumedHandshakes.get();
+    }
+
+    /**
+     * @return negociaciones fallidas o abandonadas
+     */
+    public long getFailedCount() {
+        return failedHandshakes.get();
+    }
+
+    /**
+     * @return conexiones rechazadas por tener el pool de negociacion lleno
+     */
+    public long getRejectedCount() {
+        return rejectedHandshakes.get();
+    }
+
+    /**
+     * Obtiene la proporcion de negociaciones reanudadas.
+     *
+     * @return reanudadas / completadas (0 si aun no hubo ninguna)
+     */
+    public double getResumptionRatio() {
+        long total = getHandshakeCount();
+        return total > 0 ? (double) resumedHandshakes.get() / total : 0.0;
+    }
+
+    /**
+     * Obtiene la latencia media de negociacion.
+     *
+     * @return latencia media en milisegundos
+     */
+    public double getAverageLatencyMillis() {
+        long total = getHandshakeCount();
+        return total > 0 ? totalNanos.get() / (double) total / 1_000_000.0 : 0.0;
+    }
+
+    /**
+     * Obtiene la latencia de negociacion maxima observada.
+     *
+     * @return latencia maxima en milisegundos
+     */
+    public double getMaxLatencyMillis() {
+        return maxNanos.get() / 1_000_000.0;
+    }
+}
@@ -12,12 +12,31 @@ import java.util.List;
 /**
  * Configuración SSL/TLS para comunicación segura.
  * Proporciona métodos para crear sockets SSL para servidor y cliente.
+ * En el servidor fija el tamaño y la caducidad de la caché de sesiones,
+ * habilita los tickets de sesión (reanudación TLS 1.3 sin estado) y da
+ * preferencia a las suites AES-GCM, que la JVM acelera con AES-NI.
  *
  * @author NetAuction Team
  * @version 1.0
  */
 public final class SSLConfig {
 
+    /**
+     * Suites de cifrado del servidor por orden de preferencia: primero AES-GCM
+     * (acelerado por hardware), despues ChaCha20 para clientes sin AES-NI.
+     */
+    private static final String[] PREFERRED_CIPHER_SUITES = {
+        "TLS_AES_128_GCM_SHA256",
+        "TLS_AES_256_GCM_SHA384",
+        "TLS_ECDHE_ECDSA_WITH_AES_128_GCM_SHA256",
+        "TLS_ECDHE_RSA_WITH_AES_128_GCM_SHA256",
+        "TLS_ECDHE_ECDSA_WITH_AES_256_GCM_SHA384",
+        "TLS_ECDHE_RSA_WITH_AES_256_GCM_SHA384",
+        "TLS_CHACHA20_POLY1305_SHA256",
+        "TLS_ECDHE_ECDSA_WITH_CHACHA20_POLY1305_SHA256",
+        "TLS_ECDHE_RSA_WITH_CHACHA20_POLY1305_SHA256"
+    };
+
     /**
      * Constructor privado para evitar instanciación.
      */
@@ -35,6 +54,24 @@ public final class SSLConfig {
      */
     public static SSLServerSocketFactory createServerSocketFactory(String keystorePath, String keystorePassword)
             throws Exception {
+        return createServerContext(keystorePath, keystorePassword).getServerSocketFactory();
+    }
+
+    /**
+     * Crea el SSLContext del servidor a partir de su keystore.
+     *
+     * @param keystorePath ruta del keystore
+     * @param keystorePassword contraseña del keystore
+     * @return contexto SSL inicializado con la clave del servidor
+     * @throws Exception si hay error configurando SSL
+     */
+    public static SSLContext createServerContext(String keystorePath, String keystorePassword)
+            throws Exception {
+
+        // Tickets de sesion: deben habilitarse antes de crear el primer SSLContext
+        if (System.getProperty("jdk.tls.server.enableSessionTicketExtension") == null) {
+            System.setProperty("jdk.tls.server.enableSessionTicketExtension", "true");
+        }
 
         // Cargar keystore
         KeyStore keyStore = KeyStore.getInstance("PKCS12");
@@ -50,7 +87,40 @@ public final class SSLConfig {
         SSLContext sslContext = SSLContext.getInstance("TLS");
         sslContext.init(kmf.getKeyManagers(), null, null);
 
-        return sslContext.getServerSocketFactory();
+        // Cache de sesiones para reanudar sin negociacion completa
+        SSLSessionContext sessionContext = sslContext.getServerSessionContext();
+        sessionContext.setSessionCacheSize(Constants.TLS_SESSION_CACHE_SIZE);
+        sessionContext.setSessionTimeout(Constants.TLS_SESSION_TIMEOUT_SECONDS);
+
+        return sslContext;
+    }
+
+    /**
+     * Crea el SSLContext del servidor con configuración por defecto.
+     *
+     * @return contexto SSL del servidor
+     * @throws Exception si hay error configurando SSL
+     */
+    public static SSLContext createServerContext() throws Exception {
+        return createServerContext(
+            Constants.SERVER_KEYSTORE_PATH,
+            Constants.KEYSTORE_PASSWORD
+        );
+    }
+
+    /**
+     * Crea un SSLEngine en modo servidor para el motor NIO.
+     * Aplica la misma política de protocolos y cifrados que los sockets bloqueantes.
+     *
+     * @param sslContext contexto SSL del servidor
+     * @return SSLEngine configurado en modo servidor
+     */
+    public static SSLEngine createServerEngine(SSLContext sslContext) {
+        SSLEngine engine = sslContext.createSSLEngine();
+        engine.setUseClientMode(false);
+        engine.setSSLParameters(configureServerParameters(engine.getSSLParameters(),
+            engine.getSupportedProtocols(), engine.getSupportedCipherSuites()));
+        return engine;
     }
 
     /**
@@ -119,7 +189,8 @@ public final class SSLConfig {
         SSLServerSocket serverSocket = (SSLServerSocket) factory.createServerSocket(port);
 
         // Configurar protocolos y cifrados
-        serverSocket.setEnabledProtocols(getEnabledProtocols(serverSocket.getSupportedProtocols()));
+        serverSocket.setSSLParameters(configureServerParameters(serverSocket.getSSLParameters(),
+            serverSocket.getSupportedProtocols(), serverSocket.getSupportedCipherSuites()));
 
         return serverSocket;
     }
@@ -156,6 +227,43 @@ public final class SSLConfig {
         return keystore.exists() && truststore.exists();
     }
 
+    /**
+     * Aplica la politica del servidor: protocolos TLSv1.3/TLSv1.2 y suites
+     * preferidas en el orden del servidor, no en el del cliente.
+     *
+     * @param parameters parametros actuales del socket o del motor
+     * @param supportedProtocols protocolos soportados
+     * @param supportedCipherSuites suites soportadas
+     * @return los mismos parametros configurados
+     */
+    private static SSLParameters configureServerParameters(SSLParameters parameters, String[] supportedProtocols,
+                                                           String[] supportedCipherSuites) {
+        parameters.setProtocols(getEnabledProtocols(supportedProtocols));
+        String[] cipherSuites = getPreferredCipherSuites(supportedCipherSuites);
+        if (cipherSuites.length > 0) {
+            parameters.setCipherSuites(cipherSuites);
+        }
+        parameters.setUseCipherSuitesOrder(true);
+        return parameters;
+    }
+
+    /**
+     * Filtra las suites preferidas dejando solo las que soporta la JVM.
+     *
+     * @param supportedCipherSuites suites soportadas
+     * @return suites preferidas soportadas, en orden de preferencia
+     */
+    private static String[] getPreferredCipherSuites(String[] supportedCipherSuites) {
+        List<String> supported = Arrays.asList(supportedCipherSuites);
+        List<String> enabled = new ArrayList<>();
+        for (String suite : PREFERRED_CIPHER_SUITES) {
+            if (supported.contains(suite)) {
+                enabled.add(suite);
+            }
+        }
+        return enabled.toArray(new String[0]);
+    }
+
     private static String[] getEnabledProtocols(String[] supportedProtocols) {
         List<String> enabled = new ArrayList<>();
         List<String> supported = Arrays.asList(supportedProtocols);
@@ -2,27 +2,44 @@ package server.service;
 
 import common.Constants;
 import common.Message;
+import server.ClientConnection;
+import server.EncodedMessage;
+import server.OutboundQueue;
+import server.model.Money;
 
-import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Servicio de notificaciones push en tiempo real.
  * Mantiene un registro de clientes conectados y permite enviar notificaciones.
+ * Las notificaciones a varios clientes se codifican una sola vez
+ * ({@link EncodedMessage}) y cada conexion encola los mismos bytes.
+ * Vigila ademas a los consumidores lentos: segun el backlog de su cola de
+ * salida y la latencia de escritura los degrada a notificaciones resumidas
+ * o los desconecta para que no frenen el reparto al resto.
  *
  * @author NetAuction Team
  * @version 1.0
  */
 public class NotificationService {
 
-    /** Mapa de clientes conectados (username -> PrintWriter) */
-    private final ConcurrentHashMap<String, PrintWriter> clients;
+    /** Mapa de clientes conectados (username -> conexion) */
+    private final ConcurrentHashMap<String, ClientConnection> clients;
+
+    /** Clientes desconectados por ser consumidores lentos */
+    private final AtomicLong evictedCount;
 
     /**
      * Constructor del servicio de notificaciones.
      */
     public NotificationService() {
         this.clients = new ConcurrentHashMap<>();
+        this.evictedCount = new AtomicLong();
         System.out.println("[NotificationService] Iniciado");
     }
 
@@ -30,11 +47,11 @@ public class NotificationService {
      * Registra un cliente para recibir notificaciones.
      *
      * @param username nombre de usuario
-     * @param writer PrintWriter del cliente
+     * @param connection conexion del cliente
      */
-    public void registerClient(String username, PrintWriter writer) {
-        if (username != null && writer != null) {
-            clients.put(username, writer);
+    public void registerClient(String username, ClientConnection connection) {
+        if (username != null && connection != null) {
+            clients.put(username, connection);
             System.out.println("[NotificationService] Cliente registrado: " + username);
         }
     }
@@ -46,7 +63,7 @@ public class NotificationService {
      */
     public void unregisterClient(String username) {
         if (username != null) {
-            PrintWriter removed = clients.remove(username);
+            ClientConnection removed = clients.remove(username);
             if (removed != null) {
                 System.out.println("[NotificationService] Cliente desregistrado: " + username);
             }
@@ -72,6 +89,65 @@ public class NotificationService {
         return clients.size();
     }
 
+    /**
+     * Obtiene una vista de solo lectura de los clientes registrados.
+     *
+     * @return mapa username -> conexion
+     */
+    public Map<String, ClientConnection> getClients() {
+        return Collections.unmodifiableMap(clients);
+    }
+
+    /**
+     * Obtiene el numero de clientes desconectados por ser consumidores lentos.
+     *
+     * @return clientes desconectados
+     */
+    public long getEvictedCount() {
+        return evictedCount.get();
+    }
+
+    /**
+     * Revisa la cola de salida de cada cliente y aplica los umbrales de
+     * consumidor lento. Se invoca periodicamente desde el servidor.
+     * <ul>
+     *   <li>Backlog de {@link Constants#SLOW_CONSUMER_EVICT_BYTES} o ninguna escritura
+     *       completada en {@link Constants#SLOW_CONSUMER_EVICT_STALL_MS}: se desconecta.</li>
+     *   <li>Backlog de {@link Constants#SLOW_CONSUMER_DEGRADE_BYTES} o latencia de
+     *       {@link Constants#SLOW_CONSUMER_DEGRADE_LATENCY_MS}: notificaciones resumidas.</li>
+     *   <li>Por debajo de la mitad de ambos umbrales se restablece.</li>
+     * </ul>
+     */
+    public void checkSlowConsumers() {
+        long now = System.currentTimeMillis();
+        for (Map.Entry<String, ClientConnection> entry : clients.entrySet()) {
+            String username = entry.getKey();
+            ClientConnection connection = entry.getValue();
+            OutboundQueue queue = connection.getOutboundQueue();
+
+            long backlog = queue.getPendingBytes();
+            long stalled = queue.getStalledMillis(now);
+            double latency = Math.max(queue.getAverageLatencyMillis(), stalled);
+
+            if (backlog >= Constants.SLOW_CONSUMER_EVICT_BYTES || stalled >= Constants.SLOW_CONSUMER_EVICT_STALL_MS) {
+                System.err.println("[NotificationService] Desconectando consumidor lento " + username
+                    + " (" + backlog + " bytes pendientes, " + stalled + " ms sin escribir)");
+                evictedCount.incrementAndGet();
+                clients.remove(username, connection);
+                connection.stop();
+            } else if (!queue.isDegraded() && (backlog >= Constants.SLOW_CONSUMER_DEGRADE_BYTES
+                    || latency >= Constants.SLOW_CONSUMER_DEGRADE_LATENCY_MS)) {
+                System.out.println("[NotificationService] Cliente " + username + " degradado a notificaciones resumidas ("
+                    + backlog + " bytes pendientes, latencia " + Math.round(latency) + " ms)");
+                queue.setDegraded(true);
+            } else if (queue.isDegraded() && backlog < Constants.SLOW_CONSUMER_DEGRADE_BYTES / 2
+                    && latency < Constants.SLOW_CONSUMER_DEGRADE_LATENCY_MS / 2.0) {
+                System.out.println("[NotificationService] Cliente " + username + " restablecido a notificaciones completas");
+                queue.setDegraded(false);
+            }
+        }
+    }
+
     /**
      * Envía un mensaje a un cliente específico.
      *
@@ -79,16 +155,31 @@ public class NotificationService {
      * @param message mensaje a enviar
      */
     public void sendToClient(String username, Message message) {
-        PrintWriter writer = clients.get(username);
-        if (writer != null) {
-            synchronized (writer) {
-                try {
-                    writer.println(message.toJson());
-                    System.out.println("[NotificationService] Notificación enviada a " + username + ": " + message.getAction());
-                } catch (Exception e) {
-                    System.err.println("[NotificationService] Error enviando a " + username + ": " + e.getMessage());
-                    // No eliminar el cliente aquí, lo hará el ClientHandler cuando detecte la desconexión
-                }
+        ClientConnection connection = clients.get(username);
+        if (connection != null) {
+            try {
+                connection.sendMessage(message);
+                System.out.println("[NotificationService] Notificación enviada a " + username + ": " + message.getAction());
+            } catch (Exception e) {
+                System.err.println("[NotificationService] Error enviando a " + username + ": " + e.getMessage());
+                // No eliminar el cliente aquí, lo hará la conexión cuando detecte la desconexión
+            }
+        }
+    }
+
+    /**
+     * Envía un mensaje a un grupo de clientes, codificándolo una sola vez.
+     * Los usuarios que no estén conectados se ignoran.
+     *
+     * @param usernames destinatarios
+     * @param message mensaje a enviar (no debe modificarse después)
+     */
+    public void sendToClients(Collection<String> usernames, Message message) {
+        EncodedMessage encoded = new EncodedMessage(message);
+        for (String username : usernames) {
+            ClientConnection connection = username != null ? clients.get(username) : null;
+            if (connection != null && deliver(username, connection, encoded)) {
+                System.out.println("[NotificationService] Notificación enviada a " + username + ": " + message.getAction());
             }
         }
     }
@@ -96,26 +187,44 @@ public class NotificationService {
     /**
      * Envía un mensaje a todos los clientes conectados.
      *
-     * @param message mensaje a enviar
+     * @param message mensaje a enviar (no debe modificarse después)
      */
     public void broadcast(Message message) {
-        for (String username : clients.keySet()) {
-            sendToClient(username, message);
-        }
+        broadcastExcept(message, null);
     }
 
     /**
      * Envía un mensaje a todos los clientes excepto al especificado.
+     * El mensaje se codifica una vez por protocolo, no una vez por cliente.
      *
-     * @param message mensaje a enviar
-     * @param excludeUsername usuario a excluir
+     * @param message mensaje a enviar (no debe modificarse después)
+     * @param excludeUsername usuario a excluir (null para no excluir a ninguno)
      */
     public void broadcastExcept(Message message, String excludeUsername) {
-        for (String username : clients.keySet()) {
-            if (!username.equals(excludeUsername)) {
-                sendToClient(username, message);
+        EncodedMessage encoded = new EncodedMessage(message);
+        int sent = 0;
+        for (Map.Entry<String, ClientConnection> entry : clients.entrySet()) {
+            if (!entry.getKey().equals(excludeUsername) && deliver(entry.getKey(), entry.getValue(), encoded)) {
+                sent++;
             }
         }
+        System.out.println("[NotificationService] Notificación " + message.getAction() + " enviada a " + sent + " clientes");
+    }
+
+    /**
+     * Encola un mensaje compartido en la conexion de un cliente.
+     *
+     * @return true si se encolo
+     */
+    private boolean deliver(String username, ClientConnection connection, EncodedMessage encoded) {
+        try {
+            connection.sendEncoded(encoded);
+            return true;
+        } catch (Exception e) {
+            System.err.println("[NotificationService] Error enviando a " + username + ": " + e.getMessage());
+            // No eliminar el cliente aquí, lo hará la conexión cuando detecte la desconexión
+            return false;
+        }
     }
 
     // ==================== NOTIFICACIONES ESPECÍFICAS ====================
@@ -125,14 +234,14 @@ public class NotificationService {
      *
      * @param auctionId ID de la subasta
      * @param auctionTitle título de la subasta
-     * @param amount cantidad de la puja
+     * @param amount cantidad de la puja en centimos
      * @param bidder nombre del pujador
      */
-    public void notifyNewBid(String auctionId, String auctionTitle, double amount, String bidder) {
+    public void notifyNewBid(String auctionId, String auctionTitle, long amount, String bidder) {
         Message notification = Message.createNotification(Constants.NOTIFY_NEW_BID);
         notification.addData("auctionId", auctionId);
         notification.addData("auctionTitle", auctionTitle);
-        notification.addData("amount", amount);
+        notification.addData("amount", Money.toUnits(amount));
         notification.addData("bidder", bidder);
 
         broadcast(notification);
@@ -144,15 +253,15 @@ public class NotificationService {
      * @param previousBidder usuario que fue superado
      * @param auctionId ID de la subasta
      * @param auctionTitle título de la subasta
-     * @param newAmount nueva cantidad de la puja
+     * @param newAmount nueva cantidad de la puja en centimos
      * @param newBidder nuevo pujador
      */
     public void notifyOutbid(String previousBidder, String auctionId, String auctionTitle,
-                            double newAmount, String newBidder) {
+                            long newAmount, String newBidder) {
         Message notification = Message.createNotification(Constants.NOTIFY_OUTBID);
         notification.addData("auctionId", auctionId);
         notification.addData("auctionTitle", auctionTitle);
-        notification.addData("newAmount", newAmount);
+        notification.addData("newAmount", Money.toUnits(newAmount));
         notification.addData("newBidder", newBidder);
 
         sendToClient(previousBidder, notification);
@@ -164,26 +273,25 @@ public class NotificationService {
      * @param auctionId ID de la subasta
      * @param auctionTitle título de la subasta
      * @param winner ganador (null si quedó desierta)
-     * @param finalPrice precio final
+     * @param finalPrice precio final en centimos
      * @param seller vendedor de la subasta
      */
     public void notifyAuctionClosed(String auctionId, String auctionTitle, String winner,
-                                     double finalPrice, String seller) {
+                                     long finalPrice, String seller) {
         boolean isDesierta = winner == null || winner.isEmpty();
 
         Message notification = Message.createNotification(Constants.NOTIFY_AUCTION_CLOSED);
         notification.addData("auctionId", auctionId);
         notification.addData("auctionTitle", auctionTitle);
         notification.addData("winner", winner != null ? winner : "");
-        notification.addData("finalPrice", finalPrice);
+        notification.addData("finalPrice", Money.toUnits(finalPrice));
         notification.addData("isDesierta", isDesierta);
 
-        // Notificar al vendedor
-        sendToClient(seller, notification);
-
-        // Notificar al ganador si existe
-        if (!isDesierta) {
-            sendToClient(winner, notification);
+        // Notificar al vendedor y, si existe, al ganador
+        if (isDesierta) {
+            sendToClient(seller, notification);
+        } else {
+            sendToClients(Arrays.asList(seller, winner), notification);
         }
     }
 
@@ -0,0 +1,80 @@
+package server;
+
+/**
+ * Comprobaciones de las pruebas ejecutables del servidor. Cada prueba es
+ * una clase con main que encadena comprobaciones y termina con
+ * {@link #finish(String)}, que sale con codigo 1 si alguna ha fallado.
+ * Se ejecutan con {@code run.sh test} o {@code run.bat test}.
+ *
+ * @author NetAuction Team
+ * @version 1.0
+ */
+public final class Checks {
+
+    /** Comprobaciones realizadas */
+    private static int total;
+
+    /** Comprobaciones fallidas */
+    private static int failed;
+
+    /**
+     * Constructor privado: solo metodos estaticos.
+     */
+    private Checks() {
+    }
+
+    /**
+     * Comprueba una condicion.
+     *
+     * @param description que se comprueba
+     * @param condition resultado
+     */
+    public static void check(String description, boolean condition) {
+        total++;
+        if (!condition) {
+            failed++;
+            System.err.println("[FALLO] " + description);
+        }
+    }
+
+    /**
+     * Comprueba que dos valores son iguales.
+     *
+     * @param description que se comprueba
+     * @param expected valor esperado
+     * @param actual valor obtenido
+     */
+    public static void checkEquals(String description, Object expected, Object actual) {
+        boolean equal = expected == null ? actual == null : expected.equals(actual);
+        check(description + " (esperado " + expected + ", obtenido " + actual + ")", equal);
+    }
+
+    /**
+     * Comprueba que una accion lanza una excepcion del tipo indicado.
+     *
+     * @param description que se comprueba
+     * @param type tipo de excepcion esperado
+     * @param action accion a ejecutar
+     */
+    public static void checkThrows(String description, Class<? extends Throwable> type, Runnable action) {
+        try {
+            action.run();
+            check(description + " (no lanzo " + type.getSimpleName() + ")", false);
+        } catch (Throwable e) {
+            check(description + " (lanzo " + e + ")", type.isInstance(e));
+        }
+    }
+
+    /**
+     * Muestra el resultado de la prueba y sale con codigo 1 si algo fallo.
+     *
+     * @param name nombre de la prueba
+     */
+    public static void finish(String name) {
+        if (failed > 0) {
+            System.err.println("[ERROR] " + name + ": " + failed + " de " + total + " comprobaciones fallidas");
+            System.exit(1);
+        }
+        System.out.println("[OK] " + name + ": " + total + " comprobaciones");
+    }
+}
@@ -0,0 +1,131 @@
+package server.manager;
+
+import server.model.Auction;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static server.Checks.check;
+import static server.Checks.checkEquals;
+import static server.Checks.checkThrows;
+import static server.Checks.finish;
+
+/**
+ * Prueba de la paginacion con cursor de los indices de subastas activas.
+ *
+ * @author NetAuction Team
+ * @version 1.0
+ */
+public class AuctionIndexTest {
+
+    public static void main(String[] args) {
+        pagesFollowEachSortKey();
+        cursorSurvivesRemovalAndSkipsInactive();
+        rejectsInvalidCursor();
+        finish("AuctionIndexTest");
+    }
+
+    private static void pagesFollowEachSortKey() {
+        AuctionIndex index = new AuctionIndex();
+        List<Auction> auctions = createAuctions(index, 10);
+
+        checkEquals("tamano", 10, index.size());
+        checkOrder(index, AuctionIndex.SortKey.END_TIME, auctions,
+            Comparator.comparingLong(Auction::getEndTime).thenComparing(Auction::getId));
+        checkOrder(index, AuctionIndex.SortKey.PRICE, auctions,
+            Comparator.comparingLong((Auction a) -> a.getSnapshot().getCurrentPrice())
+                .thenComparing(Auction::getId).reversed());
+        checkOrder(index, AuctionIndex.SortKey.BID_COUNT, auctions,
+            Comparator.comparingInt((Auction a) -> a.getSnapshot().getBidCount())
+                .thenComparing(Auction::getId).reversed());
+    }
+
+    private static void cursorSurvivesRemovalAndSkipsInactive() {
+        AuctionIndex index = new AuctionIndex();
+        List<Auction> auctions = createAuctions(index, 9);
+
+        AuctionIndex.Page first = index.page(AuctionIndex.SortKey.END_TIME, null, 3);
+        checkEquals("primera pagina", 3, first.getAuctions().size());
+
+        // Se quita la subasta del cursor y se cancela otra sin quitarla aun del indice
+        Auction atCursor = first.getAuctions().get(2);
+        atCursor.cancel();
+        index.remove(atCursor);
+        Auction pending = auctions.get(5);
+        pending.cancel();
+
+        List<Auction> rest = collect(index, AuctionIndex.SortKey.END_TIME, first.getNext(), 2);
+        checkEquals("resto tras el cursor", 5, rest.size());
+        check("omite la subasta inactiva que sigue en el indice", !rest.contains(pending));
+        checkEquals("continua tras el cursor", auctions.get(3), rest.get(0));
+        checkEquals("tamano tras quitar una", 8, index.size());
+    }
+
+    private static void rejectsInvalidCursor() {
+        AuctionIndex index = new AuctionIndex();
+        createAuctions(index, 2);
+        checkThrows("cursor sin separador", IllegalArgumentException.class,
+            () -> index.page(AuctionIndex.SortKey.PRICE, "abc", 5));
+        checkThrows("cursor con valor no numerico", IllegalArgumentException.class,
+            () -> index.page(AuctionIndex.SortKey.PRICE, "x:A01", 5));
+    }
+
+    /**
+     * Crea subastas con fines, precios y numeros de pujas distintos (y
+     * algunos empates) y las anade al indice, recolocandolas con cada puja.
+     */
+    private static List<Auction> createAuctions(AuctionIndex index, int count) {
+        List<Auction> auctions = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Auction auction = new Auction(String.format("A%02d", i), "t", "d", "seller", 100, 1 + i);
+            index.add(auction);
+            int bids = i % 4;
+            for (int b = 1; b <= bids; b++) {
+                Auction.Snapshot before = auction.getSnapshot();
+                check("puja aceptada", auction.placeBid("u" + b, 100 + b * 100L + (i % 3) * 50).isSuccess());
+                index.update(auction, before, auction.getSnapshot());
+            }
+            auctions.add(auction);
+        }
+        return auctions;
+    }
+
+    private static void checkOrder(AuctionIndex index, AuctionIndex.SortKey sortKey,
+                                   List<Auction> auctions, Comparator<Auction> order) {
+        List<Auction> expected = new ArrayList<>(auctions);
+        expected.sort(order);
+        List<Auction> paged = collect(index, sortKey, null, 3);
+        checkEquals("orden por " + sortKey.getName(), ids(expected), ids(paged));
+        Set<Auction> distinct = new HashSet<>(paged);
+        checkEquals("sin repetidas por " + sortKey.getName(), paged.size(), distinct.size());
+        checkEquals("listado completo por " + sortKey.getName(), ids(expected), ids(index.list(sortKey)));
+    }
+
+    /**
+     * Recorre todas las paginas de un listado desde un cursor.
+     */
+    private static List<Auction> collect(AuctionIndex index, AuctionIndex.SortKey sortKey,
+                                         String cursor, int limit) {
+        List<Auction> auctions = new ArrayList<>();
+        int pages = 0;
+        do {
+            AuctionIndex.Page page = index.page(sortKey, cursor, limit);
+            check("pagina de como mucho " + limit, page.getAuctions().size() <= limit);
+            auctions.addAll(page.getAuctions());
+            cursor = page.getNext();
+            pages++;
+        } while (cursor != null && pages < 100);
+        return auctions;
+    }
+
+    private static List<String> ids(List<Auction> auctions) {
+        List<String> ids = new ArrayList<>();
+        for (Auction auction : auctions) {
+            ids.add(auction.getId());
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,104 @@
+package server.manager;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static server.Checks.check;
+import static server.Checks.checkEquals;
+import static server.Checks.finish;
+
+/**
+ * Prueba de la rueda de vencimientos con una rueda pequena (4 casillas de
+ * 10 ms), de modo que los vencimientos pasan por tres niveles y las
+ * casillas dan varias vueltas.
+ *
+ * @author NetAuction Team
+ * @version 1.0
+ */
+public class ExpiryWheelTest {
+
+    private static final long TICK_MS = 10;
+
+    private static final int WHEEL_SIZE = 4;
+
+    /** Retraso admitido sobre la hora de fin (dos casillas y margen del planificador) */
+    private static final long MAX_LATE_MS = 150;
+
+    public static void main(String[] args) throws InterruptedException {
+        deliversEachExpiryOnceAcrossLevels();
+        finish("ExpiryWheelTest");
+    }
+
+    private static void deliversEachExpiryOnceAcrossLevels() throws InterruptedException {
+        Map<String, Long> delivered = new ConcurrentHashMap<>();
+        Map<String, Integer> deliveries = new ConcurrentHashMap<>();
+        int expected = 0;
+        CountDownLatch done = new CountDownLatch(1);
+        Map<String, Long> endTimes = new HashMap<>();
+
+        int[] count = {0};
+        int[] total = {0};
+        ExpiryWheel wheel = new ExpiryWheel(TICK_MS, WHEEL_SIZE, ids -> record(ids, delivered, deliveries,
+            count, total, done));
+        wheel.start();
+
+        long now = System.currentTimeMillis();
+        // Vencida, primer nivel, segundo nivel (40 ms por vuelta), tercero (160 ms) y cuarto (640 ms)
+        long[] offsets = {-50, 5, 25, 25, 70, 130, 300, 700};
+        for (int i = 0; i < offsets.length; i++) {
+            String id = "A" + i;
+            endTimes.put(id, now + offsets[i]);
+            wheel.schedule(id, now + offsets[i]);
+            expected++;
+        }
+
+        // Tras varias vueltas del primer nivel se programan mas en casillas ya usadas
+        Thread.sleep(350);
+        now = System.currentTimeMillis();
+        long[] later = {0, 15, 45, 200};
+        for (int i = 0; i < later.length; i++) {
+            String id = "B" + i;
+            endTimes.put(id, now + later[i]);
+            wheel.schedule(id, now + later[i]);
+            expected++;
+        }
+        total[0] = expected;
+
+        boolean finished = done.await(5, TimeUnit.SECONDS);
+        check("todos los vencimientos entregados", finished);
+        checkEquals("vencimientos entregados", expected, delivered.size());
+        for (Map.Entry<String, Long> end : endTimes.entrySet()) {
+            String id = end.getKey();
+            Long at = delivered.get(id);
+            if (at == null) {
+                check(id + " entregado", false);
+                continue;
+            }
+            checkEquals(id + " entregado una vez", 1, deliveries.get(id));
+            check(id + " no antes de su hora de fin (" + (at - end.getValue()) + " ms)",
+                at >= end.getValue());
+            check(id + " con como mucho " + MAX_LATE_MS + " ms de retraso (" + (at - end.getValue()) + " ms)",
+                at - end.getValue() <= MAX_LATE_MS);
+        }
+        checkEquals("nada pendiente", 0, wheel.getPendingCount());
+        wheel.shutdown();
+    }
+
+    private static synchronized void record(List<String> ids, Map<String, Long> delivered,
+                                            Map<String, Integer> deliveries, int[] count, int[] total,
+                                            CountDownLatch done) {
+        long at = System.currentTimeMillis();
+        for (String id : ids) {
+            delivered.putIfAbsent(id, at);
+            deliveries.merge(id, 1, Integer::sum);
+        }
+        count[0] += ids.size();
+        if (total[0] > 0 && count[0] >= total[0]) {
+            done.countDown();
+        }
+    }
+}
@@ -0,0 +1,244 @@
+package server.persistence;
+
+import server.model.Auction;
+import server.model.Bid;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static server.Checks.check;
+import static server.Checks.checkEquals;
+import static server.Checks.finish;
+
+/**
+ * Prueba de la escritura diferida con una base de datos simulada: reintento
+ * de lotes, descarte tras agotar los intentos, instantanea guardada y cierre.
+ *
+ * @author NetAuction Team
+ * @version 1.0
+ */
+public class WriteBehindQueueTest {
+
+    public static void main(String[] args) throws Exception {
+        retriesFailedBatch();
+        failsBatchAfterLastAttempt();
+        persistsSnapshotTakenWhenEnqueued();
+        closeFlushesAndRejectsLateWrites();
+        closeRaceLeavesNothingPending();
+        finish("WriteBehindQueueTest");
+    }
+
+    private static void retriesFailedBatch() throws Exception {
+        FakeDatabase db = new FakeDatabase();
+        db.failures.set(2);
+        WriteBehindQueue queue = new WriteBehindQueue(db, 16, 16, 4, 1);
+        queue.start();
+
+        CompletableFuture<Void> done = queue.insertBid(new Bid("A", "u", 100));
+        check("guardada tras reintentar", completesNormally(done));
+        checkEquals("reintentos", 2L, queue.getRetryCount());
+        checkEquals("lotes confirmados", 1L, queue.getBatchCount());
+        checkEquals("intentos", 3, db.calls.get());
+        checkEquals("sin fallos", 0L, queue.getFailedCount());
+        queue.close(1000);
+    }
+
+    private static void failsBatchAfterLastAttempt() throws Exception {
+        FakeDatabase db = new FakeDatabase();
+        db.failures.set(Integer.MAX_VALUE);
+        WriteBehindQueue queue = new WriteBehindQueue(db, 16, 16, 3, 1);
+        queue.start();
+
+        CompletableFuture<Void> bid = queue.insertBid(new Bid("A", "u", 100));
+        check("la puja falla tras el ultimo intento", failsWithin(bid));
+        checkEquals("intentos", 3, db.calls.get());
+        checkEquals("reintentos", 2L, queue.getRetryCount());
+        checkEquals("escrituras fallidas", 1L, queue.getFailedCount());
+
+        // La siguiente escritura se sigue intentando guardar
+        db.failures.set(0);
+        check("la cola sigue tras un lote descartado", completesNormally(queue.insertBid(new Bid("A", "u", 200))));
+        queue.close(1000);
+    }
+
+    private static void persistsSnapshotTakenWhenEnqueued() throws Exception {
+        FakeDatabase db = new FakeDatabase();
+        WriteBehindQueue queue = new WriteBehindQueue(db, 16, 16, 1, 1);
+        queue.start();
+
+        // Retiene al escritor para que las siguientes escrituras formen un mismo lote
+        CountDownLatch hold = new CountDownLatch(1);
+        db.hold = hold;
+        CompletableFuture<Void> first = queue.insertBid(new Bid("X", "u", 1));
+        check("escritor retenido", db.held.await(5, TimeUnit.SECONDS));
+
+        Auction auction = new Auction("A", "t", "d", "seller", 100, 10);
+        CompletableFuture<Void> insert = queue.insertAuction(auction);
+        Auction.BidResult bid = auction.placeBid("u1", 200);
+        CompletableFuture<Void> update = queue.updateAuction(auction);
+        CompletableFuture<Void> bidWrite = queue.insertBid(bid.getBid());
+        // Puja aplicada en memoria cuyas escrituras aun no se han encolado
+        check("segunda puja aceptada", auction.placeBid("u2", 300).isSuccess());
+
+        hold.countDown();
+        check("lote guardado", completesNormally(first) && completesNormally(insert)
+            && completesNormally(update) && completesNormally(bidWrite));
+
+        Batch batch = db.batches.get(db.batches.size() - 1);
+        checkEquals("alta con la ultima instantanea encolada", 200L, batch.insertPrices.get(0));
+        checkEquals("actualizacion absorbida por el alta", 0, batch.updatePrices.size());
+        checkEquals("actualizaciones absorbidas", 1L, queue.getCollapsedCount());
+        checkEquals("hora de la puja la del historial",
+            auction.getSnapshot().getRecentBids(2).getTimestamp(1), batch.bidTimestamps.get(0));
+
+        CompletableFuture<Void> later = queue.updateAuction(auction);
+        check("actualizacion guardada", completesNormally(later));
+        checkEquals("actualizacion con el estado al encolarla", 300L,
+            db.batches.get(db.batches.size() - 1).updatePrices.get(0));
+        queue.close(1000);
+    }
+
+    private static void closeFlushesAndRejectsLateWrites() throws Exception {
+        FakeDatabase db = new FakeDatabase();
+        db.delayMs = 5;
+        WriteBehindQueue queue = new WriteBehindQueue(db, 1024, 4, 1, 1);
+        queue.start();
+
+        List<CompletableFuture<Void>> writes = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            writes.add(queue.insertBid(new Bid("A", "u", i + 1)));
+        }
+        check("cierre dentro del plazo", queue.close(10000));
+        boolean all = true;
+        for (CompletableFuture<Void> write : writes) {
+            all &= completesNormally(write);
+        }
+        check("todas guardadas al cerrar", all);
+        check("escritura tras cerrar falla", failsWithin(queue.insertBid(new Bid("A", "u", 100))));
+    }
+
+    private static void closeRaceLeavesNothingPending() throws Exception {
+        int stranded = 0;
+        for (int round = 0; round < 50; round++) {
+            WriteBehindQueue queue = new WriteBehindQueue(new FakeDatabase(), 1024, 16, 1, 1);
+            queue.start();
+            List<CompletableFuture<Void>> writes = new ArrayList<>();
+            Thread producer = new Thread(() -> {
+                for (int i = 0; i < 200; i++) {
+                    CompletableFuture<Void> write = queue.insertBid(new Bid("A", "u", i + 1));
+                    synchronized (writes) {
+                        writes.add(write);
+                    }
+                }
+            });
+            producer.start();
+            queue.close(5000);
+            producer.join();
+            synchronized (writes) {
+                for (CompletableFuture<Void> write : writes) {
+                    try {
+                        write.get(5, TimeUnit.SECONDS);
+                    } catch (ExecutionException e) {
+                        // Rechazada por el cierre: completada
+                    } catch (TimeoutException e) {
+                        stranded++;
+                    }
+                }
+            }
+        }
+        checkEquals("escrituras sin completar tras cerrar", 0, stranded);
+    }
+
+    private static boolean completesNormally(CompletableFuture<Void> future) throws InterruptedException {
+        try {
+            future.get(5, TimeUnit.SECONDS);
+            return true;
+        } catch (ExecutionException | TimeoutException e) {
+            return false;
+        }
+    }
+
+    private static boolean failsWithin(CompletableFuture<Void> future) throws InterruptedException {
+        try {
+            future.get(5, TimeUnit.SECONDS);
+            return false;
+        } catch (ExecutionException e) {
+            return true;
+        } catch (TimeoutException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Lote recibido por la base de datos simulada.
+     */
+    private static final class Batch {
+        final List<Long> insertPrices = new ArrayList<>();
+        final List<Long> updatePrices = new ArrayList<>();
+        final List<Long> bidTimestamps = new ArrayList<>();
+    }
+
+    /**
+     * Base de datos que no abre conexion: anota los lotes y falla los
+     * intentos indicados.
+     */
+    private static final class FakeDatabase extends Database {
+        final AtomicInteger failures = new AtomicInteger();
+        final AtomicInteger calls = new AtomicInteger();
+        final List<Batch> batches = new ArrayList<>();
+        final CountDownLatch held = new CountDownLatch(1);
+        volatile CountDownLatch hold;
+        volatile long delayMs;
+
+        FakeDatabase() {
+            super("no-usada.db");
+        }
+
+        @Override
+        public boolean writeBatch(Map<Auction, Auction.Snapshot> inserts, List<Bid> bids,
+                                  Map<Auction, Auction.Snapshot> updates) {
+            calls.incrementAndGet();
+            CountDownLatch latch = hold;
+            if (latch != null) {
+                held.countDown();
+                hold = null;
+                try {
+                    latch.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            if (delayMs > 0) {
+                try {
+                    Thread.sleep(delayMs);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            if (failures.getAndUpdate(n -> n > 0 && n < Integer.MAX_VALUE ? n - 1 : n) > 0) {
+                return false;
+            }
+            Batch batch = new Batch();
+            for (Auction.Snapshot snapshot : inserts.values()) {
+                batch.insertPrices.add(snapshot.getCurrentPrice());
+            }
+            for (Auction.Snapshot snapshot : updates.values()) {
+                batch.updatePrices.add(snapshot.getCurrentPrice());
+            }
+            for (Bid bid : bids) {
+                batch.bidTimestamps.add(bid.getTimestamp());
+            }
+            synchronized (batches) {
+                batches.add(batch);
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package server.request;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonSyntaxException;
+import common.Constants;
+import common.Message;
+import server.model.Money;
+
+import static server.Checks.check;
+import static server.Checks.checkEquals;
+import static server.Checks.checkThrows;
+import static server.Checks.finish;
+
+/**
+ * Prueba del decodificador de peticiones: recorrido directo de la linea,
+ * vuelta a Gson y campos con un tipo que no es el esperado.
+ *
+ * @author NetAuction Team
+ * @version 1.0
+ */
+public class RequestDecoderTest {
+
+    private static final RequestDecoder DECODER = RequestDecoder.INSTANCE;
+
+    public static void main(String[] args) {
+        decodesTypedRequests();
+        rejectsInvalidAmounts();
+        rejectsNonPrimitiveFields();
+        rejectsMalformedJson();
+        finish("RequestDecoderTest");
+    }
+
+    private static void decodesTypedRequests() {
+        Request request = DECODER.decode(
+            "{\"action\":\"BID\",\"id\":7,\"token\":\"t\",\"data\":{\"auctionId\":\"A\",\"amount\":12.5,\"durability\":\"durable\"}}");
+        check("BID decodifica una BidRequest", request instanceof BidRequest);
+        BidRequest bid = (BidRequest) request;
+        checkEquals("importe en centimos", 1250L, bid.getAmount());
+        checkEquals("subasta", "A", bid.getAuctionId());
+        checkEquals("durabilidad", "durable", bid.getDurability());
+        checkEquals("id", 7L, bid.getId());
+
+        // Un campo anidado desconocido hace que la linea se decodifique con Gson
+        request = DECODER.decode(
+            "{\"action\":\"CREATE_AUCTION\",\"data\":{\"title\":\"t\",\"extra\":{\"a\":[1,{\"b\":2}]},\"startPrice\":\"3.10\"}}");
+        check("CREATE_AUCTION decodifica una CreateAuctionRequest", request instanceof CreateAuctionRequest);
+        CreateAuctionRequest create = (CreateAuctionRequest) request;
+        checkEquals("precio de salida en centimos", 310L, create.getStartPrice());
+        checkEquals("duracion por defecto", 5, create.getDurationMinutes());
+
+        Message message = new Message(Constants.ACTION_BID);
+        message.getData().addProperty("auctionId", "B");
+        message.getData().addProperty("amount", 0.1);
+        bid = (BidRequest) DECODER.decode(message);
+        checkEquals("importe binario en centimos", 10L, bid.getAmount());
+    }
+
+    private static void rejectsInvalidAmounts() {
+        BidRequest bid = (BidRequest) DECODER.decode(
+            "{\"action\":\"BID\",\"data\":{\"auctionId\":\"A\",\"amount\":1.005}}");
+        checkEquals("tres decimales", Money.INVALID, bid.getAmount());
+    }
+
+    private static void rejectsNonPrimitiveFields() {
+        checkThrows("importe objeto", IllegalArgumentException.class,
+            () -> DECODER.decode("{\"action\":\"BID\",\"data\":{\"auctionId\":\"A\",\"amount\":{}}}"));
+        checkThrows("importe array", IllegalArgumentException.class,
+            () -> DECODER.decode("{\"action\":\"BID\",\"data\":{\"auctionId\":\"A\",\"amount\":[1,2]}}"));
+        checkThrows("duracion array", IllegalArgumentException.class,
+            () -> DECODER.decode("{\"action\":\"CREATE_AUCTION\",\"data\":{\"durationMinutes\":[1,2]}}"));
+        checkThrows("subasta objeto", IllegalArgumentException.class,
+            () -> DECODER.decode("{\"action\":\"AUCTION_DETAIL\",\"data\":{\"auctionId\":{\"x\":1}}}"));
+        checkThrows("duracion no numerica", IllegalArgumentException.class,
+            () -> DECODER.decode("{\"action\":\"CREATE_AUCTION\",\"data\":{\"durationMinutes\":\"abc\"}}"));
+
+        Message message = new Message(Constants.ACTION_BLOCK_USER);
+        JsonArray blocked = new JsonArray();
+        blocked.add(true);
+        message.getData().add("blocked", blocked);
+        checkThrows("booleano array en binario", IllegalArgumentException.class, () -> DECODER.decode(message));
+
+        Message nested = new Message(Constants.ACTION_BID);
+        nested.getData().add("amount", new JsonObject());
+        checkThrows("importe objeto en binario", IllegalArgumentException.class, () -> DECODER.decode(nested));
+    }
+
+    private static void rejectsMalformedJson() {
+        checkThrows("JSON truncado", JsonSyntaxException.class,
+            () -> DECODER.decode("{\"action\":\"BID\",\"data\":{"));
+    }
+}